@@ -0,0 +1,71 @@
+package com.cognex.cmb.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DMCC command round trips through a loopback DmccSimulator with no added latency:
+ * the framing and socket cost per command, with one command or a window of commands in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DmccRoundTripBenchmark {
+
+    @Param({"1", "8"})
+    int inFlight;
+
+    // 0 sends GET TRIGGER.TYPE, otherwise IMAGE.LOAD with a payload of this size
+    @Param({"0", "65536"})
+    int imageSize;
+
+    private DmccSimulator simulator;
+    private DmccClient client;
+    private byte[] image;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator = new DmccSimulator().setResultOnImageLoad(false);
+        simulator.script("GET TRIGGER.TYPE", DmccProtocol.STATUS_OK, "5");
+        int port = simulator.start(0);
+
+        client = new DmccClient(null);
+        client.connect("127.0.0.1", port, null, null, 5000);
+        image = imageSize > 0 ? new byte[imageSize] : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        simulator.close();
+    }
+
+    @Benchmark
+    public void commands() throws Exception {
+        final CountDownLatch done = new CountDownLatch(inFlight);
+        DmccClient.ResponseListener listener = new DmccClient.ResponseListener() {
+            @Override
+            public void onResponse(int status, String payload, byte[] binary, long roundTripNanos) {
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < inFlight; i++) {
+            if (image != null)
+                client.sendCommand("IMAGE.LOAD " + image.length, image, false, listener);
+            else
+                client.sendCommand("GET TRIGGER.TYPE", listener);
+        }
+        done.await();
+    }
+}
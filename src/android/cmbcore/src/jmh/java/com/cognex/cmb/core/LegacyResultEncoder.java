@@ -0,0 +1,90 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The tree-building encoder the bridge used before results were streamed through JsonWriter, kept as the
+ * baseline for ResultEncoderBenchmark. Only the default options are kept: XML and the SVG image graphics
+ * included, no field extraction.
+ */
+class LegacyResultEncoder {
+
+    JSONObject encodeResults(String xml, ScanResult main, List<? extends ScanResult> subResults) throws JSONException {
+        JSONObject jsonResult = new JSONObject();
+        JSONArray jsonReadResults = new JSONArray();
+        JSONArray jsonSubResults = new JSONArray();
+
+        jsonResult.put("xml", xml);
+
+        if (main != null)
+            jsonReadResults.put(encode(main));
+
+        if (subResults != null) {
+            for (ScanResult item : subResults) {
+                // both arrays carry the same content, serialize it once
+                JSONObject jsonItem = encode(item);
+                jsonReadResults.put(jsonItem);
+                jsonSubResults.put(jsonItem);
+            }
+        }
+
+        jsonResult.put("readResults", jsonReadResults);
+        jsonResult.put("subReadResults", jsonSubResults);
+        return jsonResult;
+    }
+
+    JSONObject encode(ScanResult result) throws JSONException {
+        JSONObject jsonResult = new JSONObject();
+
+        if (result.isGoodRead()) {
+            if (result.getSymbologyOrdinal() >= 0) {
+                jsonResult.put("symbology", result.getSymbologyOrdinal());
+                jsonResult.put("symbologyString", result.getSymbologyName());
+            }
+            jsonResult.put("readString", result.getReadString());
+        } else {
+            jsonResult.put("symbology", -1);
+            jsonResult.put("symbologyString", "NO READ");
+            jsonResult.put("readString", "");
+        }
+
+        jsonResult.put("goodRead", result.isGoodRead());
+
+        if (result.getXml() != null)
+            jsonResult.put("xml", result.getXml());
+
+        if (result.getImageGraphics() != null)
+            jsonResult.put("imageGraphics", ResultEncoder.stripSvgTitle(result.getImageGraphics()));
+
+        if (result.hasImage()) {
+            String image = encodeImage(result);
+            if (image != null)
+                jsonResult.put("image", image);
+        }
+
+        if (result.getParsedText() != null)
+            jsonResult.put("parsedText", result.getParsedText());
+
+        if (result.getParsedJSON() != null)
+            jsonResult.put("parsedJSON", result.getParsedJSON());
+
+        jsonResult.put("isGS1", result.isGS1());
+        return jsonResult;
+    }
+
+    private static String encodeImage(ScanResult result) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            result.writeImage(out);
+            return Base64Encoder.encode(out.toByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
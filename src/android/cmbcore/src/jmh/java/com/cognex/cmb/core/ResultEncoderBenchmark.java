@@ -0,0 +1,112 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result-to-JSON throughput. The encode variants run LegacyResultEncoder, the JSONObject tree the bridge built
+ * before it streamed into pooled buffers, and the toString ones add the serialization PluginResult did in its
+ * constructor. The write variants are the streaming path the bridge uses now, down to the message String.
+ * Run with the gc profiler (default in build.gradle) for the allocation rate per result: gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResultEncoderBenchmark {
+
+    // sub results of a multi-code scan
+    @Param({"1", "4", "16"})
+    int subResults;
+
+    // size of the PNG attached to the image benchmark, a 640x480 grayscale frame compresses to ~60KB
+    @Param({"65536"})
+    int imageSize;
+
+    private final ResultEncoder encoder = new ResultEncoder();
+    private final LegacyResultEncoder legacyEncoder = new LegacyResultEncoder();
+
+    private ScanResult textResult;
+    private ScanResult imageResult;
+    private ScanResult noRead;
+    private List<ScanResult> multi;
+
+    @Setup
+    public void setUp() {
+        textResult = new SimpleScanResult(true, "01003123456789051725123110LOT-421", null);
+        noRead = new SimpleScanResult(false, null, null);
+
+        byte[] image = new byte[imageSize];
+        new Random(42).nextBytes(image);
+        imageResult = new SimpleScanResult(true, "01003123456789051725123110LOT-421", image);
+
+        multi = new ArrayList<>(subResults);
+        for (int i = 0; i < subResults; i++)
+            multi.add(new SimpleScanResult(true, "SUB-" + i, null));
+    }
+
+    @Benchmark
+    public Object encodeText() throws JSONException {
+        return legacyEncoder.encode(textResult);
+    }
+
+    @Benchmark
+    public String encodeTextToString() throws JSONException {
+        return legacyEncoder.encodeResults(SimpleScanResult.XML, textResult, null).toString();
+    }
+
+    @Benchmark
+    public String encodeNoReadToString() throws JSONException {
+        return legacyEncoder.encodeResults(SimpleScanResult.XML, noRead, null).toString();
+    }
+
+    @Benchmark
+    public String encodeImageToString() throws JSONException {
+        return legacyEncoder.encodeResults(SimpleScanResult.XML, imageResult, null).toString();
+    }
+
+    @Benchmark
+    public String encodeMultiToString() throws JSONException {
+        return legacyEncoder.encodeResults(SimpleScanResult.XML, textResult, multi).toString();
+    }
+
+    @Benchmark
+    public String writeTextToString() throws JSONException {
+        return write(textResult, null);
+    }
+
+    @Benchmark
+    public String writeImageToString() throws JSONException {
+        return write(imageResult, null);
+    }
+
+    @Benchmark
+    public String writeMultiToString() throws JSONException {
+        return write(textResult, multi);
+    }
+
+    private String write(ScanResult main, List<ScanResult> subResults) throws JSONException {
+        ResultBuffers buffers = ResultBuffers.get();
+        try {
+            JsonWriter json = buffers.json;
+            json.beginObject();
+            encoder.writeResults(json, SimpleScanResult.XML, main, subResults);
+            json.name("sentTimestamp").value(System.currentTimeMillis());
+            json.endObject();
+            return json.toString();
+        } finally {
+            buffers.release();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.cognex.cmb.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fixed-content ScanResult for the benchmarks, shaped like what an MX reader returns.
+ */
+class SimpleScanResult implements ScanResult {
+
+    static final String XML = "<result id=\"42\"><general><status>GOOD READ</status><symbology>DataMatrix</symbology>"
+            + "<full_string encoding=\"base64\">KDAxKTAwMzEyMzQ1Njc4OTA1KDE3KTI1MTIzMSgxMClMT1QtNDIx</full_string>"
+            + "<decode_time>12</decode_time><total_time>31</total_time></general></result>";
+
+    static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"1280\" height=\"960\">"
+            + "<title>MX-1502</title><g><polygon points=\"402,311 612,305 618,517 408,522\" "
+            + "style=\"fill:none;stroke:lime;stroke-width:3\"/></g></svg>";
+
+    private final boolean goodRead;
+    private final String readString;
+    private final byte[] image;
+
+    SimpleScanResult(boolean goodRead, String readString, byte[] image) {
+        this.goodRead = goodRead;
+        this.readString = readString;
+        this.image = image;
+    }
+
+    @Override
+    public boolean isGoodRead() {
+        return goodRead;
+    }
+
+    @Override
+    public int getSymbologyOrdinal() {
+        return goodRead ? 1 : -1;
+    }
+
+    @Override
+    public String getSymbologyName() {
+        return "DATAMATRIX";
+    }
+
+    @Override
+    public String getReadString() {
+        return readString;
+    }
+
+    @Override
+    public String getXml() {
+        return XML;
+    }
+
+    @Override
+    public String getImageGraphics() {
+        return SVG;
+    }
+
+    @Override
+    public String getParsedText() {
+        return goodRead ? "(01)00312345678905(17)251231(10)LOT-421" : null;
+    }
+
+    @Override
+    public String getParsedJSON() {
+        return goodRead ? "{\"01\":\"00312345678905\",\"17\":\"251231\",\"10\":\"LOT-421\"}" : null;
+    }
+
+    @Override
+    public boolean isGS1() {
+        return goodRead;
+    }
+
+    @Override
+    public boolean hasImage() {
+        return image != null;
+    }
+
+    @Override
+    public void writeImage(OutputStream out) throws IOException {
+        out.write(image);
+    }
+}
@@ -0,0 +1,101 @@
+package com.cognex.cmb.core;
+
+/**
+ * Base64 encoder producing the same output as android.util.Base64 with the DEFAULT flag:
+ * padded, lines of 76 characters, each line (the last one included) terminated by '\n'.
+ * java.util.Base64 is not available below API 26, and android.util.Base64 not on a plain JVM.
+ */
+public final class Base64Encoder {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // 19 groups of 4 characters per line
+    private static final int GROUPS_PER_LINE = 19;
+
+    private Base64Encoder() {
+    }
+
+    public static int encodedLength(int length) {
+        if (length == 0)
+            return 0;
+        int groups = (length + 2) / 3;
+        int lines = (groups + GROUPS_PER_LINE - 1) / GROUPS_PER_LINE;
+        return groups * 4 + lines;
+    }
+
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    public static String encode(byte[] data, int offset, int length) {
+        char[] out = new char[encodedLength(length)];
+        int o = 0;
+        int groups = 0;
+        int end = offset + length;
+        int i = offset;
+
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+            if (++groups == GROUPS_PER_LINE) {
+                out[o++] = '\n';
+                groups = 0;
+            }
+        }
+
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            out[o++] = '=';
+            groups++;
+        }
+
+        if (groups > 0)
+            out[o++] = '\n';
+
+        return new String(out, 0, o);
+    }
+
+    /**
+     * Appends the encoding to a buffer instead of returning a new String, lineEnd replaces each '\n'
+     * (a JSON string needs it escaped).
+     */
+    public static void encode(byte[] data, int offset, int length, StringBuilder out, String lineEnd) {
+        out.ensureCapacity(out.length() + encodedLength(length) + (lineEnd.length() - 1) * ((length + 56) / 57));
+        int groups = 0;
+        int end = offset + length;
+        int i = offset;
+
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out.append(ALPHABET[bits >>> 18])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(ALPHABET[(bits >>> 6) & 0x3f])
+                    .append(ALPHABET[bits & 0x3f]);
+            if (++groups == GROUPS_PER_LINE) {
+                out.append(lineEnd);
+                groups = 0;
+            }
+        }
+
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out.append(ALPHABET[bits >>> 18])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=')
+                    .append('=');
+            groups++;
+        }
+
+        if (groups > 0)
+            out.append(lineEnd);
+    }
+}
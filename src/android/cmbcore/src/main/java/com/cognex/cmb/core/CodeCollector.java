@@ -0,0 +1,161 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gathers the distinct codes of a multi-code scan (all the labels of a carton) across frames and sub results,
+ * so the page gets one aggregated result instead of every repeated frame.
+ *
+ * Codes are the same when symbology and content match. With a position tolerance, and image graphics to take
+ * positions from, identical content further apart than the tolerance counts as another label.
+ */
+public class CodeCollector {
+
+    private static final class Code {
+        final String readString;
+        final int symbology;
+        final String symbologyName;
+        final long firstSeen;
+        // normalized center of the outline, null without image graphics
+        final float[] center;
+        int sightings = 1;
+
+        Code(ScanResult result, long firstSeen, float[] center) {
+            this.readString = result.getReadString();
+            this.symbology = result.getSymbologyOrdinal();
+            this.symbologyName = result.getSymbologyName();
+            this.firstSeen = firstSeen;
+            this.center = center;
+        }
+    }
+
+    private final int expectedCount;
+    private final Set<Integer> symbologies;
+    private final float positionTolerance;
+    private final long startedAt;
+
+    // symbology and content -> the labels carrying it
+    private final Map<String, List<Code>> byContent = new HashMap<>();
+    private final List<Code> codes = new ArrayList<>();
+    private long frames;
+    private long duplicates;
+
+    /**
+     * @param expectedCount complete once that many distinct codes were seen, 0 collects until stopped
+     * @param symbologies ordinals to collect, null collects every symbology
+     * @param positionTolerance normalized distance between centers under which identical content is the same label, 0 ignores positions
+     */
+    public CodeCollector(int expectedCount, Set<Integer> symbologies, float positionTolerance, long startedAt) {
+        this.expectedCount = Math.max(0, expectedCount);
+        this.symbologies = symbologies;
+        this.positionTolerance = Math.max(0, positionTolerance);
+        this.startedAt = startedAt;
+    }
+
+    public synchronized void onFrame() {
+        frames++;
+    }
+
+    /**
+     * @param now epoch milliseconds
+     * @return true when the result was a code not seen before
+     */
+    public synchronized boolean add(ScanResult result, long now) {
+        String readString = result.getReadString();
+        if (!result.isGoodRead() || readString == null)
+            return false;
+        if (symbologies != null && !symbologies.contains(result.getSymbologyOrdinal()))
+            return false;
+
+        float[] center = null;
+        if (positionTolerance > 0 && result.getImageGraphics() != null) {
+            float[] bounds = RoiTuner.boundsFromSvg(result.getImageGraphics());
+            if (bounds != null)
+                center = new float[]{(bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2};
+        }
+
+        String key = result.getSymbologyOrdinal() + ":" + readString;
+        List<Code> labels = byContent.get(key);
+        if (labels == null) {
+            labels = new ArrayList<>(1);
+            byContent.put(key, labels);
+        }
+
+        for (Code label : labels) {
+            if (samePosition(label.center, center)) {
+                label.sightings++;
+                duplicates++;
+                return false;
+            }
+        }
+
+        Code code = new Code(result, now, center);
+        labels.add(code);
+        codes.add(code);
+        return true;
+    }
+
+    // without a position on either side only the content counts
+    private boolean samePosition(float[] a, float[] b) {
+        if (positionTolerance == 0 || a == null || b == null)
+            return true;
+        float dx = a[0] - b[0];
+        float dy = a[1] - b[1];
+        return dx * dx + dy * dy <= positionTolerance * positionTolerance;
+    }
+
+    public synchronized boolean isComplete() {
+        return expectedCount > 0 && codes.size() >= expectedCount;
+    }
+
+    // sightings of codes already collected
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public synchronized int getCount() {
+        return codes.size();
+    }
+
+    /**
+     * @param reason "complete", "timeout" or "stopped"
+     */
+    public synchronized JSONObject toJson(String reason, long now) throws JSONException {
+        JSONArray list = new JSONArray();
+        for (Code code : codes) {
+            JSONObject json = new JSONObject();
+            json.put("readString", code.readString);
+            json.put("symbology", code.symbology);
+            json.put("symbologyString", code.symbologyName);
+            json.put("firstSeen", code.firstSeen);
+            json.put("firstSeenMs", code.firstSeen - startedAt);
+            json.put("sightings", code.sightings);
+            if (code.center != null) {
+                JSONArray center = new JSONArray();
+                center.put((double) code.center[0]);
+                center.put((double) code.center[1]);
+                json.put("center", center);
+            }
+            list.put(json);
+        }
+
+        JSONObject collection = new JSONObject();
+        collection.put("reason", reason);
+        collection.put("complete", isComplete());
+        collection.put("expectedCount", expectedCount);
+        collection.put("count", codes.size());
+        collection.put("elapsedMs", now - startedAt);
+        collection.put("frames", frames);
+        collection.put("duplicates", duplicates);
+        collection.put("codes", list);
+        return collection;
+    }
+}
@@ -0,0 +1,183 @@
+package com.cognex.cmb.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal DMCC client for driving DmccSimulator (or a reader on the network) from a plain JVM.
+ * Several commands can be in flight, responses are matched by command id and report their round trip.
+ */
+public class DmccClient implements Closeable {
+
+    public interface ResponseListener {
+        // status is a DmccProtocol.STATUS_* value, binary is null unless the response carried data
+        void onResponse(int status, String payload, byte[] binary, long roundTripNanos);
+    }
+
+    // results and events pushed by the reader without a command id
+    public interface AutoResponseListener {
+        void onAutoResponse(int status, String payload, byte[] binary);
+    }
+
+    private static final class Pending {
+        final ResponseListener listener;
+        final boolean expectBinary;
+        final long sentTime;
+
+        Pending(ResponseListener listener, boolean expectBinary, long sentTime) {
+            this.listener = listener;
+            this.expectBinary = expectBinary;
+            this.sentTime = sentTime;
+        }
+    }
+
+    private final AutoResponseListener autoResponseListener;
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private Socket socket;
+    private OutputStream out;
+    private volatile boolean closed = false;
+
+    public DmccClient(AutoResponseListener autoResponseListener) {
+        this.autoResponseListener = autoResponseListener;
+    }
+
+    /**
+     * @param userName null skips the login exchange
+     */
+    public void connect(String host, int port, String userName, String password, int timeoutMs) throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), timeoutMs);
+        socket.setSoTimeout(timeoutMs);
+
+        final InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+        out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+
+        if (userName != null) {
+            write((userName + "\r\n" + (password != null ? password : "") + "\r\n").getBytes(DmccProtocol.CHARSET));
+            String line;
+            while ((line = DmccProtocol.readLine(in)) != null) {
+                if (line.contains("Login succeeded"))
+                    break;
+                if (line.contains("Login failed"))
+                    throw new IOException("Login failed");
+            }
+            if (line == null)
+                throw new IOException("Connection closed during login");
+        }
+
+        socket.setSoTimeout(0);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop(in);
+            }
+        }, "DmccClient-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public int sendCommand(String command, ResponseListener listener) throws IOException {
+        return sendCommand(command, null, false, listener);
+    }
+
+    /**
+     * @param data written right after the command line, e.g. the image of IMAGE.LOAD n
+     * @param expectBinary the response payload is a byte count followed by data (IMAGE.SEND, GET CONFIG...)
+     */
+    public int sendCommand(String command, byte[] data, boolean expectBinary, ResponseListener listener) throws IOException {
+        int id = nextId.incrementAndGet() & 0x7fffffff;
+        pending.put(id, new Pending(listener, expectBinary, System.nanoTime()));
+        try {
+            if (data != null)
+                write(DmccProtocol.request(id, command), data);
+            else
+                write(DmccProtocol.request(id, command));
+        } catch (IOException e) {
+            pending.remove(id);
+            throw e;
+        }
+        return id;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void write(byte[]... chunks) throws IOException {
+        synchronized (out) {
+            for (byte[] chunk : chunks)
+                out.write(chunk);
+            out.flush();
+        }
+    }
+
+    private void readLoop(InputStream in) {
+        try {
+            String line;
+            while ((line = DmccProtocol.readLine(in)) != null) {
+                DmccProtocol.Message message = DmccProtocol.Message.parse(line);
+                if (message == null || message.request)
+                    continue;
+
+                if (message.id == DmccProtocol.NO_ID) {
+                    byte[] binary = DmccProtocol.isBinaryStatus(message.status) ? readBinary(in, message.body) : null;
+                    if (autoResponseListener != null)
+                        autoResponseListener.onAutoResponse(message.status, message.body, binary);
+                    continue;
+                }
+
+                Pending command = pending.remove(message.id);
+                byte[] binary = null;
+                if ((command != null && command.expectBinary && message.status == DmccProtocol.STATUS_OK)
+                        || DmccProtocol.isBinaryStatus(message.status))
+                    binary = readBinary(in, message.body);
+
+                if (command != null && command.listener != null)
+                    command.listener.onResponse(message.status, message.body, binary, System.nanoTime() - command.sentTime);
+            }
+        } catch (IOException e) {
+            // closed
+        } finally {
+            failPending();
+        }
+    }
+
+    private static byte[] readBinary(InputStream in, String length) throws IOException {
+        try {
+            return DmccProtocol.readFully(in, Integer.parseInt(length.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void failPending() {
+        for (Integer id : pending.keySet()) {
+            Pending command = pending.remove(id);
+            if (command != null && command.listener != null)
+                command.listener.onResponse(DmccProtocol.STATUS_READER_OFFLINE, closed ? "closed" : "disconnected", null, 0);
+        }
+    }
+}
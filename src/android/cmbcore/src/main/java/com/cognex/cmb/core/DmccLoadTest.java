@@ -0,0 +1,152 @@
+package com.cognex.cmb.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless load generator: keeps a number of commands in flight against a DMCC endpoint and reports
+ * round-trip percentiles, error count and throughput. Without --port it starts an in-process DmccSimulator.
+ *
+ * java com.cognex.cmb.core.DmccLoadTest --commands 20000 --inflight 8 --command "GET TRIGGER.TYPE"
+ * java com.cognex.cmb.core.DmccLoadTest --image scan.png --commands 500 --latency 20 --jitter 5
+ */
+public final class DmccLoadTest {
+
+    private DmccLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = -1;
+        int commands = 10000;
+        int inFlight = 1;
+        String command = "GET TRIGGER.TYPE";
+        byte[] image = null;
+        long latency = 0;
+        long jitter = 0;
+        double resultRate = 0;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--commands":
+                    commands = Integer.parseInt(value);
+                    break;
+                case "--inflight":
+                    inFlight = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--command":
+                    command = value;
+                    break;
+                case "--image":
+                    image = DmccSimulator.readFile(new File(value));
+                    break;
+                case "--latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "--jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "--rate":
+                    resultRate = Double.parseDouble(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        DmccSimulator simulator = null;
+        if (port < 0) {
+            simulator = new DmccSimulator().setLatency(latency, jitter).setResultOnImageLoad(false);
+            port = simulator.start(0);
+        }
+
+        final AtomicLong results = new AtomicLong();
+        DmccClient client = new DmccClient(new DmccClient.AutoResponseListener() {
+            @Override
+            public void onAutoResponse(int status, String payload, byte[] binary) {
+                if (status == DmccProtocol.STATUS_XML_RESULT)
+                    results.incrementAndGet();
+            }
+        });
+
+        try {
+            client.connect(host, port, "admin", "", 5000);
+            if (simulator != null)
+                simulator.startResultStream(resultRate, 0);
+
+            Report report = run(client, command, image, commands, inFlight);
+            System.out.println(report.format());
+            System.out.println("auto results received: " + results.get());
+        } finally {
+            client.close();
+            if (simulator != null)
+                simulator.close();
+        }
+    }
+
+    public static final class Report {
+        public final LatencyHistogram roundTrip = new LatencyHistogram();
+        public final AtomicLong errors = new AtomicLong();
+        public long elapsedNanos;
+        public int commands;
+
+        public String format() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.US,
+                    "commands=%d errors=%d elapsed=%.2fs throughput=%.1f/s rtt(ms) mean=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f",
+                    commands, errors.get(), seconds, commands / seconds,
+                    roundTrip.getMeanMicros() / 1000.0, roundTrip.getPercentileMicros(50) / 1000.0,
+                    roundTrip.getPercentileMicros(95) / 1000.0, roundTrip.getPercentileMicros(99) / 1000.0,
+                    roundTrip.getMaxMicros() / 1000.0);
+        }
+    }
+
+    /**
+     * @param image when set each command is IMAGE.LOAD with this payload instead of the given command
+     */
+    public static Report run(DmccClient client, String command, byte[] image, int commands, int inFlight)
+            throws IOException, InterruptedException {
+        final Report report = new Report();
+        final Semaphore window = new Semaphore(inFlight);
+        final CountDownLatch done = new CountDownLatch(commands);
+
+        DmccClient.ResponseListener listener = new DmccClient.ResponseListener() {
+            @Override
+            public void onResponse(int status, String payload, byte[] binary, long roundTripNanos) {
+                if (status >= DmccProtocol.STATUS_UNDEFINED_ERROR)
+                    report.errors.incrementAndGet();
+                else
+                    report.roundTrip.recordNanos(roundTripNanos);
+                window.release();
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            window.acquire();
+            if (image != null)
+                client.sendCommand("IMAGE.LOAD " + image.length, image, false, listener);
+            else
+                client.sendCommand(command, listener);
+        }
+        done.await(5, TimeUnit.MINUTES);
+
+        report.elapsedNanos = System.nanoTime() - start;
+        report.commands = commands;
+        return report;
+    }
+}
@@ -0,0 +1,210 @@
+package com.cognex.cmb.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * DMCC framing as spoken by DataManSystem over a socket.
+ * Request:  ||0:id;1>COMMAND\r\n followed by the binary payload for commands like IMAGE.LOAD n
+ * Response: ||0:id[status]payload\r\n, auto-responses (results pushed by the reader) carry no id: ||[status]payload\r\n
+ * For binary statuses (XML result, image, ...) the payload is the byte count and the data follows the line.
+ */
+public final class DmccProtocol {
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_READ_STRING = 1;
+    public static final int STATUS_XML_RESULT = 3;
+    public static final int STATUS_XML_STATISTICS = 4;
+    public static final int STATUS_IMAGE = 5;
+    public static final int STATUS_IMAGE_GRAPHICS = 6;
+    public static final int STATUS_CODE_QUALITY_DATA = 11;
+    public static final int STATUS_STATUS_EVENT = 13;
+    public static final int STATUS_UNDEFINED_ERROR = 100;
+    public static final int STATUS_INVALID_COMMAND = 101;
+    public static final int STATUS_INVALID_PARAM = 102;
+    public static final int STATUS_PARAMETER_REJECTED = 104;
+    public static final int STATUS_READER_OFFLINE = 105;
+
+    // byte transparent, DataManSystem itself decodes as US-ASCII
+    static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    public static final int NO_ID = -1;
+
+    private DmccProtocol() {
+    }
+
+    public static boolean isBinaryStatus(int status) {
+        switch (status) {
+            case STATUS_XML_RESULT:
+            case STATUS_XML_STATISTICS:
+            case STATUS_IMAGE:
+            case STATUS_IMAGE_GRAPHICS:
+            case STATUS_CODE_QUALITY_DATA:
+            case STATUS_STATUS_EVENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static byte[] request(int id, String command) {
+        String header = id == NO_ID ? "||;1>" : "||0:" + id + ";1>";
+        return (header + command + "\r\n").getBytes(CHARSET);
+    }
+
+    public static byte[] response(int id, int status, String payload) {
+        String header = id == NO_ID ? "||[" + status + "]" : "||0:" + id + "[" + status + "]";
+        return (header + escape(payload) + "\r\n").getBytes(CHARSET);
+    }
+
+    // header line of a binary response, the caller writes the data right after it
+    public static byte[] binaryResponseHeader(int id, int status, int length) {
+        return response(id, status, Integer.toString(length));
+    }
+
+    /**
+     * The payload runs until CR, so CR, LF and the escape character itself must be escaped.
+     */
+    static String escape(String payload) {
+        if (payload == null || payload.isEmpty())
+            return "";
+
+        StringBuilder escaped = null;
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '\r' ? "\\r" : c == '\n' ? "\\n" : null;
+            if (replacement != null && escaped == null)
+                escaped = new StringBuilder(payload.length() + 16).append(payload, 0, i);
+            if (escaped != null) {
+                if (replacement != null)
+                    escaped.append(replacement);
+                else
+                    escaped.append(c);
+            }
+        }
+        return escaped != null ? escaped.toString() : payload;
+    }
+
+    /**
+     * Reads up to and including the next LF, without the line terminator. Returns null at end of stream.
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n')
+                break;
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0)
+            return null;
+
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r')
+            length--;
+        return new String(bytes, 0, length, CHARSET);
+    }
+
+    static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(data, offset, length - offset);
+            if (read < 0)
+                throw new EOFException("stream closed after " + offset + " of " + length + " bytes");
+            offset += read;
+        }
+        return data;
+    }
+
+    /**
+     * Parsed header of a request or response line: ||[checksum][:id[:responseId]][;flags](>command | [status]payload)
+     */
+    static final class Message {
+        int id = NO_ID;
+        int status = STATUS_OK;
+        boolean request;
+        String body = "";
+
+        static Message parse(String line) {
+            if (!line.startsWith("||"))
+                return null;
+
+            Message message = new Message();
+            int i = 2;
+            int field = 0;
+            int length = line.length();
+
+            while (i < length) {
+                char c = line.charAt(i);
+                if (c == ':') {
+                    field++;
+                    i++;
+                    int start = i;
+                    while (i < length && Character.isDigit(line.charAt(i)))
+                        i++;
+                    // the first number after a colon is the command id, a second one the response id
+                    if (field == 1 && i > start)
+                        message.id = Integer.parseInt(line.substring(start, i));
+                } else if (c == '>') {
+                    message.request = true;
+                    message.body = line.substring(i + 1);
+                    return message;
+                } else if (c == '[') {
+                    int close = line.indexOf(']', i);
+                    if (close < 0)
+                        return null;
+                    try {
+                        message.status = Integer.parseInt(line.substring(i + 1, close));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    message.body = unescape(line.substring(close + 1));
+                    return message;
+                } else {
+                    // checksum type and response mode flags
+                    i++;
+                }
+            }
+            return null;
+        }
+    }
+
+    static String unescape(String payload) {
+        if (payload.indexOf('\\') < 0)
+            return payload;
+
+        StringBuilder unescaped = new StringBuilder(payload.length());
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c != '\\' || i + 1 == payload.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            char next = payload.charAt(++i);
+            switch (next) {
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case '"':
+                case '|':
+                case '\\':
+                    unescaped.append(next);
+                    break;
+                default:
+                    unescaped.append('\\').append(next);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,542 @@
+package com.cognex.cmb.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in DataMan reader on a loopback socket, speaking DMCC the way DataManSystem does over Ethernet
+ * (DataManSystem.createDataManSystemOverEthernet(address, port) connects to it as to a real reader).
+ *
+ * Commands are answered after a configurable latency plus jitter, in the order they arrived.
+ * Responses come from scripted command prefixes, a small SET/GET parameter store, or the unknown-command status.
+ * TRIGGER ON and IMAGE.LOAD produce a result, and a synthetic result stream can push XML results
+ * (optionally followed by an image) to every connected client at a fixed rate.
+ *
+ * Run standalone: java com.cognex.cmb.core.DmccSimulator --port 23000 --latency 5 --jitter 2 --rate 30
+ */
+public class DmccSimulator implements Closeable {
+
+    private static final String RESULT_XML = "<?xml version=\"1.0\"?><result id=\"%1$d\"><general>"
+            + "<status>GOOD READ</status><symbology>%3$s</symbology><full_string encoding=\"ascii\">%2$s</full_string>"
+            + "<decode_time>%4$d</decode_time><trigger_id>%1$d</trigger_id></general></result>";
+
+    private static final class Script {
+        final String prefix;
+        final int status;
+        final String payload;
+        final byte[] binary;
+
+        Script(String prefix, int status, String payload, byte[] binary) {
+            this.prefix = prefix;
+            this.status = status;
+            this.payload = payload;
+            this.binary = binary;
+        }
+    }
+
+    private final List<Script> scripts = new CopyOnWriteArrayList<>();
+    private final Map<String, String> parameters = new ConcurrentHashMap<>();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Random random = new Random();
+
+    private volatile long latencyNanos = 0;
+    private volatile long jitterNanos = 0;
+    private volatile int unknownCommandStatus = DmccProtocol.STATUS_OK;
+    private volatile boolean resultOnTrigger = true;
+    private volatile boolean resultOnImageLoad = true;
+    private volatile String symbology = "QR";
+    private volatile byte[] resultImage;
+    private volatile String userName;
+    private volatile String password;
+
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicLong imageLoads = new AtomicLong();
+    private final AtomicLong resultId = new AtomicLong();
+
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> resultStream;
+
+    public DmccSimulator setLatency(long latencyMs, long jitterMs) {
+        latencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyMs));
+        jitterNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, jitterMs));
+        return this;
+    }
+
+    /**
+     * Answers every command starting with prefix (case insensitive), longer prefixes win.
+     */
+    public DmccSimulator script(String prefix, int status, String payload) {
+        addScript(new Script(prefix.toUpperCase(Locale.US), status, payload, null));
+        return this;
+    }
+
+    // binary response, as IMAGE.SEND or GET CONFIG would return
+    public DmccSimulator scriptBinary(String prefix, byte[] data) {
+        addScript(new Script(prefix.toUpperCase(Locale.US), DmccProtocol.STATUS_OK, null, data));
+        return this;
+    }
+
+    public DmccSimulator setUnknownCommandStatus(int status) {
+        unknownCommandStatus = status;
+        return this;
+    }
+
+    public DmccSimulator setResultOnTrigger(boolean enabled) {
+        resultOnTrigger = enabled;
+        return this;
+    }
+
+    public DmccSimulator setResultOnImageLoad(boolean enabled) {
+        resultOnImageLoad = enabled;
+        return this;
+    }
+
+    public DmccSimulator setSymbology(String symbology) {
+        this.symbology = symbology;
+        return this;
+    }
+
+    // sent after each result XML when set, the bytes are forwarded as is
+    public DmccSimulator setResultImage(byte[] image) {
+        resultImage = image;
+        return this;
+    }
+
+    // null accepts any login, DataManSystem sends user and password lines before the first command
+    public DmccSimulator setCredentials(String userName, String password) {
+        this.userName = userName;
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * @param port 0 picks a free port
+     * @return the port the simulator listens on
+     */
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket != null)
+            return serverSocket.getLocalPort();
+
+        serverSocket = new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "DmccSimulator-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * Pushes results to every connected client.
+     * @param count stop after this many results, 0 for no limit
+     */
+    public synchronized void startResultStream(double ratePerSecond, final long count) {
+        stopResultStream();
+        if (scheduler == null || ratePerSecond <= 0)
+            return;
+
+        final long first = results.get();
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        resultStream = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (count > 0 && results.get() - first >= count) {
+                    stopResultStream();
+                    return;
+                }
+                for (Connection connection : connections)
+                    connection.sendResult();
+            }
+        }, periodNanos, Math.max(1, periodNanos), TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stopResultStream() {
+        if (resultStream != null) {
+            resultStream.cancel(false);
+            resultStream = null;
+        }
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    public long getResultCount() {
+        return results.get();
+    }
+
+    public long getImageLoadCount() {
+        return imageLoads.get();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        stopResultStream();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+            serverSocket = null;
+        }
+        for (Connection connection : connections)
+            connection.close();
+        connections.clear();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void addScript(Script script) {
+        // kept sorted by prefix length so the most specific script matches first
+        List<Script> sorted = new ArrayList<>(scripts);
+        sorted.add(script);
+        Collections.sort(sorted, (a, b) -> b.prefix.length() - a.prefix.length());
+        scripts.clear();
+        scripts.addAll(sorted);
+    }
+
+    private void acceptLoop() {
+        ServerSocket server;
+        synchronized (this) {
+            server = serverSocket;
+        }
+        while (server != null && !server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                final Connection connection = new Connection(socket);
+                connections.add(connection);
+
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.readLoop();
+                    }
+                }, "DmccSimulator-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+        }
+    }
+
+    private long nextDelayNanos() {
+        long jitter = jitterNanos;
+        long delay = latencyNanos;
+        if (jitter > 0)
+            delay += (long) ((random.nextDouble() * 2 - 1) * jitter);
+        return Math.max(0, delay);
+    }
+
+    private final class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private int credentialLines = 0;
+        private boolean loggedIn = false;
+
+        // responses leave in request order even with jitter, like a real reader working through its queue
+        private long lastDueNanos = 0;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        void readLoop() {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                String line;
+                while ((line = DmccProtocol.readLine(in)) != null) {
+                    DmccProtocol.Message message = DmccProtocol.Message.parse(line);
+                    if (message == null || !message.request) {
+                        if (!loggedIn && !onCredentialLine(line))
+                            return;
+                        continue;
+                    }
+                    loggedIn = true;
+                    onCommand(message.id, message.body.trim(), in);
+                }
+            } catch (IOException e) {
+                // client went away
+            } finally {
+                close();
+                connections.remove(this);
+            }
+        }
+
+        private boolean onCredentialLine(String line) throws IOException {
+            credentialLines++;
+            if (credentialLines == 1) {
+                if (userName != null && !userName.equals(line))
+                    return loginFailed();
+                return true;
+            }
+
+            if (password != null && !password.equals(line))
+                return loginFailed();
+
+            loggedIn = true;
+            write(("Welcome to the DMCC simulator\r\nLogin succeeded\r\n").getBytes(DmccProtocol.CHARSET));
+            return true;
+        }
+
+        private boolean loginFailed() throws IOException {
+            write("Login failed\r\n".getBytes(DmccProtocol.CHARSET));
+            return false;
+        }
+
+        private void onCommand(int id, String command, InputStream in) throws IOException {
+            commands.incrementAndGet();
+            String upper = command.toUpperCase(Locale.US);
+
+            // binary data follows the command line, consume it before reading the next command
+            if (upper.startsWith("IMAGE.LOAD")) {
+                int length = parseIntArgument(command);
+                if (length > 0)
+                    DmccProtocol.readFully(in, length);
+                imageLoads.incrementAndGet();
+            }
+
+            Script script = findScript(upper);
+            if (script != null) {
+                if (script.binary != null)
+                    respondBinary(id, script.binary);
+                else
+                    respond(id, script.status, script.payload);
+            } else if (upper.startsWith("SET ")) {
+                String[] parts = command.split("\\s+", 3);
+                if (parts.length >= 3)
+                    parameters.put(parts[1].toUpperCase(Locale.US), parts[2]);
+                respond(id, DmccProtocol.STATUS_OK, "");
+            } else if (upper.startsWith("GET ")) {
+                String value = parameters.get(command.substring(4).trim().toUpperCase(Locale.US));
+                if (value != null)
+                    respond(id, DmccProtocol.STATUS_OK, value);
+                else
+                    respond(id, unknownCommandStatus, "");
+            } else {
+                respond(id, unknownCommandStatus, "");
+            }
+
+            if ((resultOnTrigger && upper.equals("TRIGGER ON")) || (resultOnImageLoad && upper.startsWith("IMAGE.LOAD")))
+                scheduleResult();
+        }
+
+        private Script findScript(String upperCommand) {
+            for (Script script : scripts) {
+                if (upperCommand.startsWith(script.prefix))
+                    return script;
+            }
+            return null;
+        }
+
+        private void respond(int id, int status, String payload) {
+            final byte[] response = DmccProtocol.response(id, status, payload);
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    write(response);
+                }
+            });
+        }
+
+        private void respondBinary(int id, final byte[] data) {
+            final byte[] header = DmccProtocol.binaryResponseHeader(id, DmccProtocol.STATUS_OK, data.length);
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    write(header, data);
+                }
+            });
+        }
+
+        private void scheduleResult() {
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sendResult();
+                }
+            });
+        }
+
+        private synchronized void schedule(Runnable task) {
+            ScheduledExecutorService executor;
+            synchronized (DmccSimulator.this) {
+                executor = scheduler;
+            }
+            if (executor == null)
+                return;
+
+            long now = System.nanoTime();
+            long due = Math.max(now + nextDelayNanos(), lastDueNanos);
+            lastDueNanos = due;
+            executor.schedule(task, due - now, TimeUnit.NANOSECONDS);
+        }
+
+        void sendResult() {
+            long id = resultId.incrementAndGet();
+            String readString = String.format(Locale.US, "SIM-%08d", id);
+            byte[] xml = String.format(Locale.US, RESULT_XML, id, readString, symbology,
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos)).getBytes(DmccProtocol.CHARSET);
+
+            byte[] image = resultImage;
+            if (image != null) {
+                write(DmccProtocol.binaryResponseHeader(DmccProtocol.NO_ID, DmccProtocol.STATUS_XML_RESULT, xml.length), xml,
+                        DmccProtocol.binaryResponseHeader(DmccProtocol.NO_ID, DmccProtocol.STATUS_IMAGE, image.length), image);
+            } else {
+                write(DmccProtocol.binaryResponseHeader(DmccProtocol.NO_ID, DmccProtocol.STATUS_XML_RESULT, xml.length), xml);
+            }
+            results.incrementAndGet();
+        }
+
+        private void write(byte[]... chunks) {
+            synchronized (out) {
+                try {
+                    for (byte[] chunk : chunks)
+                        out.write(chunk);
+                    out.flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static int parseIntArgument(String command) {
+        String[] parts = command.trim().split("\\s+");
+        if (parts.length < 2)
+            return 0;
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * --port n  --latency ms  --jitter ms  --rate resultsPerSecond  --count n  --image file
+     * --script "PREFIX=payload" (repeatable)  --unknown status  --user name --password secret
+     */
+    public static void main(String[] args) throws Exception {
+        DmccSimulator simulator = new DmccSimulator();
+        int port = 23000;
+        long latency = 0;
+        long jitter = 0;
+        double rate = 0;
+        long count = 0;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "--jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--count":
+                    count = Long.parseLong(value);
+                    break;
+                case "--image":
+                    simulator.setResultImage(readFile(new File(value)));
+                    break;
+                case "--script": {
+                    int separator = value.indexOf('=');
+                    if (separator > 0)
+                        simulator.script(value.substring(0, separator), DmccProtocol.STATUS_OK, value.substring(separator + 1));
+                    break;
+                }
+                case "--unknown":
+                    simulator.setUnknownCommandStatus(Integer.parseInt(value));
+                    break;
+                case "--user":
+                    simulator.setCredentials(value, simulator.password);
+                    break;
+                case "--password":
+                    simulator.setCredentials(simulator.userName, value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        simulator.setLatency(latency, jitter);
+        int bound = simulator.start(port);
+        System.out.println("DMCC simulator listening on 127.0.0.1:" + bound);
+
+        // results only start once a client is connected
+        while (rate > 0 && simulator.getConnectionCount() == 0)
+            Thread.sleep(50);
+        simulator.startResultStream(rate, count);
+
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(String.format(Locale.US, "connections=%d commands=%d results=%d imageLoads=%d",
+                    simulator.getConnectionCount(), simulator.getCommandCount(), simulator.getResultCount(),
+                    simulator.getImageLoadCount()));
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DmccProtocol.readFully(in, (int) file.length());
+        }
+    }
+}
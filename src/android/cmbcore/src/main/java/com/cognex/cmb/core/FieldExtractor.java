@@ -0,0 +1,355 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns GS1 element strings and AAMVA driver license data into a flat map of typed fields,
+ * so the page gets {"01": "09501101530003", "17": "2025-12-31", "10": "AB-123"} instead of parsing text itself.
+ *
+ * GS1: dates become YYYY-MM-DD, measures and amounts become numbers, 391n/393n become {currency, amount}.
+ * AAMVA: element ids (DAQ, DCS, DBB...) map to their trimmed values, dates become YYYY-MM-DD.
+ * The GS1 layout of the last code of each symbology is tried first, the full parse only runs when it doesn't fit.
+ *
+ * options: {fields: ["01", "gtin", "DBB"...], dropParsed: false}
+ * fields limits the output to those AIs, element ids or aliases, keyed the way they were requested. Empty returns everything.
+ */
+public class FieldExtractor {
+
+    private static final Map<String, String> ALIASES = new HashMap<>();
+
+    static {
+        ALIASES.put("sscc", "00");
+        ALIASES.put("gtin", "01");
+        ALIASES.put("content", "02");
+        ALIASES.put("lot", "10");
+        ALIASES.put("batch", "10");
+        ALIASES.put("productionDate", "11");
+        ALIASES.put("dueDate", "12");
+        ALIASES.put("packagingDate", "13");
+        ALIASES.put("bestBefore", "15");
+        ALIASES.put("sellBy", "16");
+        ALIASES.put("expiry", "17");
+        ALIASES.put("variant", "20");
+        ALIASES.put("serial", "21");
+        ALIASES.put("count", "37");
+
+        ALIASES.put("licenseNumber", "DAQ");
+        ALIASES.put("lastName", "DCS");
+        ALIASES.put("firstName", "DAC");
+        ALIASES.put("middleName", "DAD");
+        ALIASES.put("dateOfBirth", "DBB");
+        ALIASES.put("expirationDate", "DBA");
+        ALIASES.put("issueDate", "DBD");
+        ALIASES.put("sex", "DBC");
+        ALIASES.put("street", "DAG");
+        ALIASES.put("city", "DAI");
+        ALIASES.put("state", "DAJ");
+        ALIASES.put("postalCode", "DAK");
+        ALIASES.put("country", "DCG");
+    }
+
+    // AAMVA elements holding a date, MMDDCCYY in the US and CCYYMMDD in Canada
+    private static final String[] AAMVA_DATES = {"DBA", "DBB", "DBD", "DDB", "DDC", "DDH", "DDI", "DDJ"};
+
+    // output key -> AI or element id, null extracts everything
+    private final Map<String, String> fields;
+    private final boolean dropParsed;
+
+    private final ConcurrentHashMap<Integer, Gs1Parser.Ai[]> layouts = new ConcurrentHashMap<>();
+    private final AtomicLong extracted = new AtomicLong();
+    private final AtomicLong layoutHits = new AtomicLong();
+    private final AtomicLong fullParses = new AtomicLong();
+
+    private int year;
+    private long yearEnds = 0;
+
+    private FieldExtractor(Map<String, String> fields, boolean dropParsed) {
+        this.fields = fields;
+        this.dropParsed = dropParsed;
+    }
+
+    public static FieldExtractor compile(JSONObject options) throws JSONException {
+        JSONArray requested = options != null ? options.optJSONArray("fields") : null;
+        Map<String, String> fields = null;
+
+        if (requested != null && requested.length() > 0) {
+            fields = new LinkedHashMap<>();
+            for (int i = 0; i < requested.length(); i++) {
+                String name = requested.getString(i);
+                String code = ALIASES.get(name);
+                fields.put(name, code != null ? code : name);
+            }
+        }
+        return new FieldExtractor(fields, options != null && options.optBoolean("dropParsed", false));
+    }
+
+    // parsedText and parsedJSON are left out of the results once the fields carry what the page needs
+    public boolean dropsParsed() {
+        return dropParsed;
+    }
+
+    /**
+     * @return null when the read is neither a GS1 element string nor AAMVA data
+     */
+    public JSONObject extract(ScanResult result) throws JSONException {
+        String readString = result.getReadString();
+        if (readString == null || !result.isGoodRead())
+            return null;
+
+        Map<String, Object> values;
+        if (isAamva(readString)) {
+            values = extractAamva(readString);
+        } else {
+            Gs1Parser.Result gs1 = parseGs1(result, readString);
+            if (gs1 == null)
+                return null;
+            values = typedGs1(gs1);
+        }
+
+        JSONObject json = new JSONObject();
+        if (fields == null) {
+            for (Map.Entry<String, Object> value : values.entrySet())
+                json.put(value.getKey(), value.getValue());
+        } else {
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                Object value = values.get(field.getValue());
+                if (value != null)
+                    json.put(field.getKey(), value);
+            }
+        }
+        extracted.incrementAndGet();
+        return json;
+    }
+
+    private Gs1Parser.Result parseGs1(ScanResult result, String readString) {
+        String data = null;
+        if (result.isGS1() || readString.startsWith("]C1") || readString.startsWith("]d2")
+                || readString.startsWith("]Q3") || readString.startsWith("]e0"))
+            data = readString;
+        else if (result.getParsedText() != null && result.getParsedText().startsWith("("))
+            data = result.getParsedText();
+        if (data == null)
+            return null;
+
+        Integer symbology = result.getSymbologyOrdinal();
+        Gs1Parser.Ai[] layout = layouts.get(symbology);
+        if (layout != null) {
+            Gs1Parser.Result parsed = Gs1Parser.parse(data, layout);
+            if (parsed != null) {
+                layoutHits.incrementAndGet();
+                return parsed;
+            }
+        }
+
+        fullParses.incrementAndGet();
+        Gs1Parser.Result parsed = Gs1Parser.parse(data);
+        if (parsed.elements.isEmpty())
+            return null;
+        if (parsed.valid)
+            layouts.put(symbology, parsed.layout());
+        return parsed;
+    }
+
+    private Map<String, Object> typedGs1(Gs1Parser.Result gs1) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, String> element : gs1.elements.entrySet()) {
+            Gs1Parser.Ai ai = Gs1Parser.describe(element.getKey());
+            String value = element.getValue();
+            Object typed = null;
+
+            // values that failed validation are passed through as they were scanned
+            if (Gs1Parser.validate(ai, value) == null) {
+                switch (ai.type) {
+                    case DATE:
+                        typed = gs1Date(value);
+                        break;
+                    case DECIMAL:
+                        typed = decimal(value, ai.decimals());
+                        break;
+                    case CURRENCY_DECIMAL:
+                        JSONObject amount = new JSONObject();
+                        try {
+                            amount.put("currency", value.substring(0, 3));
+                            amount.put("amount", decimal(value.substring(3), ai.decimals()));
+                            typed = amount;
+                        } catch (JSONException ignored) {
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            values.put(ai.code, typed != null ? typed : value);
+        }
+        return values;
+    }
+
+    private static Number decimal(String digits, int decimals) {
+        return new BigDecimal(new BigInteger(digits), decimals).doubleValue();
+    }
+
+    // GS1 general specifications 7.12: YY is within 49 years before and 50 years after the current year, DD 00 is the last day of the month.
+    // null when there is no such day
+    String gs1Date(String yymmdd) {
+        int currentYear = currentYear();
+        int yy = Integer.parseInt(yymmdd.substring(0, 2));
+        int difference = yy - currentYear % 100;
+
+        int century = currentYear / 100;
+        if (difference >= 51)
+            century--;
+        else if (difference <= -50)
+            century++;
+
+        int year = century * 100 + yy;
+        int month = Integer.parseInt(yymmdd.substring(2, 4));
+        int day = Integer.parseInt(yymmdd.substring(4, 6));
+        if (month < 1 || month > 12 || day > daysInMonth(year, month))
+            return null;
+        if (day == 0)
+            day = daysInMonth(year, month);
+        return isoDate(year, month, day);
+    }
+
+    private synchronized int currentYear() {
+        long now = System.currentTimeMillis();
+        if (now >= yearEnds) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            year = calendar.get(Calendar.YEAR);
+
+            calendar.clear();
+            calendar.set(year + 1, Calendar.JANUARY, 1);
+            yearEnds = calendar.getTimeInMillis();
+        }
+        return year;
+    }
+
+    static boolean isAamva(String data) {
+        return data.startsWith("@") && (data.indexOf("ANSI ") >= 0 || data.indexOf("AAMVA") >= 0);
+    }
+
+    /**
+     * The header is followed by the subfile designators and the DL or ID subfile,
+     * whose first element shares the line with the subfile type: "...DLDAQD1234562\nDCSSMITH\n..."
+     */
+    static Map<String, Object> extractAamva(String data) {
+        Map<String, Object> values = new LinkedHashMap<>();
+
+        int start = subfileStart(data);
+        if (start < 0)
+            return values;
+
+        int length = data.length();
+        int position = start;
+        while (position < length) {
+            int end = position;
+            while (end < length && data.charAt(end) != '\n' && data.charAt(end) != '\r')
+                end++;
+
+            // only the D elements, jurisdiction subfiles (Z...) have their own meaning per state
+            if (end - position >= 3 && data.charAt(position) == 'D' && isUpper(data.charAt(position + 1)) && isUpper(data.charAt(position + 2))) {
+                String id = data.substring(position, position + 3);
+                if (!values.containsKey(id))
+                    values.put(id, data.substring(position + 3, end).trim());
+            }
+
+            position = end + 1;
+        }
+
+        boolean canadian = "CAN".equals(values.get("DCG"));
+        for (String id : AAMVA_DATES) {
+            Object value = values.get(id);
+            if (value != null) {
+                String date = aamvaDate((String) value, canadian);
+                if (date != null)
+                    values.put(id, date);
+            }
+        }
+        return values;
+    }
+
+    private static int subfileStart(String data) {
+        for (int i = 0; i + 4 < data.length(); i++) {
+            char first = data.charAt(i);
+            if ((first == 'D' && data.charAt(i + 1) == 'L' || first == 'I' && data.charAt(i + 1) == 'D')
+                    && data.charAt(i + 2) == 'D' && isUpper(data.charAt(i + 3)) && isUpper(data.charAt(i + 4)))
+                return i + 2;
+        }
+        return -1;
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    static String aamvaDate(String value, boolean canadian) {
+        if (value.length() != 8 || !Gs1Parser.isDigits(value, 0))
+            return null;
+
+        int first = Integer.parseInt(value.substring(0, 2));
+        // CCYYMMDD when the country says so, or when MMDDCCYY can't be a date
+        boolean yearFirst = canadian || first < 1 || first > 12;
+
+        int year;
+        int month;
+        int day;
+        if (yearFirst) {
+            year = Integer.parseInt(value.substring(0, 4));
+            month = Integer.parseInt(value.substring(4, 6));
+            day = Integer.parseInt(value.substring(6, 8));
+        } else {
+            month = first;
+            day = Integer.parseInt(value.substring(2, 4));
+            year = Integer.parseInt(value.substring(4, 8));
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+            return null;
+        return isoDate(year, month, day);
+    }
+
+    static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static String isoDate(int year, int month, int day) {
+        char[] date = {
+                (char) ('0' + year / 1000 % 10), (char) ('0' + year / 100 % 10), (char) ('0' + year / 10 % 10), (char) ('0' + year % 10), '-',
+                (char) ('0' + month / 10), (char) ('0' + month % 10), '-',
+                (char) ('0' + day / 10), (char) ('0' + day % 10)
+        };
+        return new String(date);
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("extracted", extracted.get());
+        stats.put("layoutHits", layoutHits.get());
+        stats.put("fullParses", fullParses.get());
+        stats.put("layouts", layouts.size());
+        return stats;
+    }
+}
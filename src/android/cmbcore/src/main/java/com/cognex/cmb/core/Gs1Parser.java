@@ -0,0 +1,386 @@
+package com.cognex.cmb.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits a GS1 element string into its application identifiers and validates them
+ * (known AI, length, numeric content, dates, check digits).
+ *
+ * Accepts the raw form, with or without a ]C1/]d2/]Q3/]e0 symbology identifier, variable length fields
+ * terminated by GS (0x1D), and the human readable form "(01)09501101530003(17)251231(10)AB-123".
+ */
+public final class Gs1Parser {
+
+    public static final char GS = '\u001d';
+
+    public enum Type {
+        ALPHANUMERIC,
+        NUMERIC,
+        // numeric with a mod 10 check digit (GTIN, SSCC, GLN)
+        CHECKED,
+        // YYMMDD, DD may be 00
+        DATE,
+        // the last AI digit is the number of decimals
+        DECIMAL,
+        // ISO 4217 currency code followed by a DECIMAL amount
+        CURRENCY_DECIMAL
+    }
+
+    public static final class Ai {
+        public final String code;
+        public final Type type;
+        public final int minLength;
+        public final int maxLength;
+        // part of the predefined length list, may be followed by the next AI without a GS
+        final boolean predefined;
+
+        Ai(String code, Type type, int minLength, int maxLength, boolean predefined) {
+            this.code = code;
+            this.type = type;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.predefined = predefined;
+        }
+
+        public int decimals() {
+            return code.charAt(code.length() - 1) - '0';
+        }
+    }
+
+    public static final class Result {
+        public final Map<String, String> elements = new LinkedHashMap<>();
+        public boolean valid = true;
+        public String error;
+
+        void fail(String message) {
+            if (valid) {
+                valid = false;
+                error = message;
+            }
+        }
+
+        // the AIs in the order they were found, the layout to try first for the next code of the same kind
+        public Ai[] layout() {
+            Ai[] layout = new Ai[elements.size()];
+            int i = 0;
+            for (String code : elements.keySet())
+                layout[i++] = AIS.get(code);
+            return layout;
+        }
+    }
+
+    private static final Map<String, Ai> AIS = new HashMap<>();
+
+    static {
+        fixed("00", Type.CHECKED, 18);
+        fixed("01", Type.CHECKED, 14);
+        fixed("02", Type.CHECKED, 14);
+        variable("10", Type.ALPHANUMERIC, 20);
+        for (String date : new String[]{"11", "12", "13", "15", "16", "17"})
+            fixed(date, Type.DATE, 6);
+        fixed("20", Type.NUMERIC, 2);
+        variable("21", Type.ALPHANUMERIC, 20);
+        variable("22", Type.ALPHANUMERIC, 20);
+        variable("235", Type.ALPHANUMERIC, 28);
+        variable("240", Type.ALPHANUMERIC, 30);
+        variable("241", Type.ALPHANUMERIC, 30);
+        variable("242", Type.NUMERIC, 6);
+        variable("243", Type.ALPHANUMERIC, 20);
+        variable("250", Type.ALPHANUMERIC, 30);
+        variable("251", Type.ALPHANUMERIC, 30);
+        variable("253", Type.ALPHANUMERIC, 30);
+        variable("254", Type.ALPHANUMERIC, 20);
+        variable("255", Type.NUMERIC, 25);
+        variable("30", Type.NUMERIC, 8);
+        // trade and logistic measures, 31nn to 36nn
+        for (int family = 310; family <= 369; family++) {
+            for (int decimals = 0; decimals <= 9; decimals++)
+                add(new Ai(Integer.toString(family) + decimals, Type.DECIMAL, 6, 6, true));
+        }
+        variable("37", Type.NUMERIC, 8);
+        for (int decimals = 0; decimals <= 9; decimals++) {
+            variable("390" + decimals, Type.DECIMAL, 15);
+            add(new Ai("391" + decimals, Type.CURRENCY_DECIMAL, 4, 18, false));
+            variable("392" + decimals, Type.DECIMAL, 15);
+            add(new Ai("393" + decimals, Type.CURRENCY_DECIMAL, 4, 18, false));
+            add(new Ai("394" + decimals, Type.DECIMAL, 4, 4, false));
+            add(new Ai("395" + decimals, Type.DECIMAL, 6, 6, false));
+        }
+        variable("400", Type.ALPHANUMERIC, 30);
+        variable("401", Type.ALPHANUMERIC, 30);
+        add(new Ai("402", Type.CHECKED, 17, 17, false));
+        variable("403", Type.ALPHANUMERIC, 30);
+        for (int gln = 410; gln <= 417; gln++)
+            add(new Ai(Integer.toString(gln), Type.CHECKED, 13, 13, true));
+        variable("420", Type.ALPHANUMERIC, 20);
+        variable("421", Type.ALPHANUMERIC, 12);
+        add(new Ai("422", Type.NUMERIC, 3, 3, false));
+        variable("423", Type.NUMERIC, 15);
+        add(new Ai("424", Type.NUMERIC, 3, 3, false));
+        variable("425", Type.NUMERIC, 15);
+        add(new Ai("426", Type.NUMERIC, 3, 3, false));
+        variable("427", Type.ALPHANUMERIC, 3);
+        add(new Ai("7001", Type.NUMERIC, 13, 13, false));
+        variable("7002", Type.ALPHANUMERIC, 30);
+        add(new Ai("7003", Type.NUMERIC, 10, 10, false));
+        variable("7004", Type.NUMERIC, 4);
+        variable("7005", Type.ALPHANUMERIC, 12);
+        add(new Ai("7006", Type.DATE, 6, 6, false));
+        add(new Ai("7007", Type.NUMERIC, 6, 12, false));
+        variable("7008", Type.ALPHANUMERIC, 3);
+        variable("7009", Type.ALPHANUMERIC, 10);
+        variable("7010", Type.ALPHANUMERIC, 2);
+        for (int processor = 7030; processor <= 7039; processor++)
+            variable(Integer.toString(processor), Type.ALPHANUMERIC, 30);
+        for (int certification = 710; certification <= 716; certification++)
+            variable(Integer.toString(certification), Type.ALPHANUMERIC, 20);
+        add(new Ai("8001", Type.NUMERIC, 14, 14, false));
+        variable("8002", Type.ALPHANUMERIC, 20);
+        variable("8003", Type.ALPHANUMERIC, 30);
+        variable("8004", Type.ALPHANUMERIC, 30);
+        add(new Ai("8005", Type.NUMERIC, 6, 6, false));
+        add(new Ai("8006", Type.NUMERIC, 18, 18, false));
+        variable("8007", Type.ALPHANUMERIC, 34);
+        variable("8008", Type.NUMERIC, 12);
+        variable("8009", Type.ALPHANUMERIC, 50);
+        variable("8010", Type.ALPHANUMERIC, 30);
+        variable("8011", Type.NUMERIC, 12);
+        variable("8012", Type.ALPHANUMERIC, 20);
+        variable("8013", Type.ALPHANUMERIC, 25);
+        add(new Ai("8017", Type.CHECKED, 18, 18, false));
+        add(new Ai("8018", Type.CHECKED, 18, 18, false));
+        variable("8019", Type.NUMERIC, 10);
+        variable("8020", Type.ALPHANUMERIC, 25);
+        add(new Ai("8026", Type.NUMERIC, 18, 18, false));
+        variable("8110", Type.ALPHANUMERIC, 70);
+        add(new Ai("8111", Type.NUMERIC, 4, 4, false));
+        variable("8112", Type.ALPHANUMERIC, 70);
+        variable("8200", Type.ALPHANUMERIC, 70);
+        variable("90", Type.ALPHANUMERIC, 30);
+        for (int company = 91; company <= 99; company++)
+            variable(Integer.toString(company), Type.ALPHANUMERIC, 90);
+    }
+
+    private Gs1Parser() {
+    }
+
+    private static void fixed(String code, Type type, int length) {
+        add(new Ai(code, type, length, length, true));
+    }
+
+    private static void variable(String code, Type type, int maxLength) {
+        add(new Ai(code, type, 1, maxLength, false));
+    }
+
+    private static void add(Ai ai) {
+        AIS.put(ai.code, ai);
+    }
+
+    /**
+     * @return null for an unknown AI
+     */
+    public static Ai describe(String code) {
+        return AIS.get(code);
+    }
+
+    public static Result parse(String data) {
+        Result result = new Result();
+        if (data == null || data.length() == 0) {
+            result.fail("empty");
+            return result;
+        }
+
+        int start = dataStart(data);
+        if (start < data.length() && data.charAt(start) == '(')
+            parseReadable(data, start, result);
+        else
+            parseRaw(data, start, result);
+        return result;
+    }
+
+    /**
+     * Parses a raw element string expected to hold exactly the AIs of layout, in that order.
+     * Skips the AI table lookups, codes printed by the same line usually share their layout.
+     * @return null when the data doesn't follow the layout, parse(data) then finds out what it holds
+     */
+    public static Result parse(String data, Ai[] layout) {
+        if (data == null || data.length() == 0 || layout.length == 0)
+            return null;
+
+        int position = dataStart(data);
+        int length = data.length();
+        if (position < length && data.charAt(position) == '(')
+            return null;
+
+        Result result = new Result();
+        for (Ai ai : layout) {
+            if (!data.startsWith(ai.code, position))
+                return null;
+            position += ai.code.length();
+
+            int end;
+            if (ai.predefined) {
+                end = position + ai.maxLength;
+                if (end > length)
+                    return null;
+            } else {
+                end = data.indexOf(GS, position);
+                if (end < 0)
+                    end = length;
+            }
+
+            add(result, ai, data.substring(position, end));
+            position = end;
+            while (position < length && data.charAt(position) == GS)
+                position++;
+        }
+        return position == length ? result : null;
+    }
+
+    // skips the ]C1/]d2/]Q3/]e0 symbology identifier and a leading FNC1
+    private static int dataStart(String data) {
+        int start = 0;
+        if (data.charAt(0) == ']' && data.length() >= 3)
+            start = 3;
+        while (start < data.length() && data.charAt(start) == GS)
+            start++;
+        return start;
+    }
+
+    private static void parseRaw(String data, int position, Result result) {
+        int length = data.length();
+        while (position < length) {
+            Ai ai = aiAt(data, position);
+            if (ai == null) {
+                result.fail("Unknown AI at " + position);
+                return;
+            }
+            position += ai.code.length();
+
+            int end;
+            if (ai.predefined) {
+                end = Math.min(length, position + ai.maxLength);
+            } else {
+                end = data.indexOf(GS, position);
+                if (end < 0)
+                    end = length;
+            }
+
+            String value = data.substring(position, end);
+            add(result, ai, value);
+            position = end;
+            while (position < length && data.charAt(position) == GS)
+                position++;
+        }
+    }
+
+    private static void parseReadable(String data, int position, Result result) {
+        int length = data.length();
+        while (position < length) {
+            int close = data.indexOf(')', position);
+            if (data.charAt(position) != '(' || close < 0) {
+                result.fail("Malformed element at " + position);
+                return;
+            }
+
+            String code = data.substring(position + 1, close);
+            Ai ai = AIS.get(code);
+            if (ai == null) {
+                result.fail("Unknown AI " + code);
+                return;
+            }
+
+            int end = close + 1;
+            while (end < length && !isReadableAiStart(data, end))
+                end++;
+
+            add(result, ai, data.substring(close + 1, end));
+            position = end;
+        }
+    }
+
+    // "(" followed by 2 to 4 digits and ")"
+    private static boolean isReadableAiStart(String data, int position) {
+        if (data.charAt(position) != '(')
+            return false;
+        int digits = 0;
+        for (int i = position + 1; i < data.length() && digits <= 4; i++) {
+            char c = data.charAt(i);
+            if (c == ')')
+                return digits >= 2;
+            if (c < '0' || c > '9')
+                return false;
+            digits++;
+        }
+        return false;
+    }
+
+    // AIs are prefix free, the first length that is in the table is the AI
+    private static Ai aiAt(String data, int position) {
+        for (int aiLength = 2; aiLength <= 4 && position + aiLength <= data.length(); aiLength++) {
+            Ai ai = AIS.get(data.substring(position, position + aiLength));
+            if (ai != null)
+                return ai;
+        }
+        return null;
+    }
+
+    private static void add(Result result, Ai ai, String value) {
+        if (result.elements.containsKey(ai.code))
+            result.fail("Duplicate AI " + ai.code);
+        result.elements.put(ai.code, value);
+
+        String error = validate(ai, value);
+        if (error != null)
+            result.fail("AI " + ai.code + ": " + error);
+    }
+
+    static String validate(Ai ai, String value) {
+        if (value.length() < ai.minLength || value.length() > ai.maxLength)
+            return "invalid length " + value.length();
+
+        switch (ai.type) {
+            case ALPHANUMERIC:
+                return null;
+            case CHECKED:
+                if (!isDigits(value, 0))
+                    return "not numeric";
+                return checkDigitValid(value) ? null : "bad check digit";
+            case DATE:
+                if (!isDigits(value, 0))
+                    return "not numeric";
+                int month = Integer.parseInt(value.substring(2, 4));
+                int day = Integer.parseInt(value.substring(4, 6));
+                if (month < 1 || month > 12)
+                    return "invalid date";
+                // DD 00 is the last day of the month. The century doesn't matter for leap years:
+                // the YY window only reaches 2000 among the century years
+                int year = 2000 + Integer.parseInt(value.substring(0, 2));
+                return day <= FieldExtractor.daysInMonth(year, month) ? null : "invalid date";
+            default:
+                return isDigits(value, 0) ? null : "not numeric";
+        }
+    }
+
+    static boolean isDigits(String value, int from) {
+        for (int i = from; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    // GS1 mod 10: weights 3 and 1 from the right, the check digit excluded
+    static boolean checkDigitValid(String digits) {
+        int sum = 0;
+        int weight = 3;
+        for (int i = digits.length() - 2; i >= 0; i--) {
+            sum += (digits.charAt(i) - '0') * weight;
+            weight = 4 - weight;
+        }
+        return (10 - sum % 10) % 10 == digits.charAt(digits.length() - 1) - '0';
+    }
+}
@@ -0,0 +1,192 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How an image is shrunk before it goes to the reader with IMAGE.LOAD: optional crop, long edge scaled down to
+ * maxDimension, grayscale, re-encoded. A 12 MP phone photo is mostly pixels the decoder doesn't need, sending
+ * a 1600 pixel grayscale JPEG cuts both the transfer and the decode.
+ *
+ * Only the sizes are worked out here, the bridge does the bitmap work.
+ */
+public class ImagePreprocessing {
+
+    public static final String JPEG = "jpeg";
+    public static final String PNG = "png";
+
+    public final int maxDimension;
+    public final boolean grayscale;
+    // normalized left, top, width, height, null for the whole image
+    public final float[] crop;
+    public final String format;
+    public final int quality;
+    // smaller images are sent as they are
+    public final int minBytes;
+
+    public ImagePreprocessing(int maxDimension, boolean grayscale, float[] crop, String format, int quality, int minBytes) {
+        this.maxDimension = Math.max(0, maxDimension);
+        this.grayscale = grayscale;
+        this.crop = crop;
+        this.format = PNG.equals(format) ? PNG : JPEG;
+        this.quality = Math.max(1, Math.min(100, quality));
+        this.minBytes = Math.max(0, minBytes);
+    }
+
+    /**
+     * @param options {maxDimension: 1600, grayscale: true, crop: [x, y, width, height] normalized, format: "jpeg" | "png",
+     *                quality: 90, minBytes: 262144}
+     */
+    public static ImagePreprocessing fromJson(JSONObject options) throws JSONException {
+        float[] crop = null;
+        JSONArray region = options.optJSONArray("crop");
+        if (region != null) {
+            if (region.length() != 4)
+                throw new JSONException("crop is [x, y, width, height]");
+            float x = clamp((float) region.getDouble(0));
+            float y = clamp((float) region.getDouble(1));
+            float width = Math.min(clamp((float) region.getDouble(2)), 1 - x);
+            float height = Math.min(clamp((float) region.getDouble(3)), 1 - y);
+            if (width <= 0 || height <= 0)
+                throw new JSONException("crop is empty");
+            crop = new float[]{x, y, width, height};
+        }
+        return new ImagePreprocessing(
+                options.optInt("maxDimension", 1600),
+                options.optBoolean("grayscale", true),
+                crop,
+                options.optString("format", JPEG),
+                options.optInt("quality", 90),
+                options.optInt("minBytes", 256 * 1024));
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("maxDimension", maxDimension);
+        json.put("grayscale", grayscale);
+        if (crop != null) {
+            JSONArray region = new JSONArray();
+            for (float value : crop)
+                region.put((double) value);
+            json.put("crop", region);
+        }
+        json.put("format", format);
+        json.put("quality", quality);
+        json.put("minBytes", minBytes);
+        return json;
+    }
+
+    /**
+     * The crop in pixels of an image that size.
+     * @return left, top, right, bottom
+     */
+    public int[] cropRect(int width, int height) {
+        if (crop == null)
+            return new int[]{0, 0, width, height};
+        int left = Math.round(crop[0] * width);
+        int top = Math.round(crop[1] * height);
+        int right = Math.max(left + 1, Math.min(width, Math.round((crop[0] + crop[2]) * width)));
+        int bottom = Math.max(top + 1, Math.min(height, Math.round((crop[1] + crop[3]) * height)));
+        return new int[]{left, top, right, bottom};
+    }
+
+    /**
+     * Largest power of two subsampling (BitmapFactory inSampleSize) that still leaves the cropped region
+     * at least maxDimension on its long edge, the exact scaling happens after the decode.
+     */
+    public int sampleSize(int width, int height) {
+        if (maxDimension == 0)
+            return 1;
+        int[] rect = cropRect(width, height);
+        int longEdge = Math.max(rect[2] - rect[0], rect[3] - rect[1]);
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= maxDimension)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Size sent to the reader for a region that size, the long edge down to maxDimension, never up.
+     * @return width, height
+     */
+    public int[] outputSize(int width, int height) {
+        int longEdge = Math.max(width, height);
+        if (maxDimension == 0 || longEdge <= maxDimension)
+            return new int[]{width, height};
+        double scale = maxDimension / (double) longEdge;
+        return new int[]{Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale))};
+    }
+
+    /**
+     * Payload sizes and latencies of image scans, with and without pre-processing, so both can be compared on the same device.
+     */
+    public static class Stats {
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong originalBytes = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+        private final AtomicLong rawBytes = new AtomicLong();
+        private final AtomicLong rawImages = new AtomicLong();
+        private final LatencyHistogram preprocess = new LatencyHistogram();
+        // request to decode result, pre-processing included
+        private final LatencyHistogram rawEndToEnd = new LatencyHistogram();
+        private final LatencyHistogram processedEndToEnd = new LatencyHistogram();
+
+        public void onProcessed(int originalLength, int length, long nanos) {
+            processed.incrementAndGet();
+            originalBytes.addAndGet(originalLength);
+            sentBytes.addAndGet(length);
+            preprocess.recordNanos(nanos);
+        }
+
+        // sent as is, pre-processing off, the image small enough, or a failed pre-processing
+        public void onSentRaw(int length) {
+            rawImages.incrementAndGet();
+            rawBytes.addAndGet(length);
+        }
+
+        public void onSkipped() {
+            skipped.incrementAndGet();
+        }
+
+        public void onFailed() {
+            failed.incrementAndGet();
+        }
+
+        public void onCompleted(boolean wasProcessed, long nanos) {
+            (wasProcessed ? processedEndToEnd : rawEndToEnd).recordNanos(nanos);
+        }
+
+        /**
+         * {processed, skipped, failed, meanOriginalBytes, meanProcessedBytes, meanRawBytes, preprocess, endToEnd: {raw, processed}}
+         */
+        public JSONObject toJson() throws JSONException {
+            long processedCount = processed.get();
+            long rawCount = rawImages.get();
+
+            JSONObject endToEnd = new JSONObject();
+            endToEnd.put("raw", rawEndToEnd.toJson());
+            endToEnd.put("processed", processedEndToEnd.toJson());
+
+            JSONObject json = new JSONObject();
+            json.put("processed", processedCount);
+            json.put("skipped", skipped.get());
+            json.put("failed", failed.get());
+            json.put("meanOriginalBytes", processedCount > 0 ? originalBytes.get() / processedCount : 0);
+            json.put("meanProcessedBytes", processedCount > 0 ? sentBytes.get() / processedCount : 0);
+            json.put("meanRawBytes", rawCount > 0 ? rawBytes.get() / rawCount : 0);
+            json.put("preprocess", preprocess.toJson());
+            json.put("endToEnd", endToEnd);
+            return json;
+        }
+    }
+}
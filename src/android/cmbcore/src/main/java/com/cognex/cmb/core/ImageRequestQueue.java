@@ -0,0 +1,272 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Turns image scans (IMAGE.LOAD, decode result later on the reader's result callback) into request / response:
+ * one image is on the reader at a time, so the next result belongs to it. Each request has a deadline and can be cancelled.
+ *
+ * A result only answers the request in flight once the reader accepted its image (onLoaded).
+ * A request that timed out or was cancelled may still get its result afterwards. The next image waits
+ * lateResultGraceMs for it, and a result coming in meanwhile is handed back as expired, not given to the next request.
+ * Live scanning results can't be told from an image's decode: the caller keeps scanning off while images are pending.
+ */
+public class ImageRequestQueue<T> {
+
+    public static final class Request<T> {
+        public final String id;
+        public final T payload;
+        final long submittedAt;
+        final long deadline;
+        long sentAt = -1;
+        long loadedAt = -1;
+        boolean expired;
+
+        Request(String id, T payload, long submittedAt, long deadline) {
+            this.id = id;
+            this.payload = payload;
+            this.submittedAt = submittedAt;
+            this.deadline = deadline;
+        }
+
+        // a result of a request already answered with a timeout or a cancellation
+        public boolean isExpired() {
+            return expired;
+        }
+
+        public long remainingMs(long now) {
+            return Math.max(0, deadline - now);
+        }
+
+        /**
+         * Writes requestId, queuedMs, loadMs and totalMs into the current object, -1 for the stages not reached
+         */
+        public void writeTimings(JsonWriter json, long now) {
+            json.name("requestId").value(id);
+            json.name("queuedMs").value(sentAt >= 0 ? sentAt - submittedAt : now - submittedAt);
+            json.name("loadMs").value(loadedAt >= 0 ? loadedAt - sentAt : -1);
+            json.name("totalMs").value(now - submittedAt);
+        }
+    }
+
+    public interface Listener<T> {
+        // send the image to the reader, answer with onLoaded
+        void onDispatch(Request<T> request);
+
+        /**
+         * @param reason "timeout" or "cancelled"
+         */
+        void onExpired(Request<T> request, String reason);
+    }
+
+    private final int maxQueued;
+    private final long lateResultGraceMs;
+    private final Listener<T> listener;
+
+    private final ArrayDeque<Request<T>> queued = new ArrayDeque<>();
+    private Request<T> inFlight;
+    // an expired request whose result may still come, until lateUntil
+    private Request<T> late;
+    private long lateUntil;
+
+    private long submitted;
+    private long completed;
+    private long timedOut;
+    private long cancelled;
+    private long failed;
+    private long lateResults;
+
+    public ImageRequestQueue(int maxQueued, long lateResultGraceMs, Listener<T> listener) {
+        this.maxQueued = Math.max(1, maxQueued);
+        this.lateResultGraceMs = Math.max(0, lateResultGraceMs);
+        this.listener = listener;
+    }
+
+    /**
+     * @return false when the queue is full or the id is taken
+     */
+    public boolean submit(String id, T payload, long timeoutMs, long now) {
+        Request<T> dispatch;
+        synchronized (this) {
+            if (queued.size() >= maxQueued || find(id) != null)
+                return false;
+            queued.addLast(new Request<>(id, payload, now, now + Math.max(1, timeoutMs)));
+            submitted++;
+            dispatch = next(now);
+        }
+        if (dispatch != null)
+            listener.onDispatch(dispatch);
+        return true;
+    }
+
+    // the reader accepted the image
+    public synchronized void onLoaded(Request<T> request, long now) {
+        if (request == inFlight)
+            request.loadedAt = now;
+    }
+
+    /**
+     * The reader refused the image, the caller answers the request with the error.
+     * @return false when the request had already expired
+     */
+    public boolean onLoadFailed(Request<T> request, long now) {
+        Request<T> dispatch;
+        synchronized (this) {
+            if (request != inFlight)
+                return false;
+            inFlight = null;
+            failed++;
+            dispatch = next(now);
+        }
+        if (dispatch != null)
+            listener.onDispatch(dispatch);
+        return true;
+    }
+
+    /**
+     * A decode result came in from the reader.
+     * @return the request it answers, an expired request for a late result, null when no image was loaded on the reader
+     */
+    public Request<T> takeResult(long now) {
+        Request<T> answered;
+        Request<T> dispatch = null;
+        synchronized (this) {
+            if (inFlight != null && inFlight.loadedAt >= 0) {
+                answered = inFlight;
+                inFlight = null;
+                completed++;
+                dispatch = next(now);
+            } else if (late != null && now < lateUntil) {
+                answered = late;
+                late = null;
+                lateResults++;
+                dispatch = next(now);
+            } else {
+                return null;
+            }
+        }
+        if (dispatch != null)
+            listener.onDispatch(dispatch);
+        return answered;
+    }
+
+    /**
+     * @return false when no request has that id
+     */
+    public boolean cancel(String id, long now) {
+        Request<T> request;
+        Request<T> dispatch = null;
+        synchronized (this) {
+            request = find(id);
+            if (request == null)
+                return false;
+            if (request == inFlight) {
+                expireInFlight(now);
+                dispatch = next(now);
+            } else {
+                queued.remove(request);
+            }
+            request.expired = true;
+            cancelled++;
+        }
+        listener.onExpired(request, "cancelled");
+        if (dispatch != null)
+            listener.onDispatch(dispatch);
+        return true;
+    }
+
+    public void tick(long now) {
+        List<Request<T>> expired = new ArrayList<>(1);
+        Request<T> dispatch;
+        synchronized (this) {
+            if (inFlight != null && now >= inFlight.deadline) {
+                expired.add(inFlight);
+                expireInFlight(now);
+            }
+            for (Iterator<Request<T>> it = queued.iterator(); it.hasNext(); ) {
+                Request<T> request = it.next();
+                if (now >= request.deadline) {
+                    it.remove();
+                    expired.add(request);
+                }
+            }
+            for (Request<T> request : expired)
+                request.expired = true;
+            timedOut += expired.size();
+            dispatch = next(now);
+        }
+        for (Request<T> request : expired)
+            listener.onExpired(request, "timeout");
+        if (dispatch != null)
+            listener.onDispatch(dispatch);
+    }
+
+    // everything pending is answered as cancelled, the reader went away
+    public void clear() {
+        List<Request<T>> expired;
+        synchronized (this) {
+            expired = new ArrayList<>(queued);
+            if (inFlight != null)
+                expired.add(0, inFlight);
+            queued.clear();
+            inFlight = null;
+            late = null;
+            for (Request<T> request : expired)
+                request.expired = true;
+            cancelled += expired.size();
+        }
+        for (Request<T> request : expired)
+            listener.onExpired(request, "cancelled");
+    }
+
+    public synchronized boolean isIdle() {
+        return inFlight == null && queued.isEmpty();
+    }
+
+    private void expireInFlight(long now) {
+        late = inFlight;
+        lateUntil = now + lateResultGraceMs;
+        inFlight = null;
+    }
+
+    private Request<T> find(String id) {
+        if (inFlight != null && inFlight.id.equals(id))
+            return inFlight;
+        for (Request<T> request : queued) {
+            if (request.id.equals(id))
+                return request;
+        }
+        return null;
+    }
+
+    // the next request to send, held back while the reader may still answer an expired one
+    private Request<T> next(long now) {
+        if (inFlight != null || queued.isEmpty())
+            return null;
+        if (late != null && now < lateUntil)
+            return null;
+        late = null;
+        inFlight = queued.removeFirst();
+        inFlight.sentAt = now;
+        return inFlight;
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("queued", queued.size());
+        stats.put("inFlight", inFlight != null);
+        stats.put("submitted", submitted);
+        stats.put("completed", completed);
+        stats.put("timedOut", timedOut);
+        stats.put("cancelled", cancelled);
+        stats.put("failed", failed);
+        stats.put("lateResults", lateResults);
+        return stats;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One decoded code stored in the ScanJournal.
+ */
+public class JournalEntry {
+
+    long id;
+    long time;
+    int readerHandle;
+    int symbologyOrdinal = -1;
+    String symbologyName;
+    String readString;
+    String parsedJSON;
+    boolean gs1;
+
+    JournalEntry() {
+    }
+
+    JournalEntry(int readerHandle, ScanResult result) {
+        this.readerHandle = readerHandle;
+        this.symbologyOrdinal = result.getSymbologyOrdinal();
+        this.symbologyName = result.getSymbologyName();
+        this.readString = result.getReadString();
+        this.parsedJSON = result.getParsedJSON();
+        this.gs1 = result.isGS1();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // epoch milliseconds, never decreasing inside a journal
+    public long getTime() {
+        return time;
+    }
+
+    public int getReaderHandle() {
+        return readerHandle;
+    }
+
+    public int getSymbologyOrdinal() {
+        return symbologyOrdinal;
+    }
+
+    public String getSymbologyName() {
+        return symbologyName;
+    }
+
+    public String getReadString() {
+        return readString;
+    }
+
+    public String getParsedJSON() {
+        return parsedJSON;
+    }
+
+    public boolean isGS1() {
+        return gs1;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("time", time);
+        json.put("readerHandle", readerHandle);
+        json.put("symbology", symbologyOrdinal);
+        json.put("symbologyString", symbologyName);
+        json.put("readString", readString);
+        if (parsedJSON != null)
+            json.put("parsedJSON", parsedJSON);
+        json.put("isGS1", gs1);
+        return json;
+    }
+}
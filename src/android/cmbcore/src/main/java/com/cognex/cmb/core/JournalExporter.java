@@ -0,0 +1,202 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams ScanJournal entries into a gzip-compressed NDJSON or CSV file.
+ * The journal is read one page at a time, so memory use doesn't depend on how many entries are exported.
+ * The file is written next to its destination and renamed once complete, a failed or cancelled export leaves nothing.
+ */
+public class JournalExporter {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param total matching entries when the export started, entries scanned meanwhile are exported too
+         */
+        void onProgress(long exported, long total);
+    }
+
+    private static final String CSV_HEADER = "id,time,timeIso,device,readerHandle,symbology,symbologyString,readString,parsedJSON\r\n";
+
+    private final ScanJournal journal;
+    private String device;
+    private long progressIntervalMs = 250;
+    private volatile boolean cancelled = false;
+
+    public JournalExporter(ScanJournal journal) {
+        this.journal = journal;
+    }
+
+    // written in every row, identifies the phone or station that produced the export
+    public JournalExporter setDevice(String device) {
+        this.device = device;
+        return this;
+    }
+
+    public JournalExporter setProgressIntervalMs(long intervalMs) {
+        this.progressIntervalMs = Math.max(0, intervalMs);
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @param filter cursor and limit are ignored, the whole match is exported in id order
+     * @return number of exported entries
+     */
+    public long export(JournalQuery filter, Format format, File destination, ProgressListener listener) throws IOException {
+        long total = journal.count(filter);
+        if (listener != null)
+            listener.onProgress(0, total);
+
+        File temp = new File(destination.getPath() + ".part");
+        long exported = 0;
+        boolean complete = false;
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024), SessionFormat.UTF8), 64 * 1024);
+        try {
+            SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+            if (format == Format.CSV)
+                out.write(CSV_HEADER);
+
+            JournalQuery page = new JournalQuery()
+                    .setTimeRange(filter.fromTime, filter.toTime)
+                    .setSymbology(filter.symbology)
+                    .setLimit(JournalQuery.MAX_LIMIT);
+            page.prefix = filter.prefix;
+            page.exact = filter.exact;
+
+            long lastProgress = System.currentTimeMillis();
+            long cursor = -1;
+            do {
+                if (cancelled)
+                    throw new IOException("Export cancelled");
+
+                ScanJournal.Page entries = journal.query(page.setCursor(cursor));
+                for (JournalEntry entry : entries.entries) {
+                    if (format == Format.CSV)
+                        writeCsv(out, entry, iso);
+                    else
+                        writeJson(out, entry);
+                    exported++;
+                }
+                cursor = entries.nextCursor;
+
+                long now = System.currentTimeMillis();
+                if (listener != null && now - lastProgress >= progressIntervalMs) {
+                    listener.onProgress(exported, Math.max(total, exported));
+                    lastProgress = now;
+                }
+            } while (cursor >= 0);
+
+            out.close();
+            if (!temp.renameTo(destination))
+                throw new IOException("Cannot write " + destination);
+            complete = true;
+        } finally {
+            if (!complete) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                temp.delete();
+            }
+        }
+
+        if (listener != null)
+            listener.onProgress(exported, Math.max(total, exported));
+        return exported;
+    }
+
+    private void writeJson(Writer out, JournalEntry entry) throws IOException {
+        try {
+            JSONObject json = entry.toJson();
+            if (device != null)
+                json.put("device", device);
+            out.write(json.toString());
+            out.write('\n');
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private void writeCsv(Writer out, JournalEntry entry, SimpleDateFormat iso) throws IOException {
+        out.write(Long.toString(entry.id));
+        out.write(',');
+        out.write(Long.toString(entry.time));
+        out.write(',');
+        out.write(iso.format(new Date(entry.time)));
+        out.write(',');
+        writeCsvField(out, device);
+        out.write(',');
+        out.write(Integer.toString(entry.readerHandle));
+        out.write(',');
+        out.write(Integer.toString(entry.symbologyOrdinal));
+        out.write(',');
+        writeCsvField(out, entry.symbologyName);
+        out.write(',');
+        writeCsvField(out, entry.readString);
+        out.write(',');
+        writeCsvField(out, entry.parsedJSON);
+        out.write("\r\n");
+    }
+
+    // RFC 4180: quote fields holding a separator, a quote or a line break, double the quotes.
+    // Barcode content is untrusted: a field a spreadsheet would take for a formula gets a leading '
+    static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null)
+            return;
+        if (isFormulaLike(value))
+            value = "'" + value;
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean isFormulaLike(String value) {
+        if (value.isEmpty())
+            return false;
+        char first = value.charAt(0);
+        return first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r';
+    }
+}
@@ -0,0 +1,88 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONObject;
+
+/**
+ * Filter and page position for ScanJournal.query. All conditions are combined, unset ones match everything.
+ */
+public class JournalQuery {
+
+    public static final int MAX_LIMIT = 1000;
+
+    long fromTime = Long.MIN_VALUE;
+    long toTime = Long.MAX_VALUE;
+    String prefix;
+    boolean exact = false;
+    int symbology = -1;
+    long cursor = -1;
+    int limit = 100;
+    boolean descending = false;
+
+    /**
+     * @param from inclusive, epoch ms
+     * @param to exclusive, epoch ms
+     */
+    public JournalQuery setTimeRange(long from, long to) {
+        this.fromTime = from;
+        this.toTime = to;
+        return this;
+    }
+
+    // readString starts with prefix
+    public JournalQuery setPrefix(String prefix) {
+        this.prefix = prefix;
+        this.exact = false;
+        return this;
+    }
+
+    // readString equals value
+    public JournalQuery setReadString(String value) {
+        this.prefix = value;
+        this.exact = true;
+        return this;
+    }
+
+    public JournalQuery setSymbology(int ordinal) {
+        this.symbology = ordinal;
+        return this;
+    }
+
+    /**
+     * @param cursor nextCursor of the previous page, -1 for the first page
+     */
+    public JournalQuery setCursor(long cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    public JournalQuery setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(MAX_LIMIT, limit));
+        return this;
+    }
+
+    // newest entries first
+    public JournalQuery setDescending(boolean descending) {
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * {from, to, prefix, readString, symbology, cursor, limit, descending}
+     */
+    public static JournalQuery fromJson(JSONObject json) {
+        JournalQuery query = new JournalQuery();
+        if (json == null)
+            return query;
+
+        query.setTimeRange(json.optLong("from", Long.MIN_VALUE), json.optLong("to", Long.MAX_VALUE));
+        if (json.has("readString"))
+            query.setReadString(json.optString("readString"));
+        else if (json.has("prefix"))
+            query.setPrefix(json.optString("prefix"));
+        query.setSymbology(json.optInt("symbology", -1));
+        query.setCursor(json.optLong("cursor", -1));
+        query.setLimit(json.optInt("limit", query.limit));
+        query.setDescending(json.optBoolean("descending", false));
+        return query;
+    }
+}
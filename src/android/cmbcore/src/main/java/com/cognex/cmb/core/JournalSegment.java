@@ -0,0 +1,583 @@
+package com.cognex.cmb.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the ScanJournal. Records are appended as: int body length, int CRC32 of the body, body.
+ * body: varint id, time, readerHandle + 1, symbology + 1, byte flags, strings symbologyName, readString, parsedJSON
+ * (same varint and string encoding as SessionFormat).
+ *
+ * The active segment keeps its index in memory. Once full it is sealed: the index is written next to it
+ * and memory-mapped from then on, so the heap cost of the journal does not grow with the number of entries.
+ *
+ * index:  int magic 'CMBJ', int version, int count, long segment length, long symbology mask,
+ *         count * (long id, long time, int record offset, int symbology),
+ *         count * (int key offset, int ordinal) sorted by readString bytes,
+ *         keys: int length + UTF-8 readString per entry
+ */
+abstract class JournalSegment {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int INDEX_MAGIC = 0x434D424A;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER = 4 + 4 + 4 + 8 + 8;
+    private static final int ENTRY_SIZE = 8 + 8 + 4 + 4;
+    private static final int KEY_SIZE = 4 + 4;
+
+    private static final int RECORD_HEADER = 8;
+    private static final int FLAG_GS1 = 1;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    final File file;
+    final long name;
+
+    JournalSegment(File file, long name) {
+        this.file = file;
+        this.name = name;
+    }
+
+    abstract int count();
+
+    abstract long id(int ordinal);
+
+    abstract long time(int ordinal);
+
+    abstract int symbology(int ordinal);
+
+    abstract long symbologyMask();
+
+    abstract FileChannel channel() throws IOException;
+
+    abstract int offset(int ordinal);
+
+    /**
+     * @return ordinals of the entries whose readString starts with prefix, ascending
+     */
+    abstract int[] prefixOrdinals(byte[] prefix);
+
+    abstract void close();
+
+    long firstId() {
+        return id(0);
+    }
+
+    long lastId() {
+        return id(count() - 1);
+    }
+
+    // first ordinal whose time is >= time
+    int lowerBoundTime(long time) {
+        int low = 0;
+        int high = count();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(mid) < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // first ordinal whose id is >= id
+    int lowerBoundId(long id) {
+        int low = 0;
+        int high = count();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (id(mid) < id)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    boolean mayContainSymbology(int ordinal) {
+        return ordinal < 0 || (symbologyMask() & symbologyBit(ordinal)) != 0;
+    }
+
+    JournalEntry read(int ordinal) throws IOException {
+        return readRecord(channel(), offset(ordinal));
+    }
+
+    static long symbologyBit(int ordinal) {
+        return ordinal + 1 < 63 ? 1L << (ordinal + 1) : 1L << 63;
+    }
+
+    static File segmentFile(File directory, long name) {
+        // zero padded so the directory listing sorts like the ids
+        return new File(directory, String.format(Locale.US, "journal-%019d", name) + SEGMENT_SUFFIX);
+    }
+
+    static File indexFile(File segment) {
+        String path = segment.getPath();
+        return new File(path.substring(0, path.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    static long parseName(File segment) {
+        String fileName = segment.getName();
+        try {
+            return Long.parseLong(fileName.substring("journal-".length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static byte[] keyOf(String readString) {
+        return readString != null ? readString.getBytes(SessionFormat.UTF8) : EMPTY;
+    }
+
+    static byte[] encodeRecord(JournalEntry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + (entry.readString != null ? entry.readString.length() : 0));
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        out.writeInt(0);
+        SessionFormat.writeVarLong(out, entry.id);
+        SessionFormat.writeVarLong(out, entry.time);
+        SessionFormat.writeVarLong(out, entry.readerHandle + 1);
+        SessionFormat.writeVarLong(out, entry.symbologyOrdinal + 1);
+        out.writeByte(entry.gs1 ? FLAG_GS1 : 0);
+        SessionFormat.writeString(out, entry.symbologyName);
+        SessionFormat.writeString(out, entry.readString);
+        SessionFormat.writeString(out, entry.parsedJSON);
+        out.flush();
+
+        byte[] record = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER, record.length - RECORD_HEADER);
+        ByteBuffer.wrap(record).putInt(record.length - RECORD_HEADER).putInt((int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * @return null when there is no complete, valid record at offset (torn write at the end of the file)
+     */
+    static JournalEntry readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        if (readFully(channel, header, offset) < RECORD_HEADER)
+            return null;
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length <= 0 || offset + RECORD_HEADER + length > channel.size())
+            return null;
+
+        byte[] body = new byte[length];
+        if (readFully(channel, ByteBuffer.wrap(body), offset + RECORD_HEADER) < length)
+            return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, length);
+        if ((int) crc.getValue() != checksum)
+            return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        JournalEntry entry = new JournalEntry();
+        entry.id = SessionFormat.readVarLong(in);
+        entry.time = SessionFormat.readVarLong(in);
+        entry.readerHandle = (int) SessionFormat.readVarLong(in) - 1;
+        entry.symbologyOrdinal = (int) SessionFormat.readVarLong(in) - 1;
+        entry.gs1 = (in.readUnsignedByte() & FLAG_GS1) != 0;
+        entry.symbologyName = SessionFormat.readString(in);
+        entry.readString = SessionFormat.readString(in);
+        entry.parsedJSON = SessionFormat.readString(in);
+        return entry;
+    }
+
+    static int recordLength(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header, offset);
+        header.flip();
+        return RECORD_HEADER + header.getInt();
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    // unsigned byte order, the same order as the code points of the UTF-8 strings
+    private static int compareKeys(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0)
+                return diff;
+        }
+        return a.length - b.length;
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The segment being appended to. Records go through a small buffer, sync() writes and fsyncs it.
+     */
+    static final class Active extends JournalSegment {
+
+        private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(FLUSH_THRESHOLD);
+        private long length;
+        private boolean dirty = false;
+
+        private int count = 0;
+        private long[] ids = new long[256];
+        private long[] times = new long[256];
+        private int[] offsets = new int[256];
+        private int[] symbologies = new int[256];
+        private byte[][] keys = new byte[256][];
+        private long symbologyMask = 0;
+
+        /**
+         * Opens or creates the file, keeps every valid record and cuts a torn tail left by a crash.
+         */
+        Active(File file, long name) throws IOException {
+            super(file, name);
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+
+            long offset = 0;
+            JournalEntry entry;
+            while ((entry = readRecord(channel, offset)) != null) {
+                add(entry, (int) offset);
+                offset += recordLength(channel, offset);
+            }
+            if (offset < channel.size())
+                channel.truncate(offset);
+            length = offset;
+        }
+
+        void append(JournalEntry entry) throws IOException {
+            byte[] record = encodeRecord(entry);
+            add(entry, (int) (length + pending.size()));
+            pending.write(record);
+            dirty = true;
+
+            if (pending.size() >= FLUSH_THRESHOLD)
+                flush();
+        }
+
+        long length() {
+            return length + pending.size();
+        }
+
+        void flush() throws IOException {
+            if (pending.size() == 0)
+                return;
+            channel.write(ByteBuffer.wrap(pending.toByteArray()), length);
+            length += pending.size();
+            pending.reset();
+        }
+
+        void sync() throws IOException {
+            if (!dirty)
+                return;
+            flush();
+            channel.force(false);
+            dirty = false;
+        }
+
+        /**
+         * Writes the index file, the segment is read through Sealed afterwards.
+         */
+        Sealed seal() throws IOException {
+            sync();
+
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return compareKeys(keys[a], keys[b]);
+                }
+            });
+
+            File index = indexFile(file);
+            File temp = new File(index.getPath() + TEMP_SUFFIX);
+            FileOutputStream stream = new FileOutputStream(temp);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(count);
+                out.writeLong(length);
+                out.writeLong(symbologyMask);
+
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(ids[i]);
+                    out.writeLong(times[i]);
+                    out.writeInt(offsets[i]);
+                    out.writeInt(symbologies[i]);
+                }
+
+                int[] keyOffsets = new int[count];
+                int keyOffset = 0;
+                for (int i = 0; i < count; i++) {
+                    keyOffsets[i] = keyOffset;
+                    keyOffset += 4 + keys[i].length;
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(keyOffsets[order[i]]);
+                    out.writeInt(order[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(keys[i].length);
+                    out.write(keys[i]);
+                }
+                out.flush();
+                stream.getFD().sync();
+            } finally {
+                stream.close();
+            }
+
+            if (!temp.renameTo(index))
+                throw new IOException("Cannot write " + index);
+
+            close();
+            return new Sealed(file, name, index);
+        }
+
+        @Override
+        int count() {
+            return count;
+        }
+
+        @Override
+        long id(int ordinal) {
+            return ids[ordinal];
+        }
+
+        @Override
+        long time(int ordinal) {
+            return times[ordinal];
+        }
+
+        @Override
+        int symbology(int ordinal) {
+            return symbologies[ordinal];
+        }
+
+        @Override
+        long symbologyMask() {
+            return symbologyMask;
+        }
+
+        @Override
+        FileChannel channel() throws IOException {
+            // readers go through the file, pending records have to be there first
+            flush();
+            return channel;
+        }
+
+        @Override
+        int offset(int ordinal) {
+            return offsets[ordinal];
+        }
+
+        @Override
+        int[] prefixOrdinals(byte[] prefix) {
+            int[] matches = new int[16];
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                if (startsWith(keys[i], prefix)) {
+                    if (found == matches.length)
+                        matches = Arrays.copyOf(matches, found * 2);
+                    matches[found++] = i;
+                }
+            }
+            return Arrays.copyOf(matches, found);
+        }
+
+        @Override
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void add(JournalEntry entry, int offset) {
+            if (count == ids.length) {
+                int capacity = count * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                times = Arrays.copyOf(times, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                symbologies = Arrays.copyOf(symbologies, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+            }
+            ids[count] = entry.id;
+            times[count] = entry.time;
+            offsets[count] = offset;
+            symbologies[count] = entry.symbologyOrdinal;
+            keys[count] = keyOf(entry.readString);
+            symbologyMask |= symbologyBit(entry.symbologyOrdinal);
+            count++;
+        }
+    }
+
+    /**
+     * A full segment, its index is memory-mapped.
+     */
+    static final class Sealed extends JournalSegment {
+
+        private final MappedByteBuffer index;
+        private final int count;
+        private final long symbologyMask;
+        private final int keyTable;
+        private final int keyBlob;
+        private RandomAccessFile raf;
+
+        /**
+         * @throws IOException when the index is missing, damaged or doesn't describe this segment file
+         */
+        Sealed(File file, long name, File indexFile) throws IOException {
+            super(file, name);
+
+            RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r");
+            try {
+                index = indexRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexRaf.length());
+            } finally {
+                indexRaf.close();
+            }
+
+            if (index.capacity() < INDEX_HEADER || index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION)
+                throw new IOException("Invalid journal index " + indexFile);
+
+            count = index.getInt(8);
+            if (index.getLong(12) != file.length() || count <= 0)
+                throw new IOException("Stale journal index " + indexFile);
+
+            symbologyMask = index.getLong(20);
+            keyTable = INDEX_HEADER + count * ENTRY_SIZE;
+            keyBlob = keyTable + count * KEY_SIZE;
+            if (keyBlob > index.capacity())
+                throw new IOException("Truncated journal index " + indexFile);
+        }
+
+        @Override
+        int count() {
+            return count;
+        }
+
+        @Override
+        long id(int ordinal) {
+            return index.getLong(INDEX_HEADER + ordinal * ENTRY_SIZE);
+        }
+
+        @Override
+        long time(int ordinal) {
+            return index.getLong(INDEX_HEADER + ordinal * ENTRY_SIZE + 8);
+        }
+
+        @Override
+        int offset(int ordinal) {
+            return index.getInt(INDEX_HEADER + ordinal * ENTRY_SIZE + 16);
+        }
+
+        @Override
+        int symbology(int ordinal) {
+            return index.getInt(INDEX_HEADER + ordinal * ENTRY_SIZE + 20);
+        }
+
+        @Override
+        long symbologyMask() {
+            return symbologyMask;
+        }
+
+        @Override
+        synchronized FileChannel channel() throws IOException {
+            if (raf == null)
+                raf = new RandomAccessFile(file, "r");
+            return raf.getChannel();
+        }
+
+        @Override
+        int[] prefixOrdinals(byte[] prefix) {
+            // binary search the first key >= prefix in the sorted key table, then walk while keys match
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareKey(mid, prefix, false) < 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            int[] matches = new int[16];
+            int found = 0;
+            for (int i = low; i < count && compareKey(i, prefix, true) == 0; i++) {
+                if (found == matches.length)
+                    matches = Arrays.copyOf(matches, found * 2);
+                matches[found++] = index.getInt(keyTable + i * KEY_SIZE + 4);
+            }
+
+            int[] ordinals = Arrays.copyOf(matches, found);
+            Arrays.sort(ordinals);
+            return ordinals;
+        }
+
+        @Override
+        synchronized void close() {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+                raf = null;
+            }
+        }
+
+        // compares the key at sorted position i with prefix, only over the prefix length when asPrefix is set
+        private int compareKey(int sorted, byte[] prefix, boolean asPrefix) {
+            int keyOffset = keyBlob + index.getInt(keyTable + sorted * KEY_SIZE);
+            int keyLength = index.getInt(keyOffset);
+            int length = asPrefix ? Math.min(keyLength, prefix.length) : keyLength;
+            for (int i = 0; i < Math.min(length, prefix.length); i++) {
+                int diff = (index.get(keyOffset + 4 + i) & 0xff) - (prefix[i] & 0xff);
+                if (diff != 0)
+                    return diff;
+            }
+            if (asPrefix)
+                return keyLength < prefix.length ? -1 : 0;
+            return length - prefix.length;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.cognex.cmb.core;
+
+/**
+ * Streaming JSON writer into a reusable StringBuilder, for the result path where building a JSONObject tree
+ * and serializing it afterwards costs an allocation per value.
+ * Output matches what org.json produces for the same values, except that "</", U+0080 to U+009F and
+ * U+2000 to U+20FF are left as is where org.json escapes them, both parse back to the same strings.
+ * U+2028 and U+2029 are still escaped, the bridge evaluates the message as JavaScript.
+ */
+public final class JsonWriter {
+
+    private static final int MAX_DEPTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder out;
+    // whether the object / array at each depth already holds a value
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+    // the pooled buffers this writer belongs to, null for a standalone writer
+    ResultBuffers buffers;
+
+    public JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    public StringBuilder getBuffer() {
+        return out;
+    }
+
+    public int length() {
+        return out.length();
+    }
+
+    public void reset() {
+        out.setLength(0);
+        depth = 0;
+        afterName = false;
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        out.append('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        out.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        out.append('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        out.append(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        if (hasValue[depth])
+            out.append(',');
+        hasValue[depth] = true;
+        string(name);
+        out.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null)
+            out.append("null");
+        else
+            string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    // whole numbers print without a fraction, like org.json does
+    public JsonWriter value(double value) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            out.append("null");
+        else if (value == (long) value)
+            out.append((long) value);
+        else
+            out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    // already serialized JSON, a JSONObject's toString()
+    public JsonWriter rawValue(CharSequence json) {
+        beforeValue();
+        out.append(json);
+        return this;
+    }
+
+    // another copy of a value written earlier, start and end are lengths taken around it
+    public JsonWriter copyValue(int start, int end) {
+        beforeValue();
+        out.append(out, start, end);
+        return this;
+    }
+
+    // a string value holding data as Base64, the same text android.util.Base64.DEFAULT gives with its line breaks escaped
+    public JsonWriter base64Value(byte[] data, int offset, int length) {
+        beforeValue();
+        out.append('"');
+        Base64Encoder.encode(data, offset, length, out, "\\n");
+        out.append('"');
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth])
+                out.append(',');
+            hasValue[depth] = true;
+        }
+    }
+
+    private void push() {
+        if (++depth == MAX_DEPTH)
+            throw new IllegalStateException("JSON nested too deep");
+        hasValue[depth] = false;
+    }
+
+    // runs of plain characters are appended at once, the XML and SVG blocks are mostly that
+    private void string(String value) {
+        out.append('"');
+        int length = value.length();
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')
+                continue;
+
+            out.append(value, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    out.append("\\u").append(HEX[c >> 12 & 0xf]).append(HEX[c >> 8 & 0xf]).append(HEX[c >> 4 & 0xf]).append(HEX[c & 0xf]);
+                    break;
+            }
+        }
+        out.append(value, run, length);
+        out.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Picks the camera resolution and frame rate (the HIGH_RESOLUTION and HIGH_FRAME_RATE preview options) that read the most codes per second.
+ * 1080p finds small codes 720p misses but costs decode time per frame, 60 FPS only pays off when decoding keeps up with it.
+ *
+ * Each candidate combination is measured over whole scan sessions (start to stop scanning): good reads over scanning time.
+ * Every candidate is tried minSessions times first, after that the best one is kept and the others are revisited
+ * every exploreEvery sessions. Old sessions weigh less with every new one, so a change of site or lighting shows up.
+ * The options only apply when the camera is opened, switching happens between sessions and is reported to the listener.
+ */
+public class PreviewOptionsTuner {
+
+    public static final int HIGH_RESOLUTION = 64;
+    public static final int HIGH_FRAME_RATE = 128;
+    public static final int TUNED_OPTIONS = HIGH_RESOLUTION | HIGH_FRAME_RATE;
+
+    private static final double DECAY = 0.9;
+    private static final int DECISIONS_KEPT = 16;
+
+    public interface Listener {
+        /**
+         * @param reason "explore", "revisit" or "best"
+         */
+        void onOptionsChanged(int previewOptions, String reason);
+    }
+
+    private static final class Candidate {
+        final int options;
+        double reads;
+        double seconds;
+        int sessions;
+        long lastSession = -1;
+        final LatencyHistogram timeToRead = new LatencyHistogram();
+
+        Candidate(int options) {
+            this.options = options;
+        }
+
+        double readsPerSecond() {
+            return seconds > 0 ? reads / seconds : 0;
+        }
+    }
+
+    private final Candidate[] candidates;
+    private final int minSessions;
+    private final long minSessionNanos;
+    private final int exploreEvery;
+    private final double switchMargin;
+    private final Listener listener;
+
+    private Candidate current;
+    private long sessionStart = -1;
+    private int sessionReads;
+    private long sessions;
+    private long switches;
+    private final ArrayDeque<JSONObject> decisions = new ArrayDeque<>();
+
+    /**
+     * @param options the combinations the device supports, masked with TUNED_OPTIONS
+     * @param initial the combination the camera is opened with now
+     * @param minSessionMs shorter sessions without a read are ignored, the scanner was just toggled
+     * @param exploreEvery sessions between revisits of the other combinations, 0 never revisits
+     * @param switchMargin how much faster another combination must be before the camera is reopened, 0.1 is 10%
+     */
+    public PreviewOptionsTuner(int[] options, int initial, int minSessions, long minSessionMs, int exploreEvery, double switchMargin, Listener listener) {
+        this.candidates = new Candidate[Math.max(1, options.length)];
+        for (int i = 0; i < candidates.length; i++)
+            candidates[i] = new Candidate(i < options.length ? options[i] & TUNED_OPTIONS : 0);
+        this.minSessions = Math.max(1, minSessions);
+        this.minSessionNanos = Math.max(0, minSessionMs) * 1000000L;
+        this.exploreEvery = Math.max(0, exploreEvery);
+        this.switchMargin = Math.max(0, switchMargin);
+        this.listener = listener;
+
+        Candidate start = candidates[0];
+        for (Candidate candidate : candidates) {
+            if (candidate.options == (initial & TUNED_OPTIONS))
+                start = candidate;
+        }
+        this.current = start;
+    }
+
+    // the HIGH_RESOLUTION / HIGH_FRAME_RATE bits the camera should be opened with
+    public synchronized int getOptions() {
+        return current.options;
+    }
+
+    public synchronized void onSessionStart(long nowNanos) {
+        sessionStart = nowNanos;
+        sessionReads = 0;
+    }
+
+    /**
+     * @param triggerToResultNanos latency of the read, negative when it had no trigger
+     */
+    public synchronized void onRead(boolean good, long triggerToResultNanos) {
+        if (sessionStart < 0 || !good)
+            return;
+        sessionReads++;
+        if (triggerToResultNanos >= 0)
+            current.timeToRead.recordNanos(triggerToResultNanos);
+    }
+
+    public void onSessionEnd(long nowNanos) {
+        Candidate next;
+        String reason;
+
+        synchronized (this) {
+            if (sessionStart < 0)
+                return;
+            long duration = nowNanos - sessionStart;
+            sessionStart = -1;
+            if (sessionReads == 0 && duration < minSessionNanos)
+                return;
+
+            current.reads = current.reads * DECAY + sessionReads;
+            current.seconds = current.seconds * DECAY + duration / 1e9;
+            current.sessions++;
+            current.lastSession = sessions++;
+
+            reason = "explore";
+            next = current.sessions < minSessions ? current : unexplored();
+            if (next == null && exploreEvery > 0 && sessions % exploreEvery == 0) {
+                reason = "revisit";
+                next = leastRecent();
+            }
+            if (next == null) {
+                reason = "best";
+                next = best();
+            }
+
+            if (next == current)
+                return;
+            current = next;
+            switches++;
+            addDecision(next, reason);
+        }
+
+        // outside the lock, the listener reopens the camera
+        listener.onOptionsChanged(next.options, reason);
+    }
+
+    private Candidate unexplored() {
+        for (Candidate candidate : candidates) {
+            if (candidate.sessions < minSessions)
+                return candidate;
+        }
+        return null;
+    }
+
+    private Candidate leastRecent() {
+        Candidate least = null;
+        for (Candidate candidate : candidates) {
+            if (candidate != current && (least == null || candidate.lastSession < least.lastSession))
+                least = candidate;
+        }
+        return least;
+    }
+
+    // reopening the camera costs a second or so, the current combination stays unless another one is clearly faster
+    private Candidate best() {
+        Candidate best = current;
+        double bar = current.readsPerSecond() * (1 + switchMargin);
+        for (Candidate candidate : candidates) {
+            double rate = candidate.readsPerSecond();
+            if (rate > bar) {
+                best = candidate;
+                bar = rate;
+            }
+        }
+        return best;
+    }
+
+    private void addDecision(Candidate next, String reason) {
+        JSONObject decision = new JSONObject();
+        try {
+            decision.put("session", sessions);
+            decision.put("options", next.options);
+            decision.put("reason", reason);
+            decision.put("readsPerSecond", next.readsPerSecond());
+        } catch (JSONException ignored) {
+        }
+        if (decisions.size() == DECISIONS_KEPT)
+            decisions.removeFirst();
+        decisions.addLast(decision);
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONArray measured = new JSONArray();
+        for (Candidate candidate : candidates) {
+            JSONObject json = new JSONObject();
+            json.put("options", candidate.options);
+            json.put("highResolution", (candidate.options & HIGH_RESOLUTION) != 0);
+            json.put("highFrameRate", (candidate.options & HIGH_FRAME_RATE) != 0);
+            json.put("sessions", candidate.sessions);
+            json.put("readsPerSecond", candidate.readsPerSecond());
+            json.put("timeToRead", candidate.timeToRead.toJson());
+            measured.put(json);
+        }
+
+        JSONArray recent = new JSONArray();
+        for (JSONObject decision : decisions)
+            recent.put(decision);
+
+        JSONObject stats = new JSONObject();
+        stats.put("options", current.options);
+        stats.put("exploring", unexplored() != null);
+        stats.put("sessions", sessions);
+        stats.put("switches", switches);
+        stats.put("candidates", measured);
+        stats.put("decisions", recent);
+        return stats;
+    }
+}
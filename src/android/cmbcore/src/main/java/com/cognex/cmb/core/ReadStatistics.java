@@ -0,0 +1,357 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rolling aggregates of the result XML a reader sends with READ_XML, XML_STATISTICS and CODE_QUALITY_DATA:
+ * decode time distribution, good / no read counts per symbology, code quality grades and the reader's own counters.
+ * The XML is pulled through once per scan and only the aggregates are kept, so it doesn't have to go to JS.
+ *
+ * Reads are counted into time buckets, getStats(windowMs) sums up the buckets of the requested window.
+ * Lifetime totals are kept next to the window.
+ */
+public class ReadStatistics {
+
+    private static final String[] GRADES = {"A", "B", "C", "D", "F"};
+
+    static final class Bucket {
+        long start;
+        long goodReads;
+        long noReads;
+        // symbology name -> {good, no read}
+        final Map<String, long[]> symbologies = new HashMap<>();
+        // quality metric -> count per grade, A to F
+        final Map<String, long[]> grades = new HashMap<>();
+        final LatencyHistogram decodeTime = new LatencyHistogram();
+
+        void clear(long start) {
+            this.start = start;
+            goodReads = 0;
+            noReads = 0;
+            symbologies.clear();
+            grades.clear();
+            decodeTime.reset();
+        }
+
+        void add(Bucket other) {
+            goodReads += other.goodReads;
+            noReads += other.noReads;
+            for (Map.Entry<String, long[]> symbology : other.symbologies.entrySet()) {
+                long[] counts = counts(symbologies, symbology.getKey(), 2);
+                counts[0] += symbology.getValue()[0];
+                counts[1] += symbology.getValue()[1];
+            }
+            for (Map.Entry<String, long[]> metric : other.grades.entrySet()) {
+                long[] counts = counts(grades, metric.getKey(), GRADES.length);
+                for (int i = 0; i < GRADES.length; i++)
+                    counts[i] += metric.getValue()[i];
+            }
+            decodeTime.add(other.decodeTime);
+        }
+    }
+
+    // what the parser collected about one <result>
+    private static final class Read {
+        String status;
+        String symbology;
+        long decodeTimeMs = -1;
+        final Map<String, Integer> grades = new LinkedHashMap<>();
+
+        void clear() {
+            status = null;
+            symbology = null;
+            decodeTimeMs = -1;
+            grades.clear();
+        }
+    }
+
+    private final long bucketMs;
+    private final Bucket[] buckets;
+    private final Bucket total = new Bucket();
+    // latest numeric values of the <statistics> block
+    private final Map<String, Number> readerCounters = new TreeMap<>();
+    private final Read read = new Read();
+
+    private XmlPullParser parser;
+    private long parsed;
+    private long parseErrors;
+
+    /**
+     * @param bucketMs time covered by one bucket
+     * @param bucketCount buckets kept, bucketMs * bucketCount is the longest window
+     */
+    public ReadStatistics(long bucketMs, int bucketCount) {
+        this.bucketMs = Math.max(1000, bucketMs);
+        this.buckets = new Bucket[Math.max(1, bucketCount)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+            buckets[i].start = -1;
+        }
+    }
+
+    public long getMaxWindowMs() {
+        return bucketMs * buckets.length;
+    }
+
+    public synchronized void record(String xml) {
+        record(xml, System.currentTimeMillis());
+    }
+
+    synchronized void record(String xml, long now) {
+        if (xml == null || xml.length() == 0)
+            return;
+
+        Bucket bucket = bucketAt(now);
+        try {
+            if (parser == null)
+                parser = XmlPullParserFactory.newInstance().newPullParser();
+            parse(xml, bucket);
+            parsed++;
+        } catch (XmlPullParserException | IOException e) {
+            parseErrors++;
+        }
+    }
+
+    private Bucket bucketAt(long now) {
+        long start = now - now % bucketMs;
+        Bucket bucket = buckets[(int) ((start / bucketMs) % buckets.length)];
+        if (bucket.start != start)
+            bucket.clear(start);
+        return bucket;
+    }
+
+    private void parse(String xml, Bucket bucket) throws XmlPullParserException, IOException {
+        parser.setInput(new StringReader(xml));
+
+        int resultDepth = -1;
+        int statisticsDepth = -1;
+        String text = null;
+        read.clear();
+
+        for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+            switch (event) {
+                case XmlPullParser.START_TAG: {
+                    String name = parser.getName();
+                    text = null;
+                    if (name.equals("result")) {
+                        resultDepth = parser.getDepth();
+                        read.clear();
+                    } else if (name.equals("statistics")) {
+                        statisticsDepth = parser.getDepth();
+                    }
+
+                    // <symbol_contrast grade="A" .../>
+                    String grade = parser.getAttributeValue(null, "grade");
+                    if (grade != null)
+                        addGrade(name, grade);
+                    break;
+                }
+                case XmlPullParser.TEXT:
+                    text = parser.getText();
+                    break;
+                case XmlPullParser.END_TAG: {
+                    String name = parser.getName();
+                    String value = text != null ? text.trim() : "";
+                    text = null;
+
+                    if (resultDepth >= 0 && name.equals("result")) {
+                        commit(bucket);
+                        resultDepth = -1;
+                    } else if (statisticsDepth >= 0 && name.equals("statistics")) {
+                        statisticsDepth = -1;
+                    } else if (value.length() > 0) {
+                        if (resultDepth >= 0)
+                            resultValue(name, value);
+                        else if (statisticsDepth >= 0)
+                            counterValue(name, value);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void resultValue(String name, String value) {
+        if (name.equals("status")) {
+            read.status = value;
+        } else if (name.equals("symbology")) {
+            read.symbology = value;
+        } else if (name.equals("decode_time")) {
+            read.decodeTimeMs = parseLong(value);
+        } else if (name.endsWith("grade")) {
+            // <overall_grade>B</overall_grade>
+            addGrade(name.equals("grade") ? "overall" : name.substring(0, Math.max(0, name.length() - 6)), value);
+        }
+    }
+
+    private void counterValue(String name, String value) {
+        long integer = parseLong(value);
+        if (integer >= 0) {
+            readerCounters.put(name, integer);
+            return;
+        }
+        try {
+            readerCounters.put(name, Double.parseDouble(value));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void addGrade(String metric, String grade) {
+        int index = gradeIndex(grade);
+        if (index >= 0 && metric.length() > 0)
+            read.grades.put(metric, index);
+    }
+
+    // letter grades, or the numeric 4.0 (A) to 0 (F) form
+    static int gradeIndex(String grade) {
+        String value = grade.trim();
+        if (value.length() == 1) {
+            char letter = Character.toUpperCase(value.charAt(0));
+            if (letter == 'E')
+                return 4;
+            int index = "ABCDF".indexOf(letter);
+            if (index >= 0)
+                return index;
+        }
+        try {
+            double numeric = Double.parseDouble(value);
+            if (numeric < 0 || numeric > 4)
+                return -1;
+            return 4 - (int) Math.floor(numeric + 0.5);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void commit(Bucket bucket) {
+        boolean good = read.status != null ? read.status.toUpperCase().startsWith("GOOD") : read.symbology != null;
+        count(bucket, good);
+        count(total, good);
+    }
+
+    private void count(Bucket bucket, boolean good) {
+        if (good)
+            bucket.goodReads++;
+        else
+            bucket.noReads++;
+
+        if (read.symbology != null)
+            counts(bucket.symbologies, read.symbology, 2)[good ? 0 : 1]++;
+
+        for (Map.Entry<String, Integer> grade : read.grades.entrySet())
+            counts(bucket.grades, grade.getKey(), GRADES.length)[grade.getValue()]++;
+
+        if (read.decodeTimeMs >= 0)
+            bucket.decodeTime.recordMicros(read.decodeTimeMs * 1000);
+    }
+
+    private static long[] counts(Map<String, long[]> map, String key, int size) {
+        long[] counts = map.get(key);
+        if (counts == null) {
+            counts = new long[size];
+            map.put(key, counts);
+        }
+        return counts;
+    }
+
+    private static long parseLong(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9' || i >= 18)
+                return -1;
+        }
+        return value.length() == 0 ? -1 : Long.parseLong(value);
+    }
+
+    public synchronized void reset() {
+        for (Bucket bucket : buckets)
+            bucket.clear(-1);
+        total.clear(0);
+        readerCounters.clear();
+        parsed = 0;
+        parseErrors = 0;
+    }
+
+    /**
+     * @param windowMs rounded up to whole buckets, capped at getMaxWindowMs()
+     */
+    public synchronized JSONObject getStats(long windowMs) throws JSONException {
+        long now = System.currentTimeMillis();
+        long windowStart = now - now % bucketMs - (Math.min(Math.max(windowMs, 1), getMaxWindowMs()) - 1) / bucketMs * bucketMs;
+
+        Bucket window = new Bucket();
+        for (Bucket bucket : buckets) {
+            if (bucket.start >= windowStart)
+                window.add(bucket);
+        }
+
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, Number> counter : readerCounters.entrySet())
+            counters.put(counter.getKey(), counter.getValue());
+
+        JSONObject stats = new JSONObject();
+        stats.put("windowMs", now - windowStart);
+        stats.put("window", toJson(window));
+        stats.put("total", toJson(total));
+        stats.put("reader", counters);
+        stats.put("parsed", parsed);
+        stats.put("parseErrors", parseErrors);
+        return stats;
+    }
+
+    private static JSONObject toJson(Bucket bucket) throws JSONException {
+        JSONObject symbologies = new JSONObject();
+        for (Map.Entry<String, long[]> symbology : bucket.symbologies.entrySet()) {
+            long[] counts = symbology.getValue();
+            JSONObject json = new JSONObject();
+            json.put("goodReads", counts[0]);
+            json.put("noReads", counts[1]);
+            json.put("readRate", rate(counts[0], counts[1]));
+            symbologies.put(symbology.getKey(), json);
+        }
+
+        JSONObject grades = new JSONObject();
+        for (Map.Entry<String, long[]> metric : bucket.grades.entrySet()) {
+            JSONObject json = new JSONObject();
+            for (int i = 0; i < GRADES.length; i++)
+                json.put(GRADES[i], metric.getValue()[i]);
+            grades.put(metric.getKey(), json);
+        }
+
+        LatencyHistogram decodeTime = bucket.decodeTime;
+        JSONObject decode = new JSONObject();
+        decode.put("count", decodeTime.getCount());
+        decode.put("mean", decodeTime.getMeanMicros() / 1000.0);
+        decode.put("p50", decodeTime.getPercentileMicros(50) / 1000.0);
+        decode.put("p90", decodeTime.getPercentileMicros(90) / 1000.0);
+        decode.put("p99", decodeTime.getPercentileMicros(99) / 1000.0);
+        decode.put("max", decodeTime.getMaxMicros() / 1000.0);
+
+        JSONObject json = new JSONObject();
+        json.put("goodReads", bucket.goodReads);
+        json.put("noReads", bucket.noReads);
+        json.put("readRate", rate(bucket.goodReads, bucket.noReads));
+        json.put("decodeTimeMs", decode);
+        json.put("symbologies", symbologies);
+        json.put("grades", grades);
+        return json;
+    }
+
+    private static double rate(long good, long noReads) {
+        long reads = good + noReads;
+        return reads == 0 ? 0 : (double) good / reads;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cognex.cmb.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ScanResult read back from a session recording.
+ */
+public class RecordedResult implements ScanResult {
+
+    boolean goodRead;
+    int symbologyOrdinal = -1;
+    String symbologyName;
+    String readString;
+    String xml;
+    String imageGraphics;
+    String parsedText;
+    String parsedJSON;
+    boolean gs1;
+    byte[] image;
+
+    @Override
+    public boolean isGoodRead() {
+        return goodRead;
+    }
+
+    @Override
+    public int getSymbologyOrdinal() {
+        return symbologyOrdinal;
+    }
+
+    @Override
+    public String getSymbologyName() {
+        return symbologyName;
+    }
+
+    @Override
+    public String getReadString() {
+        return readString;
+    }
+
+    @Override
+    public String getXml() {
+        return xml;
+    }
+
+    @Override
+    public String getImageGraphics() {
+        return imageGraphics;
+    }
+
+    @Override
+    public String getParsedText() {
+        return parsedText;
+    }
+
+    @Override
+    public String getParsedJSON() {
+        return parsedJSON;
+    }
+
+    @Override
+    public boolean isGS1() {
+        return gs1;
+    }
+
+    @Override
+    public boolean hasImage() {
+        return image != null;
+    }
+
+    @Override
+    public void writeImage(OutputStream out) throws IOException {
+        out.write(image);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per thread storage the result path serializes into: the JSON text and the PNG of an image result.
+ * Both grow to what the results need and are reused for the next one, so a steady stream of results
+ * allocates nothing but the final message String.
+ *
+ * Size adaptive: after one unusually large result (a full resolution image) the buffers are trimmed back
+ * once the typical size is far below their capacity, instead of holding megabytes per thread for good.
+ */
+public final class ResultBuffers {
+
+    private static final int INITIAL_JSON = 4096;
+    private static final int INITIAL_IMAGE = 16 * 1024;
+    // trimmed when over TRIM_FACTOR times the typical size and over TRIM_MIN
+    private static final int TRIM_FACTOR = 4;
+    private static final int TRIM_MIN = 256 * 1024;
+    private static final double DECAY = 0.9;
+
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+    private static final AtomicLong grows = new AtomicLong();
+    private static final AtomicLong trims = new AtomicLong();
+
+    private static final ThreadLocal<ResultBuffers> BUFFERS = new ThreadLocal<ResultBuffers>() {
+        @Override
+        protected ResultBuffers initialValue() {
+            return new ResultBuffers();
+        }
+    };
+
+    // exposes the array, toByteArray would copy it
+    static final class ImageStream extends ByteArrayOutputStream {
+        ImageStream(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void trim(int size) {
+            buf = new byte[size];
+            count = 0;
+        }
+    }
+
+    private final StringBuilder text = new StringBuilder(INITIAL_JSON);
+    public final JsonWriter json = new JsonWriter(text);
+    final ImageStream image = new ImageStream(INITIAL_IMAGE);
+
+    // typical sizes, decayed over the results
+    private double typicalJson = INITIAL_JSON;
+    private double typicalImage = INITIAL_IMAGE;
+    private int largestImage;
+    private int jsonCapacity = INITIAL_JSON;
+    private int imageCapacity = INITIAL_IMAGE;
+
+    private ResultBuffers() {
+        json.buffers = this;
+        allocatedBytes.addAndGet(INITIAL_JSON * 2 + INITIAL_IMAGE);
+    }
+
+    /**
+     * The calling thread's buffers, emptied. Call release when the message has been taken out of them.
+     */
+    public static ResultBuffers get() {
+        ResultBuffers buffers = BUFFERS.get();
+        buffers.json.reset();
+        buffers.largestImage = 0;
+        return buffers;
+    }
+
+    // called by the encoder after each image, a result can carry several
+    void onImageWritten(int size) {
+        largestImage = Math.max(largestImage, size);
+    }
+
+    public void release() {
+        int jsonUsed = text.length();
+        typicalJson = typicalJson * DECAY + jsonUsed * (1 - DECAY);
+        if (largestImage > 0)
+            typicalImage = typicalImage * DECAY + largestImage * (1 - DECAY);
+
+        if (text.capacity() > jsonCapacity) {
+            grows.incrementAndGet();
+            allocatedBytes.addAndGet((text.capacity() - jsonCapacity) * 2L);
+        }
+        if (image.capacity() > imageCapacity) {
+            grows.incrementAndGet();
+            allocatedBytes.addAndGet(image.capacity() - imageCapacity);
+        }
+
+        int jsonTarget = trimTarget(text.capacity(), typicalJson, INITIAL_JSON);
+        if (jsonTarget > 0) {
+            text.setLength(0);
+            text.trimToSize();
+            text.ensureCapacity(jsonTarget);
+            trims.incrementAndGet();
+            allocatedBytes.addAndGet(jsonTarget * 2L);
+        }
+        int imageTarget = trimTarget(image.capacity(), typicalImage, INITIAL_IMAGE);
+        if (imageTarget > 0) {
+            image.trim(imageTarget);
+            trims.incrementAndGet();
+            allocatedBytes.addAndGet(imageTarget);
+        }
+
+        json.reset();
+        image.reset();
+        jsonCapacity = text.capacity();
+        imageCapacity = image.capacity();
+    }
+
+    // 0 keeps the capacity, room for twice the typical size otherwise
+    private static int trimTarget(int capacity, double typical, int initial) {
+        if (capacity <= TRIM_MIN || capacity <= typical * TRIM_FACTOR)
+            return 0;
+        return Math.max(initial, (int) (typical * 2));
+    }
+
+    /**
+     * {allocatedBytes, grows, trims}, over every thread since the process started
+     */
+    public static JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("allocatedBytes", allocatedBytes.get());
+        stats.put("grows", grows.get());
+        stats.put("trims", trims.get());
+        return stats;
+    }
+}
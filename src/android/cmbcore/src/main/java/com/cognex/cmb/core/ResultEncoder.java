@@ -0,0 +1,221 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Shapes decoded results into the JSON handed to the JS side, streamed into a JsonWriter.
+ * The JSONObject methods parse the same text back, for callers off the result path.
+ * Subclasses can override writeItem to wrap each result (tracing, counters) without touching the layout.
+ */
+public class ResultEncoder {
+
+    public enum Geometry {
+        // the image graphics SVG as the reader sent it
+        SVG,
+        // code corners in image pixels
+        IMAGE,
+        // code corners as fractions of the image
+        NORMALIZED
+    }
+
+    private volatile FieldExtractor fieldExtractor;
+    private volatile boolean includeXml = true;
+    private volatile boolean includeImageGraphics = true;
+    private volatile Geometry geometry = Geometry.SVG;
+
+    // adds the extracted "fields" to every good read, null turns extraction off
+    public void setFieldExtractor(FieldExtractor fieldExtractor) {
+        this.fieldExtractor = fieldExtractor;
+    }
+
+    public FieldExtractor getFieldExtractor() {
+        return fieldExtractor;
+    }
+
+    // leaves the scan and result XML out, for when it is only consumed natively
+    public void setIncludeXml(boolean includeXml) {
+        this.includeXml = includeXml;
+    }
+
+    public boolean isIncludeXml() {
+        return includeXml;
+    }
+
+    // leaves the image graphics out, for when they are only enabled for native use
+    public void setIncludeImageGraphics(boolean includeImageGraphics) {
+        this.includeImageGraphics = includeImageGraphics;
+    }
+
+    public boolean isIncludeImageGraphics() {
+        return includeImageGraphics;
+    }
+
+    // image graphics go out as "geometry", a few numbers per code, instead of the SVG
+    public void setGeometry(Geometry geometry) {
+        this.geometry = geometry;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @param main first result of the scan, null when the reader returned none
+     * @param subResults may be null, each sub result shows up in both readResults and subReadResults
+     */
+    public JSONObject encodeResults(String xml, ScanResult main, List<? extends ScanResult> subResults) throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginObject();
+        writeResults(json, xml, main, subResults);
+        json.endObject();
+        return new JSONObject(json.toString());
+    }
+
+    public JSONObject encodeItem(ScanResult result) throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        writeItem(json, result);
+        return new JSONObject(json.toString());
+    }
+
+    public JSONObject encode(ScanResult result) throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        write(json, result);
+        return new JSONObject(json.toString());
+    }
+
+    /**
+     * Writes the xml, readResults and subReadResults fields into the object the writer is in,
+     * the caller adds its own fields around them.
+     */
+    public void writeResults(JsonWriter json, String xml, ScanResult main, List<? extends ScanResult> subResults) throws JSONException {
+        if (includeXml && xml != null)
+            json.name("xml").value(xml);
+
+        int subCount = subResults != null ? subResults.size() : 0;
+        // where each sub result starts and ends in readResults, subReadResults copies the text
+        int[] bounds = subCount > 0 ? new int[subCount * 2] : null;
+
+        json.name("readResults").beginArray();
+        if (main != null)
+            writeItem(json, main);
+        for (int i = 0; i < subCount; i++) {
+            // the separator goes in before the value, the copy starts after it
+            int start = json.length() + (main != null || i > 0 ? 1 : 0);
+            writeItem(json, subResults.get(i));
+            bounds[i * 2] = start;
+            bounds[i * 2 + 1] = json.length();
+        }
+        json.endArray();
+
+        json.name("subReadResults").beginArray();
+        for (int i = 0; i < subCount; i++)
+            json.copyValue(bounds[i * 2], bounds[i * 2 + 1]);
+        json.endArray();
+    }
+
+    public void writeItem(JsonWriter json, ScanResult result) throws JSONException {
+        write(json, result);
+    }
+
+    public void write(JsonWriter json, ScanResult result) throws JSONException {
+        json.beginObject();
+
+        if (result.isGoodRead()) {
+            if (result.getSymbologyOrdinal() >= 0) {
+                json.name("symbology").value(result.getSymbologyOrdinal());
+                json.name("symbologyString").value(result.getSymbologyName());
+            }
+            if (result.getReadString() != null)
+                json.name("readString").value(result.getReadString());
+        } else {
+            json.name("symbology").value(-1);
+            json.name("symbologyString").value("NO READ");
+            json.name("readString").value("");
+        }
+
+        json.name("goodRead").value(result.isGoodRead());
+
+        if (includeXml && result.getXml() != null)
+            json.name("xml").value(result.getXml());
+
+        String imageGraphics = includeImageGraphics ? result.getImageGraphics() : null;
+        if (imageGraphics != null) {
+            Geometry mode = geometry;
+            if (mode == Geometry.SVG) {
+                json.name("imageGraphics").value(stripSvgTitle(imageGraphics));
+            } else {
+                SvgGeometry outlines = SvgGeometry.parse(imageGraphics);
+                if (outlines != null) {
+                    json.name("geometry");
+                    outlines.write(json, mode == Geometry.NORMALIZED);
+                }
+            }
+        }
+
+        if (result.hasImage())
+            writeImage(json, result);
+
+        FieldExtractor extractor = fieldExtractor;
+        if (extractor == null || !extractor.dropsParsed()) {
+            if (result.getParsedText() != null)
+                json.name("parsedText").value(result.getParsedText());
+
+            if (result.getParsedJSON() != null)
+                json.name("parsedJSON").value(result.getParsedJSON());
+        }
+
+        if (extractor != null) {
+            JSONObject fields = extractor.extract(result);
+            if (fields != null)
+                json.name("fields").rawValue(fields.toString());
+        }
+
+        json.name("isGS1").value(result.isGS1());
+        json.endObject();
+    }
+
+    // MX readers put a <title> block before the first group, the JS side doesn't expect it
+    static String stripSvgTitle(String svg) {
+        int title = svg.indexOf("<title");
+        if (title <= 0)
+            return svg;
+
+        int group = svg.indexOf("<g", title);
+        if (group < 0)
+            return svg;
+
+        return svg.substring(0, title) + svg.substring(group);
+    }
+
+    // On the result path the PNG goes into the thread's pooled stream and is Base64 encoded from there, no copy of it is made.
+    // A standalone writer (the JSONObject methods) gets a stream of its own, so a full resolution image encoded
+    // on some pool thread doesn't stay allocated with it: only the result path releases the pooled one
+    private static void writeImage(JsonWriter json, ScanResult result) {
+        ResultBuffers buffers = json.buffers;
+        if (buffers == null) {
+            ResultBuffers.ImageStream out = new ResultBuffers.ImageStream(16 * 1024);
+            try {
+                result.writeImage(out);
+            } catch (IOException e) {
+                return;
+            }
+            json.name("image").base64Value(out.array(), 0, out.size());
+            return;
+        }
+
+        ResultBuffers.ImageStream out = buffers.image;
+        out.reset();
+        try {
+            result.writeImage(out);
+        } catch (IOException e) {
+            return;
+        }
+        buffers.onImageWritten(out.size());
+        json.name("image").base64Value(out.array(), 0, out.size());
+        out.reset();
+    }
+}
@@ -0,0 +1,206 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Validation rules compiled once and applied to every good read before it is serialized.
+ * A rule accepts a read when all of its conditions hold, a read passes when any rule accepts it.
+ * Conditions are checked cheapest first: symbology, length, pattern, then the GS1 element string.
+ *
+ * rule: {name, symbologies: [ordinal...], minLength, maxLength, pattern, requiredAIs: ["01", "17"...], validGS1}
+ * pattern is searched for in the readString, anchor it with ^ and $ to match the whole string.
+ */
+public class ResultFilter {
+
+    public static final String REASON_SYMBOLOGY = "symbology";
+    public static final String REASON_LENGTH = "length";
+    public static final String REASON_PATTERN = "pattern";
+    public static final String REASON_GS1 = "gs1";
+
+    static final class Rule {
+        final String name;
+        BitSet symbologies;
+        int minLength = 0;
+        int maxLength = Integer.MAX_VALUE;
+        Pattern pattern;
+        String[] requiredAIs;
+        boolean validGS1 = false;
+
+        final AtomicLong accepted = new AtomicLong();
+        final AtomicLong symbologyRejects = new AtomicLong();
+        final AtomicLong lengthRejects = new AtomicLong();
+        final AtomicLong patternRejects = new AtomicLong();
+        final AtomicLong gs1Rejects = new AtomicLong();
+
+        Rule(String name) {
+            this.name = name;
+        }
+
+        boolean needsGs1() {
+            return validGS1 || requiredAIs != null;
+        }
+
+        // returns the reason of the first failed condition, null when the read is accepted
+        String check(ScanResult result, String readString, Gs1Parser.Result gs1) {
+            int symbology = result.getSymbologyOrdinal();
+            if (symbologies != null && (symbology < 0 || !symbologies.get(symbology)))
+                return REASON_SYMBOLOGY;
+
+            int length = readString.length();
+            if (length < minLength || length > maxLength)
+                return REASON_LENGTH;
+
+            if (pattern != null && !pattern.matcher(readString).find())
+                return REASON_PATTERN;
+
+            if (gs1 != null) {
+                if (validGS1 && !gs1.valid)
+                    return REASON_GS1;
+                if (requiredAIs != null) {
+                    for (String ai : requiredAIs) {
+                        if (!gs1.elements.containsKey(ai))
+                            return REASON_GS1;
+                    }
+                }
+            }
+            return null;
+        }
+
+        void countReject(String reason) {
+            switch (reason) {
+                case REASON_SYMBOLOGY:
+                    symbologyRejects.incrementAndGet();
+                    break;
+                case REASON_LENGTH:
+                    lengthRejects.incrementAndGet();
+                    break;
+                case REASON_PATTERN:
+                    patternRejects.incrementAndGet();
+                    break;
+                default:
+                    gs1Rejects.incrementAndGet();
+                    break;
+            }
+        }
+    }
+
+    private final Rule[] rules;
+    private final boolean needsGs1;
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ResultFilter(Rule[] rules) {
+        this.rules = rules;
+
+        boolean gs1 = false;
+        for (Rule rule : rules)
+            gs1 |= rule.needsGs1();
+        this.needsGs1 = gs1;
+    }
+
+    /**
+     * @throws JSONException on a malformed rule, including an invalid pattern
+     */
+    public static ResultFilter compile(JSONArray json) throws JSONException {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; json != null && i < json.length(); i++) {
+            JSONObject definition = json.getJSONObject(i);
+            Rule rule = new Rule(definition.optString("name", "rule" + i));
+
+            JSONArray symbologies = definition.optJSONArray("symbologies");
+            if (symbologies != null) {
+                rule.symbologies = new BitSet();
+                for (int s = 0; s < symbologies.length(); s++)
+                    rule.symbologies.set(symbologies.getInt(s));
+            }
+
+            rule.minLength = Math.max(0, definition.optInt("minLength", 0));
+            rule.maxLength = definition.optInt("maxLength", Integer.MAX_VALUE);
+
+            String pattern = definition.optString("pattern", "");
+            if (pattern.length() > 0) {
+                try {
+                    rule.pattern = Pattern.compile(pattern);
+                } catch (RuntimeException e) {
+                    throw new JSONException("Invalid pattern in " + rule.name + ": " + e.getMessage());
+                }
+            }
+
+            JSONArray requiredAIs = definition.optJSONArray("requiredAIs");
+            if (requiredAIs != null) {
+                rule.requiredAIs = new String[requiredAIs.length()];
+                for (int a = 0; a < requiredAIs.length(); a++)
+                    rule.requiredAIs[a] = requiredAIs.getString(a);
+            }
+            rule.validGS1 = definition.optBoolean("validGS1", false);
+
+            rules.add(rule);
+        }
+        return new ResultFilter(rules.toArray(new Rule[0]));
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * No reads always pass, they carry nothing to validate.
+     */
+    public boolean accept(ScanResult result) {
+        if (rules.length == 0 || !result.isGoodRead())
+            return true;
+
+        String readString = result.getReadString() != null ? result.getReadString() : "";
+        Gs1Parser.Result gs1 = needsGs1 ? Gs1Parser.parse(readString) : null;
+
+        String[] reasons = null;
+        for (int i = 0; i < rules.length; i++) {
+            String reason = rules[i].check(result, readString, gs1);
+            if (reason == null) {
+                rules[i].accepted.incrementAndGet();
+                passed.incrementAndGet();
+                return true;
+            }
+            if (reasons == null)
+                reasons = new String[rules.length];
+            reasons[i] = reason;
+        }
+
+        // only counted once no rule took the read
+        for (int i = 0; i < rules.length; i++)
+            rules[i].countReject(reasons[i]);
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONArray ruleStats = new JSONArray();
+        for (Rule rule : rules) {
+            JSONObject reasons = new JSONObject();
+            reasons.put(REASON_SYMBOLOGY, rule.symbologyRejects.get());
+            reasons.put(REASON_LENGTH, rule.lengthRejects.get());
+            reasons.put(REASON_PATTERN, rule.patternRejects.get());
+            reasons.put(REASON_GS1, rule.gs1Rejects.get());
+
+            JSONObject stats = new JSONObject();
+            stats.put("name", rule.name);
+            stats.put("accepted", rule.accepted.get());
+            stats.put("rejected", reasons);
+            ruleStats.put(stats);
+        }
+
+        JSONObject stats = new JSONObject();
+        stats.put("passed", passed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("rules", ruleStats);
+        return stats;
+    }
+}
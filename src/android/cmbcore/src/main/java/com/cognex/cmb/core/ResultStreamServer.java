@@ -0,0 +1,472 @@
+package com.cognex.cmb.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal WebSocket (RFC 6455) server on 127.0.0.1 that pushes scan results straight to the WebView,
+ * next to the Cordova exec queue instead of through it.
+ *
+ * Clients connect to ws://127.0.0.1:port/results?token=...&format=json|binary, the token is random per server
+ * and anything without it is refused before the upgrade. Every client has a bounded queue drained by its own
+ * writer thread: when a slow client lets it fill up, the oldest queued result is dropped and counted,
+ * the scanner never waits on a consumer. At most MAX_CONNECTIONS sockets are served at once, further ones
+ * are closed right away and counted as rejected.
+ */
+public class ResultStreamServer implements Closeable {
+
+    public static final String PATH = "/results";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    // client frames are tiny (close, ping), anything bigger is a misbehaving client
+    private static final int MAX_CLIENT_FRAME = 4096;
+
+    // the page needs one or two sockets, every connection holds a reader and a writer thread
+    private static final int MAX_CONNECTIONS = 4;
+
+    private final String token;
+    private final int queueCapacity;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ServerSocket serverSocket;
+
+    public ResultStreamServer(int queueCapacity) {
+        this.token = randomToken();
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * @return the bound port, pass 0 for any free port
+     */
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket != null)
+            return serverSocket.getLocalPort();
+
+        serverSocket = new ServerSocket(port, 8, InetAddress.getByName("127.0.0.1"));
+        final ServerSocket listening = serverSocket;
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop(listening);
+            }
+        }, "cmb-stream-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    public String getUrl() {
+        return "ws://127.0.0.1:" + getPort() + PATH + "?token=" + token;
+    }
+
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Queues one result for every connected client.
+     * @return false when nobody is connected, the caller should fall back to the regular callback
+     */
+    public boolean publish(String json) {
+        if (clients.isEmpty())
+            return false;
+
+        byte[] payload = json.getBytes(UTF8);
+        boolean queued = false;
+        for (Client client : clients)
+            queued |= client.offer(payload);
+
+        if (queued)
+            published.incrementAndGet();
+        return queued;
+    }
+
+    @Override
+    public void close() {
+        ServerSocket listening;
+        synchronized (this) {
+            listening = serverSocket;
+            serverSocket = null;
+        }
+
+        if (listening != null) {
+            try {
+                listening.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        for (Client client : clients)
+            client.close();
+        clients.clear();
+    }
+
+    private void acceptLoop(ServerSocket listening) {
+        while (!listening.isClosed()) {
+            final Socket socket;
+            try {
+                socket = listening.accept();
+            } catch (IOException e) {
+                return;
+            }
+
+            // handshakes in progress count too, past the cap the socket is closed without a thread
+            if (connections.incrementAndGet() > MAX_CONNECTIONS) {
+                connections.decrementAndGet();
+                rejected.incrementAndGet();
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                continue;
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } finally {
+                        connections.decrementAndGet();
+                    }
+                }
+            }, "cmb-stream-read");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        Client client = null;
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            boolean binary = handshake(in, out);
+            socket.setSoTimeout(0);
+
+            client = new Client(socket, out, binary ? OPCODE_BINARY : OPCODE_TEXT);
+            clients.add(client);
+            client.startWriter();
+            client.readLoop(in);
+        } catch (IOException ignored) {
+        } finally {
+            if (client != null) {
+                clients.remove(client);
+                client.close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // returns whether the client asked for binary frames
+    private boolean handshake(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readHttpLine(in);
+        String key = null;
+        String line;
+        while ((line = readHttpLine(in)).length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key"))
+                key = line.substring(colon + 1).trim();
+        }
+
+        String[] parts = requestLine.split(" ");
+        String target = parts.length > 1 ? parts[1] : "";
+        String path = target;
+        String query = "";
+        int question = target.indexOf('?');
+        if (question >= 0) {
+            path = target.substring(0, question);
+            query = target.substring(question + 1);
+        }
+
+        if (key == null || !PATH.equals(path) || !tokenMatches(queryParameter(query, "token"))) {
+            rejected.incrementAndGet();
+            out.write("HTTP/1.1 403 Forbidden\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(ASCII));
+            out.flush();
+            throw new IOException("stream client refused");
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(ASCII));
+        out.flush();
+
+        return "binary".equals(queryParameter(query, "format"));
+    }
+
+    private final class Client {
+        private final Socket socket;
+        private final OutputStream out;
+        private final int opcode;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private boolean closed = false;
+
+        Client(Socket socket, OutputStream out, int opcode) {
+            this.socket = socket;
+            this.out = out;
+            this.opcode = opcode;
+        }
+
+        synchronized boolean offer(byte[] payload) {
+            if (closed)
+                return false;
+
+            if (queue.size() >= queueCapacity) {
+                queue.pollFirst();
+                dropped.incrementAndGet();
+            }
+            queue.addLast(payload);
+            notifyAll();
+            return true;
+        }
+
+        void startWriter() {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "cmb-stream-write");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    byte[] payload;
+                    boolean more;
+                    synchronized (this) {
+                        while (queue.isEmpty() && !closed)
+                            wait();
+                        if (closed)
+                            return;
+                        payload = queue.pollFirst();
+                        more = !queue.isEmpty();
+                    }
+
+                    writeFrame(opcode, payload, payload.length);
+                    sent.incrementAndGet();
+                    bytesSent.addAndGet(payload.length);
+
+                    // coalesce a burst into one flush
+                    if (!more)
+                        flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+            } finally {
+                close();
+            }
+        }
+
+        void readLoop(InputStream in) throws IOException {
+            while (true) {
+                int first = in.read();
+                int second = in.read();
+                if (first < 0 || second < 0)
+                    return;
+
+                int frameOpcode = first & 0x0f;
+                boolean masked = (second & 0x80) != 0;
+                long length = second & 0x7f;
+                if (length == 126) {
+                    length = (in.read() << 8) | in.read();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++)
+                        length = (length << 8) | in.read();
+                }
+                if (length < 0 || length > MAX_CLIENT_FRAME)
+                    return;
+
+                byte[] mask = masked ? DmccProtocol.readFully(in, 4) : null;
+                byte[] buffer = DmccProtocol.readFully(in, (int) length);
+                if (mask != null) {
+                    for (int i = 0; i < buffer.length; i++)
+                        buffer[i] ^= mask[i & 3];
+                }
+
+                if (frameOpcode == OPCODE_CLOSE) {
+                    writeFrame(OPCODE_CLOSE, buffer, Math.min(buffer.length, 2));
+                    flush();
+                    return;
+                } else if (frameOpcode == OPCODE_PING) {
+                    writeFrame(OPCODE_PONG, buffer, buffer.length);
+                    flush();
+                }
+                // text, binary and pong frames from the page are ignored
+            }
+        }
+
+        // the writer thread and the control replies share the stream, a frame is always written whole
+        private void writeFrame(int frameOpcode, byte[] payload, int length) throws IOException {
+            synchronized (out) {
+                out.write(0x80 | frameOpcode);
+                if (length < 126) {
+                    out.write(length);
+                } else if (length <= 0xffff) {
+                    out.write(126);
+                    out.write(length >>> 8);
+                    out.write(length);
+                } else {
+                    out.write(127);
+                    for (int shift = 56; shift >= 0; shift -= 8)
+                        out.write((int) ((long) length >>> shift));
+                }
+                out.write(payload, 0, length);
+            }
+        }
+
+        private void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+
+        synchronized void close() {
+            if (closed)
+                return;
+            closed = true;
+            dropped.addAndGet(queue.size());
+            queue.clear();
+            notifyAll();
+
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String readHttpLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0)
+                throw new IOException("connection closed during the handshake");
+            if (b != '\r')
+                line.append((char) b);
+            if (line.length() > 8192)
+                throw new IOException("handshake line too long");
+        }
+        return line.toString();
+    }
+
+    // constant time, the comparison must not tell how many leading characters were right
+    private boolean tokenMatches(String supplied) {
+        return supplied != null && MessageDigest.isEqual(token.getBytes(UTF8), supplied.getBytes(UTF8));
+    }
+
+    private static String queryParameter(String query, String name) {
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                try {
+                    return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(ASCII));
+            return Base64Encoder.encode(digest).trim();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String randomToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes)
+            token.append(String.format(Locale.US, "%02x", b & 0xff));
+        return token.toString();
+    }
+}
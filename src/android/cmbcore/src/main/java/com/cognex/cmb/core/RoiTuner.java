@@ -0,0 +1,207 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Derives a decode region of interest from where barcodes actually show up in the frame.
+ * Operators present labels in roughly the same spot, decoding the whole frame spends most of the time on background.
+ *
+ * Locations are the bounds of the code outlines in the result's image graphics, normalized to the frame.
+ * Once minSamples reads were seen the ROI becomes the trimmed range of the recent bounds plus a margin,
+ * recomputed every few reads. A streak of no reads widens it step by step until it covers the whole frame again.
+ * Trigger to result latency is recorded separately for the full frame and for a tuned ROI.
+ */
+public class RoiTuner {
+
+    public interface Listener {
+        /**
+         * @param left top width height in percent of the frame
+         */
+        void onRoiChanged(float left, float top, float width, float height);
+    }
+
+    private static final float[] FULL_FRAME = {0, 0, 1, 1};
+
+    private final int minSamples;
+    private final int recomputeEvery;
+    private final float margin;
+    private final float trim;
+    private final float minSize;
+    private final int missStreak;
+    private final Listener listener;
+
+    // bounds of the recent reads, minX minY maxX maxY
+    private final float[][] samples;
+    private int sampleHead;
+    private int sampleCount;
+    private int samplesSinceChange;
+
+    private float[] roi = FULL_FRAME.clone();
+    private int misses;
+    private long tightenings;
+    private long widenings;
+
+    private final LatencyHistogram fullFrameLatency = new LatencyHistogram();
+    private final LatencyHistogram roiLatency = new LatencyHistogram();
+
+    /**
+     * @param margin added around the observed range, fraction of the frame
+     * @param trim fraction of the outlying bounds ignored on each side
+     * @param minSize smallest ROI side, fraction of the frame
+     * @param missStreak consecutive no reads that widen the ROI
+     */
+    public RoiTuner(int sampleSize, int minSamples, int recomputeEvery, float margin, float trim, float minSize, int missStreak, Listener listener) {
+        this.samples = new float[Math.max(1, sampleSize)][];
+        this.minSamples = Math.max(1, Math.min(minSamples, this.samples.length));
+        this.recomputeEvery = Math.max(1, recomputeEvery);
+        this.margin = clamp(margin, 0, 0.5f);
+        this.trim = clamp(trim, 0, 0.25f);
+        this.minSize = clamp(minSize, 0.05f, 1);
+        this.missStreak = Math.max(1, missStreak);
+        this.listener = listener;
+    }
+
+    /**
+     * @param svg image graphics of one result, null or without an outline for a no read
+     * @param triggerToResultNanos latency of the scan, negative when it had no trigger
+     */
+    public void onResult(String svg, long triggerToResultNanos) {
+        float[] bounds = svg != null ? boundsFromSvg(svg) : null;
+        onResult(bounds, triggerToResultNanos);
+    }
+
+    void onResult(float[] bounds, long triggerToResultNanos) {
+        float[] changed = null;
+
+        synchronized (this) {
+            if (triggerToResultNanos >= 0)
+                (isFullFrame() ? fullFrameLatency : roiLatency).recordNanos(triggerToResultNanos);
+
+            if (bounds == null) {
+                if (!isFullFrame() && ++misses >= missStreak) {
+                    misses = 0;
+                    changed = widen();
+                }
+            } else {
+                misses = 0;
+                samples[sampleHead] = bounds;
+                sampleHead = (sampleHead + 1) % samples.length;
+                sampleCount = Math.min(sampleCount + 1, samples.length);
+                samplesSinceChange++;
+
+                if (sampleCount >= minSamples && samplesSinceChange >= recomputeEvery)
+                    changed = tighten();
+            }
+        }
+
+        if (changed != null)
+            listener.onRoiChanged(changed[0] * 100, changed[1] * 100, (changed[2] - changed[0]) * 100, (changed[3] - changed[1]) * 100);
+    }
+
+    private float[] tighten() {
+        int n = sampleCount;
+        float[] minX = new float[n];
+        float[] minY = new float[n];
+        float[] maxX = new float[n];
+        float[] maxY = new float[n];
+        for (int i = 0; i < n; i++) {
+            minX[i] = samples[i][0];
+            minY[i] = samples[i][1];
+            maxX[i] = samples[i][2];
+            maxY[i] = samples[i][3];
+        }
+        Arrays.sort(minX);
+        Arrays.sort(minY);
+        Arrays.sort(maxX);
+        Arrays.sort(maxY);
+
+        int low = (int) (n * trim);
+        int high = n - 1 - low;
+        float[] next = {
+                minX[low] - margin,
+                minY[low] - margin,
+                maxX[high] + margin,
+                maxY[high] + margin
+        };
+        fit(next);
+        samplesSinceChange = 0;
+
+        // not worth a reconfiguration
+        if (Math.abs(area(next) - area(roi)) < 0.02f)
+            return null;
+
+        roi = next;
+        tightenings++;
+        return roi;
+    }
+
+    // each side moves out by half the ROI size, until the whole frame is covered
+    private float[] widen() {
+        float growX = (roi[2] - roi[0]) / 2;
+        float growY = (roi[3] - roi[1]) / 2;
+        float[] next = {roi[0] - growX, roi[1] - growY, roi[2] + growX, roi[3] + growY};
+        fit(next);
+
+        roi = next;
+        samplesSinceChange = 0;
+        widenings++;
+        return roi;
+    }
+
+    private void fit(float[] box) {
+        float width = Math.max(box[2] - box[0], minSize);
+        float height = Math.max(box[3] - box[1], minSize);
+        float centerX = (box[0] + box[2]) / 2;
+        float centerY = (box[1] + box[3]) / 2;
+
+        box[0] = clamp(centerX - width / 2, 0, 1 - Math.min(width, 1));
+        box[1] = clamp(centerY - height / 2, 0, 1 - Math.min(height, 1));
+        box[2] = Math.min(1, box[0] + width);
+        box[3] = Math.min(1, box[1] + height);
+    }
+
+    private synchronized boolean isFullFrame() {
+        return area(roi) >= 0.999f;
+    }
+
+    private static float area(float[] box) {
+        return (box[2] - box[0]) * (box[3] - box[1]);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Bounds of all the outlines of an image graphics SVG, normalized to its width and height (or viewBox).
+     * @return minX minY maxX maxY, null when the SVG has no size or no outline
+     */
+    static float[] boundsFromSvg(String svg) {
+        SvgGeometry geometry = SvgGeometry.parse(svg);
+        return geometry != null ? geometry.normalizedBounds() : null;
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject active = new JSONObject();
+        active.put("left", roi[0] * 100);
+        active.put("top", roi[1] * 100);
+        active.put("width", (roi[2] - roi[0]) * 100);
+        active.put("height", (roi[3] - roi[1]) * 100);
+
+        JSONObject latency = new JSONObject();
+        latency.put("fullFrame", fullFrameLatency.toJson());
+        latency.put("roi", roiLatency.toJson());
+
+        JSONObject stats = new JSONObject();
+        stats.put("roi", active);
+        stats.put("fullFrame", isFullFrame());
+        stats.put("samples", sampleCount);
+        stats.put("tightenings", tightenings);
+        stats.put("widenings", widenings);
+        stats.put("latency", latency);
+        return stats;
+    }
+}
@@ -0,0 +1,588 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, on-disk history of decoded codes, split in segment files (see JournalSegment).
+ *
+ * Every entry gets an increasing id and an epoch ms time that never goes backwards, so both can be
+ * binary searched. Sealed segments carry a memory-mapped index sorted by readString for prefix lookups
+ * and a symbology mask to skip whole segments. Queries page through results with the id of the last
+ * entry as cursor.
+ *
+ * All file work runs on one journal thread: appends are queued and return right away, queries and
+ * maintenance wait for their turn. Writes are buffered and fsynced every syncIntervalMs.
+ * compact() drops entries past the retention limits and merges small segments left behind.
+ */
+public class ScanJournal implements Closeable {
+
+    public static final class Page {
+        public final List<JournalEntry> entries;
+        // pass to JournalQuery.setCursor for the next page, -1 when this was the last one
+        public final long nextCursor;
+
+        Page(List<JournalEntry> entries, long nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public JSONObject toJson() throws JSONException {
+            JSONArray jsonEntries = new JSONArray();
+            for (JournalEntry entry : entries)
+                jsonEntries.put(entry.toJson());
+
+            JSONObject json = new JSONObject();
+            json.put("entries", jsonEntries);
+            json.put("nextCursor", nextCursor);
+            return json;
+        }
+    }
+
+    private final File directory;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+    private int maxSegmentEntries = 65536;
+    private long maxSegmentBytes = 16 * 1024 * 1024;
+    private long syncIntervalMs = 1000;
+    private long maxEntries = 0;
+    private long maxAgeMs = 0;
+
+    // touched on the journal thread only
+    private final List<JournalSegment.Sealed> sealed = new ArrayList<>();
+    private JournalSegment.Active active;
+    private long nextId = 1;
+    private long lastTime = 0;
+    private long appended = 0;
+    private volatile IOException failure;
+    // set under the lock work is queued with, nothing is queued on the worker after shutdown
+    private boolean closed;
+
+    public ScanJournal(File directory) {
+        this.directory = directory;
+    }
+
+    public ScanJournal setMaxSegmentEntries(int entries) {
+        this.maxSegmentEntries = Math.max(16, entries);
+        return this;
+    }
+
+    public ScanJournal setSyncIntervalMs(long intervalMs) {
+        this.syncIntervalMs = Math.max(10, intervalMs);
+        return this;
+    }
+
+    /**
+     * Applied by compact(), which also runs every time a segment is sealed. 0 disables a limit.
+     */
+    public ScanJournal setRetention(long maxEntries, long maxAgeMs) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+        return this;
+    }
+
+    /**
+     * Loads the existing segments, rebuilding missing or stale indexes and cutting a torn tail.
+     */
+    public void open() throws IOException {
+        call(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                load();
+                return null;
+            }
+        });
+
+        synchronized (this) {
+            if (closed)
+                throw new IOException("The scan journal is closed");
+            worker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (active != null)
+                            active.sync();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues the good reads of one scan: the sub results when there are some, the main result otherwise.
+     */
+    public void append(int readerHandle, ScanResult main, List<? extends ScanResult> subResults) {
+        final List<JournalEntry> entries = new ArrayList<>(1);
+        if (subResults != null && !subResults.isEmpty()) {
+            for (ScanResult item : subResults) {
+                if (item.isGoodRead())
+                    entries.add(new JournalEntry(readerHandle, item));
+            }
+        } else if (main != null && main.isGoodRead()) {
+            entries.add(new JournalEntry(readerHandle, main));
+        }
+
+        if (entries.isEmpty())
+            return;
+
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            // the scan arrived while the journal was being closed, it isn't journaled
+            if (closed)
+                return;
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (JournalEntry entry : entries)
+                            appendEntry(entry, now);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            });
+        }
+    }
+
+    public Page query(final JournalQuery query) throws IOException {
+        return call(new Callable<Page>() {
+            @Override
+            public Page call() throws IOException {
+                return runQuery(query);
+            }
+        });
+    }
+
+    /**
+     * Number of entries matching the query, cursor and limit aside. Only reads the indexes,
+     * except for exact readString matches which are counted like prefix matches.
+     */
+    public long count(final JournalQuery query) throws IOException {
+        return call(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return countMatches(query);
+            }
+        });
+    }
+
+    public void compact() throws IOException {
+        call(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                runCompaction();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes every entry.
+     */
+    public void clear() throws IOException {
+        call(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (JournalSegment segment : allSegments())
+                    delete(segment);
+                sealed.clear();
+                active = null;
+                return null;
+            }
+        });
+    }
+
+    public JSONObject getStats() throws IOException {
+        return call(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                long entries = 0;
+                long bytes = 0;
+                List<JournalSegment> segments = allSegments();
+                for (JournalSegment segment : segments) {
+                    entries += segment.count();
+                    bytes += segment.file.length() + JournalSegment.indexFile(segment.file).length();
+                }
+                if (active != null)
+                    bytes += active.length() - active.file.length();
+
+                JSONObject stats = new JSONObject();
+                stats.put("entries", entries);
+                stats.put("segments", segments.size());
+                stats.put("bytes", bytes);
+                stats.put("appended", appended);
+                if (!segments.isEmpty()) {
+                    JournalSegment first = segments.get(0);
+                    JournalSegment last = segments.get(segments.size() - 1);
+                    stats.put("oldestTime", first.time(0));
+                    stats.put("newestTime", last.time(last.count() - 1));
+                }
+                if (failure != null)
+                    stats.put("error", failure.getMessage());
+                return stats;
+            }
+        });
+    }
+
+    /**
+     * Writes and fsyncs what is queued, then releases the files.
+     */
+    @Override
+    public void close() throws IOException {
+        Future<Void> flushed;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            flushed = worker.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (active != null)
+                        active.sync();
+                    for (JournalSegment segment : allSegments())
+                        segment.close();
+                    return null;
+                }
+            });
+            worker.shutdown();
+        }
+        await(flushed);
+
+        if (failure != null)
+            throw failure;
+    }
+
+    // a closed journal fails the call with an IOException like any other journal error
+    private <T> T call(Callable<T> task) throws IOException {
+        Future<T> future;
+        synchronized (this) {
+            if (closed)
+                throw new IOException("The scan journal is closed");
+            future = worker.submit(task);
+        }
+        return await(future);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the journal");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Cannot list " + directory);
+        Arrays.sort(files);
+
+        List<File> segmentFiles = new ArrayList<>();
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(JournalSegment.TEMP_SUFFIX)) {
+                // an interrupted seal or compaction
+                file.delete();
+            } else if (fileName.endsWith(JournalSegment.SEGMENT_SUFFIX) && JournalSegment.parseName(file) >= 0) {
+                segmentFiles.add(file);
+            }
+        }
+
+        long lastId = 0;
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            File file = segmentFiles.get(i);
+            long name = JournalSegment.parseName(file);
+            boolean last = i == segmentFiles.size() - 1;
+
+            JournalSegment segment = null;
+            File index = JournalSegment.indexFile(file);
+            if (index.exists()) {
+                try {
+                    segment = new JournalSegment.Sealed(file, name, index);
+                } catch (IOException e) {
+                    index.delete();
+                }
+            }
+            if (segment == null) {
+                JournalSegment.Active recovered = new JournalSegment.Active(file, name);
+                if (recovered.count() == 0) {
+                    recovered.close();
+                    file.delete();
+                    continue;
+                }
+                segment = (last && recovered.count() < maxSegmentEntries) ? recovered : recovered.seal();
+            }
+
+            // leftovers of a compaction that stopped before deleting its sources
+            if (segment.firstId() <= lastId) {
+                delete(segment);
+                continue;
+            }
+
+            lastId = segment.lastId();
+            lastTime = Math.max(lastTime, segment.time(segment.count() - 1));
+            if (segment instanceof JournalSegment.Active)
+                active = (JournalSegment.Active) segment;
+            else
+                sealed.add((JournalSegment.Sealed) segment);
+        }
+
+        nextId = lastId + 1;
+    }
+
+    private void appendEntry(JournalEntry entry, long now) throws IOException {
+        // wall clock changes must not break the time ordering the index relies on
+        lastTime = Math.max(lastTime, now);
+        entry.id = nextId++;
+        entry.time = lastTime;
+
+        if (active == null)
+            active = new JournalSegment.Active(JournalSegment.segmentFile(directory, entry.id), entry.id);
+        active.append(entry);
+        appended++;
+
+        if (active.count() >= maxSegmentEntries || active.length() >= maxSegmentBytes) {
+            sealed.add(active.seal());
+            active = null;
+            runCompaction();
+        }
+    }
+
+    private List<JournalSegment> allSegments() {
+        List<JournalSegment> segments = new ArrayList<JournalSegment>(sealed);
+        if (active != null)
+            segments.add(active);
+        return segments;
+    }
+
+    private Page runQuery(JournalQuery query) throws IOException {
+        List<JournalSegment> segments = allSegments();
+        List<JournalEntry> entries = new ArrayList<>(Math.min(query.limit, 64));
+        byte[] prefix = (query.prefix != null && query.prefix.length() > 0) ? JournalSegment.keyOf(query.prefix) : null;
+        boolean more = false;
+
+        for (int s = 0; s < segments.size() && !more; s++) {
+            JournalSegment segment = segments.get(query.descending ? segments.size() - 1 - s : s);
+            if (!overlaps(segment, query))
+                continue;
+
+            // the ordinal window allowed by the time range and the cursor
+            int from = segment.lowerBoundTime(query.fromTime);
+            int to = query.toTime == Long.MAX_VALUE ? segment.count() : segment.lowerBoundTime(query.toTime);
+            if (query.cursor >= 0) {
+                if (query.descending)
+                    to = Math.min(to, segment.lowerBoundId(query.cursor));
+                else
+                    from = Math.max(from, segment.lowerBoundId(query.cursor + 1));
+            }
+            if (from >= to)
+                continue;
+
+            if (prefix != null) {
+                int[] ordinals = segment.prefixOrdinals(prefix);
+                for (int i = 0; i < ordinals.length && !more; i++) {
+                    int ordinal = ordinals[query.descending ? ordinals.length - 1 - i : i];
+                    if (ordinal >= from && ordinal < to)
+                        more = collect(segment, ordinal, query, entries);
+                }
+            } else {
+                for (int i = 0; i < to - from && !more; i++)
+                    more = collect(segment, query.descending ? to - 1 - i : from + i, query, entries);
+            }
+        }
+
+        long nextCursor = more ? entries.get(entries.size() - 1).id : -1;
+        return new Page(entries, nextCursor);
+    }
+
+    private long countMatches(JournalQuery query) {
+        byte[] prefix = (query.prefix != null && query.prefix.length() > 0) ? JournalSegment.keyOf(query.prefix) : null;
+        long count = 0;
+
+        for (JournalSegment segment : allSegments()) {
+            if (segment.count() == 0 || !segment.mayContainSymbology(query.symbology))
+                continue;
+
+            int from = segment.lowerBoundTime(query.fromTime);
+            int to = query.toTime == Long.MAX_VALUE ? segment.count() : segment.lowerBoundTime(query.toTime);
+            if (from >= to)
+                continue;
+
+            if (prefix != null) {
+                for (int ordinal : segment.prefixOrdinals(prefix)) {
+                    if (ordinal >= from && ordinal < to && (query.symbology < 0 || segment.symbology(ordinal) == query.symbology))
+                        count++;
+                }
+            } else if (query.symbology >= 0) {
+                for (int ordinal = from; ordinal < to; ordinal++) {
+                    if (segment.symbology(ordinal) == query.symbology)
+                        count++;
+                }
+            } else {
+                count += to - from;
+            }
+        }
+        return count;
+    }
+
+    // returns true once one more match than the limit was found, that one is not kept
+    private boolean collect(JournalSegment segment, int ordinal, JournalQuery query, List<JournalEntry> entries) throws IOException {
+        if (query.symbology >= 0 && segment.symbology(ordinal) != query.symbology)
+            return false;
+
+        if (query.exact) {
+            JournalEntry entry = segment.read(ordinal);
+            if (entry == null || !query.prefix.equals(entry.readString))
+                return false;
+            if (entries.size() == query.limit)
+                return true;
+            entries.add(entry);
+            return false;
+        }
+
+        if (entries.size() == query.limit)
+            return true;
+        JournalEntry entry = segment.read(ordinal);
+        if (entry != null)
+            entries.add(entry);
+        return false;
+    }
+
+    private static boolean overlaps(JournalSegment segment, JournalQuery query) {
+        if (segment.count() == 0 || !segment.mayContainSymbology(query.symbology))
+            return false;
+        if (segment.time(segment.count() - 1) < query.fromTime || segment.time(0) >= query.toTime)
+            return false;
+        if (query.cursor >= 0)
+            return query.descending ? segment.firstId() < query.cursor : segment.lastId() > query.cursor;
+        return true;
+    }
+
+    private void runCompaction() throws IOException {
+        expire();
+        mergeSmallSegments();
+    }
+
+    // retention only ever removes the oldest entries, which are a prefix of the sealed segments
+    private void expire() throws IOException {
+        if (maxEntries <= 0 && maxAgeMs <= 0)
+            return;
+
+        long total = 0;
+        for (JournalSegment segment : allSegments())
+            total += segment.count();
+
+        long dropCount = maxEntries > 0 ? Math.max(0, total - maxEntries) : 0;
+        if (maxAgeMs > 0) {
+            long cutoff = System.currentTimeMillis() - maxAgeMs;
+            long expired = 0;
+            for (JournalSegment segment : allSegments()) {
+                int older = segment.lowerBoundTime(cutoff);
+                expired += older;
+                if (older < segment.count())
+                    break;
+            }
+            dropCount = Math.max(dropCount, expired);
+        }
+
+        while (dropCount > 0 && !sealed.isEmpty()) {
+            JournalSegment.Sealed oldest = sealed.get(0);
+            if (oldest.count() <= dropCount) {
+                dropCount -= oldest.count();
+                sealed.remove(0);
+                delete(oldest);
+            } else {
+                sealed.set(0, rewrite(Arrays.<JournalSegment>asList(oldest), (int) dropCount));
+                dropCount = 0;
+            }
+        }
+    }
+
+    private void mergeSmallSegments() throws IOException {
+        int i = 0;
+        while (i < sealed.size() - 1) {
+            int end = i + 1;
+            long count = sealed.get(i).count();
+            while (end < sealed.size() && count + sealed.get(end).count() <= maxSegmentEntries) {
+                count += sealed.get(end).count();
+                end++;
+            }
+
+            if (end - i > 1) {
+                List<JournalSegment> sources = new ArrayList<JournalSegment>(sealed.subList(i, end));
+                JournalSegment.Sealed merged = rewrite(sources, 0);
+                sealed.subList(i, end).clear();
+                sealed.add(i, merged);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Copies the entries of sources, minus the first skip ones, into a new sealed segment named after
+     * its first id, then deletes the sources. A crash at any point leaves either the sources or the
+     * complete copy (plus leftovers that load() discards).
+     */
+    private JournalSegment.Sealed rewrite(List<JournalSegment> sources, int skip) throws IOException {
+        long firstId = sources.get(0).id(skip);
+        File target = JournalSegment.segmentFile(directory, firstId);
+        File temp = new File(target.getPath() + JournalSegment.TEMP_SUFFIX);
+        temp.delete();
+
+        JournalSegment.Active copy = new JournalSegment.Active(temp, firstId);
+        for (JournalSegment source : sources) {
+            for (int ordinal = (source == sources.get(0) ? skip : 0); ordinal < source.count(); ordinal++) {
+                JournalEntry entry = source.read(ordinal);
+                if (entry != null)
+                    copy.append(entry);
+            }
+        }
+        copy.sync();
+        copy.close();
+
+        // the old index of a replaced segment must not be paired with the new file
+        for (JournalSegment source : sources)
+            source.close();
+        JournalSegment.indexFile(target).delete();
+        if (!temp.renameTo(target))
+            throw new IOException("Cannot write " + target);
+
+        for (JournalSegment source : sources) {
+            if (!source.file.equals(target))
+                delete(source);
+        }
+
+        return new JournalSegment.Active(target, firstId).seal();
+    }
+
+    private static void delete(JournalSegment segment) {
+        segment.close();
+        JournalSegment.indexFile(segment.file).delete();
+        segment.file.delete();
+    }
+}
@@ -0,0 +1,35 @@
+package com.cognex.cmb.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * What the encoder needs from a decoded result.
+ * On the device it is implemented over the SDK's ReadResult, benchmarks and JVM code use plain fields.
+ */
+public interface ScanResult {
+
+    boolean isGoodRead();
+
+    // -1 when the reader didn't report a symbology
+    int getSymbologyOrdinal();
+
+    String getSymbologyName();
+
+    String getReadString();
+
+    String getXml();
+
+    String getImageGraphics();
+
+    String getParsedText();
+
+    String getParsedJSON();
+
+    boolean isGS1();
+
+    boolean hasImage();
+
+    // writes the result image as PNG, only called when hasImage() is true
+    void writeImage(OutputStream out) throws IOException;
+}
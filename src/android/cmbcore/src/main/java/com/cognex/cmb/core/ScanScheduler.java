@@ -0,0 +1,220 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Duty cycles decoding through long continuous scanning sessions, so a kiosk doesn't run the decoder flat out
+ * for a whole shift and get throttled by the OS.
+ *
+ * After idleMs without a read decoding pauses for dutyOffMs and runs for dutyOnMs, a read or a trigger makes it continuous again.
+ * After releaseAfterMs without a read the camera is released, the next trigger starts it again.
+ * A warm device (thermal status moderate or up) or a low battery not charging raises the throttle level:
+ * every level halves the idle time and doubles the pauses.
+ *
+ * Not thread safe, the bridge calls it from the main thread.
+ */
+public class ScanScheduler {
+
+    public enum State {
+        // not scanning
+        STOPPED,
+        DECODING,
+        // duty cycle, decoding paused
+        PAUSED,
+        // duty cycle, decoding window
+        SAMPLING,
+        RELEASED
+    }
+
+    public interface Listener {
+        // the preview keeps running while decoding is paused
+        void onDecodingPaused(boolean paused);
+
+        void onCameraReleased();
+
+        /**
+         * @param event "dutyCycling", "decoding", "released" or "throttled"
+         */
+        void onEvent(String event);
+    }
+
+    // PowerManager.THERMAL_STATUS_MODERATE and THERMAL_STATUS_SEVERE
+    private static final int THERMAL_MODERATE = 2;
+    private static final int THERMAL_SEVERE = 3;
+
+    private final long idleMs;
+    private final long dutyOnMs;
+    private final long dutyOffMs;
+    private final long releaseAfterMs;
+    private final int lowBatteryPercent;
+    private final Listener listener;
+
+    private State state = State.STOPPED;
+    private long lastActivity;
+    private long phaseEnds;
+    private long pausedSince;
+
+    private int thermalStatus = 0;
+    private int batteryPercent = -1;
+    private boolean charging;
+    private int throttleLevel;
+
+    private long dutyCycles;
+    private long releases;
+    private long pausedMs;
+    private long throttleChanges;
+
+    /**
+     * @param releaseAfterMs 0 keeps the camera
+     * @param lowBatteryPercent battery level that throttles while not charging, 0 ignores the battery
+     */
+    public ScanScheduler(long idleMs, long dutyOnMs, long dutyOffMs, long releaseAfterMs, int lowBatteryPercent, Listener listener) {
+        this.idleMs = Math.max(1000, idleMs);
+        this.dutyOnMs = Math.max(100, dutyOnMs);
+        this.dutyOffMs = Math.max(100, dutyOffMs);
+        this.releaseAfterMs = Math.max(0, releaseAfterMs);
+        this.lowBatteryPercent = Math.max(0, Math.min(100, lowBatteryPercent));
+        this.listener = listener;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // scanning started, or the page triggered a scanner the scheduler is holding back
+    public void onTrigger(long now) {
+        lastActivity = now;
+        if (state == State.DECODING)
+            return;
+
+        if (state == State.PAUSED)
+            resumeDecoding(now);
+        boolean wasStopped = state == State.STOPPED;
+        state = State.DECODING;
+        if (!wasStopped)
+            listener.onEvent("decoding");
+    }
+
+    public void onRead(long now) {
+        lastActivity = now;
+        // a read of the last decoding window can come in after the pause started
+        if (state == State.SAMPLING || state == State.PAUSED) {
+            if (state == State.PAUSED)
+                resumeDecoding(now);
+            state = State.DECODING;
+            listener.onEvent("decoding");
+        }
+    }
+
+    public void onStop(long now) {
+        if (state == State.PAUSED)
+            resumeDecoding(now);
+        state = State.STOPPED;
+    }
+
+    public void tick(long now) {
+        long idle = now - lastActivity;
+        switch (state) {
+            case DECODING:
+                if (idle >= idleMs >> throttleLevel) {
+                    pauseDecoding(now);
+                    listener.onEvent("dutyCycling");
+                }
+                break;
+            case PAUSED:
+                if (release(now, idle))
+                    break;
+                if (now >= phaseEnds) {
+                    resumeDecoding(now);
+                    state = State.SAMPLING;
+                    phaseEnds = now + dutyOnMs;
+                }
+                break;
+            case SAMPLING:
+                if (release(now, idle))
+                    break;
+                if (now >= phaseEnds) {
+                    dutyCycles++;
+                    pauseDecoding(now);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean release(long now, long idle) {
+        if (releaseAfterMs == 0 || idle < releaseAfterMs)
+            return false;
+
+        // decoding is back on for whenever the camera starts again
+        if (state == State.PAUSED)
+            resumeDecoding(now);
+        state = State.RELEASED;
+        releases++;
+        listener.onCameraReleased();
+        listener.onEvent("released");
+        return true;
+    }
+
+    private void pauseDecoding(long now) {
+        state = State.PAUSED;
+        pausedSince = now;
+        phaseEnds = now + (dutyOffMs << throttleLevel);
+        listener.onDecodingPaused(true);
+    }
+
+    private void resumeDecoding(long now) {
+        pausedMs += now - pausedSince;
+        listener.onDecodingPaused(false);
+    }
+
+    /**
+     * @param status PowerManager.THERMAL_STATUS_*, 0 when the OS doesn't report it
+     */
+    public void setThermalStatus(int status) {
+        thermalStatus = status;
+        updateThrottleLevel();
+    }
+
+    /**
+     * @param percent -1 when unknown
+     */
+    public void setBattery(int percent, boolean charging) {
+        this.batteryPercent = percent;
+        this.charging = charging;
+        updateThrottleLevel();
+    }
+
+    private void updateThrottleLevel() {
+        boolean lowBattery = !charging && batteryPercent >= 0 && batteryPercent <= lowBatteryPercent;
+
+        int level = 0;
+        if (thermalStatus >= THERMAL_SEVERE)
+            level = 2;
+        else if (thermalStatus >= THERMAL_MODERATE || lowBattery)
+            level = 1;
+
+        if (level != throttleLevel) {
+            throttleLevel = level;
+            throttleChanges++;
+            listener.onEvent("throttled");
+        }
+    }
+
+    public JSONObject getStats(long now) throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("state", state.name().toLowerCase());
+        stats.put("throttleLevel", throttleLevel);
+        stats.put("thermalStatus", thermalStatus);
+        stats.put("batteryPercent", batteryPercent);
+        stats.put("charging", charging);
+        stats.put("idleMs", state == State.STOPPED ? 0 : now - lastActivity);
+        stats.put("dutyCycles", dutyCycles);
+        stats.put("pausedMs", pausedMs + (state == State.PAUSED ? now - pausedSince : 0));
+        stats.put("releases", releases);
+        stats.put("throttleChanges", throttleChanges);
+        return stats;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cognex.cmb.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Session recording layout, all numbers are unsigned LEB128 varints unless noted:
+ *
+ * header:   int magic 'CMBS', byte version, long wall clock start (ms, big endian)
+ * results:  byte 1, offset us, readerHandle + 1, string xml, count, count * item
+ * item:     byte flags (good read, GS1, sub result, image), symbology ordinal + 1, strings symbologyName,
+ *           readString, xml, imageGraphics, parsedText, parsedJSON, then length + PNG bytes when flagged
+ * command:  byte 2, offset us, string command, binary data length, round trip us, string payload, string error
+ * string:   length + 1 (0 for null) followed by UTF-8 bytes
+ */
+final class SessionFormat {
+
+    static final int MAGIC = 0x434D4253;
+    static final int VERSION = 1;
+
+    static final int RECORD_RESULTS = 1;
+    static final int RECORD_COMMAND = 2;
+
+    static final int FLAG_GOOD_READ = 1;
+    static final int FLAG_GS1 = 1 << 1;
+    static final int FLAG_SUB_RESULT = 1 << 2;
+    static final int FLAG_IMAGE = 1 << 3;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SessionFormat() {
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+            if (shift > 63)
+                throw new IOException("malformed varint");
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarLong(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length == 0)
+            return null;
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
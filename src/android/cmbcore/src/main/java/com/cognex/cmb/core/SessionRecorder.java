@@ -0,0 +1,163 @@
+package com.cognex.cmb.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes scan results and DMCC exchanges to a compact session file (see SessionFormat).
+ * Serialization and IO run on a single writer thread, the calling thread only queues the work.
+ * Timestamps are System.nanoTime values, stored as microseconds since the recorder was created.
+ */
+public class SessionRecorder implements Closeable {
+
+    private final DataOutputStream out;
+    private final boolean includeImages;
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private volatile IOException failure;
+    // records coming in after close are dropped, the SDK callbacks may still be delivering
+    private boolean closed;
+
+    public SessionRecorder(OutputStream stream, boolean includeImages) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        this.includeImages = includeImages;
+
+        out.writeInt(SessionFormat.MAGIC);
+        out.writeByte(SessionFormat.VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * The results are read on the writer thread, they must stay valid until then (SDK results do).
+     */
+    public void recordResults(final long timeNanos, final int readerHandle, final String xml, final ScanResult main,
+                              final List<? extends ScanResult> subResults) {
+        boolean queued = queue(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    out.writeByte(SessionFormat.RECORD_RESULTS);
+                    SessionFormat.writeVarLong(out, offsetMicros(timeNanos));
+                    SessionFormat.writeVarLong(out, readerHandle + 1);
+                    SessionFormat.writeString(out, xml);
+
+                    int count = (main != null ? 1 : 0) + (subResults != null ? subResults.size() : 0);
+                    SessionFormat.writeVarLong(out, count);
+                    if (main != null)
+                        writeItem(main, false);
+                    if (subResults != null) {
+                        for (ScanResult item : subResults)
+                            writeItem(item, true);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        });
+        if (queued)
+            results.incrementAndGet();
+    }
+
+    public void recordCommand(final long timeNanos, final String command, final int dataLength, final long roundTripNanos,
+                              final String payload, final String error) {
+        boolean queued = queue(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    out.writeByte(SessionFormat.RECORD_COMMAND);
+                    SessionFormat.writeVarLong(out, offsetMicros(timeNanos));
+                    SessionFormat.writeString(out, command);
+                    SessionFormat.writeVarLong(out, Math.max(0, dataLength));
+                    SessionFormat.writeVarLong(out, Math.max(0, roundTripNanos / 1000));
+                    SessionFormat.writeString(out, payload);
+                    SessionFormat.writeString(out, error);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        });
+        if (queued)
+            commands.incrementAndGet();
+    }
+
+    // false once closed
+    private synchronized boolean queue(Runnable record) {
+        if (closed)
+            return false;
+        writer.execute(record);
+        return true;
+    }
+
+    public long getResultCount() {
+        return results.get();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * Flushes the queued records and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            writer.shutdown();
+        }
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+
+        if (failure != null)
+            throw failure;
+    }
+
+    private long offsetMicros(long timeNanos) {
+        return Math.max(0, (timeNanos - startNanos) / 1000);
+    }
+
+    private void writeItem(ScanResult item, boolean subResult) throws IOException {
+        byte[] image = null;
+        if (includeImages && item.hasImage()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            item.writeImage(buffer);
+            image = buffer.toByteArray();
+        }
+
+        int flags = (item.isGoodRead() ? SessionFormat.FLAG_GOOD_READ : 0)
+                | (item.isGS1() ? SessionFormat.FLAG_GS1 : 0)
+                | (subResult ? SessionFormat.FLAG_SUB_RESULT : 0)
+                | (image != null ? SessionFormat.FLAG_IMAGE : 0);
+
+        out.writeByte(flags);
+        SessionFormat.writeVarLong(out, item.getSymbologyOrdinal() + 1);
+        SessionFormat.writeString(out, item.getSymbologyName());
+        SessionFormat.writeString(out, item.getReadString());
+        SessionFormat.writeString(out, item.getXml());
+        SessionFormat.writeString(out, item.getImageGraphics());
+        SessionFormat.writeString(out, item.getParsedText());
+        SessionFormat.writeString(out, item.getParsedJSON());
+        if (image != null) {
+            SessionFormat.writeVarLong(out, image.length);
+            out.write(image);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a recorded session back through a result pipeline, either at the recorded pace (scaled by speed)
+ * or as fast as the pipeline accepts it, and measures how long the pipeline takes per result.
+ * replay() blocks the calling thread until the file is exhausted or cancel() is called.
+ */
+public class SessionReplayer {
+
+    public interface Sink {
+        // runs the whole pipeline for one scan, the time spent in here is the reported latency
+        void onResults(int readerHandle, String xml, ScanResult main, List<ScanResult> subResults);
+
+        void onCommand(String command, int dataLength);
+    }
+
+    public static final class Report {
+        public long results;
+        public long items;
+        public long commands;
+        public long elapsedNanos;
+        public long recordedNanos;
+        public final LatencyHistogram pipeline = new LatencyHistogram();
+        // how late each event was dispatched compared to its recorded offset, only when paced
+        public final LatencyHistogram lag = new LatencyHistogram();
+        public final LatencyHistogram recordedCommandRoundTrip = new LatencyHistogram();
+
+        public JSONObject toJson() throws JSONException {
+            double seconds = elapsedNanos / 1e9;
+
+            JSONObject json = new JSONObject();
+            json.put("results", results);
+            json.put("items", items);
+            json.put("commands", commands);
+            json.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            json.put("recordedMs", TimeUnit.NANOSECONDS.toMillis(recordedNanos));
+            json.put("resultsPerSecond", seconds > 0 ? results / seconds : 0);
+            json.put("pipeline", pipeline.toJson());
+            json.put("lag", lag.toJson());
+            json.put("recordedCommandRoundTrip", recordedCommandRoundTrip.toJson());
+            return json;
+        }
+    }
+
+    private final DataInputStream in;
+    private final double speed;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param speed 1 replays at the recorded pace, 2 twice as fast, 0 or less as fast as possible
+     */
+    public SessionReplayer(InputStream stream, double speed) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        this.speed = speed;
+
+        if (in.readInt() != SessionFormat.MAGIC)
+            throw new IOException("not a session recording");
+        int version = in.readUnsignedByte();
+        if (version != SessionFormat.VERSION)
+            throw new IOException("unsupported session recording version " + version);
+        in.readLong();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Report replay(Sink sink) throws IOException {
+        Report report = new Report();
+        long start = System.nanoTime();
+
+        try {
+            while (!cancelled) {
+                int type;
+                try {
+                    type = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                long offsetNanos = SessionFormat.readVarLong(in) * 1000;
+                report.recordedNanos = offsetNanos;
+                long due = waitUntil(start, offsetNanos);
+
+                if (type == SessionFormat.RECORD_RESULTS) {
+                    int readerHandle = (int) SessionFormat.readVarLong(in) - 1;
+                    String xml = SessionFormat.readString(in);
+                    int count = (int) SessionFormat.readVarLong(in);
+
+                    ScanResult main = null;
+                    List<ScanResult> subResults = null;
+                    for (int i = 0; i < count; i++) {
+                        int flags = in.readUnsignedByte();
+                        RecordedResult item = readItem(flags);
+                        if ((flags & SessionFormat.FLAG_SUB_RESULT) != 0) {
+                            if (subResults == null)
+                                subResults = new ArrayList<>(count);
+                            subResults.add(item);
+                        } else {
+                            main = item;
+                        }
+                    }
+
+                    long dispatched = System.nanoTime();
+                    if (due > 0)
+                        report.lag.recordNanos(dispatched - due);
+                    sink.onResults(readerHandle, xml, main, subResults);
+                    report.pipeline.recordNanos(System.nanoTime() - dispatched);
+                    report.results++;
+                    report.items += count;
+                } else if (type == SessionFormat.RECORD_COMMAND) {
+                    String command = SessionFormat.readString(in);
+                    int dataLength = (int) SessionFormat.readVarLong(in);
+                    report.recordedCommandRoundTrip.recordMicros(SessionFormat.readVarLong(in));
+                    SessionFormat.readString(in);
+                    SessionFormat.readString(in);
+
+                    if (due > 0)
+                        report.lag.recordNanos(System.nanoTime() - due);
+                    sink.onCommand(command, dataLength);
+                    report.commands++;
+                } else {
+                    throw new IOException("unknown record type " + type);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    // returns the absolute due time, 0 when not pacing
+    private long waitUntil(long start, long offsetNanos) throws IOException {
+        if (speed <= 0)
+            return 0;
+
+        long due = start + (long) (offsetNanos / speed);
+        long remaining;
+        while (!cancelled && (remaining = due - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("replay interrupted");
+            }
+        }
+        return due;
+    }
+
+    private RecordedResult readItem(int flags) throws IOException {
+        RecordedResult item = new RecordedResult();
+        item.goodRead = (flags & SessionFormat.FLAG_GOOD_READ) != 0;
+        item.gs1 = (flags & SessionFormat.FLAG_GS1) != 0;
+        item.symbologyOrdinal = (int) SessionFormat.readVarLong(in) - 1;
+        item.symbologyName = SessionFormat.readString(in);
+        item.readString = SessionFormat.readString(in);
+        item.xml = SessionFormat.readString(in);
+        item.imageGraphics = SessionFormat.readString(in);
+        item.parsedText = SessionFormat.readString(in);
+        item.parsedJSON = SessionFormat.readString(in);
+        if ((flags & SessionFormat.FLAG_IMAGE) != 0) {
+            item.image = new byte[(int) SessionFormat.readVarLong(in)];
+            in.readFully(item.image);
+        }
+        return item;
+    }
+}
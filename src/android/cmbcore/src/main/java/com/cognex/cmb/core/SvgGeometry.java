@@ -0,0 +1,179 @@
+package com.cognex.cmb.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The code outlines of a result's image graphics, as numbers instead of SVG.
+ * Readers draw one polygon (or an absolute path) per code, its points are the code corners in image coordinates.
+ */
+public class SvgGeometry {
+
+    // <svg width="1280" height="720" ...> or viewBox="0 0 1280 720"
+    private static final Pattern SVG_SIZE = Pattern.compile("\\s(width|height|viewBox)=\"([^\"]*)\"");
+    // polygon / polyline points, and absolute path coordinates
+    private static final Pattern OUTLINE = Pattern.compile("\\s(points|d)=\"([^\"]*)\"");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(?:\\.\\d+)?");
+
+    public final float originX;
+    public final float originY;
+    public final float width;
+    public final float height;
+    // x0 y0 x1 y1 ... per outline, image coordinates
+    public final List<float[]> outlines;
+
+    private SvgGeometry(float originX, float originY, float width, float height, List<float[]> outlines) {
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+        this.outlines = outlines;
+    }
+
+    /**
+     * @return null when the SVG has no size or no outline
+     */
+    public static SvgGeometry parse(String svg) {
+        int svgStart = svg.indexOf("<svg");
+        int svgEnd = svgStart >= 0 ? svg.indexOf('>', svgStart) : -1;
+        if (svgEnd < 0)
+            return null;
+
+        float originX = 0;
+        float originY = 0;
+        float width = 0;
+        float height = 0;
+        boolean viewBox = false;
+        Matcher header = SVG_SIZE.matcher(svg).region(svgStart, svgEnd);
+        while (header.find()) {
+            String name = header.group(1);
+            String value = header.group(2);
+            if (name.equals("viewBox")) {
+                float[] box = numbers(value, 4);
+                if (box != null) {
+                    viewBox = true;
+                    originX = box[0];
+                    originY = box[1];
+                    width = box[2];
+                    height = box[3];
+                }
+            } else if (!viewBox && value.indexOf('%') < 0) {
+                float[] size = numbers(value, 1);
+                if (size != null) {
+                    if (name.equals("width"))
+                        width = size[0];
+                    else
+                        height = size[0];
+                }
+            }
+        }
+        if (width <= 0 || height <= 0)
+            return null;
+
+        List<float[]> outlines = new ArrayList<>(1);
+        Matcher outline = OUTLINE.matcher(svg);
+        while (outline.find()) {
+            String coordinates = outline.group(2);
+            // relative path commands would need the whole path walked, outlines are drawn with absolute ones
+            if (outline.group(1).equals("d") && !coordinates.equals(coordinates.toUpperCase()))
+                continue;
+
+            float[] points = new float[16];
+            int count = 0;
+            Matcher number = NUMBER.matcher(coordinates);
+            while (number.find()) {
+                if (count == points.length) {
+                    float[] grown = new float[count * 2];
+                    System.arraycopy(points, 0, grown, 0, count);
+                    points = grown;
+                }
+                points[count++] = Float.parseFloat(number.group());
+            }
+            // a path closing on its start repeats the first corner
+            if (count >= 4 && points[0] == points[count - 2] && points[1] == points[count - 1])
+                count -= 2;
+            if (count >= 6) {
+                float[] corners = new float[count & ~1];
+                System.arraycopy(points, 0, corners, 0, corners.length);
+                outlines.add(corners);
+            }
+        }
+        if (outlines.isEmpty())
+            return null;
+
+        return new SvgGeometry(originX, originY, width, height, outlines);
+    }
+
+    private static float[] numbers(String value, int count) {
+        float[] numbers = new float[count];
+        Matcher number = NUMBER.matcher(value);
+        for (int i = 0; i < count; i++) {
+            if (!number.find())
+                return null;
+            numbers[i] = Float.parseFloat(number.group());
+        }
+        return numbers;
+    }
+
+    /**
+     * Bounds of all the outlines, normalized to the image.
+     * @return minX minY maxX maxY
+     */
+    public float[] normalizedBounds() {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (float[] points : outlines) {
+            for (int i = 0; i + 1 < points.length; i += 2) {
+                minX = Math.min(minX, points[i]);
+                minY = Math.min(minY, points[i + 1]);
+                maxX = Math.max(maxX, points[i]);
+                maxY = Math.max(maxY, points[i + 1]);
+            }
+        }
+        return new float[]{
+                clamp((minX - originX) / width),
+                clamp((minY - originY) / height),
+                clamp((maxX - originX) / width),
+                clamp((maxY - originY) / height)
+        };
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * Writes {width, height, outlines: [[x0, y0, x1, y1...]...]}
+     * @param normalized points as fractions of the image (what the preview shows), image pixels otherwise
+     */
+    public void write(JsonWriter json, boolean normalized) {
+        json.beginObject();
+        json.name("width").value(round(width, 10));
+        json.name("height").value(round(height, 10));
+        json.name("outlines").beginArray();
+        for (float[] points : outlines) {
+            json.beginArray();
+            for (int i = 0; i + 1 < points.length; i += 2) {
+                if (normalized) {
+                    json.value(round((points[i] - originX) / width, 10000));
+                    json.value(round((points[i + 1] - originY) / height, 10000));
+                } else {
+                    json.value(round(points[i] - originX, 10));
+                    json.value(round(points[i + 1] - originY, 10));
+                }
+            }
+            json.endArray();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // fewer digits to serialize, whole pixels print without a fraction
+    private static double round(float value, int scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+}
@@ -0,0 +1,281 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Learns which of the enabled symbologies a site actually scans, and suggests or disables the ones it doesn't see.
+ * Every enabled symbology costs decode time, the mix a site sees is usually much smaller than what it enables.
+ *
+ * A symbology becomes a candidate once it hasn't been read for the whole window, and only when at least
+ * minReads good reads were seen in that window (an idle scanner proves nothing).
+ * Pruned symbologies come back on a learning trigger: relearn(), a streak of no reads, or the relearn interval.
+ * Trigger to result latency is recorded separately while the full set and while a pruned set is enabled.
+ */
+public class SymbologyPruner {
+
+    public enum Mode {
+        OFF,
+        // report candidates, change nothing
+        SUGGEST,
+        AUTO
+    }
+
+    public interface Listener {
+        void onSuggested(List<Integer> symbologies);
+
+        void onPruned(List<Integer> symbologies);
+
+        /**
+         * @param reason "relearn", "noReads", "interval" or "reconnect"
+         */
+        void onRestored(List<Integer> symbologies, String reason);
+    }
+
+    public interface SymbologyNames {
+        String nameOf(int symbology);
+    }
+
+    private static final class Usage {
+        long count;
+        long lastSeen;
+    }
+
+    private final Mode mode;
+    private final long windowMs;
+    private final int minReads;
+    private final int noReadStreak;
+    private final long relearnIntervalMs;
+    private final Listener listener;
+
+    // enabled symbologies that may be pruned, ordinal -> keep
+    private final TreeMap<Integer, Boolean> candidates = new TreeMap<>();
+    private final TreeMap<Integer, Usage> usage = new TreeMap<>();
+    private final List<Integer> pruned = new ArrayList<>();
+    private List<Integer> suggested = new ArrayList<>();
+    // good read times of the current window, oldest first
+    private long[] readTimes = new long[64];
+    private int readHead;
+    private int readCount;
+
+    private long learningSince;
+    private long prunedSince;
+    private int noReads;
+    private long relearns;
+
+    private final LatencyHistogram fullSetLatency = new LatencyHistogram();
+    private final LatencyHistogram prunedSetLatency = new LatencyHistogram();
+
+    /**
+     * @param noReadStreak consecutive no reads that bring the pruned symbologies back, 0 disables the trigger
+     * @param relearnIntervalMs pruned symbologies come back after that long, 0 disables the trigger
+     */
+    public SymbologyPruner(Mode mode, long windowMs, int minReads, int noReadStreak, long relearnIntervalMs, Listener listener, long now) {
+        this.mode = mode;
+        this.windowMs = Math.max(1000, windowMs);
+        this.minReads = Math.max(1, minReads);
+        this.noReadStreak = Math.max(0, noReadStreak);
+        this.relearnIntervalMs = Math.max(0, relearnIntervalMs);
+        this.listener = listener;
+        this.learningSince = now;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param keep never suggested or pruned
+     */
+    public synchronized void addCandidate(int symbology, boolean keep) {
+        candidates.put(symbology, keep);
+    }
+
+    // the app changed the symbology itself, it isn't ours to prune or restore anymore
+    public synchronized void onConfigured(int symbology, boolean enabled) {
+        pruned.remove(Integer.valueOf(symbology));
+        suggested.remove(Integer.valueOf(symbology));
+        if (enabled) {
+            if (!candidates.containsKey(symbology))
+                candidates.put(symbology, false);
+        } else {
+            candidates.remove(symbology);
+        }
+    }
+
+    /**
+     * @param goodReads symbologies of the good reads of one scan, empty for a no read
+     * @param triggerToResultNanos latency of the scan, negative when it had no trigger
+     */
+    public void onResult(List<Integer> goodReads, long triggerToResultNanos, long now) {
+        List<Integer> prune = null;
+        List<Integer> restore = null;
+        String reason = null;
+        List<Integer> suggest = null;
+
+        synchronized (this) {
+            if (mode == Mode.OFF)
+                return;
+
+            if (triggerToResultNanos >= 0)
+                (pruned.isEmpty() ? fullSetLatency : prunedSetLatency).recordNanos(triggerToResultNanos);
+
+            if (goodReads.isEmpty()) {
+                noReads++;
+            } else {
+                noReads = 0;
+                for (Integer symbology : goodReads) {
+                    Usage seen = usage.get(symbology);
+                    if (seen == null) {
+                        seen = new Usage();
+                        usage.put(symbology, seen);
+                    }
+                    seen.count++;
+                    seen.lastSeen = now;
+                    addReadTime(now);
+                }
+            }
+
+            if (!pruned.isEmpty()) {
+                if (noReadStreak > 0 && noReads >= noReadStreak)
+                    reason = "noReads";
+                else if (relearnIntervalMs > 0 && now - prunedSince >= relearnIntervalMs)
+                    reason = "interval";
+                if (reason != null)
+                    restore = restoreLocked(now);
+            }
+
+            if (restore == null) {
+                List<Integer> unseen = unseenLocked(now);
+                if (mode == Mode.AUTO && !unseen.isEmpty()) {
+                    if (pruned.isEmpty())
+                        prunedSince = now;
+                    pruned.addAll(unseen);
+                    prune = unseen;
+                } else if (mode == Mode.SUGGEST && !unseen.equals(suggested)) {
+                    suggested = unseen;
+                    suggest = unseen;
+                }
+            }
+        }
+
+        // outside the lock, the listener talks to the reader
+        if (restore != null)
+            listener.onRestored(restore, reason);
+        if (prune != null)
+            listener.onPruned(prune);
+        if (suggest != null)
+            listener.onSuggested(suggest);
+    }
+
+    /**
+     * Learning trigger, brings the pruned symbologies back and starts a new window.
+     */
+    public void relearn(String reason, long now) {
+        List<Integer> restore;
+        synchronized (this) {
+            restore = restoreLocked(now);
+        }
+        if (!restore.isEmpty())
+            listener.onRestored(restore, reason);
+    }
+
+    private List<Integer> restoreLocked(long now) {
+        List<Integer> restore = new ArrayList<>(pruned);
+        pruned.clear();
+        suggested = new ArrayList<>();
+        learningSince = now;
+        noReads = 0;
+        readCount = 0;
+        relearns++;
+        return restore;
+    }
+
+    // candidates not read for the whole window, when the window saw enough reads to tell
+    private List<Integer> unseenLocked(long now) {
+        List<Integer> unseen = new ArrayList<>();
+        long windowStart = now - windowMs;
+        if (learningSince > windowStart || readsSince(windowStart) < minReads)
+            return unseen;
+
+        for (Map.Entry<Integer, Boolean> candidate : candidates.entrySet()) {
+            Integer symbology = candidate.getKey();
+            if (candidate.getValue() || pruned.contains(symbology))
+                continue;
+            Usage seen = usage.get(symbology);
+            if (seen == null || seen.lastSeen < windowStart)
+                unseen.add(symbology);
+        }
+        return unseen;
+    }
+
+    private void addReadTime(long now) {
+        if (readCount == readTimes.length) {
+            // drop what fell out of the window before growing
+            readsSince(now - windowMs);
+            if (readCount == readTimes.length) {
+                long[] grown = new long[readTimes.length * 2];
+                for (int i = 0; i < readCount; i++)
+                    grown[i] = readTimes[(readHead + i) % readTimes.length];
+                readTimes = grown;
+                readHead = 0;
+            }
+        }
+        readTimes[(readHead + readCount) % readTimes.length] = now;
+        readCount++;
+    }
+
+    private int readsSince(long windowStart) {
+        while (readCount > 0 && readTimes[readHead] < windowStart) {
+            readHead = (readHead + 1) % readTimes.length;
+            readCount--;
+        }
+        return readCount;
+    }
+
+    public synchronized JSONObject getStats(long now, SymbologyNames names) throws JSONException {
+        JSONObject seen = new JSONObject();
+        for (Map.Entry<Integer, Usage> entry : usage.entrySet()) {
+            JSONObject json = new JSONObject();
+            json.put("symbology", entry.getKey());
+            json.put("count", entry.getValue().count);
+            json.put("lastSeenMsAgo", now - entry.getValue().lastSeen);
+            seen.put(names.nameOf(entry.getKey()), json);
+        }
+
+        JSONArray candidateList = new JSONArray();
+        for (Map.Entry<Integer, Boolean> candidate : candidates.entrySet()) {
+            if (!candidate.getValue())
+                candidateList.put(candidate.getKey());
+        }
+
+        JSONObject latency = new JSONObject();
+        latency.put("fullSet", fullSetLatency.toJson());
+        latency.put("prunedSet", prunedSetLatency.toJson());
+
+        JSONObject stats = new JSONObject();
+        stats.put("mode", mode.name().toLowerCase());
+        stats.put("learning", pruned.isEmpty());
+        stats.put("candidates", candidateList);
+        stats.put("suggested", toJson(suggested));
+        stats.put("pruned", toJson(pruned));
+        stats.put("seen", seen);
+        stats.put("readsInWindow", readsSince(now - windowMs));
+        stats.put("relearns", relearns);
+        stats.put("latency", latency);
+        return stats;
+    }
+
+    private static JSONArray toJson(List<Integer> symbologies) {
+        JSONArray json = new JSONArray();
+        for (Integer symbology : symbologies)
+            json.put(symbology.intValue());
+        return json;
+    }
+}
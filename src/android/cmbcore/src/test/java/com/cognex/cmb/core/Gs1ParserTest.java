@@ -0,0 +1,82 @@
+package com.cognex.cmb.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Gs1ParserTest {
+
+    private static final char GS = Gs1Parser.GS;
+
+    // GTIN, expiry, batch (variable, GS terminated), serial
+    private static final String CODE = "]d2" + "0100312345678906" + "17251231" + "10LOT42" + GS + "21SER9";
+    private static final String SAME_LAYOUT = "]d2" + "0109501101530003" + "17280229" + "10B" + GS + "21X";
+
+    @Test
+    public void fullParse() {
+        Gs1Parser.Result result = Gs1Parser.parse(CODE);
+        assertTrue(result.error, result.valid);
+        assertEquals("00312345678906", result.elements.get("01"));
+        assertEquals("251231", result.elements.get("17"));
+        assertEquals("LOT42", result.elements.get("10"));
+        assertEquals("SER9", result.elements.get("21"));
+    }
+
+    @Test
+    public void layoutMatchesFullParse() {
+        Gs1Parser.Ai[] layout = Gs1Parser.parse(CODE).layout();
+
+        for (String code : new String[]{CODE, SAME_LAYOUT}) {
+            Gs1Parser.Result full = Gs1Parser.parse(code);
+            Gs1Parser.Result fast = Gs1Parser.parse(code, layout);
+            assertNotNull(code, fast);
+            assertEquals(full.elements, fast.elements);
+            assertEquals(full.valid, fast.valid);
+            assertEquals(full.error, fast.error);
+        }
+    }
+
+    @Test
+    public void layoutReportsInvalidValuesLikeFullParse() {
+        Gs1Parser.Ai[] layout = Gs1Parser.parse(CODE).layout();
+        // bad check digit and 30 February
+        String invalid = "]d2" + "0100312345678907" + "17250230" + "10LOT42" + GS + "21SER9";
+
+        Gs1Parser.Result full = Gs1Parser.parse(invalid);
+        Gs1Parser.Result fast = Gs1Parser.parse(invalid, layout);
+        assertFalse(full.valid);
+        assertNotNull(fast);
+        assertEquals(full.valid, fast.valid);
+        assertEquals(full.error, fast.error);
+        assertEquals(full.elements, fast.elements);
+    }
+
+    @Test
+    public void otherLayoutsFallBack() {
+        Gs1Parser.Ai[] layout = Gs1Parser.parse(CODE).layout();
+
+        // serial missing
+        assertNull(Gs1Parser.parse("]d2" + "0100312345678906" + "17251231" + "10LOT42", layout));
+        // an extra AI at the end
+        assertNull(Gs1Parser.parse(CODE + GS + "30" + "12", layout));
+        // AIs in another order
+        assertNull(Gs1Parser.parse("]d2" + "17251231" + "0100312345678906" + "10LOT42" + GS + "21SER9", layout));
+        // fixed length field cut short
+        assertNull(Gs1Parser.parse("]d2" + "01003123456", layout));
+        // human readable form
+        assertNull(Gs1Parser.parse("(01)00312345678906(17)251231(10)LOT42(21)SER9", layout));
+        assertNull(Gs1Parser.parse("", layout));
+    }
+
+    @Test
+    public void readableFormMatchesRaw() {
+        Gs1Parser.Result raw = Gs1Parser.parse(CODE);
+        Gs1Parser.Result readable = Gs1Parser.parse("(01)00312345678906(17)251231(10)LOT42(21)SER9");
+        assertTrue(readable.error, readable.valid);
+        assertEquals(raw.elements, readable.elements);
+    }
+}
@@ -0,0 +1,176 @@
+package com.cognex.cmb.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImageRequestQueueTest {
+
+    private static final long GRACE_MS = 50;
+
+    private final List<String> events = new ArrayList<>();
+    private final List<ImageRequestQueue.Request<String>> dispatched = new ArrayList<>();
+    private ImageRequestQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        queue = new ImageRequestQueue<>(4, GRACE_MS, new ImageRequestQueue.Listener<String>() {
+            @Override
+            public void onDispatch(ImageRequestQueue.Request<String> request) {
+                events.add("dispatch " + request.id);
+                dispatched.add(request);
+            }
+
+            @Override
+            public void onExpired(ImageRequestQueue.Request<String> request, String reason) {
+                events.add(reason + " " + request.id);
+            }
+        });
+    }
+
+    private ImageRequestQueue.Request<String> last() {
+        return dispatched.get(dispatched.size() - 1);
+    }
+
+    @Test
+    public void resultsAnswerRequestsInOrder() {
+        assertTrue(queue.submit("a", "A", 1000, 0));
+        assertTrue(queue.submit("b", "B", 1000, 0));
+        assertEquals(1, dispatched.size());
+
+        queue.onLoaded(last(), 10);
+        ImageRequestQueue.Request<String> answered = queue.takeResult(20);
+        assertEquals("a", answered.id);
+        assertFalse(answered.isExpired());
+        assertEquals("b", last().id);
+
+        queue.onLoaded(last(), 30);
+        assertEquals("b", queue.takeResult(40).id);
+        assertTrue(queue.isIdle());
+    }
+
+    // a live scanning result must not be taken as the decode of an image the reader hasn't accepted yet
+    @Test
+    public void resultBeforeLoadIsNotTaken() {
+        queue.submit("a", "A", 1000, 0);
+        assertNull(queue.takeResult(5));
+
+        queue.onLoaded(last(), 10);
+        assertEquals("a", queue.takeResult(20).id);
+    }
+
+    @Test
+    public void lateResultIsNotGivenToTheNextRequest() {
+        queue.submit("a", "A", 100, 0);
+        queue.submit("b", "B", 1000, 0);
+        queue.onLoaded(last(), 10);
+
+        queue.tick(100);
+        assertEquals("timeout a", events.get(events.size() - 1));
+        // b waits while a's result may still come
+        queue.tick(120);
+        assertEquals(1, dispatched.size());
+
+        ImageRequestQueue.Request<String> late = queue.takeResult(130);
+        assertEquals("a", late.id);
+        assertTrue(late.isExpired());
+        assertEquals("b", last().id);
+
+        queue.onLoaded(last(), 140);
+        ImageRequestQueue.Request<String> answered = queue.takeResult(150);
+        assertEquals("b", answered.id);
+        assertFalse(answered.isExpired());
+    }
+
+    @Test
+    public void nextRequestGoesOutAfterTheGraceWindow() {
+        queue.submit("a", "A", 100, 0);
+        queue.submit("b", "B", 1000, 0);
+        queue.onLoaded(last(), 10);
+
+        queue.tick(100);
+        queue.tick(100 + GRACE_MS);
+        assertEquals("b", last().id);
+
+        // the window is over and b isn't loaded yet, nothing takes the result
+        assertNull(queue.takeResult(160));
+        queue.onLoaded(last(), 170);
+        assertEquals("b", queue.takeResult(180).id);
+    }
+
+    @Test
+    public void cancelledRequestLeavesAGraceWindowToo() {
+        queue.submit("a", "A", 1000, 0);
+        queue.submit("b", "B", 1000, 0);
+        ImageRequestQueue.Request<String> a = last();
+        queue.onLoaded(a, 10);
+
+        assertTrue(queue.cancel("a", 20));
+        assertEquals("cancelled a", events.get(events.size() - 1));
+        assertSame(a, queue.takeResult(30));
+        assertEquals("b", last().id);
+    }
+
+    @Test
+    public void queuedRequestTimesOutWithoutDispatch() {
+        queue.submit("a", "A", 1000, 0);
+        queue.submit("b", "B", 100, 0);
+
+        queue.tick(100);
+        assertEquals("timeout b", events.get(events.size() - 1));
+        queue.onLoaded(last(), 110);
+        assertEquals("a", queue.takeResult(120).id);
+        assertTrue(queue.isIdle());
+        assertEquals(1, dispatched.size());
+    }
+
+    @Test
+    public void loadFailureMovesOn() {
+        queue.submit("a", "A", 1000, 0);
+        queue.submit("b", "B", 1000, 0);
+
+        assertTrue(queue.onLoadFailed(last(), 10));
+        assertEquals("b", last().id);
+        // no grace window, a never reached the reader
+        assertNull(queue.takeResult(20));
+    }
+
+    @Test
+    public void rejectsDuplicatesAndOverflow() {
+        ImageRequestQueue<String> small = new ImageRequestQueue<>(1, GRACE_MS, new ImageRequestQueue.Listener<String>() {
+            @Override
+            public void onDispatch(ImageRequestQueue.Request<String> request) {
+            }
+
+            @Override
+            public void onExpired(ImageRequestQueue.Request<String> request, String reason) {
+            }
+        });
+
+        assertTrue(small.submit("a", "A", 1000, 0));
+        assertFalse(small.submit("a", "A", 1000, 0));
+        assertTrue(small.submit("b", "B", 1000, 0));
+        assertFalse(small.submit("c", "C", 1000, 0));
+    }
+
+    @Test
+    public void clearCancelsEverything() {
+        queue.submit("a", "A", 1000, 0);
+        queue.submit("b", "B", 1000, 0);
+        queue.onLoaded(last(), 10);
+
+        queue.clear();
+        assertTrue(events.contains("cancelled a"));
+        assertTrue(events.contains("cancelled b"));
+        assertTrue(queue.isIdle());
+        assertNull(queue.takeResult(20));
+    }
+}
@@ -0,0 +1,104 @@
+package com.cognex.cmb.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonWriterTest {
+
+    private static final String[] STRINGS = {
+            "",
+            "01003123456789051725123110LOT-421",
+            "quote \" and backslash \\",
+            "tab\tnew\nline\rreturn",
+            "\b\f\u0000\u0001\u001f",
+            "\u00fcn\u00efc\u00f6d\u00e9 \u65e5\u672c \u2603",
+            "line\u2028paragraph\u2029separators",
+            "<g transform=\"scale(2)\"/>"
+    };
+
+    @Test
+    public void stringsMatchOrgJson() throws JSONException {
+        for (String value : STRINGS) {
+            JsonWriter json = new JsonWriter(new StringBuilder());
+            json.beginArray().value(value).endArray();
+            assertEquals(value, new JSONArray().put(value).toString(), json.toString());
+        }
+    }
+
+    @Test
+    public void numbersAndBooleansMatchOrgJson() throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginArray()
+                .value(0L).value(-1L).value(Long.MAX_VALUE)
+                .value(1.5).value(2.0).value(-0.25)
+                .value(true).value(false)
+                .value((String) null)
+                .endArray();
+
+        JSONArray expected = new JSONArray()
+                .put(0L).put(-1L).put(Long.MAX_VALUE)
+                .put(1.5).put(2.0).put(-0.25)
+                .put(true).put(false)
+                .put(JSONObject.NULL);
+        assertEquals(expected.toString(), json.toString());
+    }
+
+    // one name per object, org.json doesn't keep the insertion order of several
+    @Test
+    public void nestingMatchesOrgJson() throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginObject().name("readResults").beginArray();
+        json.beginObject().name("readString").value("A").endObject();
+        json.beginArray().endArray();
+        json.beginObject().name("sub").beginObject().name("goodRead").value(true).endObject().endObject();
+        json.endArray().endObject();
+
+        JSONObject expected = new JSONObject().put("readResults", new JSONArray()
+                .put(new JSONObject().put("readString", "A"))
+                .put(new JSONArray())
+                .put(new JSONObject().put("sub", new JSONObject().put("goodRead", true))));
+        assertEquals(expected.toString(), json.toString());
+    }
+
+    @Test
+    public void objectReadsBackThroughOrgJson() throws JSONException {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginObject();
+        for (int i = 0; i < STRINGS.length; i++)
+            json.name("s" + i).value(STRINGS[i]);
+        // left as is here, org.json escapes "</", U+0080 to U+009F and U+2000 to U+20FF, both read back the same
+        json.name("closing").value("</script>\u0085\u20ac");
+        json.name("count").value(STRINGS.length);
+        json.endObject();
+
+        JSONObject parsed = new JSONObject(json.toString());
+        for (int i = 0; i < STRINGS.length; i++)
+            assertEquals(STRINGS[i], parsed.getString("s" + i));
+        assertEquals("</script>\u0085\u20ac", parsed.getString("closing"));
+        assertEquals(STRINGS.length, parsed.getInt("count"));
+    }
+
+    @Test
+    public void base64MatchesTheEncoder() throws JSONException {
+        byte[] data = new byte[200];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 7);
+
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginArray().base64Value(data, 0, data.length).endArray();
+        assertEquals(new JSONArray().put(Base64Encoder.encode(data)).toString(), json.toString());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        JsonWriter json = new JsonWriter(new StringBuilder());
+        json.beginObject().name("a").value(1L);
+        json.reset();
+        json.beginArray().value(2L).endArray();
+        assertEquals("[2]", json.toString());
+    }
+}
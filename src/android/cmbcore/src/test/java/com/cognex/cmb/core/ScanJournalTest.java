@@ -0,0 +1,185 @@
+package com.cognex.cmb.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ScanResult read(String readString) {
+        RecordedResult result = new RecordedResult();
+        result.goodRead = true;
+        result.symbologyOrdinal = 1;
+        result.symbologyName = "DATAMATRIX";
+        result.readString = readString;
+        return result;
+    }
+
+    private static void append(ScanJournal journal, int from, int to) {
+        for (int i = from; i < to; i++)
+            journal.append(0, read("CODE-" + i), null);
+    }
+
+    private static List<JournalEntry> entries(ScanJournal journal) throws IOException {
+        return journal.query(new JournalQuery().setLimit(JournalQuery.MAX_LIMIT)).entries;
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws IOException {
+        File directory = folder.newFolder();
+        ScanJournal journal = new ScanJournal(directory).setMaxSegmentEntries(16);
+        journal.open();
+        append(journal, 0, 40);
+        journal.close();
+
+        journal = new ScanJournal(directory).setMaxSegmentEntries(16);
+        journal.open();
+        List<JournalEntry> entries = entries(journal);
+        assertEquals(40, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getId());
+            assertEquals("CODE-" + i, entries.get(i).getReadString());
+        }
+        assertEquals(1, journal.count(new JournalQuery().setReadString("CODE-17")));
+        journal.close();
+    }
+
+    // a crash in the middle of a write leaves part of the last record behind
+    @Test
+    public void tornTailIsCut() throws IOException {
+        File directory = folder.newFolder();
+        ScanJournal journal = new ScanJournal(directory);
+        journal.open();
+        append(journal, 0, 5);
+        journal.close();
+
+        File segment = JournalSegment.segmentFile(directory, 1);
+        long length = segment.length();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(length - 3);
+        file.close();
+
+        journal = new ScanJournal(directory);
+        journal.open();
+        List<JournalEntry> entries = entries(journal);
+        assertEquals(4, entries.size());
+        assertEquals("CODE-3", entries.get(3).getReadString());
+        assertTrue(segment.length() < length - 3);
+
+        // the next entry takes the id of the lost one and lands after the cut
+        journal.append(0, read("AFTER"), null);
+        entries = entries(journal);
+        assertEquals(5, entries.size());
+        assertEquals(5, entries.get(4).getId());
+        assertEquals("AFTER", entries.get(4).getReadString());
+        journal.close();
+    }
+
+    @Test
+    public void garbageTailIsCut() throws IOException {
+        File directory = folder.newFolder();
+        ScanJournal journal = new ScanJournal(directory);
+        journal.open();
+        append(journal, 0, 3);
+        journal.close();
+
+        File segment = JournalSegment.segmentFile(directory, 1);
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5, 6, 7});
+        out.close();
+
+        journal = new ScanJournal(directory);
+        journal.open();
+        assertEquals(3, entries(journal).size());
+        journal.close();
+    }
+
+    // a compaction that stopped before the rename leaves its temp file, the sources are still complete
+    @Test
+    public void compactionTempFileIsRemoved() throws IOException {
+        File directory = folder.newFolder();
+        ScanJournal journal = new ScanJournal(directory).setMaxSegmentEntries(16);
+        journal.open();
+        append(journal, 0, 20);
+        journal.close();
+
+        File temp = new File(JournalSegment.segmentFile(directory, 1).getPath() + JournalSegment.TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[100]);
+        out.close();
+
+        journal = new ScanJournal(directory).setMaxSegmentEntries(16);
+        journal.open();
+        assertFalse(temp.exists());
+        assertEquals(20, entries(journal).size());
+        journal.close();
+    }
+
+    // a compaction that stopped after the rename leaves sources whose entries are already in the copy
+    @Test
+    public void compactionLeftoversAreDropped() throws IOException {
+        File split = folder.newFolder();
+        ScanJournal journal = new ScanJournal(split).setMaxSegmentEntries(16);
+        journal.open();
+        append(journal, 0, 20);
+        journal.close();
+
+        // the same 20 entries in one segment stand in for the merged copy
+        File merged = folder.newFolder();
+        journal = new ScanJournal(merged);
+        journal.open();
+        append(journal, 0, 20);
+        journal.close();
+
+        File leftover = JournalSegment.segmentFile(merged, 17);
+        Files.copy(JournalSegment.segmentFile(split, 17).toPath(), leftover.toPath());
+
+        journal = new ScanJournal(merged);
+        journal.open();
+        List<JournalEntry> entries = entries(journal);
+        assertEquals(20, entries.size());
+        for (int i = 0; i < entries.size(); i++)
+            assertEquals(i + 1, entries.get(i).getId());
+        assertFalse(leftover.exists());
+
+        // ids go on after the copy, not after the leftover
+        journal.append(0, read("NEXT"), null);
+        assertEquals(21, entries(journal).get(20).getId());
+        journal.close();
+    }
+
+    @Test
+    public void retentionKeepsTheNewestEntries() throws IOException {
+        File directory = folder.newFolder();
+        ScanJournal journal = new ScanJournal(directory).setMaxSegmentEntries(16).setRetention(20, 0);
+        journal.open();
+        append(journal, 0, 50);
+        journal.compact();
+
+        List<JournalEntry> entries = entries(journal);
+        assertEquals(20, entries.size());
+        assertEquals(31, entries.get(0).getId());
+        assertEquals("CODE-49", entries.get(19).getReadString());
+        journal.close();
+
+        // the rewritten segments load back the same
+        journal = new ScanJournal(directory).setMaxSegmentEntries(16);
+        journal.open();
+        assertEquals(20, entries(journal).size());
+        journal.close();
+    }
+}
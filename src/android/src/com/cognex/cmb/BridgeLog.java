@@ -0,0 +1,160 @@
+package com.cognex.cmb;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * In-memory ring buffer logger for the bridge.
+ * Entries keep the format string and its arguments, the message is only built when the buffer is dumped,
+ * so a log call on the scan path costs a level check and a few array stores.
+ * Only entries at or above logcatLevel are also written to logcat.
+ */
+final class BridgeLog {
+
+    static final String TAG = "CMBScanner";
+
+    private static final int CAPACITY = 256;
+
+    // android.util.Log levels: VERBOSE(2) .. ERROR(6)
+    static volatile int level = Log.INFO;
+    static volatile int logcatLevel = Log.ERROR;
+
+    private static final long[] times = new long[CAPACITY];
+    private static final int[] levels = new int[CAPACITY];
+    private static final String[] formats = new String[CAPACITY];
+    private static final Object[] firstArgs = new Object[CAPACITY];
+    private static final Object[] secondArgs = new Object[CAPACITY];
+    private static final Throwable[] errors = new Throwable[CAPACITY];
+
+    private static int next = 0;
+    private static long written = 0;
+
+    private BridgeLog() {
+    }
+
+    static boolean isLoggable(int messageLevel) {
+        return messageLevel >= level;
+    }
+
+    static void d(String format) {
+        log(Log.DEBUG, format, null, null, null);
+    }
+
+    static void d(String format, Object arg) {
+        log(Log.DEBUG, format, arg, null, null);
+    }
+
+    static void d(String format, Object arg1, Object arg2) {
+        log(Log.DEBUG, format, arg1, arg2, null);
+    }
+
+    static void i(String format, Object arg) {
+        log(Log.INFO, format, arg, null, null);
+    }
+
+    static void w(String format, Throwable error) {
+        log(Log.WARN, format, null, null, error);
+    }
+
+    static void w(String format, Object arg, Throwable error) {
+        log(Log.WARN, format, arg, null, error);
+    }
+
+    static void e(String format, Object arg) {
+        log(Log.ERROR, format, arg, null, null);
+    }
+
+    static void e(String format, Object arg1, Object arg2) {
+        log(Log.ERROR, format, arg1, arg2, null);
+    }
+
+    static void e(String format, Throwable error) {
+        log(Log.ERROR, format, null, null, error);
+    }
+
+    private static void log(int messageLevel, String format, Object arg1, Object arg2, Throwable error) {
+        if (messageLevel < level)
+            return;
+
+        synchronized (BridgeLog.class) {
+            times[next] = System.currentTimeMillis();
+            levels[next] = messageLevel;
+            formats[next] = format;
+            firstArgs[next] = arg1;
+            secondArgs[next] = arg2;
+            errors[next] = error;
+            next = (next + 1) % CAPACITY;
+            written++;
+        }
+
+        if (messageLevel >= logcatLevel) {
+            String message = format(format, arg1, arg2);
+            if (error != null)
+                message += "\n" + Log.getStackTraceString(error);
+            Log.println(messageLevel, TAG, message);
+        }
+    }
+
+    static synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            formats[i] = null;
+            firstArgs[i] = null;
+            secondArgs[i] = null;
+            errors[i] = null;
+        }
+        next = 0;
+        written = 0;
+    }
+
+    /**
+     * @param max maximum number of entries, the most recent ones are returned (oldest first)
+     */
+    static synchronized JSONArray dump(int max) throws JSONException {
+        int available = (int) Math.min(written, CAPACITY);
+        int count = (max > 0) ? Math.min(max, available) : available;
+
+        JSONArray entries = new JSONArray();
+        for (int i = count; i > 0; i--) {
+            int index = (next - i + CAPACITY) % CAPACITY;
+
+            JSONObject entry = new JSONObject();
+            entry.put("time", times[index]);
+            entry.put("level", levelName(levels[index]));
+            entry.put("message", format(formats[index], firstArgs[index], secondArgs[index]));
+            if (errors[index] != null)
+                entry.put("error", errors[index].toString());
+            entries.put(entry);
+        }
+        return entries;
+    }
+
+    private static String format(String format, Object arg1, Object arg2) {
+        if (arg1 == null && arg2 == null)
+            return format;
+        try {
+            return String.format(Locale.US, format, arg1, arg2);
+        } catch (Exception e) {
+            return format + " " + arg1 + " " + arg2;
+        }
+    }
+
+    private static String levelName(int messageLevel) {
+        switch (messageLevel) {
+            case Log.VERBOSE:
+                return "VERBOSE";
+            case Log.DEBUG:
+                return "DEBUG";
+            case Log.INFO:
+                return "INFO";
+            case Log.WARN:
+                return "WARN";
+            default:
+                return "ERROR";
+        }
+    }
+}
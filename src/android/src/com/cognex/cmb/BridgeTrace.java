@@ -0,0 +1,65 @@
+package com.cognex.cmb;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in android.os.Trace sections for the bridge hot paths, visible in systrace/Perfetto captures.
+ * Every method returns right away while tracing is off, callers only pay for a volatile read.
+ * Async slices (one per scan, correlated by sequence id) need API 29, on older devices only the
+ * synchronous sections are emitted.
+ */
+final class BridgeTrace {
+
+    static volatile boolean enabled = false;
+
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private BridgeTrace() {
+    }
+
+    static int nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * @return whether a section was opened, pass it to end: tracing may be switched in between
+     * and an unmatched endSection throws on some API levels
+     */
+    static boolean begin(String name) {
+        if (!enabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+            return false;
+        Trace.beginSection(name);
+        return true;
+    }
+
+    // the label is only concatenated when tracing is on
+    static boolean begin(String name, String label) {
+        if (!enabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+            return false;
+        Trace.beginSection(truncate(name + label));
+        return true;
+    }
+
+    static void end(boolean began) {
+        if (began)
+            Trace.endSection();
+    }
+
+    static void beginAsync(String name, int cookie) {
+        if (enabled && cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.beginAsyncSection(name, cookie);
+    }
+
+    static void endAsync(String name, int cookie) {
+        if (enabled && cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.endAsyncSection(name, cookie);
+    }
+
+    // section names longer than 127 characters make Trace throw
+    private static String truncate(String name) {
+        return name.length() > 127 ? name.substring(0, 127) : name;
+    }
+}
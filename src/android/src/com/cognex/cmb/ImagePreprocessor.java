@@ -0,0 +1,139 @@
+package com.cognex.cmb;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.cognex.cmb.core.ImagePreprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies an ImagePreprocessing to an encoded image: subsampled decode, then crop, scale and grayscale
+ * in one Canvas draw, then re-encode.
+ * The decoded and the output bitmap come from a pool of two, so a series of phone photos reuses the same
+ * large allocations instead of churning the heap by tens of megabytes per image.
+ * One image at a time, callers are serialized.
+ */
+class ImagePreprocessor {
+
+    private static final int POOL_SIZE = 2;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final List<Bitmap> pool = new ArrayList<>(POOL_SIZE);
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream(256 * 1024);
+    private final Paint plainPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint grayPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect source = new Rect();
+    private final Rect target = new Rect();
+
+    ImagePreprocessor() {
+        ColorMatrix matrix = new ColorMatrix();
+        matrix.setSaturation(0);
+        grayPaint.setColorFilter(new ColorMatrixColorFilter(matrix));
+    }
+
+    /**
+     * @return the re-encoded image, null when the bytes are not an image BitmapFactory can decode
+     */
+    synchronized byte[] process(byte[] image, ImagePreprocessing config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        int sampleSize = config.sampleSize(options.outWidth, options.outHeight);
+        int decodedWidth = (options.outWidth + sampleSize - 1) / sampleSize;
+        int decodedHeight = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = take(decodedWidth * decodedHeight * BYTES_PER_PIXEL);
+
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap didn't fit after all
+            if (options.inBitmap == null)
+                throw e;
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        }
+        if (decoded == null) {
+            give(options.inBitmap);
+            return null;
+        }
+
+        int[] crop = config.cropRect(decoded.getWidth(), decoded.getHeight());
+        int[] size = config.outputSize(crop[2] - crop[0], crop[3] - crop[1]);
+        Bitmap output = take(size[0] * size[1] * BYTES_PER_PIXEL);
+        if (output != null)
+            output.reconfigure(size[0], size[1], Bitmap.Config.ARGB_8888);
+        else
+            output = Bitmap.createBitmap(size[0], size[1], Bitmap.Config.ARGB_8888);
+
+        source.set(crop[0], crop[1], crop[2], crop[3]);
+        target.set(0, 0, size[0], size[1]);
+        new Canvas(output).drawBitmap(decoded, source, target, config.grayscale ? grayPaint : plainPaint);
+        give(decoded);
+
+        encoded.reset();
+        Bitmap.CompressFormat format = ImagePreprocessing.PNG.equals(config.format) ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        boolean compressed = output.compress(format, config.quality, encoded);
+        give(output);
+        if (!compressed)
+            return null;
+
+        return encoded.toByteArray();
+    }
+
+    // the smallest pooled bitmap that holds that many bytes
+    private Bitmap take(int bytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : pool) {
+            if (bitmap.getAllocationByteCount() >= bytes && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount()))
+                best = bitmap;
+        }
+        if (best != null)
+            pool.remove(best);
+        return best;
+    }
+
+    // the smallest one makes room when the pool is full
+    private void give(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        if (pool.size() == POOL_SIZE) {
+            Bitmap smallest = bitmap;
+            for (Bitmap pooled : pool) {
+                if (pooled.getAllocationByteCount() < smallest.getAllocationByteCount())
+                    smallest = pooled;
+            }
+            if (smallest == bitmap) {
+                bitmap.recycle();
+                return;
+            }
+            pool.remove(smallest);
+            smallest.recycle();
+        }
+        pool.add(bitmap);
+    }
+
+    // frees the pooled bitmaps, pre-processing was turned off or the plugin goes away
+    synchronized void release() {
+        for (Bitmap bitmap : pool)
+            bitmap.recycle();
+        pool.clear();
+        encoded.reset();
+    }
+}
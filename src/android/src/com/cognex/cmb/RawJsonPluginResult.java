@@ -0,0 +1,27 @@
+package com.cognex.cmb;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * A plugin result carrying JSON that is already serialized, sent as is.
+ * PluginResult only takes a JSONObject for JSON messages, which would mean building the tree just to print it.
+ */
+class RawJsonPluginResult extends PluginResult {
+
+    private final String json;
+
+    RawJsonPluginResult(Status status, String json) {
+        super(status, json);
+        this.json = json;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return json;
+    }
+}
@@ -0,0 +1,82 @@
+package com.cognex.cmb;
+
+import android.graphics.Bitmap;
+
+import com.cognex.cmb.core.ScanResult;
+import com.cognex.mobile.barcode.sdk.ReadResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Exposes an SDK ReadResult to the core encoder.
+ */
+class ReadResultAdapter implements ScanResult {
+
+    private final ReadResult result;
+
+    ReadResultAdapter(ReadResult result) {
+        this.result = result;
+    }
+
+    @Override
+    public boolean isGoodRead() {
+        return result.isGoodRead();
+    }
+
+    @Override
+    public int getSymbologyOrdinal() {
+        return result.getSymbology() != null ? result.getSymbology().ordinal() : -1;
+    }
+
+    @Override
+    public String getSymbologyName() {
+        return result.getSymbology() != null ? result.getSymbology().toString() : null;
+    }
+
+    @Override
+    public String getReadString() {
+        return result.getReadString();
+    }
+
+    @Override
+    public String getXml() {
+        return result.getXml();
+    }
+
+    @Override
+    public String getImageGraphics() {
+        return result.getImageGraphics();
+    }
+
+    @Override
+    public String getParsedText() {
+        return result.getParsedText();
+    }
+
+    @Override
+    public String getParsedJSON() {
+        return result.getParsedJSON();
+    }
+
+    @Override
+    public boolean isGS1() {
+        return result.getIsGS1();
+    }
+
+    @Override
+    public boolean hasImage() {
+        return result.getImage() != null;
+    }
+
+    @Override
+    public void writeImage(OutputStream out) throws IOException {
+        boolean traced = BridgeTrace.begin("CMB.encodeImage");
+        try {
+            if (!result.getImage().compress(Bitmap.CompressFormat.PNG, 100, out))
+                throw new IOException("PNG compression failed");
+        } finally {
+            BridgeTrace.end(traced);
+        }
+    }
+}
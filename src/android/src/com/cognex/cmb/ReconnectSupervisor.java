@@ -0,0 +1,322 @@
+package com.cognex.cmb;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.cognex.dataman.sdk.ConnectionState;
+import com.cognex.dataman.sdk.DataManSystem;
+import com.cognex.dataman.sdk.DmccResponse;
+import com.cognex.mobile.barcode.sdk.ReaderDevice;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Keeps a ReaderDevice connected after it drops (USB unplug, MX sleep...).
+ * Reconnect attempts are driven by onConnectionStateChanged/onAvailabilityChanged, spaced with
+ * exponential backoff plus jitter, and a periodic DMCC probe detects links that died silently.
+ * All work runs on the main looper, the same thread the SDK delivers ReaderDevice events on.
+ * Not thread safe: the bridge posts the calls made from JS actions there.
+ */
+class ReconnectSupervisor {
+
+    interface Host {
+        ReaderDevice getReaderDevice();
+
+        // called once the link is back, so the bridge can re-apply configuration and scanning state
+        void onReaderReconnected(boolean wasScanning);
+
+        boolean isScanning();
+
+        void onReconnectEvent(JSONObject event);
+    }
+
+    // lightweight DMCC command answered by both MX and camera readers
+    private static final String HEALTH_PROBE_COMMAND = "GET TRIGGER.TYPE";
+    // a probe not answered by then counts as failed
+    private static final long HEALTH_PROBE_TIMEOUT_MS = 10000;
+
+    private final Host host;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+
+    private boolean enabled = false;
+    long initialDelayMs = 250;
+    long maxDelayMs = 30000;
+    float jitter = 0.3f;
+    long healthCheckIntervalMs = 5000;
+    boolean restoreScanning = true;
+
+    // set when the app asked for the disconnect, we should not fight it
+    private boolean userDisconnected = false;
+    private boolean wasConnected = false;
+    private boolean scanningBeforeDrop = false;
+    private boolean probeInFlight = false;
+    // tells the answer of the probe in flight from a late one, main thread only like the rest
+    private int probeSequence = 0;
+    private ReaderDevice probedReader;
+
+    private int attempt = 0;
+    private long downSince = 0;
+
+    private int reconnectCount = 0;
+    private int failedAttempts = 0;
+    private long lastDowntimeMs = 0;
+    private long longestDowntimeMs = 0;
+    private long totalDowntimeMs = 0;
+
+    private final Runnable reconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            attemptReconnect();
+        }
+    };
+
+    private final Runnable healthCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            probeHealth();
+        }
+    };
+
+    private final Runnable probeTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!probeInFlight)
+                return;
+            probeInFlight = false;
+            onProbeFailed(probedReader);
+        }
+    };
+
+    ReconnectSupervisor(Host host) {
+        this.host = host;
+    }
+
+    void configure(JSONObject options) {
+        enabled = options.optBoolean("enabled", true);
+        initialDelayMs = Math.max(0, options.optLong("initialDelayMs", initialDelayMs));
+        maxDelayMs = Math.max(initialDelayMs, options.optLong("maxDelayMs", maxDelayMs));
+        jitter = (float) Math.min(1, Math.max(0, options.optDouble("jitter", jitter)));
+        healthCheckIntervalMs = Math.max(0, options.optLong("healthCheckIntervalMs", healthCheckIntervalMs));
+        restoreScanning = options.optBoolean("restoreScanning", restoreScanning);
+
+        handler.removeCallbacks(healthCheckRunnable);
+        if (!enabled) {
+            cancelProbe();
+            handler.removeCallbacks(reconnectRunnable);
+            downSince = 0;
+            attempt = 0;
+        } else if (isConnected()) {
+            wasConnected = true;
+            scheduleHealthCheck();
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // a new ReaderDevice was loaded, forget everything about the old link
+    void reset() {
+        handler.removeCallbacks(reconnectRunnable);
+        handler.removeCallbacks(healthCheckRunnable);
+        userDisconnected = false;
+        wasConnected = false;
+        cancelProbe();
+        downSince = 0;
+        attempt = 0;
+    }
+
+    void onUserConnect() {
+        userDisconnected = false;
+    }
+
+    void onUserDisconnect() {
+        userDisconnected = true;
+        handler.removeCallbacks(reconnectRunnable);
+        handler.removeCallbacks(healthCheckRunnable);
+        cancelProbe();
+        downSince = 0;
+        attempt = 0;
+    }
+
+    void onConnectionStateChanged(ConnectionState state) {
+        if (state == ConnectionState.Connected) {
+            handler.removeCallbacks(reconnectRunnable);
+            attempt = 0;
+            wasConnected = true;
+
+            if (downSince > 0) {
+                long downtime = SystemClock.elapsedRealtime() - downSince;
+                downSince = 0;
+                reconnectCount++;
+                lastDowntimeMs = downtime;
+                totalDowntimeMs += downtime;
+                longestDowntimeMs = Math.max(longestDowntimeMs, downtime);
+
+                host.onReaderReconnected(restoreScanning && scanningBeforeDrop);
+                sendEvent("reconnected", downtime);
+            }
+
+            if (enabled)
+                scheduleHealthCheck();
+        } else if (state == ConnectionState.Disconnected) {
+            handler.removeCallbacks(healthCheckRunnable);
+            cancelProbe();
+
+            if (!enabled || userDisconnected || !wasConnected)
+                return;
+
+            if (downSince == 0) {
+                downSince = SystemClock.elapsedRealtime();
+                scanningBeforeDrop = host.isScanning();
+                sendEvent("disconnected", 0);
+            }
+            scheduleReconnect();
+        }
+    }
+
+    void onAvailabilityChanged(ReaderDevice.Availability availability) {
+        if (!enabled || downSince == 0)
+            return;
+
+        if (availability == ReaderDevice.Availability.AVAILABLE) {
+            // the device just came back, don't wait for the backoff to expire
+            handler.removeCallbacks(reconnectRunnable);
+            attempt = 0;
+            handler.post(reconnectRunnable);
+        } else if (availability == ReaderDevice.Availability.UNAVAILABLE) {
+            // nothing to connect to, wait for the next availability change
+            handler.removeCallbacks(reconnectRunnable);
+        }
+    }
+
+    JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("enabled", enabled);
+        stats.put("reconnecting", downSince > 0);
+        stats.put("attempt", attempt);
+        stats.put("reconnectCount", reconnectCount);
+        stats.put("failedAttempts", failedAttempts);
+        stats.put("lastDowntimeMs", lastDowntimeMs);
+        stats.put("longestDowntimeMs", longestDowntimeMs);
+        stats.put("totalDowntimeMs", totalDowntimeMs);
+        stats.put("currentDowntimeMs", downSince > 0 ? SystemClock.elapsedRealtime() - downSince : 0);
+        return stats;
+    }
+
+    long nextDelayMs() {
+        long delay = initialDelayMs << Math.min(attempt, 20);
+        if (delay <= 0 || delay > maxDelayMs)
+            delay = maxDelayMs;
+
+        // spread the retries so several stations don't hammer a shared hub in lockstep
+        return delay - (long) (delay * jitter * random.nextFloat());
+    }
+
+    private boolean isConnected() {
+        ReaderDevice readerDevice = host.getReaderDevice();
+        return readerDevice != null && readerDevice.getConnectionState() == ConnectionState.Connected;
+    }
+
+    private void scheduleReconnect() {
+        handler.removeCallbacks(reconnectRunnable);
+        handler.postDelayed(reconnectRunnable, nextDelayMs());
+    }
+
+    private void attemptReconnect() {
+        final ReaderDevice readerDevice = host.getReaderDevice();
+        if (!enabled || userDisconnected || readerDevice == null || downSince == 0)
+            return;
+
+        ConnectionState state = readerDevice.getConnectionState();
+        if (state == ConnectionState.Connected || state == ConnectionState.Connecting)
+            return;
+
+        if (readerDevice.getAvailability() == ReaderDevice.Availability.UNAVAILABLE)
+            return;
+
+        attempt++;
+        sendEvent("reconnecting", SystemClock.elapsedRealtime() - downSince);
+
+        readerDevice.connect(new ReaderDevice.OnConnectionCompletedListener() {
+            @Override
+            public void onConnectionCompleted(ReaderDevice device, Throwable throwable) {
+                if (throwable != null) {
+                    failedAttempts++;
+                    if (downSince > 0)
+                        scheduleReconnect();
+                }
+            }
+        });
+    }
+
+    private void scheduleHealthCheck() {
+        handler.removeCallbacks(healthCheckRunnable);
+        if (healthCheckIntervalMs > 0)
+            handler.postDelayed(healthCheckRunnable, healthCheckIntervalMs);
+    }
+
+    private void probeHealth() {
+        final ReaderDevice readerDevice = host.getReaderDevice();
+        if (!enabled || probeInFlight || !isConnected())
+            return;
+
+        probeInFlight = true;
+        probedReader = readerDevice;
+        final int probe = ++probeSequence;
+        handler.postDelayed(probeTimeoutRunnable, HEALTH_PROBE_TIMEOUT_MS);
+        readerDevice.getDataManSystem().sendCommand(HEALTH_PROBE_COMMAND, new DataManSystem.OnResponseReceivedListener() {
+            @Override
+            public void onResponseReceived(DataManSystem dataManSystem, final DmccResponse dmccResponse) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // timed out or cancelled meanwhile
+                        if (!probeInFlight || probe != probeSequence)
+                            return;
+                        probeInFlight = false;
+                        handler.removeCallbacks(probeTimeoutRunnable);
+
+                        if (dmccResponse.getError() == null)
+                            scheduleHealthCheck();
+                        else
+                            onProbeFailed(readerDevice);
+                    }
+                });
+            }
+        });
+    }
+
+    // the link looks up but the reader doesn't answer, drop it and let the backoff take over
+    private void onProbeFailed(ReaderDevice readerDevice) {
+        if (readerDevice != null && host.getReaderDevice() == readerDevice && downSince == 0) {
+            downSince = SystemClock.elapsedRealtime();
+            scanningBeforeDrop = host.isScanning();
+            sendEvent("healthCheckFailed", 0);
+            readerDevice.disconnect();
+            scheduleReconnect();
+        }
+    }
+
+    private void cancelProbe() {
+        handler.removeCallbacks(probeTimeoutRunnable);
+        probeInFlight = false;
+        probedReader = null;
+    }
+
+    private void sendEvent(String type, long downtimeMs) {
+        try {
+            JSONObject event = getStats();
+            event.put("event", type);
+            event.put("downtimeMs", downtimeMs);
+            host.onReconnectEvent(event);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the reconnect event", e);
+        }
+    }
+}
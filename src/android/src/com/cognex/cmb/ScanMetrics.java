@@ -0,0 +1,205 @@
+package com.cognex.cmb;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.cognex.cmb.core.LatencyHistogram;
+import com.cognex.cmb.core.ResultBuffers;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and throughput counters for the scan pipeline:
+ * trigger (startScanning) -> SDK result (onReadResultReceived) -> serialized -> sent over the bridge.
+ * Recording is a handful of atomic increments, so it stays on all the time.
+ */
+class ScanMetrics {
+
+    final LatencyHistogram triggerToResult = new LatencyHistogram();
+    final LatencyHistogram encode = new LatencyHistogram();
+    final LatencyHistogram bridgeSend = new LatencyHistogram();
+    final LatencyHistogram resultToSent = new LatencyHistogram();
+
+    final AtomicLong results = new AtomicLong();
+    final AtomicLong readResults = new AtomicLong();
+    final AtomicLong noReads = new AtomicLong();
+    final AtomicLong bytesSent = new AtomicLong();
+    // repeated sightings of a code a multi-code collection already has, see CodeCollector
+    final AtomicLong dedupHits = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    // reads rejected by the result filters
+    final AtomicLong filtered = new AtomicLong();
+
+    // bytes allocated while encoding a result, see allocatedBytes
+    private final AtomicLong allocationSamples = new AtomicLong();
+    private final AtomicLong allocatedTotal = new AtomicLong();
+    private final AtomicLong allocatedMax = new AtomicLong();
+
+    // first time the plugin got to each point after it was created, what the startup warm-up shortens
+    enum Startup {
+        LOAD_SCANNER("loadScannerMs"),
+        READER_CREATED("readerCreatedMs"),
+        CONNECTED("connectedMs"),
+        FIRST_SCAN("firstScanMs"),
+        FIRST_RESULT("firstResultMs");
+
+        final String key;
+
+        Startup(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long createdAt = SystemClock.elapsedRealtime();
+    // the milestones count from the process start where the platform reports it (Android 7+), so they compare
+    // between the plugin loading at app startup and on the first JS call; from createdAt otherwise
+    private final boolean fromProcessStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    private final long startupBaseline = fromProcessStart ? Process.getStartElapsedRealtime() : createdAt;
+    // ms after startupBaseline, 0 until reached. Not cleared by reset
+    private final AtomicLongArray startup = new AtomicLongArray(Startup.values().length);
+
+    // elapsedRealtimeNanos of the last startScanning, consumed by the first result that follows it
+    private final AtomicLong triggerTime = new AtomicLong();
+    // trigger to result of the last result, -1 when it had no trigger
+    private volatile long lastTriggerToResult = -1;
+    private volatile long resetTime = SystemClock.elapsedRealtime();
+
+    void onTrigger() {
+        triggerTime.set(SystemClock.elapsedRealtimeNanos());
+        onStartup(Startup.FIRST_SCAN);
+    }
+
+    void onStartup(Startup milestone) {
+        if (startup.get(milestone.ordinal()) == 0)
+            startup.compareAndSet(milestone.ordinal(), 0, Math.max(1, SystemClock.elapsedRealtime() - startupBaseline));
+    }
+
+    /**
+     * @return the timestamp to pass to the other stages of the same result
+     */
+    long onResultArrived() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        long trigger = triggerTime.getAndSet(0);
+        if (trigger > 0)
+            triggerToResult.recordNanos(now - trigger);
+        lastTriggerToResult = trigger > 0 ? now - trigger : -1;
+
+        results.incrementAndGet();
+        onStartup(Startup.FIRST_RESULT);
+        return now;
+    }
+
+    long lastTriggerToResultNanos() {
+        return lastTriggerToResult;
+    }
+
+    long onResultEncoded(long arrivedTime) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        encode.recordNanos(now - arrivedTime);
+        return now;
+    }
+
+    void onResultSent(long arrivedTime, long encodedTime, int length) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        bridgeSend.recordNanos(now - encodedTime);
+        resultToSent.recordNanos(now - arrivedTime);
+        bytesSent.addAndGet(length);
+    }
+
+    /**
+     * Bytes the process allocated so far, -1 below API 23.
+     * Counts every thread and moves in allocation buffer steps, a difference around one result is an estimate.
+     */
+    static long allocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+            return -1;
+        try {
+            String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+            return value != null ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void onResultAllocated(long bytes) {
+        if (bytes < 0)
+            return;
+        allocationSamples.incrementAndGet();
+        allocatedTotal.addAndGet(bytes);
+        long max;
+        do {
+            max = allocatedMax.get();
+        } while (bytes > max && !allocatedMax.compareAndSet(max, bytes));
+    }
+
+    void reset() {
+        triggerToResult.reset();
+        encode.reset();
+        bridgeSend.reset();
+        resultToSent.reset();
+
+        results.set(0);
+        readResults.set(0);
+        noReads.set(0);
+        bytesSent.set(0);
+        dedupHits.set(0);
+        dropped.set(0);
+        filtered.set(0);
+
+        allocationSamples.set(0);
+        allocatedTotal.set(0);
+        allocatedMax.set(0);
+
+        resetTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * {baseline: "processStart" | "pluginCreated", pluginCreatedMs, loadScannerMs, readerCreatedMs, connectedMs, firstScanMs, firstResultMs}
+     * ms after the baseline, 0 until reached
+     */
+    JSONObject startupToJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("baseline", fromProcessStart ? "processStart" : "pluginCreated");
+        json.put("pluginCreatedMs", createdAt - startupBaseline);
+        for (Startup milestone : Startup.values())
+            json.put(milestone.key, startup.get(milestone.ordinal()));
+        return json;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject counters = new JSONObject();
+        counters.put("results", results.get());
+        counters.put("readResults", readResults.get());
+        counters.put("noReads", noReads.get());
+        counters.put("bytesSent", bytesSent.get());
+        counters.put("dedupHits", dedupHits.get());
+        counters.put("dropped", dropped.get());
+        counters.put("filtered", filtered.get());
+
+        JSONObject latency = new JSONObject();
+        latency.put("triggerToResult", triggerToResult.toJson());
+        latency.put("encode", encode.toJson());
+        latency.put("bridgeSend", bridgeSend.toJson());
+        latency.put("resultToSent", resultToSent.toJson());
+
+        long samples = allocationSamples.get();
+        JSONObject allocation = new JSONObject();
+        allocation.put("samples", samples);
+        allocation.put("meanBytes", samples > 0 ? allocatedTotal.get() / samples : 0);
+        allocation.put("maxBytes", allocatedMax.get());
+        allocation.put("buffers", ResultBuffers.getStats());
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("sinceResetMs", SystemClock.elapsedRealtime() - resetTime);
+        metrics.put("counters", counters);
+        metrics.put("latency", latency);
+        metrics.put("allocation", allocation);
+        return metrics;
+    }
+}
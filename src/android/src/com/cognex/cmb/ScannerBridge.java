@@ -2,20 +2,35 @@ package com.cognex.cmb;
 
 import android.Manifest;
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
 import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.util.Base64;
 import android.util.Log;
+import android.util.Range;
+import android.util.Size;
 import android.view.Display;
 import android.view.Gravity;
 import android.view.View;
@@ -25,6 +40,25 @@ import android.webkit.WebView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import com.cognex.cmb.core.CodeCollector;
+import com.cognex.cmb.core.FieldExtractor;
+import com.cognex.cmb.core.ImagePreprocessing;
+import com.cognex.cmb.core.ImageRequestQueue;
+import com.cognex.cmb.core.JournalExporter;
+import com.cognex.cmb.core.JournalQuery;
+import com.cognex.cmb.core.JsonWriter;
+import com.cognex.cmb.core.PreviewOptionsTuner;
+import com.cognex.cmb.core.ReadStatistics;
+import com.cognex.cmb.core.ResultBuffers;
+import com.cognex.cmb.core.ResultEncoder;
+import com.cognex.cmb.core.ResultFilter;
+import com.cognex.cmb.core.ResultStreamServer;
+import com.cognex.cmb.core.RoiTuner;
+import com.cognex.cmb.core.ScanJournal;
+import com.cognex.cmb.core.ScanScheduler;
+import com.cognex.cmb.core.ScanResult;
+import com.cognex.cmb.core.SessionReplayer;
+import com.cognex.cmb.core.SymbologyPruner;
 import com.cognex.dataman.sdk.ConnectionState;
 import com.cognex.dataman.sdk.DataManSystem;
 import com.cognex.dataman.sdk.DmccResponse;
@@ -49,12 +83,22 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class executes native code when called from JavaScript.
  */
 public class ScannerBridge extends CordovaPlugin implements
-        ReaderDevice.ReaderDeviceListener {
+        ReaderDevice.ReaderDeviceListener, ReconnectSupervisor.Host {
 
     enum ImageSourceType {
         URI,
@@ -71,9 +115,22 @@ public class ScannerBridge extends CordovaPlugin implements
     int param_deviceType = 0;
     String registrationKey = "";
 
-    ReaderDevice readerDevice;
+    volatile ReaderDevice readerDevice;
 
-    private boolean isScanning = false;
+    // Additional readers driven next to readerDevice, which always answers to handle 0.
+    // Only MX devices can be pooled, the phone camera needs the single preview container and stays on handle 0.
+    static final int DEFAULT_READER_HANDLE = 0;
+    private final Map<Integer, ReaderDevice> readerPool = new ConcurrentHashMap<>();
+    private final Set<Integer> scanningReaderHandles = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    // TRIGGER.TYPE of each pooled reader, read when it starts scanning; 2 (single) until known, like param_triggerType
+    private final Map<Integer, Integer> readerTriggerTypes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReaderHandle = new AtomicInteger(1);
+
+    // written from the plugin, SDK and main threads
+    private volatile boolean isScanning = false;
+
+    // async trace slice opened by startScanning and closed by the first result that follows
+    private volatile int scanTraceCookie = 0;
 
     // CMB Listener callbacks
     CallbackContext didReceiveReadResultFromReaderCallbackID;
@@ -82,6 +139,162 @@ public class ScannerBridge extends CordovaPlugin implements
     CallbackContext scanningStateChangedCallbackId;
     CallbackContext connectCallbackId;
     CallbackContext permissionCallbackId;
+    CallbackContext reconnectEventCallbackId;
+    CallbackContext readerEventCallbackId;
+    CallbackContext metricsEventCallbackId;
+
+    final ScanMetrics scanMetrics = new ScanMetrics();
+
+    private final ResultEncoder resultEncoder = createResultEncoder(scanMetrics);
+
+    final SessionCapture sessionCapture = new SessionCapture();
+
+    // compiled setResultFilters rules, null accepts everything
+    private volatile ResultFilter resultFilter;
+
+    // on-device scan history, opened by configureJournal
+    static final String JOURNAL_DIRECTORY = "cmb-journal";
+    private volatile ScanJournal journal;
+    static final String EXPORT_DIRECTORY = "cmb-exports";
+    private volatile JournalExporter activeExport;
+
+    // opt-in WebSocket push of results, used instead of the result callback while a page is connected to it
+    private volatile ResultStreamServer resultStream;
+    private volatile SessionReplayer activeReplay;
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private long metricsEventIntervalMs = 0;
+    private final Runnable metricsEventRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendMetricsEvent();
+        }
+    };
+
+    // last battery level of the reader, see setBatteryLevelCallback
+    private volatile int batteryLevel = -1;
+    private volatile long batteryLevelAt;
+    private volatile long batteryLevelTime;
+    // elapsedRealtime of the poll waiting for its answer, 0 when none; a reader that never answers is given up on after BATTERY_LEVEL_TIMEOUT_MS
+    private volatile long batteryLevelRequestedAt;
+    private long batteryLevelIntervalMs = 0;
+    private volatile long batteryLevelMaxAgeMs = 0;
+    CallbackContext batteryLevelCallbackId;
+    private final Runnable batteryLevelRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pollBatteryLevel();
+        }
+    };
+
+    // learns where codes show up in the camera frame, see configureRoiTuning
+    private volatile RoiTuner roiTuner;
+    // scanning rect per code (bit of the code mask) from before the tuning, put back when it stops
+    private float[][] savedScanningRects;
+    private boolean enabledLocationFlag;
+
+    // gathers the distinct codes of a multi-code scan, see startCollection
+    private final Object collectionLock = new Object();
+    private volatile CodeCollector codeCollector;
+    CallbackContext collectionCallbackId;
+    private volatile boolean collectionStartedScanning;
+    private final Runnable collectionTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            finishCollection("timeout");
+        }
+    };
+
+    // picks the camera resolution and frame rate between sessions, see configureAdaptivePreview
+    private volatile PreviewOptionsTuner previewTuner;
+    CallbackContext adaptivePreviewCallbackId;
+    // preview options the current camera device was created with
+    private int openedPreviewOptions;
+
+    // duty cycles decoding through long sessions, see configureScanScheduler.
+    // Driven on the main thread, the plugin and SDK threads only check whether there is one
+    private volatile ScanScheduler scanScheduler;
+    CallbackContext scanSchedulerCallbackId;
+    private PowerManager.OnThermalStatusChangedListener thermalStatusListener;
+    private long lastBatteryCheck;
+    private int pausedActiveCodes;
+    private boolean pausedByStopScanning;
+    private final Runnable scanSchedulerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tickScanScheduler();
+        }
+    };
+
+    // image scans answered with their own decode result, see scanImageRequest. Created on first use
+    private static final int IMAGE_REQUESTS_QUEUED = 8;
+    private static final long IMAGE_REQUEST_TIMEOUT_MS = 5000;
+    private static final long IMAGE_LATE_RESULT_GRACE_MS = 1000;
+    private static final long IMAGE_REQUEST_TICK_MS = 50;
+    private volatile ImageRequestQueue<ImageScan> imageRequests;
+    private final AtomicInteger nextImageRequestId = new AtomicInteger(1);
+    private final Runnable imageRequestRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tickImageRequests();
+        }
+    };
+
+    private static final class ImageScan {
+        final CallbackContext callbackContext;
+        // dropped once sent to the reader
+        byte[] image;
+        final int length;
+        final int originalLength;
+        final boolean preprocessed;
+        // System.nanoTime of the call, before the image was read
+        final long requestedAt;
+
+        ImageScan(CallbackContext callbackContext, byte[] image, int originalLength, boolean preprocessed, long requestedAt) {
+            this.callbackContext = callbackContext;
+            this.image = image;
+            this.length = image.length;
+            this.originalLength = originalLength;
+            this.preprocessed = preprocessed;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    // shrinks images before IMAGE.LOAD, see setImagePreprocessing. null sends them as they are
+    private volatile ImagePreprocessing imagePreprocessing;
+    private ImagePreprocessor imagePreprocessor;
+    private volatile ImagePreprocessing.Stats imageStats;
+
+    // learns the symbologies the site scans, see configureSymbologyPruning
+    private volatile SymbologyPruner symbologyPruner;
+    CallbackContext symbologyPruningCallbackId;
+
+    // aggregates of the result XML, the XML itself stays native while they are enabled
+    private volatile ReadStatistics readStatistics;
+    CallbackContext readStatisticsEventCallbackId;
+    private long readStatisticsEventIntervalMs = 0;
+    private long readStatisticsEventWindowMs = 0;
+    private final Runnable readStatisticsEventRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendReadStatisticsEvent();
+        }
+    };
+
+    ReconnectSupervisor reconnectSupervisor = new ReconnectSupervisor(this);
+
+    // decoder and licence warm-up started by pluginInitialize: at app startup with onload (CMB_WARM_UP), with the first
+    // JS call otherwise. loadScanner waits for it in both cases, at most SdkWarmUp.MAX_WAIT_MS
+    private volatile SdkWarmUp warmUp;
+
+    // configuration applied through the bridge, re-applied by the ReconnectSupervisor after a reader comes back.
+    // SDK callbacks, JS actions and the main thread all touch it, always under appliedConfigLock
+    private final Object appliedConfigLock = new Object();
+    private final Map<ReaderDevice.Symbology, Boolean> appliedSymbologies = new LinkedHashMap<>();
+    private final Map<String, String> appliedSettings = new LinkedHashMap<>();
+    private Boolean appliedImage;
+    private Boolean appliedImageGraphics;
+    private Boolean appliedLightsOn;
+    private ReaderDevice.ResultParser appliedParser;
 
     // USB Listener, no need for conditional code
     boolean listeningForUSB = false;
@@ -116,8 +329,29 @@ public class ScannerBridge extends CordovaPlugin implements
 
     private boolean cmb_stopScanningOnRotate = false;
 
+    /**
+     * Called at app startup when plugin.xml loads the plugin with onload (CMB_WARM_UP, on by default),
+     * on the first call from JS otherwise. Only queues the warm-up, nothing here may hold up the UI thread.
+     */
+    @Override
+    protected void pluginInitialize() {
+        super.pluginInitialize();
+        SdkWarmUp warm = new SdkWarmUp();
+        warmUp = warm;
+        warm.start(cordova.getThreadPool(), cordova.getActivity().getApplicationContext(), registrationKey);
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, final CallbackContext callbackContext) throws JSONException {
+        boolean traced = BridgeTrace.begin("CMB.execute ", action);
+        try {
+            return executeAction(action, args, callbackContext);
+        } finally {
+            BridgeTrace.end(traced);
+        }
+    }
+
+    private boolean executeAction(String action, JSONArray args, final CallbackContext callbackContext) throws JSONException {
         //Custom API
         if (action.equals("didReceiveReadResultFromReaderCallback")) {
             didReceiveReadResultFromReaderCallbackID = callbackContext;
@@ -143,12 +377,24 @@ public class ScannerBridge extends CordovaPlugin implements
             }
             return true;
         } else if (action.equals("enableImage")) {
-            if (isReaderInit(callbackContext))
-                readerDevice.enableImage(args.getBoolean(0));
+            if (isReaderInit(callbackContext)) {
+                boolean enable = args.getBoolean(0);
+                synchronized (appliedConfigLock) {
+                    appliedImage = enable;
+                }
+                readerDevice.enableImage(enable);
+            }
             return true;
         } else if (action.equals("enableImageGraphics")) {
-            if (isReaderInit(callbackContext))
-                readerDevice.enableImageGraphics(args.getBoolean(0));
+            if (isReaderInit(callbackContext)) {
+                boolean enable = args.getBoolean(0);
+                synchronized (appliedConfigLock) {
+                    appliedImageGraphics = enable;
+                }
+                readerDevice.enableImageGraphics(enable);
+                if (roiTuner != null)
+                    applyImageGraphics();
+            }
             return true;
         } else if (action.equals("getConnectionState")) {
             if (isReaderInit(callbackContext))
@@ -157,6 +403,7 @@ public class ScannerBridge extends CordovaPlugin implements
         } else if (action.equals("connect")) {
             //added by lazyvlad on 1/2/2018
             connectCallbackId = callbackContext;
+            userConnect();
             connect(callbackContext);
             //return a proper callback to the cordova plugin
             return true;
@@ -176,7 +423,7 @@ public class ScannerBridge extends CordovaPlugin implements
                 symbology = args.getInt(0);
                 enable = args.getBoolean(1);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             setSymbologyEnabled(callbackContext, symbologyFromInt(symbology), enable);
             return true;
@@ -185,7 +432,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 symbology = args.getInt(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             isSymbologyEnabled(callbackContext, ScannerBridge.symbologyFromInt(symbology));
             return true;
@@ -194,7 +441,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 on = args.getBoolean(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             this.setLightsOn(callbackContext, on);
             return true;
@@ -215,7 +462,7 @@ public class ScannerBridge extends CordovaPlugin implements
                 position_wp = (float) args.getDouble(2);
                 position_hp = (float) args.getDouble(3);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
 //            setPreviewContainerPositionAndSize(x, y, w, h);
             cordova.getActivity().runOnUiThread(new Runnable() {
@@ -237,7 +484,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 cameraMode = args.getInt(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             setCameraMode(cameraMode);
             return true;
@@ -246,7 +493,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 previewOptions = args.getInt(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             setPreviewOptions(previewOptions);
             return true;
@@ -255,7 +502,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 previewOverlayMode = args.getInt(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             setPreviewOverlayMode(previewOverlayMode);
             return true;
@@ -276,7 +523,7 @@ public class ScannerBridge extends CordovaPlugin implements
                 codeMask = args.getInt(0);
                 flag = args.getInt(1);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             enableCameraFlag(callbackContext, codeMask, flag);
             return true;
@@ -287,7 +534,7 @@ public class ScannerBridge extends CordovaPlugin implements
                 codeMask = args.getInt(0);
                 flag = args.getInt(1);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             disableCameraFlag(callbackContext, codeMask, flag);
             return true;
@@ -296,7 +543,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 timeout = args.getInt(0);
             } catch (JSONException e) {
-                e.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, e);
             }
             setCameraDuplicatesTimeout(timeout);
             return true;
@@ -345,10 +592,14 @@ public class ScannerBridge extends CordovaPlugin implements
                 try {
                     parser = args.getInt(0);
                 } catch (JSONException e) {
-                    e.printStackTrace();
+                    BridgeLog.w("Invalid arguments for %s", action, e);
                 }
 
-                readerDevice.setParser(parserFromInt(parser));
+                ReaderDevice.ResultParser resultParser = parserFromInt(parser);
+                synchronized (appliedConfigLock) {
+                    appliedParser = resultParser;
+                }
+                readerDevice.setParser(resultParser);
             }
 
             return true;
@@ -356,7 +607,7 @@ public class ScannerBridge extends CordovaPlugin implements
             try {
                 cmb_stopScanningOnRotate = args.getBoolean(0);
             } catch (Exception ex) {
-                ex.printStackTrace();
+                BridgeLog.w("Invalid arguments for %s", action, ex);
             }
 
             return true;
@@ -369,6 +620,267 @@ public class ScannerBridge extends CordovaPlugin implements
 
             scanImage(parseFirstStringFromJSONArray(args), ImageSourceType.BASE64,callbackContext);
 
+            return true;
+        } else if (action.equals("scanImageRequest")) {
+            JSONObject options = args.optJSONObject(1);
+            scanImageRequest(args.optString(0, ""), options != null ? options : new JSONObject(), callbackContext);
+            return true;
+        } else if (action.equals("setImagePreprocessing")) {
+            JSONObject options = args.optJSONObject(0);
+            setImagePreprocessing(options != null ? options : new JSONObject(), callbackContext);
+            return true;
+        } else if (action.equals("cancelImageScan")) {
+            cancelImageScan(args.optString(0, ""), callbackContext);
+            return true;
+        } else if (action.equals("setAutoReconnect")) {
+            final JSONObject options = args.optJSONObject(0);
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    reconnectSupervisor.configure(options != null ? options : new JSONObject());
+                    callbackContext.success();
+                }
+            });
+            return true;
+        } else if (action.equals("reconnectEventCallback")) {
+            reconnectEventCallbackId = callbackContext;
+            return true;
+        } else if (action.equals("getReconnectStats")) {
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callbackContext.success(reconnectSupervisor.getStats());
+                    } catch (JSONException e) {
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+            return true;
+        } else if (action.equals("readerEventCallback")) {
+            readerEventCallbackId = callbackContext;
+            return true;
+        } else if (action.equals("loadReader")) {
+            loadReader(callbackContext, args.optInt(0, DeviceType.MX_1000.ordinal()));
+            return true;
+        } else if (action.equals("unloadReader")) {
+            unloadReader(callbackContext, args.optInt(0, -1));
+            return true;
+        } else if (action.equals("getReaderHandles")) {
+            getReaderHandles(callbackContext);
+            return true;
+        } else if (action.equals("connectReader")) {
+            connectReader(callbackContext, args.optInt(0, -1));
+            return true;
+        } else if (action.equals("disconnectReader")) {
+            ReaderDevice device = getPooledReader(callbackContext, args.optInt(0, -1));
+            if (device != null) {
+                if (device == readerDevice)
+                    userDisconnect();
+                device.disconnect();
+                callbackContext.success();
+            }
+            return true;
+        } else if (action.equals("startReaderScanning")) {
+            toggleReaderScanning(callbackContext, args.optInt(0, -1), true);
+            return true;
+        } else if (action.equals("stopReaderScanning")) {
+            toggleReaderScanning(callbackContext, args.optInt(0, -1), false);
+            return true;
+        } else if (action.equals("setReaderSymbologyEnabled")) {
+            setReaderSymbologyEnabled(callbackContext, args.optInt(0, -1), symbologyFromInt(args.optInt(1, 0)), args.optBoolean(2));
+            return true;
+        } else if (action.equals("sendReaderCommand")) {
+            sendReaderCommand(callbackContext, args.optInt(0, -1), args.optString(1, ""));
+            return true;
+        } else if (action.equals("getMetrics")) {
+            callbackContext.success(metricsToJson());
+            return true;
+        } else if (action.equals("resetMetrics")) {
+            scanMetrics.reset();
+            callbackContext.success();
+            return true;
+        } else if (action.equals("metricsEventCallback")) {
+            setMetricsEventCallback(callbackContext, args.optLong(0, 0));
+            return true;
+        } else if (action.equals("batteryLevelCallback")) {
+            setBatteryLevelCallback(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("setTracingEnabled")) {
+            BridgeTrace.enabled = args.optBoolean(0);
+            callbackContext.success();
+            return true;
+        } else if (action.equals("setLogLevel")) {
+            BridgeLog.level = args.optInt(0, BridgeLog.level);
+            BridgeLog.logcatLevel = args.optInt(1, BridgeLog.logcatLevel);
+            callbackContext.success();
+            return true;
+        } else if (action.equals("dumpLogs")) {
+            callbackContext.success(BridgeLog.dump(args.optInt(0, 0)));
+            if (args.optBoolean(1))
+                BridgeLog.clear();
+            return true;
+        } else if (action.equals("startRecording")) {
+            startRecording(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("stopRecording")) {
+            stopRecording(callbackContext);
+            return true;
+        } else if (action.equals("replaySession")) {
+            replaySession(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("startResultStream")) {
+            startResultStream(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("stopResultStream")) {
+            stopResultStream();
+            callbackContext.success();
+            return true;
+        } else if (action.equals("setFieldExtraction")) {
+            JSONObject options = args.optJSONObject(0);
+            try {
+                boolean enabled = options != null && options.optBoolean("enabled", true);
+                resultEncoder.setFieldExtractor(enabled ? FieldExtractor.compile(options) : null);
+                callbackContext.success();
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+            return true;
+        } else if (action.equals("setGeometryOutput")) {
+            String mode = args.optString(0, "svg");
+            if (mode.equals("image"))
+                resultEncoder.setGeometry(ResultEncoder.Geometry.IMAGE);
+            else if (mode.equals("normalized"))
+                resultEncoder.setGeometry(ResultEncoder.Geometry.NORMALIZED);
+            else
+                resultEncoder.setGeometry(ResultEncoder.Geometry.SVG);
+            callbackContext.success();
+            return true;
+        } else if (action.equals("setResultFilters")) {
+            try {
+                ResultFilter filter = ResultFilter.compile(args.optJSONArray(0));
+                resultFilter = filter.isEmpty() ? null : filter;
+                callbackContext.success();
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+            return true;
+        } else if (action.equals("configureRoiTuning")) {
+            configureRoiTuning(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("getRoiTuning")) {
+            RoiTuner tuner = roiTuner;
+            if (tuner != null)
+                callbackContext.success(tuner.getStats());
+            else
+                callbackContext.error("ROI tuning is not enabled");
+            return true;
+        } else if (action.equals("setDecodeRoi")) {
+            int status = BarcodeScanner.MWBsetScanningRect(BarcodeScanner.MWB_CODE_MASK_ALL,
+                    (float) args.optDouble(0, 0), (float) args.optDouble(1, 0), (float) args.optDouble(2, 100), (float) args.optDouble(3, 100));
+            if (status == BarcodeScanner.MWB_RT_OK)
+                callbackContext.success();
+            else
+                callbackContext.error("Invalid decode ROI");
+            return true;
+        } else if (action.equals("startCollection")) {
+            startCollection(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("stopCollection")) {
+            finishCollection("stopped");
+            callbackContext.success();
+            return true;
+        } else if (action.equals("configureAdaptivePreview")) {
+            configureAdaptivePreview(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("getAdaptivePreview")) {
+            PreviewOptionsTuner tuner = previewTuner;
+            if (tuner != null)
+                callbackContext.success(tuner.getStats());
+            else
+                callbackContext.error("Adaptive preview is not enabled");
+            return true;
+        } else if (action.equals("configureScanScheduler")) {
+            final JSONObject options = args.optJSONObject(0);
+            metricsHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        configureScanScheduler(callbackContext, options);
+                    } catch (JSONException e) {
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+            return true;
+        } else if (action.equals("getScanScheduler")) {
+            metricsHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ScanScheduler scheduler = scanScheduler;
+                    try {
+                        if (scheduler != null)
+                            callbackContext.success(scheduler.getStats(SystemClock.elapsedRealtime()));
+                        else
+                            callbackContext.error("The scan scheduler is not enabled");
+                    } catch (JSONException e) {
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+            return true;
+        } else if (action.equals("configureSymbologyPruning")) {
+            configureSymbologyPruning(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("relearnSymbologies")) {
+            SymbologyPruner pruner = symbologyPruner;
+            if (pruner != null)
+                pruner.relearn("relearn", System.currentTimeMillis());
+            callbackContext.success();
+            return true;
+        } else if (action.equals("getSymbologyPruning")) {
+            SymbologyPruner pruner = symbologyPruner;
+            if (pruner != null)
+                callbackContext.success(pruner.getStats(System.currentTimeMillis(), SymbologyNamesHolder.SYMBOLOGY_NAMES));
+            else
+                callbackContext.error("Symbology pruning is not enabled");
+            return true;
+        } else if (action.equals("configureReadStatistics")) {
+            configureReadStatistics(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("getReadStatistics")) {
+            ReadStatistics statistics = readStatistics;
+            if (statistics != null)
+                callbackContext.success(statistics.getStats(args.optLong(0, 60) * 1000));
+            else
+                callbackContext.error("Read statistics are not enabled");
+            return true;
+        } else if (action.equals("readStatisticsEventCallback")) {
+            setReadStatisticsEventCallback(callbackContext, args.optLong(0, 0), args.optLong(1, 60) * 1000);
+            return true;
+        } else if (action.equals("configureJournal")) {
+            configureJournal(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("queryJournal")) {
+            queryJournal(callbackContext, JournalQuery.fromJson(args.optJSONObject(0)));
+            return true;
+        } else if (action.equals("getJournalStats") || action.equals("compactJournal") || action.equals("clearJournal")) {
+            maintainJournal(callbackContext, action);
+            return true;
+        } else if (action.equals("exportScans")) {
+            exportScans(callbackContext, args.optJSONObject(0));
+            return true;
+        } else if (action.equals("cancelExport")) {
+            JournalExporter exporter = activeExport;
+            if (exporter != null)
+                exporter.cancel();
+            callbackContext.success();
+            return true;
+        } else if (action.equals("cancelReplay")) {
+            SessionReplayer replayer = activeReplay;
+            if (replayer != null)
+                replayer.cancel();
+            callbackContext.success();
             return true;
         }
 
@@ -379,7 +891,7 @@ public class ScannerBridge extends CordovaPlugin implements
         try {
             return args.getString(0);
         } catch (JSONException e) {
-            e.printStackTrace();
+            BridgeLog.w("Expected a string argument", e);
         }
 
         return "";
@@ -387,10 +899,16 @@ public class ScannerBridge extends CordovaPlugin implements
 
     //Custom API methods
     private void loadScanner(final CallbackContext callbackContext) {
+        scanMetrics.onStartup(ScanMetrics.Startup.LOAD_SCANNER);
 
-        cordova.getActivity().runOnUiThread(new Runnable() {
+        final Runnable load = new Runnable() {
             @Override
             public void run() {
+                // the pooled MX already holds the one attached MX, see loadReader
+                if (deviceTypeFromInt(param_deviceType) == DeviceType.MX_1000 && !readerPool.isEmpty()) {
+                    callbackContext.error("Only one MX device can be loaded, unload the pooled reader first");
+                    return;
+                }
 
                 if (listeningForUSB) {
                     readerDevice.stopAvailabilityListening();
@@ -401,15 +919,16 @@ public class ScannerBridge extends CordovaPlugin implements
                     readerDevice.disconnect();
                     readerDevice = null;
                 }
+                reconnectSupervisor.reset();
+                clearAppliedConfig();
+                clearBatteryLevel();
+                clearImageRequests();
                 removeScannerView();
 
                 if (deviceTypeFromInt(param_deviceType) == DeviceType.MOBILE_DEVICE) {
                     updatePreviewContainerValues();
                     addScannerView();
-                    if("".equals(registrationKey))
-                        readerDevice = ReaderDevice.getPhoneCameraDevice(cordova.getActivity(), param_cameraMode, param_previewOptions, scannerView);
-                    else
-                        readerDevice = ReaderDevice.getPhoneCameraDevice(cordova.getActivity(), param_cameraMode, param_previewOptions, scannerView, registrationKey);
+                    readerDevice = createCameraDevice();
                 } else {
                     readerDevice = ReaderDevice.getMXDevice(cordova.getActivity());
                     if (!listeningForUSB) {
@@ -418,6 +937,7 @@ public class ScannerBridge extends CordovaPlugin implements
                     }
                 }
                 readerDevice.setReaderDeviceListener(ScannerBridge.this);
+                scanMetrics.onStartup(ScanMetrics.Startup.READER_CREATED);
 
                 PluginResult pr = new PluginResult(PluginResult.Status.OK, true);
                 callbackContext.sendPluginResult(pr);
@@ -431,7 +951,20 @@ public class ScannerBridge extends CordovaPlugin implements
 //                    }
 //                });
             }
-        });
+        };
+
+        // while the warm-up runs the UI thread would only wait for the same class locks, the load follows it instead
+        SdkWarmUp warm = warmUp;
+        if (warm == null) {
+            cordova.getActivity().runOnUiThread(load);
+        } else {
+            warm.runWhenDone(new Runnable() {
+                @Override
+                public void run() {
+                    cordova.getActivity().runOnUiThread(load);
+                }
+            });
+        }
 
         //custom calls:
         //ScannerActivity.readerDevice.getDataManSystem().sendCommand("SET TRIGGER.TYPE 5");
@@ -465,50 +998,50 @@ public class ScannerBridge extends CordovaPlugin implements
                 try {
                     field = c.getDeclaredField("x");
                 } catch (NoSuchFieldException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 }
                 try {
                     field = c.getDeclaredField("leftMargin");
                 } catch (NoSuchFieldException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 }
 
                 try {
                     field.setAccessible(true);
                     field.set(scannerView.getLayoutParams(), Math.round(param_positionX));
                 } catch (IllegalAccessException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.w("Failed to position the scanner view", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.w("Failed to position the scanner view", ex);
                 }
 
 
                 try {
                     field = c.getDeclaredField("y");
                 } catch (NoSuchFieldException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 }
                 try {
                     field = c.getDeclaredField("topMargin");
                 } catch (NoSuchFieldException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.d("LayoutParams field lookup failed: %s", ex);
                 }
 
                 try {
                     field.setAccessible(true);
                     field.set(scannerView.getLayoutParams(), Math.round(param_positionY));
                 } catch (IllegalAccessException ex) {
-                    ex.printStackTrace();
+                    BridgeLog.w("Failed to position the scanner view", ex);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    BridgeLog.w("Failed to position the scanner view", ex);
                 }
 
             } else {
@@ -557,7 +1090,7 @@ public class ScannerBridge extends CordovaPlugin implements
                     return (ViewGroup) viewObject;
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                BridgeLog.w("Failed to get the WebView's view", e);
             }
         }
         return null;
@@ -640,7 +1173,7 @@ public class ScannerBridge extends CordovaPlugin implements
                 @Override
                 public void onConnectionCompleted(ReaderDevice readerDevice, Throwable throwable) {
                     if (throwable != null) {
-                        Log.e("CMBScanner", "ReaderDevice failed to connect: " + throwable.getMessage());
+                        BridgeLog.e("ReaderDevice failed to connect: %s", throwable.getMessage());
                         PluginResult pr = new PluginResult(PluginResult.Status.ERROR, throwable.getMessage());
                         callbackContext.sendPluginResult(pr);
 
@@ -648,6 +1181,7 @@ public class ScannerBridge extends CordovaPlugin implements
                             cordova.requestPermission(ScannerBridge.this, 234, Manifest.permission.CAMERA);
                         }
                     } else {
+                        scanMetrics.onStartup(ScanMetrics.Startup.CONNECTED);
                         PluginResult pr = new PluginResult(PluginResult.Status.OK);
                         callbackContext.sendPluginResult(pr);
                     }
@@ -656,8 +1190,36 @@ public class ScannerBridge extends CordovaPlugin implements
         }
     }
 
+    // The reconnect supervisor lives on the main thread. Posted before the connect or disconnect itself,
+    // so it runs ahead of the connection state change that follows
+    private void userConnect() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                reconnectSupervisor.onUserConnect();
+            }
+        });
+    }
+
+    private void userDisconnect() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                reconnectSupervisor.onUserDisconnect();
+            }
+        });
+    }
+
+    private void runOnMain(Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper())
+            task.run();
+        else
+            metricsHandler.post(task);
+    }
+
     private void disconnect(CallbackContext callbackContext) {
         if (isReaderInit(callbackContext)) {
+            userDisconnect();
             readerDevice.disconnect();
             callbackContext.success();
 
@@ -677,11 +1239,21 @@ public class ScannerBridge extends CordovaPlugin implements
         // but if there isn't a reader we need to return a special callback which will contain false as a message
 
         if (readerDevice != null && readerDevice.getConnectionState().ordinal() == 2) {
-            Log.d("lazyvlad", "startScanning: there is a connected reader ");
+            BridgeLog.d("startScanning: there is a connected reader");
+            scanMetrics.onTrigger();
+            if (BridgeTrace.enabled) {
+                BridgeTrace.endAsync("CMB.scan", scanTraceCookie);
+                scanTraceCookie = BridgeTrace.nextSequence();
+                BridgeTrace.beginAsync("CMB.scan", scanTraceCookie);
+            }
             setScannerViewHidden(false);
             toggleScanner(true);
+            PreviewOptionsTuner tuner = previewTuner;
+            if (tuner != null)
+                tuner.onSessionStart(System.nanoTime());
+            postScanSchedulerTrigger(true);
         } else {
-            Log.d("lazyvlad", "startScanning: there is NO READER return false ");
+            BridgeLog.d("startScanning: there is NO READER return false");
             PluginResult pr = new PluginResult(PluginResult.Status.ERROR, false);
 //            pr.setKeepCallback(true);
             callbackContext.sendPluginResult(pr);
@@ -701,6 +1273,8 @@ public class ScannerBridge extends CordovaPlugin implements
         if (isReaderInit(callbackContext)) {
             setScannerViewHidden(true);
             toggleScanner(false);
+            onPreviewSessionEnd();
+            postScanSchedulerTrigger(false);
         }
     }
 
@@ -721,14 +1295,14 @@ public class ScannerBridge extends CordovaPlugin implements
                     @Override
                     public void onResponseReceived(DataManSystem dataManSystem, DmccResponse dmccResponse) {
                         if(dmccResponse.getError() != null) {
-                            Log.e("CMBScanner", "GET TRIGGER.TYPE command failed to execute: " + dmccResponse.getError());
+                            BridgeLog.e("GET TRIGGER.TYPE command failed to execute: %s", dmccResponse.getError());
                         }
                         else if(dmccResponse.getPayLoad() != null) {
                             try {
                                 param_triggerType = Integer.parseInt(dmccResponse.getPayLoad());
                             }
                             catch (Exception e) {
-                                e.printStackTrace();
+                                BridgeLog.w("Unexpected TRIGGER.TYPE payload %s", dmccResponse.getPayLoad(), e);
                             }
                         }
                     }
@@ -738,16 +1312,18 @@ public class ScannerBridge extends CordovaPlugin implements
                 readerDevice.stopScanning();
             }
             isScanning = scan;
+            sendScanningStateChanged();
+        }
+    }
 
-            if (scanningStateChangedCallbackId != null) {
-
-                //added by lazyvlad on 1/3/2018, return to the startScanning/stopScanning methods if the scanner is on off
-                //so the user on the javascript side can manipulate DOM elements based on the status of the scanner
-                PluginResult pr = new PluginResult(PluginResult.Status.OK, isScanning);
-                pr.setKeepCallback(true);
-                scanningStateChangedCallbackId.sendPluginResult(pr);
-            }
+    private void sendScanningStateChanged() {
+        if (scanningStateChangedCallbackId != null) {
 
+            //added by lazyvlad on 1/3/2018, return to the startScanning/stopScanning methods if the scanner is on off
+            //so the user on the javascript side can manipulate DOM elements based on the status of the scanner
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, isScanning);
+            pr.setKeepCallback(true);
+            scanningStateChangedCallbackId.sendPluginResult(pr);
         }
     }
 
@@ -798,12 +1374,18 @@ public class ScannerBridge extends CordovaPlugin implements
 
     private void getDeviceBatteryLevel(final CallbackContext callbackContext) {
         if (isReaderInit(callbackContext)) {
+            if (batteryLevel >= 0 && SystemClock.elapsedRealtime() - batteryLevelAt <= batteryLevelMaxAgeMs) {
+                callbackContext.success(batteryLevel);
+                return;
+            }
+
             readerDevice.getDeviceBatteryLevel(new ReaderDevice.OnDeviceBatteryLevelListener() {
                 @Override
                 public void onDeviceBatteryLevelReceived(ReaderDevice readerDevice, int i, Throwable throwable) {
                     if (throwable != null) {
                         callbackContext.error(throwable.getMessage());
                     } else {
+                        onBatteryLevel(i);
                         callbackContext.success(i);
                     }
                 }
@@ -820,6 +1402,12 @@ public class ScannerBridge extends CordovaPlugin implements
                         @Override
                         public void onSymbologyEnabled(ReaderDevice readerDevice, ReaderDevice.Symbology symbology, Boolean aBoolean, Throwable throwable) {
                             if (throwable == null) {
+                                synchronized (appliedConfigLock) {
+                                    appliedSymbologies.put(symbology, enable);
+                                }
+                                SymbologyPruner pruner = symbologyPruner;
+                                if (pruner != null)
+                                    pruner.onConfigured(symbology.ordinal(), enable);
                                 callbackContext.success(aBoolean ? 1 : 0);
                             } else {
                                 callbackContext.error(throwable.getMessage());
@@ -856,6 +1444,9 @@ public class ScannerBridge extends CordovaPlugin implements
                         @Override
                         public void onLightsOnCompleted(ReaderDevice readerDevice, Boolean aBoolean, Throwable throwable) {
                             if (throwable == null) {
+                                synchronized (appliedConfigLock) {
+                                    appliedLightsOn = on;
+                                }
                                 callbackContext.success(aBoolean ? 1 : 0);
                             } else {
                                 callbackContext.error(throwable.getMessage());
@@ -888,6 +1479,7 @@ public class ScannerBridge extends CordovaPlugin implements
                         @Override
                         public void onResetConfigCompleted(ReaderDevice readerDevice, Throwable throwable) {
                             if (throwable == null) {
+                                clearAppliedConfig();
                                 callbackContext.success();
                             } else {
                                 callbackContext.error(throwable.getMessage());
@@ -897,14 +1489,17 @@ public class ScannerBridge extends CordovaPlugin implements
             );
     }
 
-    private void sendCommand(final CallbackContext callbackContext, String commandString) {
+    private void sendCommand(final CallbackContext callbackContext, final String commandString) {
+        final long sentNanos = System.nanoTime();
         if (isReaderInit(callbackContext))
             readerDevice.getDataManSystem().sendCommand(
                     commandString,
                     new DataManSystem.OnResponseReceivedListener() {
                         @Override
                         public void onResponseReceived(DataManSystem dataManSystem, DmccResponse dmccResponse) {
+                            sessionCapture.recordCommand(sentNanos, commandString, 0, dmccResponse);
                             if (dmccResponse.getError() == null) {
+                                rememberSetting(commandString);
                                 PluginResult pr = new PluginResult(PluginResult.Status.OK, dmccResponse.getPayLoad());
                                 pr.setKeepCallback(true);
                                 callbackContext.sendPluginResult(pr);
@@ -969,138 +1564,1866 @@ public class ScannerBridge extends CordovaPlugin implements
         }
     }
 
-    @Override
-    public void onConnectionStateChanged(ReaderDevice readerDevice) {
-        if (connectionStateDidChangeOfReaderCallbackID != null) {
-            PluginResult pr = new PluginResult(PluginResult.Status.OK, readerDevice.getConnectionState().ordinal());
-            pr.setKeepCallback(true);
-            connectionStateDidChangeOfReaderCallbackID.sendPluginResult(pr);
+    ////////////////////////////////////////////////////
+    //Metrics
+
+    private void setMetricsEventCallback(CallbackContext callbackContext, long intervalMs) {
+        metricsHandler.removeCallbacks(metricsEventRunnable);
+        metricsEventIntervalMs = intervalMs;
+
+        if (intervalMs > 0) {
+            metricsEventCallbackId = callbackContext;
+            metricsHandler.postDelayed(metricsEventRunnable, intervalMs);
+        } else {
+            metricsEventCallbackId = null;
+            callbackContext.success();
         }
     }
 
-    @Override
-    public void onReadResultReceived(ReaderDevice readerDevice, ReadResults readResults) {
-//        LOG.d("Lazyvlad",readResults.getResultAt(0).getReadString());
-        if (didReceiveReadResultFromReaderCallbackID != null) {
+    private JSONObject metricsToJson() throws JSONException {
+        JSONObject metrics = scanMetrics.toJson();
 
-            JSONObject jsonResult = new JSONObject();
-            JSONArray jsonReadResults = new JSONArray();
-            JSONArray jsonSubResults = new JSONArray();
+        JSONObject startup = scanMetrics.startupToJson();
+        SdkWarmUp warm = warmUp;
+        startup.put("warmUp", warm != null ? warm.toJson() : JSONObject.NULL);
+        metrics.put("startup", startup);
 
-            try {
-                jsonResult.put("xml", readResults.getXml());
+        ResultStreamServer stream = resultStream;
+        if (stream != null)
+            metrics.put("stream", resultStreamStats(stream));
 
-                if (readResults.getCount() > 0) {
-                    jsonReadResults.put(ReadResultToJsonObj(readResults.getResultAt(0)));
-                }
+        ResultFilter filter = resultFilter;
+        if (filter != null)
+            metrics.put("filter", filter.getStats());
 
-                if (readResults.getSubResults() != null) {
-                    for (ReadResult item : readResults.getSubResults()) {
+        FieldExtractor extractor = resultEncoder.getFieldExtractor();
+        if (extractor != null)
+            metrics.put("fields", extractor.getStats());
 
-                        jsonReadResults.put(ReadResultToJsonObj(item));
-                        jsonSubResults.put(ReadResultToJsonObj(item));
-                    }
-                }
+        ImageRequestQueue<ImageScan> images = imageRequests;
+        if (images != null)
+            metrics.put("imageRequests", images.getStats());
 
-                jsonResult.put("readResults", jsonReadResults);
-                jsonResult.put("subReadResults", jsonSubResults);
+        ImagePreprocessing.Stats stats = imageStats;
+        if (stats != null)
+            metrics.put("imagePreprocessing", stats.toJson());
+        return metrics;
+    }
 
-            } catch (JSONException e) {
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    private void sendMetricsEvent() {
+        if (metricsEventCallbackId == null || metricsEventIntervalMs <= 0)
+            return;
 
-            PluginResult pr = new PluginResult(PluginResult.Status.OK, jsonResult);
+        try {
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, metricsToJson());
             pr.setKeepCallback(true);
-            didReceiveReadResultFromReaderCallbackID.sendPluginResult(pr);
+            metricsEventCallbackId.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the metrics event", e);
+        }
 
-            if (param_triggerType == 2) {
-                isScanning = false;
-                stopScanning(scanningStateChangedCallbackId);
-            }
+        metricsHandler.postDelayed(metricsEventRunnable, metricsEventIntervalMs);
+    }
+
+    ////////////////////////////////////////////////////
+    //Battery level cache
+
+    private static final long BATTERY_LEVEL_TIMEOUT_MS = 10000;
+
+    /**
+     * Polls the reader's battery level every intervalMs and pushes it when it changed.
+     * Polls are skipped while scanning, the DMCC link is busy with results then.
+     * One-off getDeviceBatteryLevel calls are answered from the cache while it is younger than maxAgeMs.
+     */
+    private void setBatteryLevelCallback(CallbackContext callbackContext, JSONObject options) {
+        metricsHandler.removeCallbacks(batteryLevelRunnable);
+        long intervalMs = options != null ? options.optLong("intervalMs", 0) : 0;
+        batteryLevelIntervalMs = intervalMs;
+
+        if (intervalMs <= 0) {
+            batteryLevelCallbackId = null;
+            batteryLevelMaxAgeMs = 0;
+            callbackContext.success();
+            return;
         }
+
+        batteryLevelMaxAgeMs = options.optLong("maxAgeMs", intervalMs);
+        batteryLevelCallbackId = callbackContext;
+        if (batteryLevel >= 0)
+            sendBatteryLevelEvent();
+        metricsHandler.post(batteryLevelRunnable);
     }
 
-    protected JSONObject ReadResultToJsonObj(ReadResult result) {
-        JSONObject jsonResult = new JSONObject();
+    private void pollBatteryLevel() {
+        if (batteryLevelCallbackId == null || batteryLevelIntervalMs <= 0)
+            return;
+        metricsHandler.postDelayed(batteryLevelRunnable, batteryLevelIntervalMs);
 
-        try {
-            if (result.isGoodRead()) {
-                if (result.getSymbology() != null) {
-                    jsonResult.put("symbology", result.getSymbology().ordinal());
-                    jsonResult.put("symbologyString", result.getSymbology());
-                }
-                jsonResult.put("readString", result.getReadString());
-            } else {
-                jsonResult.put("symbology", -1);
-                jsonResult.put("symbologyString", "NO READ");
-                jsonResult.put("readString", "");
+        long now = SystemClock.elapsedRealtime();
+        boolean inFlight = batteryLevelRequestedAt > 0 && now - batteryLevelRequestedAt < BATTERY_LEVEL_TIMEOUT_MS;
+        if (isScanning || inFlight || readerDevice == null || readerDevice.getConnectionState() != ConnectionState.Connected)
+            return;
+        if (now - batteryLevelAt < batteryLevelIntervalMs / 2)
+            return;
+
+        final long requestedAt = now;
+        batteryLevelRequestedAt = requestedAt;
+        readerDevice.getDeviceBatteryLevel(new ReaderDevice.OnDeviceBatteryLevelListener() {
+            @Override
+            public void onDeviceBatteryLevelReceived(ReaderDevice readerDevice, int level, Throwable throwable) {
+                // an answer to a poll given up on leaves the current one alone
+                if (batteryLevelRequestedAt == requestedAt)
+                    batteryLevelRequestedAt = 0;
+                if (throwable != null)
+                    BridgeLog.w("Battery level poll failed", throwable);
+                else
+                    onBatteryLevel(level);
             }
+        });
+    }
 
-            jsonResult.put("goodRead", result.isGoodRead());
+    private void onBatteryLevel(int level) {
+        boolean changed = level != batteryLevel;
+        batteryLevel = level;
+        batteryLevelAt = SystemClock.elapsedRealtime();
+        batteryLevelTime = System.currentTimeMillis();
+        if (changed)
+            sendBatteryLevelEvent();
+    }
 
-            if (result.getXml() != null) {
-                jsonResult.put("xml", result.getXml());
-            }
-            if (result.getImageGraphics() != null) {
+    // a different reader, or the same one after a drop, may report anything
+    private void clearBatteryLevel() {
+        batteryLevel = -1;
+        batteryLevelAt = 0;
+        // the dropped reader won't answer a pending poll
+        batteryLevelRequestedAt = 0;
+    }
 
-                String svgXML = result.getImageGraphics();
-                try {
-                    //For MX Device
-                    if(svgXML.indexOf("<title") > 0) {
-                        svgXML = svgXML.replace(svgXML.substring(svgXML.indexOf("<title"), svgXML.indexOf("<g")), "");
-                    }
-                    jsonResult.put("imageGraphics", svgXML);
-                } catch(Exception ex) {
-                    jsonResult.put("imageGraphics", result.getImageGraphics());
-                }
-            }
+    private void sendBatteryLevelEvent() {
+        CallbackContext callback = batteryLevelCallbackId;
+        if (callback == null)
+            return;
 
-            if (result.getImage() != null) {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                result.getImage().compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-                byte[] byteArray = byteArrayOutputStream.toByteArray();
+        try {
+            JSONObject event = new JSONObject();
+            event.put("charge", batteryLevel);
+            event.put("timestamp", batteryLevelTime);
 
-                String encoded = Base64.encodeToString(byteArray, Base64.DEFAULT);
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            callback.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the battery level event", e);
+        }
+    }
 
-                jsonResult.put("image", encoded);
-            }
+    ////////////////////////////////////////////////////
+    //ROI tuning
 
-            if (result.getParsedText() != null)
-                jsonResult.put("parsedText", result.getParsedText());
+    private void configureRoiTuning(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        if (deviceTypeFromInt(param_deviceType) != DeviceType.MOBILE_DEVICE) {
+            callbackContext.error("ROI tuning needs the camera reader");
+            return;
+        }
+        if (!isReaderInit(callbackContext))
+            return;
+
+        if (options == null || !options.optBoolean("enabled", true)) {
+            stopRoiTuning();
+            callbackContext.success();
+            return;
+        }
 
-            if (result.getParsedJSON() != null)
-                jsonResult.put("parsedJSON", result.getParsedJSON());
+        RoiTuner tuner = new RoiTuner(
+                options.optInt("sampleSize", 50),
+                options.optInt("minSamples", 20),
+                options.optInt("recomputeEvery", 10),
+                (float) options.optDouble("marginPercent", 5) / 100,
+                (float) options.optDouble("trimPercent", 5) / 100,
+                (float) options.optDouble("minSizePercent", 20) / 100,
+                options.optInt("missStreak", 3),
+                new RoiTuner.Listener() {
+                    @Override
+                    public void onRoiChanged(float left, float top, float width, float height) {
+                        BridgeLog.d("Decode ROI at %s%%, size %s%%", left + "," + top, width + "x" + height);
+                        BarcodeScanner.MWBsetScanningRect(BarcodeScanner.MWB_CODE_MASK_ALL, left, top, width, height);
+                    }
+                });
 
-            jsonResult.put("isGS1", result.getIsGS1());
+        if (roiTuner == null) {
+            int supported = BarcodeScanner.MWBgetSupportedCodes();
+            savedScanningRects = new float[32][];
+            for (int bit = 0; bit < 32; bit++) {
+                if ((supported & (1 << bit)) != 0)
+                    savedScanningRects[bit] = BarcodeScanner.MWBgetScanningRectArray(1 << bit);
+            }
 
-        } catch (JSONException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+            // 1D codes only get a full outline with the location calculated
+            int flags = BarcodeScanner.MWBgetFlags(BarcodeScanner.MWB_CODE_MASK_NONE);
+            enabledLocationFlag = (flags & BarcodeScanner.MWB_CFG_GLOBAL_CALCULATE_1D_LOCATION) == 0;
+            if (enabledLocationFlag)
+                BarcodeScanner.MWBenableFlag(BarcodeScanner.MWB_CODE_MASK_NONE, BarcodeScanner.MWB_CFG_GLOBAL_CALCULATE_1D_LOCATION);
         }
+        BarcodeScanner.MWBsetScanningRect(BarcodeScanner.MWB_CODE_MASK_ALL, 0, 0, 100, 100);
 
-        return jsonResult;
+        roiTuner = tuner;
+        applyImageGraphics();
+        callbackContext.success(tuner.getStats());
     }
 
-    @Override
-    public void onAvailabilityChanged(ReaderDevice readerDevice) {
-        if (availabilityDidChangeOfReaderCallbackID != null) {
-            PluginResult pr = new PluginResult(PluginResult.Status.OK, readerDevice.getAvailability().ordinal());
-            pr.setKeepCallback(true);
-            availabilityDidChangeOfReaderCallbackID.sendPluginResult(pr);
+    private void stopRoiTuning() {
+        if (roiTuner == null)
+            return;
+        roiTuner = null;
+
+        for (int bit = 0; bit < 32; bit++) {
+            float[] rect = savedScanningRects[bit];
+            if (rect != null && rect.length >= 4)
+                BarcodeScanner.MWBsetScanningRect(1 << bit, rect[0], rect[1], rect[2], rect[3]);
         }
+        savedScanningRects = null;
+
+        if (enabledLocationFlag)
+            BarcodeScanner.MWBdisableFlag(BarcodeScanner.MWB_CODE_MASK_NONE, BarcodeScanner.MWB_CFG_GLOBAL_CALCULATE_1D_LOCATION);
+        enabledLocationFlag = false;
+
+        applyImageGraphics();
     }
 
-    //////////////////////////////////////////////////////////
+    // the tuner needs the graphics for the code outlines, they only go to JS when the app asked for them
+    private void applyImageGraphics() {
+        Boolean imageGraphics;
+        synchronized (appliedConfigLock) {
+            imageGraphics = appliedImageGraphics;
+        }
+        boolean requested = Boolean.TRUE.equals(imageGraphics);
+        if (readerDevice != null && (roiTuner != null || imageGraphics != null))
+            readerDevice.enableImageGraphics(requested || roiTuner != null);
+        resultEncoder.setIncludeImageGraphics(requested || roiTuner == null);
+    }
 
-    // HANDLE SCREEN ORIENTATION
-    @Override
-    public void onConfigurationChanged(Configuration newConfig) {
-        super.onConfigurationChanged(newConfig);
+    ////////////////////////////////////////////////////
+    //Multi-code collection
 
-        if (scannerView != null) {
+    private void startCollection(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        if (!isReaderInit(callbackContext))
+            return;
+        if (readerDevice.getConnectionState() != ConnectionState.Connected) {
+            callbackContext.error("The reader is not connected");
+            return;
+        }
+
+        if (options == null)
+            options = new JSONObject();
+        Set<Integer> symbologies = null;
+        JSONArray list = options.optJSONArray("symbologies");
+        if (list != null && list.length() > 0) {
+            symbologies = new HashSet<>();
+            for (int i = 0; i < list.length(); i++)
+                symbologies.add(list.getInt(i));
+        }
+
+        CodeCollector collector = new CodeCollector(
+                options.optInt("expectedCount", 0),
+                symbologies,
+                (float) options.optDouble("positionTolerance", 0),
+                System.currentTimeMillis());
+
+        // a collection still running ends here, its page gets what it had
+        finishCollection("stopped");
+        synchronized (collectionLock) {
+            codeCollector = collector;
+            collectionCallbackId = callbackContext;
+        }
+
+        long timeoutMs = options.optLong("timeoutMs", 0);
+        if (timeoutMs > 0)
+            metricsHandler.postDelayed(collectionTimeoutRunnable, timeoutMs);
+
+        collectionStartedScanning = !isScanning;
+        if (collectionStartedScanning)
+            startScanning(callbackContext);
+    }
+
+    /**
+     * Sends the aggregate to the startCollection callback and stops scanning when the collection started it.
+     * @param reason "complete", "timeout" or "stopped"
+     */
+    private void finishCollection(String reason) {
+        CodeCollector collector;
+        CallbackContext callback;
+        synchronized (collectionLock) {
+            collector = codeCollector;
+            callback = collectionCallbackId;
+            codeCollector = null;
+            collectionCallbackId = null;
+        }
+        if (collector == null)
+            return;
+
+        metricsHandler.removeCallbacks(collectionTimeoutRunnable);
+        if (callback != null) {
+            try {
+                callback.success(collector.toJson(reason, System.currentTimeMillis()));
+            } catch (JSONException e) {
+                callback.error(e.getMessage());
+            }
+        }
+
+        if (collectionStartedScanning && isScanning)
+            stopScanning(null);
+        collectionStartedScanning = false;
+    }
+
+    // repeated frames stay native, only new codes are kept
+    // collected scans are filtered and journaled like delivered ones, only the sending to JS waits for the collection's end
+    private void collectResults(CodeCollector collector, ScanMetrics metrics, int readerHandle, ScanResult main, List<? extends ScanResult> subResults) {
+        long now = System.currentTimeMillis();
+        collector.onFrame();
+
+        // the sub results carry the codes of a multi-code scan, the main result repeats one of them
+        boolean multiCode = subResults != null && !subResults.isEmpty();
+        ResultFilter filter = resultFilter;
+        if (filter != null) {
+            main = filterResult(filter, metrics, main);
+            subResults = filterResults(filter, metrics, subResults);
+        }
+
+        ScanJournal scanJournal = journal;
+        if (scanJournal != null)
+            scanJournal.append(readerHandle, main, subResults);
+
+        long duplicates = collector.getDuplicateCount();
+        if (multiCode) {
+            for (ScanResult item : subResults)
+                collector.add(item, now);
+        } else if (main != null) {
+            collector.add(main, now);
+        }
+        metrics.dedupHits.addAndGet(collector.getDuplicateCount() - duplicates);
+
+        if (collector.isComplete()) {
+            finishCollection("complete");
+        } else if (param_triggerType == 2 && isScanning && readerDevice != null) {
+            // a single trigger stops the reader after every read
+            readerDevice.startScanning();
+        }
+    }
+
+    ////////////////////////////////////////////////////
+    //Adaptive preview options
+
+    private void configureAdaptivePreview(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        if (deviceTypeFromInt(param_deviceType) != DeviceType.MOBILE_DEVICE) {
+            callbackContext.error("Adaptive preview needs the camera reader");
+            return;
+        }
+
+        if (options == null || !options.optBoolean("enabled", true)) {
+            previewTuner = null;
+            adaptivePreviewCallbackId = null;
+            // back to what the app set, the next session opens the camera with it
+            reopenCameraIfTuned();
+            callbackContext.success();
+            return;
+        }
+
+        PreviewOptionsTuner tuner = new PreviewOptionsTuner(
+                supportedPreviewOptions(),
+                openedPreviewOptions,
+                options.optInt("minSessions", 3),
+                options.optLong("minSessionMs", 500),
+                options.optInt("exploreEvery", 20),
+                options.optDouble("switchMargin", 0.1),
+                new PreviewOptionsTuner.Listener() {
+                    @Override
+                    public void onOptionsChanged(int previewOptions, String reason) {
+                        BridgeLog.d("Preview options %s (%s)", previewOptions, reason);
+                        sendAdaptivePreviewEvent("switched", previewOptions, reason);
+                    }
+                });
+
+        adaptivePreviewCallbackId = callbackContext;
+        previewTuner = tuner;
+
+        JSONObject configured = tuner.getStats();
+        configured.put("event", "configured");
+        PluginResult pr = new PluginResult(PluginResult.Status.OK, configured);
+        pr.setKeepCallback(true);
+        callbackContext.sendPluginResult(pr);
+    }
+
+    /**
+     * The resolution / frame rate combinations the selected camera can run: 1080p needs a 1920x1080 YUV output,
+     * 60 FPS an auto exposure range reaching 60. Low RAM devices don't get both at once.
+     */
+    private int[] supportedPreviewOptions() {
+        boolean highResolution = false;
+        boolean highFrameRate = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            int facing = param_cameraMode == 3 ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+            try {
+                CameraManager manager = (CameraManager) cordova.getActivity().getSystemService(Context.CAMERA_SERVICE);
+                for (String id : manager.getCameraIdList()) {
+                    CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+                    Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+                    if (lensFacing == null || lensFacing != facing)
+                        continue;
+
+                    StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                    if (map != null) {
+                        for (Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+                            if (size.getWidth() >= 1920 && size.getHeight() >= 1080)
+                                highResolution = true;
+                        }
+                    }
+
+                    Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+                    for (int i = 0; fpsRanges != null && i < fpsRanges.length; i++) {
+                        if (fpsRanges[i].getUpper() >= 60)
+                            highFrameRate = true;
+                    }
+                    break;
+                }
+            } catch (CameraAccessException | RuntimeException e) {
+                BridgeLog.w("Failed to read the camera capabilities", e);
+            }
+        }
+
+        ActivityManager activityManager = (ActivityManager) cordova.getActivity().getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+
+        List<Integer> supported = new ArrayList<>();
+        supported.add(0);
+        if (highResolution)
+            supported.add(PreviewOptionsTuner.HIGH_RESOLUTION);
+        if (highFrameRate)
+            supported.add(PreviewOptionsTuner.HIGH_FRAME_RATE);
+        if (highResolution && highFrameRate && !lowRam)
+            supported.add(PreviewOptionsTuner.TUNED_OPTIONS);
+
+        int[] options = new int[supported.size()];
+        for (int i = 0; i < options.length; i++)
+            options[i] = supported.get(i);
+        return options;
+    }
+
+    // the app's preview options with the tuned bits replaced by the tuner's pick
+    private int effectivePreviewOptions() {
+        PreviewOptionsTuner tuner = previewTuner;
+        if (tuner == null)
+            return param_previewOptions;
+        return (param_previewOptions & ~PreviewOptionsTuner.TUNED_OPTIONS) | tuner.getOptions();
+    }
+
+    private ReaderDevice createCameraDevice() {
+        int previewOptions = effectivePreviewOptions();
+        openedPreviewOptions = previewOptions;
+        if ("".equals(registrationKey))
+            return ReaderDevice.getPhoneCameraDevice(cordova.getActivity(), param_cameraMode, previewOptions, scannerView);
+        else
+            return ReaderDevice.getPhoneCameraDevice(cordova.getActivity(), param_cameraMode, previewOptions, scannerView, registrationKey);
+    }
+
+    private void onPreviewSessionEnd() {
+        PreviewOptionsTuner tuner = previewTuner;
+        if (tuner == null)
+            return;
+        tuner.onSessionEnd(System.nanoTime());
+        reopenCameraIfTuned();
+    }
+
+    /**
+     * The preview options only apply when the camera device is created. Between sessions a camera opened with
+     * other options is replaced by a new one on the same view, connected and configured the way the old one was.
+     */
+    private void reopenCameraIfTuned() {
+        if (effectivePreviewOptions() == openedPreviewOptions)
+            return;
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (deviceTypeFromInt(param_deviceType) != DeviceType.MOBILE_DEVICE || readerDevice == null || isScanning
+                        || effectivePreviewOptions() == openedPreviewOptions)
+                    return;
+
+                ReaderDevice previous = readerDevice;
+                boolean wasConnected = previous.getConnectionState() == ConnectionState.Connected;
+                // the page keeps seeing one reader, the old one goes away quietly
+                reconnectSupervisor.onUserDisconnect();
+                previous.setReaderDeviceListener(null);
+                previous.disconnect();
+
+                reconnectSupervisor.reset();
+                readerDevice = createCameraDevice();
+                readerDevice.setReaderDeviceListener(ScannerBridge.this);
+                if (!wasConnected)
+                    return;
+
+                reconnectSupervisor.onUserConnect();
+                final long reopenStart = SystemClock.elapsedRealtime();
+                readerDevice.connect(new ReaderDevice.OnConnectionCompletedListener() {
+                    @Override
+                    public void onConnectionCompleted(ReaderDevice device, Throwable throwable) {
+                        if (throwable != null) {
+                            BridgeLog.e("Failed to reopen the camera: %s", throwable.getMessage());
+                            sendAdaptivePreviewEvent("reopenFailed", openedPreviewOptions, throwable.getMessage());
+                            return;
+                        }
+                        restoreAppliedConfig();
+                        BridgeLog.d("Camera reopened with preview options %s in %sms", openedPreviewOptions, SystemClock.elapsedRealtime() - reopenStart);
+                    }
+                });
+            }
+        });
+    }
+
+    private void sendAdaptivePreviewEvent(String type, int previewOptions, String reason) {
+        CallbackContext callback = adaptivePreviewCallbackId;
+        if (callback == null)
+            return;
+
+        try {
+            JSONObject event = new JSONObject();
+            event.put("event", type);
+            event.put("options", previewOptions);
+            event.put("highResolution", (previewOptions & PreviewOptionsTuner.HIGH_RESOLUTION) != 0);
+            event.put("highFrameRate", (previewOptions & PreviewOptionsTuner.HIGH_FRAME_RATE) != 0);
+            event.put("reason", reason);
+
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            callback.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the adaptive preview event", e);
+        }
+    }
+
+    ////////////////////////////////////////////////////
+    //Scan scheduler
+
+    private static final long SCAN_SCHEDULER_TICK_MS = 250;
+    private static final long BATTERY_CHECK_MS = 30000;
+
+    private void configureScanScheduler(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        if (deviceTypeFromInt(param_deviceType) != DeviceType.MOBILE_DEVICE) {
+            callbackContext.error("The scan scheduler needs the camera reader");
+            return;
+        }
+
+        stopScanScheduler();
+        if (options == null || !options.optBoolean("enabled", true)) {
+            callbackContext.success();
+            return;
+        }
+
+        final ScanScheduler scheduler = new ScanScheduler(
+                options.optLong("idleSeconds", 10) * 1000,
+                options.optLong("dutyOnMs", 500),
+                options.optLong("dutyOffMs", 1500),
+                options.optLong("releaseAfterSeconds", 300) * 1000,
+                options.optInt("lowBatteryPercent", 20),
+                new ScanScheduler.Listener() {
+                    @Override
+                    public void onDecodingPaused(boolean paused) {
+                        pauseDecoding(paused);
+                    }
+
+                    // scanning stops as if stopScanning was called, the page is told like it is then
+                    @Override
+                    public void onCameraReleased() {
+                        if (readerDevice == null)
+                            return;
+                        readerDevice.stopScanning();
+                        isScanning = false;
+                        onPreviewSessionEnd();
+                        sendScanningStateChanged();
+                    }
+
+                    @Override
+                    public void onEvent(String event) {
+                        sendScanSchedulerEvent(event);
+                    }
+                });
+
+        scanSchedulerCallbackId = callbackContext;
+        scanScheduler = scheduler;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) cordova.getActivity().getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null) {
+                scheduler.setThermalStatus(powerManager.getCurrentThermalStatus());
+                thermalStatusListener = new PowerManager.OnThermalStatusChangedListener() {
+                    @Override
+                    public void onThermalStatusChanged(int status) {
+                        if (scanScheduler == scheduler)
+                            scheduler.setThermalStatus(status);
+                    }
+                };
+                powerManager.addThermalStatusListener(thermalStatusListener);
+            }
+        }
+        checkBattery(scheduler);
+
+        if (isScanning)
+            scheduler.onTrigger(SystemClock.elapsedRealtime());
+        scheduleScanSchedulerTick();
+
+        JSONObject configured = scheduler.getStats(SystemClock.elapsedRealtime());
+        configured.put("event", "configured");
+        PluginResult pr = new PluginResult(PluginResult.Status.OK, configured);
+        pr.setKeepCallback(true);
+        callbackContext.sendPluginResult(pr);
+    }
+
+    private void stopScanSchedulerOnMain() {
+        metricsHandler.removeCallbacks(scanSchedulerRunnable);
+
+        ScanScheduler scheduler = scanScheduler;
+        scanScheduler = null;
+        scanSchedulerCallbackId = null;
+        // paused decoding runs again; a released camera was reported stopped, startScanning restarts it
+        if (scheduler != null)
+            scheduler.onStop(SystemClock.elapsedRealtime());
+
+        if (thermalStatusListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) cordova.getActivity().getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null)
+                powerManager.removeThermalStatusListener(thermalStatusListener);
+        }
+        thermalStatusListener = null;
+    }
+
+    private void stopScanScheduler() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            stopScanSchedulerOnMain();
+            return;
+        }
+        metricsHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopScanSchedulerOnMain();
+            }
+        });
+    }
+
+    // the scheduler lives on the main thread, scanning state changes come in from the plugin thread
+    private void postScanSchedulerTrigger(final boolean scanning) {
+        if (scanScheduler == null)
+            return;
+
+        metricsHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ScanScheduler scheduler = scanScheduler;
+                if (scheduler == null)
+                    return;
+                if (scanning) {
+                    scheduler.onTrigger(SystemClock.elapsedRealtime());
+                    scheduleScanSchedulerTick();
+                } else {
+                    scheduler.onStop(SystemClock.elapsedRealtime());
+                    metricsHandler.removeCallbacks(scanSchedulerRunnable);
+                }
+            }
+        });
+    }
+
+    private void scheduleScanSchedulerTick() {
+        metricsHandler.removeCallbacks(scanSchedulerRunnable);
+        metricsHandler.postDelayed(scanSchedulerRunnable, SCAN_SCHEDULER_TICK_MS);
+    }
+
+    private void tickScanScheduler() {
+        ScanScheduler scheduler = scanScheduler;
+        if (scheduler == null)
+            return;
+
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastBatteryCheck >= BATTERY_CHECK_MS)
+            checkBattery(scheduler);
+        scheduler.tick(now);
+
+        ScanScheduler.State state = scheduler.getState();
+        if (state != ScanScheduler.State.STOPPED && state != ScanScheduler.State.RELEASED)
+            metricsHandler.postDelayed(scanSchedulerRunnable, SCAN_SCHEDULER_TICK_MS);
+    }
+
+    // the sticky battery broadcast, no receiver stays registered
+    private void checkBattery(ScanScheduler scheduler) {
+        lastBatteryCheck = SystemClock.elapsedRealtime();
+        Intent battery = cordova.getActivity().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null)
+            return;
+
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        scheduler.setBattery(level >= 0 && scale > 0 ? level * 100 / scale : -1, plugged != 0);
+    }
+
+    /**
+     * Pauses decoding with the preview running, the way PREVIEW_PAUSED starts a session: no code is active while paused.
+     * When the decoder refuses an empty mask the camera stops scanning instead.
+     */
+    private void pauseDecoding(boolean paused) {
+        if (paused) {
+            pausedActiveCodes = BarcodeScanner.MWBgetActiveCodes();
+            pausedByStopScanning = BarcodeScanner.MWBsetActiveCodes(0) != BarcodeScanner.MWB_RT_OK;
+            if (pausedByStopScanning && readerDevice != null)
+                readerDevice.stopScanning();
+        } else if (pausedByStopScanning) {
+            pausedByStopScanning = false;
+            if (readerDevice != null && isScanning)
+                readerDevice.startScanning();
+        } else if (BarcodeScanner.MWBgetActiveCodes() == 0) {
+            // the app enabled codes meanwhile when the mask isn't empty anymore, those stay
+            BarcodeScanner.MWBsetActiveCodes(pausedActiveCodes);
+        }
+    }
+
+    private void sendScanSchedulerEvent(String type) {
+        CallbackContext callback = scanSchedulerCallbackId;
+        ScanScheduler scheduler = scanScheduler;
+        if (callback == null || scheduler == null)
+            return;
+
+        try {
+            JSONObject event = scheduler.getStats(SystemClock.elapsedRealtime());
+            event.put("event", type);
+
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            callback.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the scan scheduler event", e);
+        }
+    }
+
+    ////////////////////////////////////////////////////
+    //Symbology pruning
+
+    // in a holder so the pruner classes only load once pruning is used
+    private static final class SymbologyNamesHolder {
+        static final SymbologyPruner.SymbologyNames SYMBOLOGY_NAMES = new SymbologyPruner.SymbologyNames() {
+            @Override
+            public String nameOf(int symbology) {
+                return symbology >= 0 && symbology < symbologyValues.length ? symbologyValues[symbology].name() : Integer.toString(symbology);
+            }
+        };
+    }
+
+    private void configureSymbologyPruning(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        long now = System.currentTimeMillis();
+
+        // whatever the previous configuration pruned comes back first
+        SymbologyPruner previous = symbologyPruner;
+        symbologyPruner = null;
+        if (previous != null)
+            previous.relearn("relearn", now);
+
+        String mode = options != null ? options.optString("mode", "off") : "off";
+        if (mode.equals("off")) {
+            symbologyPruningCallbackId = null;
+            callbackContext.success();
+            return;
+        }
+
+        SymbologyPruner pruner = new SymbologyPruner(
+                mode.equals("auto") ? SymbologyPruner.Mode.AUTO : SymbologyPruner.Mode.SUGGEST,
+                options.optLong("windowSeconds", 1800) * 1000,
+                options.optInt("minReads", 50),
+                options.optInt("noReadStreak", 5),
+                options.optLong("relearnIntervalSeconds", 0) * 1000,
+                new SymbologyPruner.Listener() {
+                    @Override
+                    public void onSuggested(List<Integer> symbologies) {
+                        sendSymbologyPruningEvent("suggested", symbologies, null);
+                    }
+
+                    @Override
+                    public void onPruned(List<Integer> symbologies) {
+                        for (Integer symbology : symbologies)
+                            applyPrunedSymbology(symbology, false);
+                        sendSymbologyPruningEvent("pruned", symbologies, null);
+                    }
+
+                    @Override
+                    public void onRestored(List<Integer> symbologies, String reason) {
+                        for (Integer symbology : symbologies)
+                            applyPrunedSymbology(symbology, true);
+                        sendSymbologyPruningEvent("restored", symbologies, reason);
+                    }
+                },
+                now);
+
+        // the reader doesn't report its enabled set, the candidates are the app's list or what it enabled through the bridge
+        JSONArray symbologies = options.optJSONArray("symbologies");
+        if (symbologies != null) {
+            for (int i = 0; i < symbologies.length(); i++)
+                pruner.addCandidate(symbologies.getInt(i), false);
+        } else {
+            synchronized (appliedConfigLock) {
+                for (Map.Entry<ReaderDevice.Symbology, Boolean> entry : appliedSymbologies.entrySet()) {
+                    if (entry.getValue())
+                        pruner.addCandidate(entry.getKey().ordinal(), false);
+                }
+            }
+        }
+
+        JSONArray keep = options.optJSONArray("keep");
+        for (int i = 0; keep != null && i < keep.length(); i++)
+            pruner.addCandidate(keep.getInt(i), true);
+
+        symbologyPruningCallbackId = callbackContext;
+        symbologyPruner = pruner;
+
+        JSONObject configured = pruner.getStats(now, SymbologyNamesHolder.SYMBOLOGY_NAMES);
+        configured.put("event", "configured");
+        PluginResult pr = new PluginResult(PluginResult.Status.OK, configured);
+        pr.setKeepCallback(true);
+        callbackContext.sendPluginResult(pr);
+    }
+
+    // pruning goes straight to the reader, appliedSymbologies keeps what the app asked for
+    private void applyPrunedSymbology(int symbology, boolean enable) {
+        ReaderDevice device = readerDevice;
+        if (device == null)
+            return;
+
+        device.setSymbologyEnabled(symbologyFromInt(symbology), enable, new ReaderDevice.OnSymbologyListener() {
+            @Override
+            public void onSymbologyEnabled(ReaderDevice readerDevice, ReaderDevice.Symbology symbology, Boolean aBoolean, Throwable throwable) {
+                if (throwable != null)
+                    BridgeLog.e(enable ? "Failed to restore %s: %s" : "Failed to prune %s: %s", symbology, throwable.getMessage());
+            }
+        });
+    }
+
+    private void sendSymbologyPruningEvent(String type, List<Integer> symbologies, String reason) {
+        CallbackContext callback = symbologyPruningCallbackId;
+        if (callback == null)
+            return;
+
+        try {
+            JSONArray ordinals = new JSONArray();
+            JSONArray names = new JSONArray();
+            for (Integer symbology : symbologies) {
+                ordinals.put(symbology.intValue());
+                names.put(SymbologyNamesHolder.SYMBOLOGY_NAMES.nameOf(symbology));
+            }
+
+            JSONObject event = new JSONObject();
+            event.put("event", type);
+            event.put("symbologies", ordinals);
+            event.put("names", names);
+            if (reason != null)
+                event.put("reason", reason);
+
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            callback.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the symbology pruning event", e);
+        }
+    }
+
+    // symbologies of the good reads of a scan, the sub results when there are any
+    private static void recordSymbologyUsage(SymbologyPruner pruner, ScanMetrics metrics, ScanResult main, List<? extends ScanResult> subResults) {
+        List<Integer> goodReads = new ArrayList<>(2);
+        if (subResults != null && !subResults.isEmpty()) {
+            for (ScanResult result : subResults) {
+                if (result.isGoodRead() && result.getSymbologyOrdinal() >= 0)
+                    goodReads.add(result.getSymbologyOrdinal());
+            }
+        } else if (main != null && main.isGoodRead() && main.getSymbologyOrdinal() >= 0) {
+            goodReads.add(main.getSymbologyOrdinal());
+        }
+        pruner.onResult(goodReads, metrics.lastTriggerToResultNanos(), System.currentTimeMillis());
+    }
+
+    ////////////////////////////////////////////////////
+    //Read statistics
+
+    private void configureReadStatistics(CallbackContext callbackContext, JSONObject options) throws JSONException {
+        if (options == null || !options.optBoolean("enabled", true)) {
+            readStatistics = null;
+            resultEncoder.setIncludeXml(true);
+            callbackContext.success();
+            return;
+        }
+
+        ReadStatistics statistics = new ReadStatistics(options.optLong("bucketSeconds", 10) * 1000, options.optInt("windowBuckets", 30));
+        readStatistics = statistics;
+        resultEncoder.setIncludeXml(!options.optBoolean("stripXml", true));
+        callbackContext.success(statistics.getStats(statistics.getMaxWindowMs()));
+    }
+
+    // the scan's XML covers every result, the per result XML is only used when there is none
+    private static void recordReadStatistics(ReadStatistics statistics, ReadResults readResults) {
+        boolean traced = BridgeTrace.begin("CMB.readStatistics");
+        if (readResults.getXml() != null) {
+            statistics.record(readResults.getXml());
+        } else {
+            for (int i = 0; i < readResults.getCount(); i++)
+                statistics.record(readResults.getResultAt(i).getXml());
+        }
+        BridgeTrace.end(traced);
+    }
+
+    private void setReadStatisticsEventCallback(CallbackContext callbackContext, long intervalMs, long windowMs) {
+        metricsHandler.removeCallbacks(readStatisticsEventRunnable);
+        readStatisticsEventIntervalMs = intervalMs;
+        readStatisticsEventWindowMs = windowMs;
+
+        if (intervalMs > 0) {
+            readStatisticsEventCallbackId = callbackContext;
+            metricsHandler.postDelayed(readStatisticsEventRunnable, intervalMs);
+        } else {
+            readStatisticsEventCallbackId = null;
+            callbackContext.success();
+        }
+    }
+
+    private void sendReadStatisticsEvent() {
+        if (readStatisticsEventCallbackId == null || readStatisticsEventIntervalMs <= 0)
+            return;
+
+        ReadStatistics statistics = readStatistics;
+        if (statistics != null) {
+            try {
+                PluginResult pr = new PluginResult(PluginResult.Status.OK, statistics.getStats(readStatisticsEventWindowMs));
+                pr.setKeepCallback(true);
+                readStatisticsEventCallbackId.sendPluginResult(pr);
+            } catch (JSONException e) {
+                BridgeLog.w("Failed to build the read statistics event", e);
+            }
+        }
+
+        metricsHandler.postDelayed(readStatisticsEventRunnable, readStatisticsEventIntervalMs);
+    }
+
+    ////////////////////////////////////////////////////
+    //Reader pool
+
+    private int readerHandleOf(ReaderDevice device) {
+        if (device == readerDevice)
+            return DEFAULT_READER_HANDLE;
+
+        for (Map.Entry<Integer, ReaderDevice> entry : readerPool.entrySet()) {
+            if (entry.getValue() == device)
+                return entry.getKey();
+        }
+        return -1;
+    }
+
+    // returns the reader for a handle, or reports an error to the callback and returns null
+    private ReaderDevice getPooledReader(CallbackContext callbackContext, int handle) {
+        ReaderDevice device = (handle == DEFAULT_READER_HANDLE) ? readerDevice : readerPool.get(handle);
+        if (device == null && callbackContext != null)
+            callbackContext.error("Invalid reader handle: " + handle);
+        return device;
+    }
+
+    private void loadReader(final CallbackContext callbackContext, final int deviceType) {
+        if (deviceType < 0 || deviceType >= deviceTypeValues.length || deviceTypeFromInt(deviceType) != DeviceType.MX_1000) {
+            callbackContext.error("Only MX devices can be added to the reader pool, use loadScanner for the camera");
+            return;
+        }
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // getMXDevice binds to the one attached MX, a second entry would drive the same hardware
+                if (!readerPool.isEmpty() || (readerDevice != null && deviceTypeFromInt(param_deviceType) == DeviceType.MX_1000)) {
+                    callbackContext.error("Only one MX device can be loaded, it is already in use");
+                    return;
+                }
+
+                int handle = nextReaderHandle.getAndIncrement();
+                ReaderDevice device = ReaderDevice.getMXDevice(cordova.getActivity());
+                device.setReaderDeviceListener(ScannerBridge.this);
+                readerPool.put(handle, device);
+                device.startAvailabilityListening();
+
+                callbackContext.success(handle);
+            }
+        });
+    }
+
+    private void unloadReader(final CallbackContext callbackContext, final int handle) {
+        final ReaderDevice device = readerPool.remove(handle);
+        if (device == null) {
+            callbackContext.error("Invalid reader handle: " + handle);
+            return;
+        }
+        scanningReaderHandles.remove(handle);
+        readerTriggerTypes.remove(handle);
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                device.stopAvailabilityListening();
+                device.disconnect();
+                callbackContext.success();
+            }
+        });
+    }
+
+    // every pooled reader goes away with the plugin
+    private void releaseReaderPool() {
+        for (Integer handle : readerPool.keySet()) {
+            ReaderDevice device = readerPool.remove(handle);
+            if (device == null)
+                continue;
+            device.setReaderDeviceListener(null);
+            device.stopAvailabilityListening();
+            device.disconnect();
+        }
+        scanningReaderHandles.clear();
+        readerTriggerTypes.clear();
+    }
+
+    // a pooled reader in single trigger mode stops by itself after each read, one in continuous mode keeps scanning
+    private boolean stopsAfterRead(int handle) {
+        Integer triggerType = readerTriggerTypes.get(handle);
+        return triggerType == null || triggerType == 2;
+    }
+
+    private void getReaderHandles(CallbackContext callbackContext) throws JSONException {
+        JSONArray handles = new JSONArray();
+
+        if (readerDevice != null)
+            handles.put(readerInfo(DEFAULT_READER_HANDLE, readerDevice));
+
+        for (Map.Entry<Integer, ReaderDevice> entry : readerPool.entrySet())
+            handles.put(readerInfo(entry.getKey(), entry.getValue()));
+
+        callbackContext.success(handles);
+    }
+
+    private JSONObject readerInfo(int handle, ReaderDevice device) throws JSONException {
+        JSONObject info = new JSONObject();
+        info.put("handle", handle);
+        info.put("deviceType", handle == DEFAULT_READER_HANDLE ? param_deviceType : DeviceType.MX_1000.ordinal());
+        info.put("connectionState", device.getConnectionState().ordinal());
+        info.put("availability", device.getAvailability().ordinal());
+        info.put("scanning", handle == DEFAULT_READER_HANDLE ? isScanning : scanningReaderHandles.contains(handle));
+        return info;
+    }
+
+    private void connectReader(final CallbackContext callbackContext, int handle) {
+        if (handle == DEFAULT_READER_HANDLE) {
+            connectCallbackId = callbackContext;
+            userConnect();
+            connect(callbackContext);
+            return;
+        }
+
+        ReaderDevice device = getPooledReader(callbackContext, handle);
+        if (device != null) {
+            device.connect(new ReaderDevice.OnConnectionCompletedListener() {
+                @Override
+                public void onConnectionCompleted(ReaderDevice readerDevice, Throwable throwable) {
+                    if (throwable != null)
+                        callbackContext.error(throwable.getMessage());
+                    else
+                        callbackContext.success();
+                }
+            });
+        }
+    }
+
+    private void toggleReaderScanning(CallbackContext callbackContext, int handle, boolean scan) {
+        if (handle == DEFAULT_READER_HANDLE) {
+            if (scan)
+                startScanning(callbackContext);
+            else
+                stopScanning(callbackContext);
+            return;
+        }
+
+        ReaderDevice device = getPooledReader(callbackContext, handle);
+        if (device == null)
+            return;
+
+        if (scan && device.getConnectionState() != ConnectionState.Connected) {
+            callbackContext.error("Reader device not connected");
+            return;
+        }
+
+        if (scan) {
+            final int readerHandle = handle;
+            device.getDataManSystem().sendCommand("GET TRIGGER.TYPE", new DataManSystem.OnResponseReceivedListener() {
+                @Override
+                public void onResponseReceived(DataManSystem dataManSystem, DmccResponse dmccResponse) {
+                    if (dmccResponse.getError() != null) {
+                        BridgeLog.e("GET TRIGGER.TYPE command failed to execute: %s", dmccResponse.getError());
+                    } else if (dmccResponse.getPayLoad() != null && readerPool.containsKey(readerHandle)) {
+                        try {
+                            readerTriggerTypes.put(readerHandle, Integer.parseInt(dmccResponse.getPayLoad().trim()));
+                        } catch (NumberFormatException e) {
+                            BridgeLog.w("Unexpected TRIGGER.TYPE payload %s", dmccResponse.getPayLoad(), e);
+                        }
+                    }
+                }
+            });
+            scanningReaderHandles.add(handle);
+            scanMetrics.onTrigger();
+            device.startScanning();
+        } else {
+            scanningReaderHandles.remove(handle);
+            device.stopScanning();
+        }
+
+        callbackContext.success(scan ? 1 : 0);
+    }
+
+    private void setReaderSymbologyEnabled(final CallbackContext callbackContext, int handle, ReaderDevice.Symbology symbology, boolean enable) {
+        if (handle == DEFAULT_READER_HANDLE) {
+            setSymbologyEnabled(callbackContext, symbology, enable);
+            return;
+        }
+
+        ReaderDevice device = getPooledReader(callbackContext, handle);
+        if (device != null) {
+            device.setSymbologyEnabled(symbology, enable, new ReaderDevice.OnSymbologyListener() {
+                @Override
+                public void onSymbologyEnabled(ReaderDevice readerDevice, ReaderDevice.Symbology symbology, Boolean aBoolean, Throwable throwable) {
+                    if (throwable == null) {
+                        callbackContext.success(aBoolean ? 1 : 0);
+                    } else {
+                        callbackContext.error(throwable.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    private void sendReaderCommand(final CallbackContext callbackContext, int handle, final String commandString) {
+        if (handle == DEFAULT_READER_HANDLE) {
+            sendCommand(callbackContext, commandString);
+            return;
+        }
+
+        ReaderDevice device = getPooledReader(callbackContext, handle);
+        if (device != null) {
+            final long sentNanos = System.nanoTime();
+            device.getDataManSystem().sendCommand(commandString, new DataManSystem.OnResponseReceivedListener() {
+                @Override
+                public void onResponseReceived(DataManSystem dataManSystem, DmccResponse dmccResponse) {
+                    sessionCapture.recordCommand(sentNanos, commandString, 0, dmccResponse);
+                    if (dmccResponse.getError() == null) {
+                        callbackContext.success(dmccResponse.getPayLoad());
+                    } else {
+                        callbackContext.error(dmccResponse.getError().getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void startResultStream(CallbackContext callbackContext, JSONObject options) {
+        if (options == null)
+            options = new JSONObject();
+
+        try {
+            if (resultStream == null) {
+                ResultStreamServer stream = new ResultStreamServer(options.optInt("queueCapacity", 256));
+                stream.start(options.optInt("port", 0));
+                resultStream = stream;
+            }
+
+            callbackContext.success(resultStreamStats(resultStream));
+        } catch (IOException | JSONException e) {
+            BridgeLog.w("Failed to start the result stream", e);
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    private synchronized void stopResultStream() {
+        if (resultStream != null) {
+            resultStream.close();
+            resultStream = null;
+        }
+    }
+
+    private static JSONObject resultStreamStats(ResultStreamServer stream) throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("url", stream.getUrl());
+        stats.put("port", stream.getPort());
+        stats.put("token", stream.getToken());
+        stats.put("clients", stream.getClientCount());
+        stats.put("published", stream.getPublishedCount());
+        stats.put("sent", stream.getSentCount());
+        stats.put("dropped", stream.getDroppedCount());
+        stats.put("bytesSent", stream.getBytesSent());
+        stats.put("rejected", stream.getRejectedCount());
+        return stats;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopResultStream();
+        metricsHandler.removeCallbacks(metricsEventRunnable);
+        metricsHandler.removeCallbacks(readStatisticsEventRunnable);
+        stopScanScheduler();
+        metricsHandler.removeCallbacks(batteryLevelRunnable);
+        metricsHandler.removeCallbacks(collectionTimeoutRunnable);
+        clearImageRequests();
+        releaseImagePreprocessor();
+        releaseReaderPool();
+        // pending reconnects and health probes would keep driving a dead reader through this plugin
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                reconnectSupervisor.reset();
+            }
+        });
+
+        ScanJournal scanJournal = journal;
+        journal = null;
+        if (scanJournal != null) {
+            try {
+                scanJournal.close();
+            } catch (IOException e) {
+                BridgeLog.w("Failed to close the scan journal", e);
+            }
+        }
+        super.onDestroy();
+    }
+
+    private void configureJournal(final CallbackContext callbackContext, final JSONObject options) {
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ScannerBridge.this) {
+                    try {
+                        if (journal != null) {
+                            journal.close();
+                            journal = null;
+                        }
+
+                        if (options != null && options.optBoolean("enabled", true)) {
+                            ScanJournal opened = new ScanJournal(new File(cordova.getActivity().getFilesDir(), JOURNAL_DIRECTORY))
+                                    .setSyncIntervalMs(options.optLong("syncIntervalMs", 1000))
+                                    .setRetention(options.optLong("maxEntries", 0),
+                                            TimeUnit.DAYS.toMillis(options.optLong("maxAgeDays", 0)));
+                            opened.open();
+                            journal = opened;
+                            callbackContext.success(opened.getStats());
+                        } else {
+                            callbackContext.success();
+                        }
+                    } catch (IOException e) {
+                        BridgeLog.w("Failed to open the scan journal", e);
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private void queryJournal(final CallbackContext callbackContext, final JournalQuery query) {
+        final ScanJournal scanJournal = journal;
+        if (scanJournal == null) {
+            callbackContext.error("The scan journal is not enabled");
+            return;
+        }
+
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callbackContext.success(scanJournal.query(query).toJson());
+                } catch (IOException | JSONException e) {
+                    BridgeLog.w("Journal query failed", e);
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void maintainJournal(final CallbackContext callbackContext, final String action) {
+        final ScanJournal scanJournal = journal;
+        if (scanJournal == null) {
+            callbackContext.error("The scan journal is not enabled");
+            return;
+        }
+
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (action.equals("compactJournal"))
+                        scanJournal.compact();
+                    else if (action.equals("clearJournal"))
+                        scanJournal.clear();
+                    callbackContext.success(scanJournal.getStats());
+                } catch (IOException e) {
+                    BridgeLog.w("Journal maintenance failed", e);
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    // progress events and the final result all go to the same callback, told apart by their event field
+    private void exportScans(final CallbackContext callbackContext, JSONObject options) {
+        final ScanJournal scanJournal = journal;
+        if (scanJournal == null) {
+            callbackContext.error("The scan journal is not enabled");
+            return;
+        }
+        if (options == null)
+            options = new JSONObject();
+
+        final JournalExporter.Format format = "csv".equalsIgnoreCase(options.optString("format"))
+                ? JournalExporter.Format.CSV : JournalExporter.Format.NDJSON;
+        final JournalQuery filter = JournalQuery.fromJson(options);
+
+        String fileName = options.optString("fileName", "");
+        if (fileName.length() == 0)
+            fileName = "scans-" + System.currentTimeMillis() + (format == JournalExporter.Format.CSV ? ".csv.gz" : ".ndjson.gz");
+        final File file = new File(new File(cordova.getActivity().getFilesDir(), EXPORT_DIRECTORY), new File(fileName).getName());
+
+        final JournalExporter exporter = new JournalExporter(scanJournal)
+                .setDevice(options.optString("device", Build.MANUFACTURER + " " + Build.MODEL));
+
+        synchronized (this) {
+            if (activeExport != null) {
+                callbackContext.error("An export is already running");
+                return;
+            }
+            activeExport = exporter;
+        }
+
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    File directory = file.getParentFile();
+                    if (!directory.isDirectory() && !directory.mkdirs())
+                        throw new IOException("Cannot create " + directory);
+
+                    long exported = exporter.export(filter, format, file, new JournalExporter.ProgressListener() {
+                        @Override
+                        public void onProgress(long exported, long total) {
+                            try {
+                                JSONObject event = new JSONObject();
+                                event.put("event", "progress");
+                                event.put("exported", exported);
+                                event.put("total", total);
+
+                                PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+                                pr.setKeepCallback(true);
+                                callbackContext.sendPluginResult(pr);
+                            } catch (JSONException e) {
+                                BridgeLog.w("Failed to build the export progress event", e);
+                            }
+                        }
+                    });
+
+                    JSONObject done = new JSONObject();
+                    done.put("event", "done");
+                    done.put("path", file.getAbsolutePath());
+                    done.put("exported", exported);
+                    done.put("bytes", file.length());
+                    callbackContext.success(done);
+                } catch (IOException | JSONException e) {
+                    BridgeLog.w("Scan export failed", e);
+                    callbackContext.error(e.getMessage());
+                } finally {
+                    activeExport = null;
+                }
+            }
+        });
+    }
+
+    private void startRecording(CallbackContext callbackContext, JSONObject options) {
+        boolean includeImages = options != null && options.optBoolean("includeImages", false);
+        try {
+            File file = sessionCapture.start(cordova.getActivity().getFilesDir(), includeImages);
+            callbackContext.success(file.getAbsolutePath());
+        } catch (IOException e) {
+            BridgeLog.w("Failed to start the session recording", e);
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    private void stopRecording(CallbackContext callbackContext) {
+        try {
+            callbackContext.success(sessionCapture.stop());
+        } catch (IOException | JSONException e) {
+            BridgeLog.w("Failed to stop the session recording", e);
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    // Replayed scans skip the SDK (ReadResult can't be built outside it) and enter the bridge at deliverResults,
+    // so encoding and the bridge send are measured exactly like live scans, on their own ScanMetrics.
+    // Recorded DMCC commands are only reported, sending them again would reconfigure the connected reader.
+    private void replaySession(final CallbackContext callbackContext, JSONObject options) {
+        if (options == null)
+            options = new JSONObject();
+
+        String path = options.optString("path", "");
+        File file = path.startsWith("/") ? new File(path)
+                : new File(new File(cordova.getActivity().getFilesDir(), SessionCapture.DIRECTORY), path);
+
+        final SessionReplayer replayer;
+        synchronized (sessionCapture) {
+            if (activeReplay != null) {
+                callbackContext.error("A session is already being replayed");
+                return;
+            }
+            try {
+                replayer = new SessionReplayer(new FileInputStream(file), options.optDouble("speed", 1));
+            } catch (IOException e) {
+                BridgeLog.w("Failed to open the session recording", e);
+                callbackContext.error(e.getMessage());
+                return;
+            }
+            activeReplay = replayer;
+        }
+
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                final ScanMetrics metrics = new ScanMetrics();
+                final ResultEncoder encoder = createResultEncoder(metrics);
+                encoder.setFieldExtractor(resultEncoder.getFieldExtractor());
+                encoder.setIncludeXml(resultEncoder.isIncludeXml());
+                encoder.setIncludeImageGraphics(resultEncoder.isIncludeImageGraphics());
+                encoder.setGeometry(resultEncoder.getGeometry());
+
+                try {
+                    SessionReplayer.Report report = replayer.replay(new SessionReplayer.Sink() {
+                        @Override
+                        public void onResults(int readerHandle, String xml, ScanResult main, List<ScanResult> subResults) {
+                            deliverResults(metrics, encoder, metrics.onResultArrived(), readerHandle, xml, main, subResults, true);
+                        }
+
+                        @Override
+                        public void onCommand(String command, int dataLength) {
+                        }
+                    });
+
+                    JSONObject json = report.toJson();
+                    json.put("metrics", metrics.toJson());
+                    callbackContext.success(json);
+                } catch (IOException | JSONException e) {
+                    BridgeLog.w("Session replay failed", e);
+                    callbackContext.error(e.getMessage());
+                } finally {
+                    activeReplay = null;
+                }
+            }
+        });
+    }
+
+    private void sendReaderEvent(int handle, String type, int value) {
+        if (readerEventCallbackId == null)
+            return;
+
+        try {
+            JSONObject event = new JSONObject();
+            event.put("readerHandle", handle);
+            event.put("event", type);
+            event.put("value", value);
+
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            readerEventCallbackId.sendPluginResult(pr);
+        } catch (JSONException e) {
+            BridgeLog.w("Failed to build the reader event", e);
+        }
+    }
+
+    private void clearAppliedConfig() {
+        synchronized (appliedConfigLock) {
+            appliedSymbologies.clear();
+            appliedSettings.clear();
+            appliedImage = null;
+            appliedImageGraphics = null;
+            appliedLightsOn = null;
+            appliedParser = null;
+        }
+    }
+
+    // keep the last "SET <SETTING> <value>" per setting, CONFIG.DEFAULT wipes them all
+    private void rememberSetting(String commandString) {
+        String command = commandString.trim();
+        String upper = command.toUpperCase();
+
+        if (upper.startsWith("CONFIG.DEFAULT")) {
+            clearAppliedConfig();
+        } else if (upper.startsWith("SET ")) {
+            String[] parts = command.split("\\s+", 3);
+            if (parts.length > 1) {
+                synchronized (appliedConfigLock) {
+                    appliedSettings.put(parts[1].toUpperCase(), command);
+                }
+            }
+        }
+    }
+
+    private void restoreAppliedConfig() {
+        // the reader comes back with the app's symbologies, pruning starts over
+        SymbologyPruner pruner = symbologyPruner;
+        if (pruner != null)
+            pruner.relearn("reconnect", System.currentTimeMillis());
+
+        // work on a copy, the SDK calls below must not run under the lock
+        Boolean image, imageGraphics, lightsOn;
+        ReaderDevice.ResultParser parser;
+        Map<ReaderDevice.Symbology, Boolean> symbologies;
+        List<String> settings;
+        synchronized (appliedConfigLock) {
+            image = appliedImage;
+            imageGraphics = appliedImageGraphics;
+            lightsOn = appliedLightsOn;
+            parser = appliedParser;
+            symbologies = new LinkedHashMap<>(appliedSymbologies);
+            settings = new ArrayList<>(appliedSettings.values());
+        }
+
+        if (image != null)
+            readerDevice.enableImage(image);
+        if (imageGraphics != null || roiTuner != null)
+            applyImageGraphics();
+        if (parser != null)
+            readerDevice.setParser(parser);
+
+        for (Map.Entry<ReaderDevice.Symbology, Boolean> entry : symbologies.entrySet()) {
+            readerDevice.setSymbologyEnabled(entry.getKey(), entry.getValue(), new ReaderDevice.OnSymbologyListener() {
+                @Override
+                public void onSymbologyEnabled(ReaderDevice readerDevice, ReaderDevice.Symbology symbology, Boolean aBoolean, Throwable throwable) {
+                    if (throwable != null)
+                        BridgeLog.e("Failed to restore %s: %s", symbology, throwable.getMessage());
+                }
+            });
+        }
+
+        if (lightsOn != null) {
+            readerDevice.setLightsOn(lightsOn, new ReaderDevice.OnLightsListener() {
+                @Override
+                public void onLightsOnCompleted(ReaderDevice readerDevice, Boolean aBoolean, Throwable throwable) {
+                    if (throwable != null)
+                        BridgeLog.e("Failed to restore lights: %s", throwable.getMessage());
+                }
+            });
+        }
+
+        for (String command : settings)
+            readerDevice.getDataManSystem().sendCommand(command);
+    }
+
+    ////////////////////////////////////////////////////
+    //ReconnectSupervisor.Host
+
+    @Override
+    public ReaderDevice getReaderDevice() {
+        return readerDevice;
+    }
+
+    @Override
+    public boolean isScanning() {
+        return isScanning;
+    }
+
+    @Override
+    public void onReaderReconnected(boolean wasScanning) {
+        if (!isReaderInit(null))
+            return;
+
+        restoreAppliedConfig();
+
+        if (wasScanning)
+            toggleScanner(true);
+    }
+
+    @Override
+    public void onReconnectEvent(JSONObject event) {
+        if (reconnectEventCallbackId != null) {
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, event);
+            pr.setKeepCallback(true);
+            reconnectEventCallbackId.sendPluginResult(pr);
+        }
+    }
+
+    @Override
+    public void onConnectionStateChanged(ReaderDevice readerDevice) {
+        int readerHandle = readerHandleOf(readerDevice);
+        sendReaderEvent(readerHandle, "connectionState", readerDevice.getConnectionState().ordinal());
+
+        if (readerHandle != DEFAULT_READER_HANDLE) {
+            if (readerDevice.getConnectionState() != ConnectionState.Connected)
+                scanningReaderHandles.remove(readerHandle);
+            return;
+        }
+
+        reconnectSupervisor.onConnectionStateChanged(readerDevice.getConnectionState());
+        if (readerDevice.getConnectionState() != ConnectionState.Connected)
+            clearBatteryLevel();
+
+        if (connectionStateDidChangeOfReaderCallbackID != null) {
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, readerDevice.getConnectionState().ordinal());
+            pr.setKeepCallback(true);
+            connectionStateDidChangeOfReaderCallbackID.sendPluginResult(pr);
+        }
+    }
+
+    // the layout lives in the core module, the bridge only adds tracing and counters per result
+    private static ResultEncoder createResultEncoder(final ScanMetrics metrics) {
+        return new ResultEncoder() {
+            @Override
+            public void writeItem(JsonWriter json, ScanResult result) throws JSONException {
+                boolean traced = BridgeTrace.begin("CMB.ReadResultToJsonObj");
+                try {
+                    if (result.isGoodRead())
+                        metrics.readResults.incrementAndGet();
+                    else
+                        metrics.noReads.incrementAndGet();
+                    super.writeItem(json, result);
+                } finally {
+                    BridgeTrace.end(traced);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void onReadResultReceived(ReaderDevice readerDevice, ReadResults readResults) {
+//        LOG.d("Lazyvlad",readResults.getResultAt(0).getReadString());
+        long arrivedTime = scanMetrics.onResultArrived();
+
+        int resultTraceCookie = 0;
+        if (BridgeTrace.enabled) {
+            BridgeTrace.endAsync("CMB.scan", scanTraceCookie);
+            scanTraceCookie = 0;
+            resultTraceCookie = BridgeTrace.nextSequence();
+            BridgeTrace.beginAsync("CMB.result", resultTraceCookie);
+        }
+        boolean traced = BridgeTrace.begin("CMB.onReadResultReceived");
+
+        int readerHandle = readerHandleOf(readerDevice);
+
+        ReadResultAdapter main = readResults.getCount() > 0 ? new ReadResultAdapter(readResults.getResultAt(0)) : null;
+        List<ReadResultAdapter> subResults = null;
+        if (readResults.getSubResults() != null) {
+            subResults = new ArrayList<>(readResults.getSubResults().size());
+            for (ReadResult item : readResults.getSubResults())
+                subResults.add(new ReadResultAdapter(item));
+        }
+
+        sessionCapture.recordResults(readerHandle, readResults.getXml(), main, subResults);
+
+        // the decode of a requested image goes back to its caller only, and stays out of the live scanning tuners.
+        // Image scans are refused while scanning, a result coming in while it runs is a live one
+        ImageRequestQueue<ImageScan> images = imageRequests;
+        ImageRequestQueue.Request<ImageScan> imageRequest = images != null && readerHandle == DEFAULT_READER_HANDLE && !isScanning
+                ? images.takeResult(SystemClock.elapsedRealtime()) : null;
+        if (imageRequest != null) {
+            if (imageRequest.isExpired())
+                scanMetrics.dropped.incrementAndGet();
+            else
+                sendImageResult(imageRequest, readResults.getXml(), main, subResults);
+            BridgeTrace.end(traced);
+            BridgeTrace.endAsync("CMB.result", resultTraceCookie);
+            return;
+        }
+
+        ReadStatistics statistics = readStatistics;
+        if (statistics != null)
+            recordReadStatistics(statistics, readResults);
+
+        RoiTuner tuner = roiTuner;
+        if (tuner != null && readerHandle == DEFAULT_READER_HANDLE)
+            tuner.onResult(main != null && main.isGoodRead() ? main.getImageGraphics() : null, scanMetrics.lastTriggerToResultNanos());
+
+        PreviewOptionsTuner previewOptionsTuner = previewTuner;
+        if (previewOptionsTuner != null && readerHandle == DEFAULT_READER_HANDLE)
+            previewOptionsTuner.onRead(main != null && main.isGoodRead(), scanMetrics.lastTriggerToResultNanos());
+
+        if (scanScheduler != null && readerHandle == DEFAULT_READER_HANDLE && main != null && main.isGoodRead()) {
+            metricsHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ScanScheduler scheduler = scanScheduler;
+                    if (scheduler != null)
+                        scheduler.onRead(SystemClock.elapsedRealtime());
+                }
+            });
+        }
+
+        // the pruner drives the built-in reader only
+        SymbologyPruner pruner = symbologyPruner;
+        if (pruner != null && readerHandle == DEFAULT_READER_HANDLE)
+            recordSymbologyUsage(pruner, scanMetrics, main, subResults);
+
+        CodeCollector collector = codeCollector;
+        if (collector != null && readerHandle == DEFAULT_READER_HANDLE) {
+            collectResults(collector, scanMetrics, readerHandle, main, subResults);
+        } else if (deliverResults(scanMetrics, resultEncoder, arrivedTime, readerHandle, readResults.getXml(), main, subResults, false)) {
+            if (readerHandle != DEFAULT_READER_HANDLE) {
+                if (stopsAfterRead(readerHandle))
+                    scanningReaderHandles.remove(readerHandle);
+            } else if (param_triggerType == 2) {
+                isScanning = false;
+                stopScanning(scanningStateChangedCallbackId);
+            }
+        }
+
+        BridgeTrace.end(traced);
+        BridgeTrace.endAsync("CMB.result", resultTraceCookie);
+    }
+
+    /**
+     * Filters, journals, serializes and sends one scan to JS, shared by live results and session replay.
+     * Goes over the result stream while a page is connected to it, through the result callback otherwise.
+     * @return false when there is nowhere to send it and the scan was dropped
+     */
+    private boolean deliverResults(ScanMetrics metrics, ResultEncoder encoder, long arrivedTime, int readerHandle,
+                                   String xml, ScanResult main, List<? extends ScanResult> subResults, boolean replayed) {
+        ResultStreamServer stream = resultStream;
+        boolean streaming = stream != null && stream.hasClients();
+        boolean consumer = streaming || didReceiveReadResultFromReaderCallbackID != null;
+
+        // rejected reads are dropped before anything is serialized, images included
+        ResultFilter filter = resultFilter;
+        if (filter != null) {
+            boolean hadReads = main != null || (subResults != null && !subResults.isEmpty());
+            main = filterResult(filter, metrics, main);
+            subResults = filterResults(filter, metrics, subResults);
+            if (hadReads && main == null && (subResults == null || subResults.isEmpty()))
+                return consumer;
+        }
+
+        ScanJournal scanJournal = journal;
+        if (scanJournal != null && !replayed)
+            scanJournal.append(readerHandle, main, subResults);
+
+        if (!consumer) {
+            metrics.dropped.incrementAndGet();
+            return false;
+        }
+
+        boolean traced = BridgeTrace.begin("CMB.encodeResult");
+
+        // serialized straight into the thread's pooled buffers, only the message String is new
+        long allocatedBefore = ScanMetrics.allocatedBytes();
+        ResultBuffers buffers = ResultBuffers.get();
+        JsonWriter json = buffers.json;
+        String message;
+        try {
+            json.beginObject();
+            encoder.writeResults(json, xml, main, subResults);
+            json.name("readerHandle").value(readerHandle);
+            if (replayed)
+                json.name("replayed").value(true);
+            // lets the JS side measure how long the result spent in the bridge
+            json.name("sentTimestamp").value(System.currentTimeMillis());
+            json.endObject();
+            message = json.toString();
+        } catch (Exception e) {
+            BridgeLog.w("Failed to serialize read results", e);
+            json.reset();
+            message = json.beginObject().name("sentTimestamp").value(System.currentTimeMillis()).endObject().toString();
+        } finally {
+            buffers.release();
+        }
+        long allocatedAfter = ScanMetrics.allocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0)
+            metrics.onResultAllocated(allocatedAfter - allocatedBefore);
+        long encodedTime = metrics.onResultEncoded(arrivedTime);
+        BridgeTrace.end(traced);
+
+        if (streaming) {
+            traced = BridgeTrace.begin("CMB.streamResult");
+            boolean published = stream.publish(message);
+            if (published)
+                metrics.onResultSent(arrivedTime, encodedTime, message.length());
+            BridgeTrace.end(traced);
+
+            if (published)
+                return true;
+
+            // the last page disconnected in between
+            if (didReceiveReadResultFromReaderCallbackID == null) {
+                metrics.dropped.incrementAndGet();
+                return false;
+            }
+        }
+
+        traced = BridgeTrace.begin("CMB.sendPluginResult");
+        PluginResult pr = new RawJsonPluginResult(PluginResult.Status.OK, message);
+        pr.setKeepCallback(true);
+        didReceiveReadResultFromReaderCallbackID.sendPluginResult(pr);
+        metrics.onResultSent(arrivedTime, encodedTime, message.length());
+        BridgeTrace.end(traced);
+
+        return true;
+    }
+
+    private static ScanResult filterResult(ResultFilter filter, ScanMetrics metrics, ScanResult result) {
+        if (result == null || filter.accept(result))
+            return result;
+        metrics.filtered.incrementAndGet();
+        return null;
+    }
+
+    // the list may still be read by the session recorder, the accepted reads go to a new one
+    private static List<ScanResult> filterResults(ResultFilter filter, ScanMetrics metrics, List<? extends ScanResult> results) {
+        if (results == null)
+            return null;
+
+        List<ScanResult> accepted = new ArrayList<>(results.size());
+        for (ScanResult result : results) {
+            if (filter.accept(result))
+                accepted.add(result);
+            else
+                metrics.filtered.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    protected JSONObject ReadResultToJsonObj(ReadResult result) {
+        try {
+            return resultEncoder.encodeItem(new ReadResultAdapter(result));
+        } catch (Exception e) {
+            BridgeLog.w("Failed to serialize read result", e);
+            return new JSONObject();
+        }
+    }
+
+    @Override
+    public void onAvailabilityChanged(ReaderDevice readerDevice) {
+        int readerHandle = readerHandleOf(readerDevice);
+        sendReaderEvent(readerHandle, "availability", readerDevice.getAvailability().ordinal());
+
+        if (readerHandle != DEFAULT_READER_HANDLE)
+            return;
+
+        reconnectSupervisor.onAvailabilityChanged(readerDevice.getAvailability());
+
+        if (availabilityDidChangeOfReaderCallbackID != null) {
+            PluginResult pr = new PluginResult(PluginResult.Status.OK, readerDevice.getAvailability().ordinal());
+            pr.setKeepCallback(true);
+            availabilityDidChangeOfReaderCallbackID.sendPluginResult(pr);
+        }
+    }
+
+    //////////////////////////////////////////////////////////
+
+    // HANDLE SCREEN ORIENTATION
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        if (scannerView != null) {
             cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -1247,7 +3570,7 @@ public class ScannerBridge extends CordovaPlugin implements
         return shouldShow;
     }
 
-    private void scanImage(String source, ImageSourceType sourceType, CallbackContext callbackContext) {
+    private void scanImage(final String source, final ImageSourceType sourceType, final CallbackContext callbackContext) {
         if(isReaderInit(callbackContext)) {
             if ("".equals(source)) {
                 callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Invalid image source"));
@@ -1259,71 +3582,406 @@ public class ScannerBridge extends CordovaPlugin implements
                 return;
             }
 
-            byte[] byteArray = null;
+            // reading and pre-processing a photo takes too long for the bridge thread
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] byteArray;
+
+                    boolean traced = BridgeTrace.begin("CMB.loadImage");
+                    try {
+                        byteArray = loadImageBytes(source, sourceType, callbackContext);
+                    } finally {
+                        BridgeTrace.end(traced);
+                    }
+
+                    // the error was already reported
+                    if (byteArray == null)
+                        return;
+
+                    if (byteArray.length == 0) {
+                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to read image"));
+                        return;
+                    }
+
+                    sendImageLoad(prepareImage(byteArray), callbackContext);
+                }
+            });
+        }
+    }
+
+    private void sendImageLoad(byte[] byteArray, final CallbackContext callbackContext) {
+        ReaderDevice device = readerDevice;
+        if (device == null || device.getConnectionState() != ConnectionState.Connected) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Reader device not connected"));
+            return;
+        }
+
+        final int traceCookie = BridgeTrace.enabled ? BridgeTrace.nextSequence() : 0;
+        BridgeTrace.beginAsync("CMB.imageLoad", traceCookie);
+
+        final String command = String.format("IMAGE.LOAD %d", byteArray.length);
+        final int dataLength = byteArray.length;
+        final long sentNanos = System.nanoTime();
+        device.getDataManSystem().sendCommand(command, byteArray,
+                500, false, (dataManSystem, response) -> {
+                    BridgeTrace.endAsync("CMB.imageLoad", traceCookie);
+                    sessionCapture.recordCommand(sentNanos, command, dataLength, response);
+                    if (response.getError() != null) {
+                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, response.getError().getLocalizedMessage()));
+                    } else {
+                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+                    }
+                });
+    }
+
+    /**
+     * @param options {enabled, maxDimension, grayscale, crop, format, quality, minBytes}, see ImagePreprocessing
+     */
+    private void setImagePreprocessing(JSONObject options, CallbackContext callbackContext) throws JSONException {
+        if (!options.optBoolean("enabled", true)) {
+            imagePreprocessing = null;
+            releaseImagePreprocessor();
+            callbackContext.success();
+            return;
+        }
+
+        ImagePreprocessing config;
+        try {
+            config = ImagePreprocessing.fromJson(options);
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+            return;
+        }
+        imagePreprocessing = config;
+
+        JSONObject configured = config.toJson();
+        configured.put("stats", imageStats().toJson());
+        callbackContext.success(configured);
+    }
+
+    private synchronized ImagePreprocessing.Stats imageStats() {
+        if (imageStats == null)
+            imageStats = new ImagePreprocessing.Stats();
+        return imageStats;
+    }
+
+    /**
+     * Worker thread. The image to send: re-encoded when pre-processing is on and the image is large enough,
+     * the same array when it is sent as is.
+     */
+    private byte[] prepareImage(byte[] image) {
+        ImagePreprocessing.Stats stats = imageStats();
+        ImagePreprocessing config = imagePreprocessing;
+        if (config == null) {
+            stats.onSentRaw(image.length);
+            return image;
+        }
+        if (image.length < config.minBytes) {
+            stats.onSkipped();
+            stats.onSentRaw(image.length);
+            return image;
+        }
 
-            if(sourceType == ImageSourceType.BASE64) {
+        ImagePreprocessor preprocessor;
+        synchronized (this) {
+            if (imagePreprocessor == null)
+                imagePreprocessor = new ImagePreprocessor();
+            preprocessor = imagePreprocessor;
+        }
+
+        long start = System.nanoTime();
+        byte[] processed = null;
+        boolean traced = BridgeTrace.begin("CMB.preprocessImage");
+        try {
+            processed = preprocessor.process(image, config);
+        } catch (RuntimeException | OutOfMemoryError e) {
+            BridgeLog.w("Image pre-processing failed", e);
+        } finally {
+            BridgeTrace.end(traced);
+        }
+
+        // an image BitmapFactory can't read, or that came out larger, still goes to the reader
+        if (processed == null || processed.length >= image.length) {
+            if (processed == null)
+                stats.onFailed();
+            else
+                stats.onSkipped();
+            stats.onSentRaw(image.length);
+            return image;
+        }
+        stats.onProcessed(image.length, processed.length, System.nanoTime() - start);
+        return processed;
+    }
+
+    private synchronized void releaseImagePreprocessor() {
+        if (imagePreprocessor != null) {
+            imagePreprocessor.release();
+            imagePreprocessor = null;
+        }
+    }
+
+    /**
+     * Image scan answered with its own decode result: the readResults layout plus requestId and timings,
+     * timedOut with no reads when the deadline passes first. Images go to the reader one at a time.
+     * @param options {requestId, sourceType: "uri" or "base64", timeoutMs}
+     */
+    private void scanImageRequest(final String source, JSONObject options, final CallbackContext callbackContext) {
+        if (!isReaderInit(callbackContext))
+            return;
+
+        if ("".equals(source)) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Invalid image source"));
+            return;
+        }
+
+        if (readerDevice.getConnectionState() != ConnectionState.Connected) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Reader device not connected"));
+            return;
+        }
+
+        // live results couldn't be told from the image's decode
+        if (isScanning) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Stop scanning before scanning an image"));
+            return;
+        }
+
+        final String requestId = options.optString("requestId", "image-" + nextImageRequestId.getAndIncrement());
+        final long timeoutMs = options.optLong("timeoutMs", IMAGE_REQUEST_TIMEOUT_MS);
+        final ImageSourceType sourceType = "base64".equals(options.optString("sourceType", "uri")) ? ImageSourceType.BASE64 : ImageSourceType.URI;
+        final long requestedAt = SystemClock.elapsedRealtime();
+        final long requestedAtNanos = System.nanoTime();
+
+        // reading or decoding the image stays off the bridge thread, the deadline counts from the call
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] image;
+                boolean traced = BridgeTrace.begin("CMB.loadImage");
                 try {
-                    byteArray = Base64.decode(source, Base64.DEFAULT);
+                    image = loadImageBytes(source, sourceType, callbackContext);
+                } finally {
+                    BridgeTrace.end(traced);
                 }
-                catch (Exception e) {
-                    e.printStackTrace();
-                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
+                if (image == null)
+                    return;
+                if (image.length == 0) {
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to read image"));
                     return;
                 }
-            } else if(sourceType == ImageSourceType.URI) {
-                if(source.startsWith("content://")) {
-                    try (InputStream imageStream = cordova.getActivity().getContentResolver().openInputStream(Uri.parse(source));
-                         ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-
-                        int nRead;
-                        byte[] bytes = new byte[1024];
-                        while ((nRead = imageStream.read(bytes, 0, bytes.length)) != -1) {
-                            buffer.write(bytes, 0, nRead);
-                        }
 
-                        buffer.flush();
-                        byteArray = buffer.toByteArray();
+                byte[] payload = prepareImage(image);
+                ImageScan scan = new ImageScan(callbackContext, payload, image.length, payload != image, requestedAtNanos);
 
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
-                        return;
+                long now = SystemClock.elapsedRealtime();
+                ImageRequestQueue<ImageScan> queue = imageRequestQueue();
+                if (!queue.submit(requestId, scan, timeoutMs - (now - requestedAt), now)) {
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Too many image scans pending, or requestId in use"));
+                    return;
+                }
+                metricsHandler.post(imageRequestRunnable);
+            }
+        });
+    }
+
+    private void cancelImageScan(String requestId, CallbackContext callbackContext) {
+        ImageRequestQueue<ImageScan> queue = imageRequests;
+        if (queue != null && queue.cancel(requestId, SystemClock.elapsedRealtime()))
+            callbackContext.success();
+        else
+            callbackContext.error("No pending image scan " + requestId);
+    }
+
+    private synchronized ImageRequestQueue<ImageScan> imageRequestQueue() {
+        if (imageRequests == null) {
+            imageRequests = new ImageRequestQueue<>(IMAGE_REQUESTS_QUEUED, IMAGE_LATE_RESULT_GRACE_MS, new ImageRequestQueue.Listener<ImageScan>() {
+                @Override
+                public void onDispatch(ImageRequestQueue.Request<ImageScan> request) {
+                    sendImage(request);
+                }
+
+                @Override
+                public void onExpired(ImageRequestQueue.Request<ImageScan> request, String reason) {
+                    synchronized (imageRequests) {
+                        request.payload.image = null;
                     }
-                } else {
+                    if (reason.equals("timeout"))
+                        sendImageTimeout(request);
+                    else
+                        request.payload.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Image scan cancelled"));
+                }
+            });
+        }
+        return imageRequests;
+    }
 
-                    if(!source.startsWith("file://"))
-                        source = "file://" + source;
+    private void sendImage(final ImageRequestQueue.Request<ImageScan> request) {
+        final ImageRequestQueue<ImageScan> queue = imageRequests;
+        // dispatch runs outside the queue lock, a cancel, tick or clear may have expired the request since,
+        // the image is taken under the lock the queue expires requests with
+        byte[] image;
+        synchronized (queue) {
+            if (request.isExpired() || request.payload.image == null)
+                return;
+            image = request.payload.image;
+            request.payload.image = null;
+        }
 
-                    File file = new File(Uri.parse(source).getPath());
-                    int size = (int) file.length();
+        ReaderDevice device = readerDevice;
+        if (device == null || device.getConnectionState() != ConnectionState.Connected) {
+            if (queue.onLoadFailed(request, SystemClock.elapsedRealtime()))
+                request.payload.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Reader device not connected"));
+            return;
+        }
+        // scanning started while the image was queued
+        if (isScanning) {
+            if (queue.onLoadFailed(request, SystemClock.elapsedRealtime()))
+                request.payload.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Stop scanning before scanning an image"));
+            return;
+        }
 
-                    byteArray = new byte[size];
+        final int traceCookie = BridgeTrace.enabled ? BridgeTrace.nextSequence() : 0;
+        BridgeTrace.beginAsync("CMB.imageLoad", traceCookie);
+
+        final String command = String.format("IMAGE.LOAD %d", image.length);
+        final int dataLength = image.length;
+        final long sentNanos = System.nanoTime();
+        // a large image can take longer than the usual command timeout to transfer, the request deadline still applies
+        int timeout = (int) Math.max(500, request.remainingMs(SystemClock.elapsedRealtime()));
+        device.getDataManSystem().sendCommand(command, image,
+                timeout, false, (dataManSystem, response) -> {
+                    BridgeTrace.endAsync("CMB.imageLoad", traceCookie);
+                    sessionCapture.recordCommand(sentNanos, command, dataLength, response);
+                    long now = SystemClock.elapsedRealtime();
+                    if (response.getError() == null)
+                        queue.onLoaded(request, now);
+                    else if (queue.onLoadFailed(request, now))
+                        request.payload.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, response.getError().getLocalizedMessage()));
+                });
+    }
 
-                    try(FileInputStream fis = new FileInputStream(file);
-                        BufferedInputStream buf = new BufferedInputStream(fis)) {
+    private void sendImageResult(ImageRequestQueue.Request<ImageScan> request, String xml, ScanResult main, List<? extends ScanResult> subResults) {
+        ScanJournal scanJournal = journal;
+        if (scanJournal != null)
+            scanJournal.append(DEFAULT_READER_HANDLE, main, subResults);
 
-                        buf.read(byteArray, 0, byteArray.length);
+        ResultBuffers buffers = ResultBuffers.get();
+        JsonWriter json = buffers.json;
+        String message = null;
+        try {
+            json.beginObject();
+            resultEncoder.writeResults(json, xml, main, subResults);
+            request.writeTimings(json, SystemClock.elapsedRealtime());
+            json.name("timedOut").value(false);
+            writeImageSizes(json, request.payload);
+            json.endObject();
+            message = json.toString();
+        } catch (Exception e) {
+            BridgeLog.w("Failed to serialize read results", e);
+        } finally {
+            buffers.release();
+        }
 
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
-                        return;
-                    }
-                }
+        imageStats().onCompleted(request.payload.preprocessed, System.nanoTime() - request.payload.requestedAt);
+
+        CallbackContext callbackContext = request.payload.callbackContext;
+        if (message != null)
+            callbackContext.sendPluginResult(new RawJsonPluginResult(PluginResult.Status.OK, message));
+        else
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to serialize read results"));
+    }
+
+    private void sendImageTimeout(ImageRequestQueue.Request<ImageScan> request) {
+        JsonWriter json = new JsonWriter(new StringBuilder(128));
+        json.beginObject();
+        request.writeTimings(json, SystemClock.elapsedRealtime());
+        json.name("timedOut").value(true);
+        writeImageSizes(json, request.payload);
+        json.name("readResults").beginArray().endArray();
+        json.name("subReadResults").beginArray().endArray();
+        json.endObject();
+        request.payload.callbackContext.sendPluginResult(new RawJsonPluginResult(PluginResult.Status.OK, json.toString()));
+    }
+
+    private static void writeImageSizes(JsonWriter json, ImageScan scan) {
+        json.name("preprocessed").value(scan.preprocessed);
+        json.name("imageBytes").value(scan.length);
+        json.name("originalBytes").value(scan.originalLength);
+    }
+
+    // main thread, keeps ticking while images are pending
+    private void tickImageRequests() {
+        metricsHandler.removeCallbacks(imageRequestRunnable);
+        ImageRequestQueue<ImageScan> queue = imageRequests;
+        if (queue == null)
+            return;
+        queue.tick(SystemClock.elapsedRealtime());
+        if (!queue.isIdle())
+            metricsHandler.postDelayed(imageRequestRunnable, IMAGE_REQUEST_TICK_MS);
+    }
+
+    private void clearImageRequests() {
+        metricsHandler.removeCallbacks(imageRequestRunnable);
+        ImageRequestQueue<ImageScan> queue = imageRequests;
+        if (queue != null)
+            queue.clear();
+    }
+
+    // returns null after reporting the error to the callback
+    private byte[] loadImageBytes(String source, ImageSourceType sourceType, CallbackContext callbackContext) {
+        byte[] byteArray = null;
+
+        if(sourceType == ImageSourceType.BASE64) {
+            try {
+                byteArray = Base64.decode(source, Base64.DEFAULT);
             }
+            catch (Exception e) {
+                BridgeLog.w("Failed to decode the base64 image", e);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
+                return null;
+            }
+        } else if(sourceType == ImageSourceType.URI) {
+            if(source.startsWith("content://")) {
+                try (InputStream imageStream = cordova.getActivity().getContentResolver().openInputStream(Uri.parse(source));
+                     ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+
+                    int nRead;
+                    byte[] bytes = new byte[1024];
+                    while ((nRead = imageStream.read(bytes, 0, bytes.length)) != -1) {
+                        buffer.write(bytes, 0, nRead);
+                    }
 
-            if(byteArray != null && byteArray.length > 0) {
-                readerDevice.getDataManSystem().sendCommand(String.format("IMAGE.LOAD %d", byteArray.length), byteArray,
-                        500, false, (dataManSystem, response) -> {
-                            if (response.getError() != null) {
-                                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, response.getError().getLocalizedMessage()));
-                            } else {
-                                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
-                            }
-                        });
+                    buffer.flush();
+                    byteArray = buffer.toByteArray();
+
+                } catch (IOException e) {
+                    BridgeLog.w("Failed to read image %s", source, e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
+                    return null;
+                }
             } else {
-                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to read image"));
+
+                if(!source.startsWith("file://"))
+                    source = "file://" + source;
+
+                File file = new File(Uri.parse(source).getPath());
+                int size = (int) file.length();
+
+                byteArray = new byte[size];
+
+                try(FileInputStream fis = new FileInputStream(file);
+                    BufferedInputStream buf = new BufferedInputStream(fis)) {
+
+                    buf.read(byteArray, 0, byteArray.length);
+
+                } catch (IOException e) {
+                    BridgeLog.w("Failed to read image %s", source, e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getLocalizedMessage()));
+                    return null;
+                }
             }
         }
+
+        return byteArray;
     }
 }
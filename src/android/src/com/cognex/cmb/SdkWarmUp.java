@@ -0,0 +1,170 @@
+package com.cognex.cmb;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.manateeworks.BarcodeScanner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Does the slow part of the first loadScanner on a worker while the app starts: loading the decoder's
+ * native library, the licence check and initializing the classes every scan goes through.
+ * Work queued with runWhenDone waits for it, so the UI thread isn't blocked on the same class locks;
+ * it is released after MAX_WAIT_MS even if the warm-up hangs.
+ *
+ * Rarely used paths (journal, replay, result stream, DMCC client) are left out on purpose,
+ * they load on their first action.
+ */
+class SdkWarmUp {
+
+    private static final long MAX_WAIT_MS = 3000;
+
+    // initialized in this order, a name missing from the installed SDK version is skipped
+    private static final String[] CLASSES = {
+            "com.cognex.mobile.barcode.sdk.ReaderDevice",
+            "com.cognex.mobile.barcode.sdk.PhoneCameraReaderDevice",
+            "com.cognex.mobile.barcode.sdk.ReadResults",
+            "com.cognex.mobile.barcode.sdk.ReadResultsParser",
+            "com.cognex.dataman.sdk.CameraConnector",
+            "com.manateeworks.MWOverlay",
+            "com.cognex.cmb.ReadResultAdapter",
+            "com.cognex.cmb.RawJsonPluginResult",
+            "com.cognex.cmb.core.ResultEncoder",
+            "com.cognex.cmb.core.JsonWriter",
+            "com.cognex.cmb.core.ResultBuffers",
+            "com.cognex.cmb.core.Base64Encoder"
+    };
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> pending = new ArrayList<>();
+    private boolean released;
+
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long libraryMs = -1;
+    private volatile long registrationMs = -1;
+    private volatile long classesMs = -1;
+    // BarcodeScanner.MWB_RTREG_*, null when there was no key to check
+    private volatile Integer registrationStatus;
+    private volatile String error;
+    private volatile boolean timedOut;
+
+    private final Runnable timeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            timedOut = true;
+            release();
+        }
+    };
+
+    /**
+     * @param key the registerSDK key, empty for the MX_MOBILE_LICENSE meta-data the SDK falls back to
+     */
+    void start(Executor executor, final Context context, final String key) {
+        startedAt = SystemClock.elapsedRealtime();
+        handler.postDelayed(timeoutRunnable, MAX_WAIT_MS);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean traced = BridgeTrace.begin("CMB.warmUp");
+                try {
+                    warmUp(context, key);
+                } finally {
+                    BridgeTrace.end(traced);
+                    finishedAt = SystemClock.elapsedRealtime();
+                    handler.removeCallbacks(timeoutRunnable);
+                    release();
+                }
+            }
+        });
+    }
+
+    private void warmUp(Context context, String key) {
+        try {
+            long start = SystemClock.elapsedRealtime();
+            // loads the native library and initializes the decoder
+            BarcodeScanner.MWBgetLibVersion();
+            long loaded = SystemClock.elapsedRealtime();
+            libraryMs = loaded - start;
+
+            if (key == null || key.isEmpty())
+                key = manifestKey(context);
+            if (key != null && !key.isEmpty()) {
+                registrationStatus = BarcodeScanner.MWBregisterSDK(key, context);
+                registrationMs = SystemClock.elapsedRealtime() - loaded;
+            }
+
+            long classesStart = SystemClock.elapsedRealtime();
+            ClassLoader loader = SdkWarmUp.class.getClassLoader();
+            for (String name : CLASSES) {
+                try {
+                    Class.forName(name, true, loader);
+                } catch (ClassNotFoundException e) {
+                    BridgeLog.d("Warm-up skipped %s", name);
+                }
+            }
+            classesMs = SystemClock.elapsedRealtime() - classesStart;
+        } catch (RuntimeException | LinkageError e) {
+            error = e.toString();
+            BridgeLog.w("SDK warm-up failed", e);
+        }
+    }
+
+    private static String manifestKey(Context context) {
+        try {
+            ApplicationInfo info = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            return info.metaData != null ? info.metaData.getString("MX_MOBILE_LICENSE") : null;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    // runs the task right away once the warm-up is over, on the thread that ends it otherwise
+    void runWhenDone(Runnable task) {
+        synchronized (this) {
+            if (!released) {
+                pending.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    private void release() {
+        List<Runnable> ready;
+        synchronized (this) {
+            if (released)
+                return;
+            released = true;
+            ready = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Runnable task : ready)
+            task.run();
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("done", finishedAt > 0);
+        json.put("durationMs", finishedAt > 0 ? finishedAt - startedAt : -1);
+        json.put("libraryMs", libraryMs);
+        json.put("registrationMs", registrationMs);
+        json.put("classesMs", classesMs);
+        if (registrationStatus != null)
+            json.put("registrationStatus", registrationStatus.intValue());
+        json.put("timedOut", timedOut);
+        if (error != null)
+            json.put("error", error);
+        return json;
+    }
+}
@@ -0,0 +1,80 @@
+package com.cognex.cmb;
+
+import com.cognex.cmb.core.ScanResult;
+import com.cognex.cmb.core.SessionRecorder;
+import com.cognex.dataman.sdk.DmccResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Owns the session recording started from JS.
+ * The hooks are called from the SDK callbacks and return right away while nothing is being recorded.
+ */
+class SessionCapture {
+
+    static final String DIRECTORY = "cmb-sessions";
+
+    private volatile SessionRecorder recorder;
+    private File file;
+    private long startTime;
+
+    synchronized File start(File filesDir, boolean includeImages) throws IOException {
+        if (recorder != null)
+            throw new IOException("A session is already being recorded");
+
+        File directory = new File(filesDir, DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+
+        startTime = System.currentTimeMillis();
+        file = new File(directory, "session-" + startTime + ".cmbs");
+        recorder = new SessionRecorder(new FileOutputStream(file), includeImages);
+        return file;
+    }
+
+    synchronized JSONObject stop() throws IOException, JSONException {
+        SessionRecorder stopped = recorder;
+        if (stopped == null)
+            throw new IOException("No session is being recorded");
+
+        recorder = null;
+        stopped.close();
+
+        JSONObject stats = new JSONObject();
+        stats.put("path", file.getAbsolutePath());
+        stats.put("results", stopped.getResultCount());
+        stats.put("commands", stopped.getCommandCount());
+        stats.put("durationMs", System.currentTimeMillis() - startTime);
+        stats.put("bytes", file.length());
+        return stats;
+    }
+
+    boolean isRecording() {
+        return recorder != null;
+    }
+
+    void recordResults(int readerHandle, String xml, ScanResult main, List<? extends ScanResult> subResults) {
+        SessionRecorder current = recorder;
+        if (current != null)
+            current.recordResults(System.nanoTime(), readerHandle, xml, main, subResults);
+    }
+
+    /**
+     * @param sentNanos System.nanoTime taken when the command was sent
+     */
+    void recordCommand(long sentNanos, String command, int dataLength, DmccResponse response) {
+        SessionRecorder current = recorder;
+        if (current == null)
+            return;
+
+        long now = System.nanoTime();
+        String error = response.getError() != null ? response.getError().getMessage() : null;
+        current.recordCommand(sentNanos, command, dataLength, now - sentNanos, response.getPayLoad(), error);
+    }
+}
@@ -296,6 +296,19 @@ FLAGS : {
     ,"MWB_CFG_GLOBAL_DISABLE_PREPROCESSING"  : 0x80
 },
 
+/**
+* @brief  Native log levels, see setLogLevel
+*
+*/
+LOG_LEVELS : {
+       "VERBOSE"    : 2
+      ,"DEBUG"      : 3
+      ,"INFO"       : 4
+      ,"WARN"       : 5
+      ,"ERROR"      : 6
+      ,"NONE"       : 7
+},
+
 /**
 * @brief  Parsers
 *
@@ -734,6 +747,256 @@ CMBscanImageFromUri: function(imageUri, successCallback, errorCallback) {
 */
 CMBscanImageFromBase64: function(base64, successCallback, errorCallback) {
    cordova.exec(successCallback, errorCallback, serviceClass, "scanImageFromBase64", [base64]);
+},
+
+/**
+* Enables, disables or tunes the native auto-reconnect supervisor.
+* @param options {enabled, initialDelayMs, maxDelayMs, jitter, healthCheckIntervalMs, restoreScanning}
+*/
+CMBsetAutoReconnect: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setAutoReconnect", [options]);
+},
+
+/**
+* Sets a function for the reconnect events (disconnected, reconnecting, reconnected, healthCheckFailed).
+*/
+CMBsetReconnectEventCallback: function(callback) {
+   cordova.exec(callback, function(){}, serviceClass, "reconnectEventCallback", []);
+},
+
+/**
+* Retrieves the reconnect counters and downtime durations.
+*/
+CMBgetReconnectStats: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getReconnectStats", []);
+},
+
+/**
+* Sets a function for the connection/availability events of every loaded reader, tagged with the reader handle.
+*/
+CMBsetReaderEventCallback: function(callback) {
+   cordova.exec(callback, function(){}, serviceClass, "readerEventCallback", []);
+},
+
+/**
+* Adds a reader to the reader pool and returns its handle. Only MX devices can be pooled.
+*/
+CMBloadReader: function(deviceType, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "loadReader", [deviceType]);
+},
+
+CMBunloadReader: function(handle, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "unloadReader", [handle]);
+},
+
+CMBgetReaderHandles: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getReaderHandles", []);
+},
+
+CMBconnectReader: function(handle, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "connectReader", [handle]);
+},
+
+CMBdisconnectReader: function(handle, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "disconnectReader", [handle]);
+},
+
+CMBstartReaderScanning: function(handle, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "startReaderScanning", [handle]);
+},
+
+CMBstopReaderScanning: function(handle, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "stopReaderScanning", [handle]);
+},
+
+CMBsetReaderSymbologyEnabled: function(handle, symbology, enable, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setReaderSymbologyEnabled", [handle, symbology, enable]);
+},
+
+CMBsendReaderCommand: function(handle, commandString, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "sendReaderCommand", [handle, commandString]);
+},
+
+/**
+* Retrieves the native scan pipeline metrics.
+*/
+CMBgetMetrics: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getMetrics", []);
+},
+
+/**
+* Resets the native scan pipeline metrics.
+*/
+CMBresetMetrics: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "resetMetrics", []);
+},
+
+/**
+* Sets a function that receives the metrics every intervalMs, 0 stops the events.
+*/
+CMBsetMetricsCallback: function(intervalMs, callback) {
+   cordova.exec(callback, function(){}, serviceClass, "metricsEventCallback", [intervalMs]);
+},
+
+/**
+* Enables or disables android.os.Trace sections in the native bridge (Android only).
+*/
+CMBsetTracingEnabled: function(enable) {
+   cordova.exec(function(){}, function(){}, serviceClass, "setTracingEnabled", [enable]);
+},
+
+/**
+* Sets the minimum level kept in the native log buffer and the minimum level echoed to logcat.
+*/
+CMBsetLogLevel: function(level, logcatLevel) {
+   cordova.exec(function(){}, function(){}, serviceClass, "setLogLevel", [level, logcatLevel]);
+},
+
+/**
+* Retrieves the most recent entries of the native log buffer.
+*/
+CMBdumpLogs: function(max, clear, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "dumpLogs", [max, clear]);
+},
+
+CMBstartRecording: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "startRecording", [options]);
+},
+
+CMBstopRecording: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "stopRecording", []);
+},
+
+CMBreplaySession: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "replaySession", [options]);
+},
+
+CMBcancelReplay: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "cancelReplay", []);
+},
+
+CMBstartResultStream: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "startResultStream", [options]);
+},
+
+CMBstopResultStream: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "stopResultStream", []);
+},
+
+CMBconfigureJournal: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureJournal", [options]);
+},
+
+CMBqueryJournal: function(query, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "queryJournal", [query]);
+},
+
+CMBgetJournalStats: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getJournalStats", []);
+},
+
+CMBcompactJournal: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "compactJournal", []);
+},
+
+CMBclearJournal: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "clearJournal", []);
+},
+
+CMBexportScans: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "exportScans", [options]);
+},
+
+CMBcancelExport: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "cancelExport", []);
+},
+
+CMBsetResultFilters: function(rules, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setResultFilters", [rules]);
+},
+
+CMBsetFieldExtraction: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setFieldExtraction", [options]);
+},
+
+CMBconfigureReadStatistics: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureReadStatistics", [options]);
+},
+
+CMBgetReadStatistics: function(windowSeconds, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getReadStatistics", [windowSeconds]);
+},
+
+CMBsetReadStatisticsCallback: function(intervalMs, windowSeconds, callback) {
+   cordova.exec(callback, function(){}, serviceClass, "readStatisticsEventCallback", [intervalMs, windowSeconds]);
+},
+
+CMBconfigureSymbologyPruning: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureSymbologyPruning", [options]);
+},
+
+CMBrelearnSymbologies: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "relearnSymbologies", []);
+},
+
+CMBgetSymbologyPruning: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getSymbologyPruning", []);
+},
+
+CMBconfigureRoiTuning: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureRoiTuning", [options]);
+},
+
+CMBgetRoiTuning: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getRoiTuning", []);
+},
+
+CMBsetDecodeRoi: function(left, top, width, height, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setDecodeRoi", [left, top, width, height]);
+},
+
+CMBconfigureAdaptivePreview: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureAdaptivePreview", [options]);
+},
+
+CMBgetAdaptivePreview: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getAdaptivePreview", []);
+},
+
+CMBconfigureScanScheduler: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "configureScanScheduler", [options]);
+},
+
+CMBgetScanScheduler: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "getScanScheduler", []);
+},
+
+CMBsetBatteryLevelCallback: function(options, callback) {
+   cordova.exec(callback, function(){}, serviceClass, "batteryLevelCallback", [options]);
+},
+
+CMBstartCollection: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "startCollection", [options]);
+},
+
+CMBstopCollection: function(successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "stopCollection", []);
+},
+
+CMBsetGeometryOutput: function(mode, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setGeometryOutput", [mode]);
+},
+
+CMBscanImageRequest: function(source, options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "scanImageRequest", [source, options]);
+},
+
+CMBcancelImageScan: function(requestId, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "cancelImageScan", [requestId]);
+},
+
+CMBsetImagePreprocessing: function(options, successCallback, errorCallback) {
+   cordova.exec(successCallback, errorCallback, serviceClass, "setImagePreprocessing", [options]);
 }
 };
 
@@ -744,6 +1007,7 @@ var Scanner = function(){
     this.activeConnectionCallback = function(result){return result;}
     this.activeAvailabilityCallback = function(result){return result;}
     this.backButtonHandlers = [];
+    this.resultSocket = null;
 };
 
 /**
@@ -814,7 +1078,10 @@ Scanner.prototype.loadScanner = function(deviceType,callback){
 Scanner.prototype.setResultCallback = function(callback){
     callback = (typeof callback === 'function') ? callback : DEFAULT_CALLBACKS.scanResultCallback;
     this.activeResultCallback = callback;
-    BarcodeScanner.CMBsetResultCallback(callback);
+    BarcodeScanner.CMBsetResultCallback(function(result){
+        jsReceiveLatency.record(result);
+        return callback(result);
+    });
 };
 
 
@@ -1906,4 +2173,957 @@ Scanner.prototype.scanImageFromBase64 = function(base64, callback){
         .catch(callback); //catch unhandled errors here
 };
 
-module.exports = new Scanner();
\ No newline at end of file
+/**
+*   @name: setAutoReconnect
+*   @desc:  Let the native side reconnect to the reader when the connection drops (USB unplug, sleep...)
+*           Retries are spaced with exponential backoff and jitter, a periodic DMCC probe detects dead links,
+*           and configuration and scanning state are restored after the reader is back.
+*   @params: (object) options
+            {
+                (bool) enabled                  : default true
+                (int)  initialDelayMs           : first retry delay, default 250
+                (int)  maxDelayMs               : backoff ceiling, default 30000
+                (float) jitter                  : 0..1 part of the delay that is randomized, default 0.3
+                (int)  healthCheckIntervalMs    : 0 disables the probe, default 5000
+                (bool) restoreScanning          : restart scanning if it was active, default true
+            }
+             (function) callback
+    @return A promise that contains the JSON object
+            {
+                (bool) status  : did it succeed or not, if an error happened it will be set to false
+                err     : the error message if the action didn't complete
+            }
+*/
+Scanner.prototype.setAutoReconnect = function(options, callback){
+
+    if(typeof options === 'boolean'){
+        options = {enabled : options};
+    }
+    options = (options && typeof options === 'object') ? options : {enabled : true};
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+
+    return (function(){
+        return new Promise(function(resolve,reject){
+                    var result = {
+                        status : false,
+                        err : null
+                    };
+
+                    BarcodeScanner.CMBsetAutoReconnect(options, function(){
+                        result.status = true;
+                        resolve(result);
+                    }, function(err){
+                        result.err = err;
+                        resolve(result);
+                    });
+                })
+        })()
+        .then(callback)
+        .catch(callback);
+};
+
+/**
+*   @name: setReconnectEventCallback
+*   @desc:  Set the callback that receives the reconnect events
+*   @params: (function) callback - receives
+            {
+                (string) event              : disconnected, reconnecting, reconnected or healthCheckFailed
+                (int) downtimeMs            : how long the reader was gone (reconnected, reconnecting)
+                (int) attempt, reconnectCount, failedAttempts, lastDowntimeMs, longestDowntimeMs, totalDowntimeMs
+            }
+*/
+Scanner.prototype.setReconnectEventCallback = function(callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+    BarcodeScanner.CMBsetReconnectEventCallback(callback);
+};
+
+/**
+*   @name: getReconnectStats
+*   @desc:  Get the reconnect counters and downtime durations
+*   @params: (function) traditional callback
+*/
+Scanner.prototype.getReconnectStats = function(callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+
+    return (function(){
+        return new Promise(function(resolve,reject){
+                    BarcodeScanner.CMBgetReconnectStats(function(stats){
+                        resolve(stats);
+                    }, function(err){
+                        resolve({err : err});
+                    });
+                })
+        })()
+        .then(callback)
+        .catch(callback);
+};
+
+/**
+*   Reader pool
+*   The reader loaded with loadScanner always has handle 0, additional MX readers are added with loadReader.
+*   Every read result carries the handle of the reader it came from in result.readerHandle.
+*   The helpers below wrap the per-handle actions into the same {status, err, result} object the rest of the API uses.
+*/
+var readerPoolAction = function(invoke, callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+
+    return (function(){
+        return new Promise(function(resolve,reject){
+                    var rr = {
+                        status : false,
+                        err : null
+                    };
+
+                    invoke(function(result){
+                        rr.status = true;
+                        rr.result = result;
+                        resolve(rr);
+                    }, function(err){
+                        rr.err = err;
+                        resolve(rr);
+                    });
+                })
+        })()
+        .then(callback)
+        .catch(callback);
+};
+
+/**
+*   @name: setReaderEventCallback
+*   @params: (function) callback - receives {readerHandle, event : "connectionState"|"availability", value}
+*/
+Scanner.prototype.setReaderEventCallback = function(callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+    BarcodeScanner.CMBsetReaderEventCallback(callback);
+};
+
+/**
+*   @name: loadReader
+*   @desc: Add a reader to the pool, result contains the handle of the new reader
+*   @params: (int|string) deviceType - only DEVICE_TYPE_MX_1000 can be pooled
+*           The SDK binds to the single attached MX without a way to pick one physical unit, so at most one
+*           MX can be loaded: loadReader fails while the pool already holds one or when loadScanner loaded an MX,
+*           and loadScanner with an MX fails while one is pooled
+*/
+Scanner.prototype.loadReader = function(deviceType, callback){
+
+    if(typeof deviceType === 'function'){
+        callback = deviceType;
+        deviceType = 0;
+    }
+    if(typeof deviceType === "string"){
+        deviceType = CONSTANTS.DEVICES.indexOf(deviceType);
+    }
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBloadReader(deviceType, success, error);
+    }, callback);
+};
+
+Scanner.prototype.unloadReader = function(handle, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBunloadReader(handle, success, error);
+    }, callback);
+};
+
+/**
+*   @name: getReaderHandles
+*   @desc: result is an array of {handle, deviceType, connectionState, availability, scanning}
+*/
+Scanner.prototype.getReaderHandles = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetReaderHandles(success, error);
+    }, callback);
+};
+
+Scanner.prototype.connectReader = function(handle, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconnectReader(handle, success, error);
+    }, callback);
+};
+
+Scanner.prototype.disconnectReader = function(handle, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBdisconnectReader(handle, success, error);
+    }, callback);
+};
+
+Scanner.prototype.startReaderScanning = function(handle, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstartReaderScanning(handle, success, error);
+    }, callback);
+};
+
+Scanner.prototype.stopReaderScanning = function(handle, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstopReaderScanning(handle, success, error);
+    }, callback);
+};
+
+Scanner.prototype.setReaderSymbologyEnabled = function(handle, symbol, toggle, callback){
+
+    var int_symbol = CONSTANTS.SYMBOLS[symbol];
+
+    return readerPoolAction(function(success, error){
+        if(!int_symbol){
+            error("Invalid Symbol");
+        }
+        else{
+            BarcodeScanner.CMBsetReaderSymbologyEnabled(handle, int_symbol, toggle, success, error);
+        }
+    }, callback);
+};
+
+Scanner.prototype.sendReaderCommand = function(handle, commandString, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsendReaderCommand(handle, commandString, success, error);
+    }, callback);
+};
+
+/**
+*   JS side of the scan pipeline metrics.
+*   The native side stamps every result with sentTimestamp (epoch ms) right before it is handed to the bridge,
+*   the time it takes to reach the result callback is kept in a small ring of samples.
+*/
+var jsReceiveLatency = {
+    samples : new Array(1024),
+    next : 0,
+    count : 0,
+
+    record : function(result){
+        if (!result || !result.sentTimestamp) return;
+
+        this.samples[this.next] = Date.now() - result.sentTimestamp;
+        this.next = (this.next + 1) % this.samples.length;
+        this.count++;
+    },
+
+    reset : function(){
+        this.next = 0;
+        this.count = 0;
+    },
+
+    toJson : function(){
+        var n = Math.min(this.count, this.samples.length);
+        var sorted = this.samples.slice(0, n).sort(function(a, b){ return a - b; });
+        var sum = 0;
+        for (var i = 0; i < n; i++) sum += sorted[i];
+
+        var percentile = function(p){
+            return n == 0 ? 0 : sorted[Math.min(n - 1, Math.max(0, Math.ceil(p / 100 * n) - 1))];
+        };
+
+        return {
+            count : this.count,
+            mean : n == 0 ? 0 : sum / n,
+            p50 : percentile(50),
+            p95 : percentile(95),
+            p99 : percentile(99),
+            max : n == 0 ? 0 : sorted[n - 1]
+        };
+    }
+};
+
+/**
+*   @name: getMetrics
+*   @desc:  Get the scan pipeline latency histograms (ms) and counters
+*   @params: (function) traditional callback
+    @return A promise that contains the JSON object
+            {
+                (int) sinceResetMs
+                counters : {results, readResults, noReads, bytesSent, dedupHits, dropped, filtered}
+                           dedupHits counts codes a collection (startCollection) saw again and dropped
+                latency  : {triggerToResult, encode, bridgeSend, resultToSent, jsReceive}
+                           each one is {count, mean, p50, p95, p99, max}
+                allocation : {samples, meanBytes, maxBytes, buffers: {allocatedBytes, grows, trims}}
+                           bytes allocated per encoded result, estimated from the runtime counter (Android 6+)
+                startup    : {baseline, pluginCreatedMs, loadScannerMs, readerCreatedMs, connectedMs, firstScanMs, firstResultMs, warmUp}
+                           ms after the baseline until each first happened, 0 until it did. baseline is 'processStart'
+                           (Android 7+), so the numbers compare with and without CMB_WARM_UP, or 'pluginCreated' on older versions
+                           warmUp is {done, durationMs, libraryMs, registrationMs, classesMs, registrationStatus, timedOut}
+                           (the plugin loads at app startup to warm up, --variable CMB_WARM_UP=false loads it, and starts
+                           the warm-up, on the first call; loadScanner waits for the warm-up, at most 3 s)
+                imageRequests : {queued, inFlight, submitted, completed, timedOut, cancelled, failed, lateResults}, once scanImage was used
+                imagePreprocessing : {processed, skipped, failed, meanOriginalBytes, meanProcessedBytes, meanRawBytes, preprocess,
+                           endToEnd: {raw, processed}}, once an image was scanned; endToEnd is scanImage call to result,
+                           for images sent as they are and pre-processed ones
+            }
+*/
+Scanner.prototype.getMetrics = function(callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+
+    return (function(){
+        return new Promise(function(resolve,reject){
+                    BarcodeScanner.CMBgetMetrics(function(metrics){
+                        metrics.latency.jsReceive = jsReceiveLatency.toJson();
+                        resolve(metrics);
+                    }, function(err){
+                        resolve({err : err});
+                    });
+                })
+        })()
+        .then(callback)
+        .catch(callback);
+};
+
+/**
+*   @name: resetMetrics
+*   @desc:  Reset the native and JS scan pipeline metrics
+*/
+Scanner.prototype.resetMetrics = function(){
+
+    jsReceiveLatency.reset();
+    BarcodeScanner.CMBresetMetrics(function(){}, function(){});
+};
+
+/**
+*   @name: setMetricsCallback
+*   @desc:  Receive the metrics periodically
+*   @params: (int) intervalMs - 0 stops the periodic events
+             (function) callback - receives the same object as getMetrics
+*/
+Scanner.prototype.setMetricsCallback = function(intervalMs, callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+    intervalMs = parseInt(intervalMs) || 0;
+
+    BarcodeScanner.CMBsetMetricsCallback(intervalMs, function(metrics){
+        if (metrics && metrics.latency) {
+            metrics.latency.jsReceive = jsReceiveLatency.toJson();
+            callback(metrics);
+        }
+    });
+};
+
+/**
+*   @name: setTracingEnabled
+*   @desc:  Emit systrace/Perfetto sections (CMB.*) from the native bridge: execute, result encoding,
+*           image encoding, bridge send, image load, and async slices per scan and per result.
+*           Disabled by default, it costs nothing while off. Android only.
+*   @params: (bool) enable
+*/
+Scanner.prototype.setTracingEnabled = function(enable){
+
+    BarcodeScanner.CMBsetTracingEnabled(enable ? true : false);
+};
+
+/**
+*   @name: setLogLevel
+*   @desc:  The native side keeps its log in an in-memory ring buffer, see dumpLogs.
+*   @params: (int) level - minimum level kept in the buffer, see CONSTANTS.LOG_LEVELS. Default INFO
+             (int) logcatLevel - minimum level also written to logcat. Default ERROR
+*/
+Scanner.prototype.setLogLevel = function(level, logcatLevel){
+
+    level = (typeof level === 'number') ? level : CONSTANTS.LOG_LEVELS.INFO;
+    logcatLevel = (typeof logcatLevel === 'number') ? logcatLevel : CONSTANTS.LOG_LEVELS.ERROR;
+    BarcodeScanner.CMBsetLogLevel(level, logcatLevel);
+};
+
+/**
+*   @name: dumpLogs
+*   @desc:  Get the most recent native log entries, oldest first
+*   @params: (int) max - maximum number of entries, 0 for the whole buffer
+             (bool) clear - empty the buffer after reading it
+             (function) callback
+    @return A promise that contains an array of {time, level, message, error}
+*/
+Scanner.prototype.dumpLogs = function(max, clear, callback){
+
+    if(typeof max === 'function'){
+        callback = max;
+        max = 0;
+        clear = false;
+    }
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+
+    return (function(){
+        return new Promise(function(resolve,reject){
+                    BarcodeScanner.CMBdumpLogs(parseInt(max) || 0, clear ? true : false, function(entries){
+                        resolve(entries);
+                    }, function(err){
+                        resolve([]);
+                    });
+                })
+        })()
+        .then(callback)
+        .catch(callback);
+};
+
+/**
+*   @name: startRecording
+*   @desc:  Record every scan result and DMCC exchange to a session file, to be replayed with replaySession
+*   @params: (object) options - {includeImages : false}
+    @return A promise that contains {status, err, result}, result is the path of the session file
+*/
+Scanner.prototype.startRecording = function(options, callback){
+
+    if(typeof options === 'function'){
+        callback = options;
+        options = {};
+    }
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstartRecording(options || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: stopRecording
+*   @desc:  Close the session file
+    @return A promise that contains {status, err, result}, result is {path, results, commands, durationMs, bytes}
+*/
+Scanner.prototype.stopRecording = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstopRecording(success, error);
+    }, callback);
+};
+
+/**
+*   @name: replaySession
+*   @desc:  Feed a recorded session back through the native result pipeline.
+*           Replayed results reach the result callback with replayed : true, recorded DMCC commands are not resent.
+*   @params: (object) options - {path, speed : 1}, path is absolute or relative to the sessions directory,
+*                               speed 1 keeps the recorded pace, 0 replays as fast as possible
+    @return A promise that contains {status, err, result}, result has the throughput and latency report
+*/
+Scanner.prototype.replaySession = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBreplaySession(options || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: cancelReplay
+*   @desc:  Stop the running replay, its promise resolves with the report so far
+*/
+Scanner.prototype.cancelReplay = function(){
+    BarcodeScanner.CMBcancelReplay(function(){}, function(){});
+};
+
+/**
+*   @name: startResultStream
+*   @desc:  Receive results over a local WebSocket (127.0.0.1, per-session token) instead of the Cordova exec queue.
+*           Results still go to the callback set with setResultCallback. When the socket can't be opened or drops,
+*           the native side goes back to the regular result callback on its own.
+*           A slow page doesn't slow the scanner, the oldest queued results are dropped (metrics.stream.dropped).
+*   @params: (object) options - {queueCapacity : 256, format : 'json'}
+*                               format 'binary' hands the raw UTF-8 JSON ArrayBuffer to the result callback,
+*                               to be parsed off the main thread
+    @return A promise that contains {status, err, result}, result has the stream url and counters
+*/
+Scanner.prototype.startResultStream = function(options, callback){
+
+    if(typeof options === 'function'){
+        callback = options;
+        options = {};
+    }
+    options = options || {};
+
+    var self = this;
+    var binary = options.format === 'binary';
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstartResultStream(options, function(stream){
+            if (typeof WebSocket === 'undefined') {
+                error("WebSocket is not available");
+                return;
+            }
+
+            if (self.resultSocket)
+                self.resultSocket.close();
+
+            var socket = new WebSocket(stream.url + (binary ? '&format=binary' : ''));
+            if (binary) socket.binaryType = 'arraybuffer';
+
+            socket.onopen = function(){
+                success(stream);
+            };
+            socket.onmessage = function(event){
+                if (binary) {
+                    self.activeResultCallback(event.data);
+                    return;
+                }
+
+                var result = JSON.parse(event.data);
+                jsReceiveLatency.record(result);
+                self.activeResultCallback(result);
+            };
+            socket.onerror = function(){
+                error("Result stream unavailable");
+            };
+            socket.onclose = function(){
+                if (self.resultSocket === socket)
+                    self.resultSocket = null;
+            };
+            self.resultSocket = socket;
+        }, error);
+    }, callback);
+};
+
+/**
+*   @name: stopResultStream
+*   @desc:  Close the result stream, results go back to the regular result callback
+*/
+Scanner.prototype.stopResultStream = function(){
+
+    if (this.resultSocket) {
+        this.resultSocket.close();
+        this.resultSocket = null;
+    }
+    BarcodeScanner.CMBstopResultStream(function(){}, function(){});
+};
+
+/**
+*   @name: configureJournal
+*   @desc:  Keep every good read in a native, on-disk scan history instead of JS arrays or localStorage
+*   @params: (object) options - {enabled : true, maxEntries : 0, maxAgeDays : 0, syncIntervalMs : 1000}
+*                               0 disables a retention limit
+    @return A promise that contains {status, err, result}, result has the journal stats
+*/
+Scanner.prototype.configureJournal = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureJournal(options || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: queryJournal
+*   @desc:  Page through the scan history
+*   @params: (object) query - {from, to, prefix, readString, symbology, cursor, limit : 100, descending : false}
+*                             from/to are epoch ms (to excluded), prefix matches the start of readString,
+*                             pass the nextCursor of a page as cursor to get the next one
+    @return A promise that contains {status, err, result}, result is {entries, nextCursor}, nextCursor is -1 on the last page
+*/
+Scanner.prototype.queryJournal = function(query, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBqueryJournal(query || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: getJournalStats
+    @return A promise that contains {status, err, result}, result is {entries, segments, bytes, appended, oldestTime, newestTime}
+*/
+Scanner.prototype.getJournalStats = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetJournalStats(success, error);
+    }, callback);
+};
+
+/**
+*   @name: compactJournal
+*   @desc:  Apply the retention limits now and merge small segment files, this also happens on its own as the journal grows
+*/
+Scanner.prototype.compactJournal = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBcompactJournal(success, error);
+    }, callback);
+};
+
+/**
+*   @name: clearJournal
+*   @desc:  Delete the whole scan history
+*/
+Scanner.prototype.clearJournal = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBclearJournal(success, error);
+    }, callback);
+};
+
+/**
+*   @name: exportScans
+*   @desc:  Stream the scan journal into a gzip-compressed NDJSON or CSV file under the app's files dir (cmb-exports),
+*           with constant memory use whatever the size of the history. Needs configureJournal.
+*   @params: (object) options - {format : 'ndjson' | 'csv', from, to, symbology, prefix, fileName, device}
+*                               from/to are epoch ms (to excluded), device defaults to the phone model
+*                               CSV rows end in CRLF, text fields starting with = + - @ tab or CR get a leading ' so
+*                               spreadsheets don't run scanned content as a formula
+*            (function) progressCallback - receives {exported, total} while the export runs
+    @return A promise that contains {status, err, result}, result is {path, exported, bytes}
+*/
+Scanner.prototype.exportScans = function(options, progressCallback, callback){
+
+    progressCallback = (typeof progressCallback === 'function') ? progressCallback : function(){};
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBexportScans(options || {}, function(event){
+            if (event && event.event === 'progress') {
+                progressCallback({exported : event.exported, total : event.total});
+                return;
+            }
+            success(event);
+        }, error);
+    }, callback);
+};
+
+/**
+*   @name: cancelExport
+*   @desc:  Stop the running export, its promise resolves with an error and the partial file is removed
+*/
+Scanner.prototype.cancelExport = function(){
+    BarcodeScanner.CMBcancelExport(function(){}, function(){});
+};
+
+/**
+*   @name: setResultFilters
+*   @desc:  Validate reads natively before they are serialized, rejected reads never reach the result callback
+*   @params: (array) rules - [{name, symbologies : [Symbology...], minLength, maxLength, pattern, requiredAIs : ["01", "17"], validGS1 : false}]
+*                            all the conditions of a rule must hold, a read passes when any rule accepts it,
+*                            pattern is a Java regex searched for in readString, an empty array removes the filters
+*            (function) callback - optional
+    @return A promise that contains {status, err, result}, rejection counts per rule are in getMetrics().filter
+*/
+Scanner.prototype.setResultFilters = function(rules, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsetResultFilters(rules || [], success, error);
+    }, callback);
+};
+
+/**
+*   @name: setFieldExtraction
+*   @desc:  Extract GS1 and AAMVA fields natively, each good read then carries a typed "fields" object
+*           ({"01": "09501101530003", "17": "2025-12-31", "3103": 1.25}) and JS doesn't parse parsedText/parsedJSON
+*   @params: (object) options - {enabled : true, fields : ["gtin", "expiry", "lot", "DBB"...], dropParsed : false}
+*                               fields takes AIs, AAMVA element ids or aliases (gtin, lot, expiry, serial, sscc,
+*                               licenseNumber, firstName, lastName, dateOfBirth, expirationDate...) and keys the output the same way,
+*                               leave it out to get every field, dropParsed removes parsedText and parsedJSON from the results
+*            (function) callback - optional
+    @return A promise that contains {status, err, result}
+*/
+Scanner.prototype.setFieldExtraction = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsetFieldExtraction(options || {enabled : false}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: configureReadStatistics
+*   @desc:  Aggregate the reader's result XML natively (decode times, read rate per symbology, code quality grades),
+*           enable READ_XML, XML_STATISTICS or CODE_QUALITY_DATA in the result types for the reader to send it
+*   @params: (object) options - {enabled : true, bucketSeconds : 10, windowBuckets : 30, stripXml : true}
+*                               the rolling window is at most bucketSeconds * windowBuckets long,
+*                               stripXml keeps the raw XML out of the read results
+    @return A promise that contains {status, err, result}
+*/
+Scanner.prototype.configureReadStatistics = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureReadStatistics(options || {enabled : false}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: getReadStatistics
+*   @desc:  Aggregates of the last windowSeconds, and since configureReadStatistics
+*   @params: (int) windowSeconds - default 60
+    @return A promise that contains {status, err, result}, result is {windowMs, window, total, reader, parsed, parseErrors},
+            window and total are {goodReads, noReads, readRate, decodeTimeMs : {count, mean, p50, p90, p99, max}, symbologies, grades},
+            reader holds the latest counters of the reader's statistics block
+*/
+Scanner.prototype.getReadStatistics = function(windowSeconds, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetReadStatistics(parseInt(windowSeconds) || 60, success, error);
+    }, callback);
+};
+
+/**
+*   @name: setReadStatisticsCallback
+*   @desc:  Receive the read statistics periodically
+*   @params: (int) intervalMs - 0 stops the periodic events
+*            (int) windowSeconds - default 60
+*            (function) callback - receives the same object as getReadStatistics
+*/
+Scanner.prototype.setReadStatisticsCallback = function(intervalMs, windowSeconds, callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+    intervalMs = parseInt(intervalMs) || 0;
+
+    BarcodeScanner.CMBsetReadStatisticsCallback(intervalMs, parseInt(windowSeconds) || 60, function(statistics){
+        if (statistics && statistics.window)
+            callback(statistics);
+    });
+};
+
+/**
+*   @name: configureSymbologyPruning
+*   @desc:  Learn which enabled symbologies the site actually scans and suggest or disable the others,
+*           every enabled symbology costs decode time. Pruned symbologies come back on relearnSymbologies,
+*           after noReadStreak no reads in a row, after relearnIntervalSeconds or when the reader reconnects.
+*   @params: (object) options - {mode : 'off' | 'suggest' | 'auto', windowSeconds : 1800, minReads : 50, noReadStreak : 5,
+*                               relearnIntervalSeconds : 0, symbologies : [Symbology...], keep : [Symbology...]}
+*                               a symbology is a candidate once it wasn't read for windowSeconds while at least minReads good reads were,
+*                               symbologies defaults to the ones enabled through setSymbologyEnabled, keep are never pruned
+*            (function) eventCallback - receives {event : 'suggested' | 'pruned' | 'restored', symbologies, names, reason}
+    @return A promise that contains {status, err, result}, result is the same object as getSymbologyPruning
+*/
+Scanner.prototype.configureSymbologyPruning = function(options, eventCallback, callback){
+
+    eventCallback = (typeof eventCallback === 'function') ? eventCallback : function(){};
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureSymbologyPruning(options || {mode : 'off'}, function(event){
+            if (event && event.event && event.event !== 'configured') {
+                eventCallback(event);
+                return;
+            }
+            success(event);
+        }, error);
+    }, callback);
+};
+
+/**
+*   @name: relearnSymbologies
+*   @desc:  Learning trigger, re-enables the pruned symbologies and starts a new window
+*/
+Scanner.prototype.relearnSymbologies = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBrelearnSymbologies(success, error);
+    }, callback);
+};
+
+/**
+*   @name: getSymbologyPruning
+*   @desc:  What the pruner saw and did
+    @return A promise that contains {status, err, result}, result is {mode, learning, candidates, suggested, pruned,
+            seen : {name : {symbology, count, lastSeenMsAgo}}, readsInWindow, relearns, latency : {fullSet, prunedSet}},
+            latency holds trigger to result times with every candidate enabled and with the pruned set, to check the gain
+*/
+Scanner.prototype.getSymbologyPruning = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetSymbologyPruning(success, error);
+    }, callback);
+};
+
+/**
+*   @name: configureRoiTuning
+*   @desc:  Camera reader only. Learn where codes show up in the frame and decode only that region,
+*           widening it again after missStreak no reads in a row. Turns on MWB_CFG_GLOBAL_CALCULATE_1D_LOCATION and
+*           image graphics for the code outlines, the graphics still only reach JS when enableImageGraphics asked for them.
+*   @params: (object) options - {enabled : true, sampleSize : 50, minSamples : 20, recomputeEvery : 10, marginPercent : 5,
+*                               trimPercent : 5, minSizePercent : 20, missStreak : 3}
+    @return A promise that contains {status, err, result}, result is the same object as getRoiTuning
+*/
+Scanner.prototype.configureRoiTuning = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureRoiTuning(options || {enabled : false}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: getRoiTuning
+*   @desc:  The active decode ROI and what it saves
+    @return A promise that contains {status, err, result}, result is {roi : {left, top, width, height}, fullFrame, samples,
+            tightenings, widenings, latency : {fullFrame, roi}}, all in percent of the frame, latency is trigger to result
+*/
+Scanner.prototype.getRoiTuning = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetRoiTuning(success, error);
+    }, callback);
+};
+
+/**
+*   @name: setDecodeRoi
+*   @desc:  Camera reader only. Decode only part of the frame, in percent. A running ROI tuning replaces it.
+*/
+Scanner.prototype.setDecodeRoi = function(left, top, width, height, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsetDecodeRoi(left, top, width, height, success, error);
+    }, callback);
+};
+
+/**
+*   @name: configureAdaptivePreview
+*   @desc:  Let the camera reader pick HIGH_RESOLUTION and HIGH_FRAME_RATE itself. Every combination the camera supports
+*           is measured over whole scan sessions (startScanning to stopScanning) and the one reading the most codes per second is kept,
+*           the others are revisited every exploreEvery sessions. The options only apply when the camera opens,
+*           so it is reopened between sessions when the pick changes. The other preview options stay as set with setPreviewOptions.
+*   @params: (object) options - {enabled : true, minSessions : 3, minSessionMs : 500, exploreEvery : 20, switchMargin : 0.1}
+*                               minSessions per combination before picking, sessions shorter than minSessionMs without a read don't count,
+*                               another combination must read switchMargin faster before the camera is reopened
+*            (function) eventCallback - receives {event : 'switched' | 'reopenFailed', options, highResolution, highFrameRate, reason},
+*                               reason is 'explore', 'revisit' or 'best' for a switch
+    @return A promise that contains {status, err, result}, result is the same object as getAdaptivePreview
+*/
+Scanner.prototype.configureAdaptivePreview = function(options, eventCallback, callback){
+
+    eventCallback = (typeof eventCallback === 'function') ? eventCallback : function(){};
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureAdaptivePreview(options || {enabled : false}, function(event){
+            if (event && event.event && event.event !== 'configured') {
+                eventCallback(event);
+                return;
+            }
+            success(event);
+        }, error);
+    }, callback);
+};
+
+/**
+*   @name: getAdaptivePreview
+*   @desc:  What the adaptive preview measured and decided
+    @return A promise that contains {status, err, result}, result is {options, exploring, sessions, switches,
+            candidates : [{options, highResolution, highFrameRate, sessions, readsPerSecond, timeToRead}],
+            decisions : [{session, options, reason, readsPerSecond}]}, the last 16 switches
+*/
+Scanner.prototype.getAdaptivePreview = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetAdaptivePreview(success, error);
+    }, callback);
+};
+
+/**
+*   @name: configureScanScheduler
+*   @desc:  Duty cycle the camera decoder through long continuous scanning sessions. After idleSeconds without a read
+*           decoding pauses for dutyOffMs (the preview keeps running) and runs for dutyOnMs, a read or startScanning makes it continuous again.
+*           After releaseAfterSeconds without a read the camera is released and scanning stops, the scanningStateChanged
+*           callback gets false like after stopScanning; startScanning starts it again.
+*           A warm device (thermal status moderate or up, Android 10+) or a battery under lowBatteryPercent and not charging
+*           throttles harder: every throttle level halves the idle time and doubles the pauses.
+*   @params: (object) options - {enabled : true, idleSeconds : 10, dutyOnMs : 500, dutyOffMs : 1500, releaseAfterSeconds : 300, lowBatteryPercent : 20}
+*                               releaseAfterSeconds 0 keeps the camera, lowBatteryPercent 0 ignores the battery
+*            (function) eventCallback - receives {event : 'dutyCycling' | 'decoding' | 'released' | 'throttled', ...} with the fields of getScanScheduler
+    @return A promise that contains {status, err, result}, result is the same object as getScanScheduler
+*/
+Scanner.prototype.configureScanScheduler = function(options, eventCallback, callback){
+
+    eventCallback = (typeof eventCallback === 'function') ? eventCallback : function(){};
+
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBconfigureScanScheduler(options || {enabled : false}, function(event){
+            if (event && event.event && event.event !== 'configured') {
+                eventCallback(event);
+                return;
+            }
+            success(event);
+        }, error);
+    }, callback);
+};
+
+/**
+*   @name: getScanScheduler
+*   @desc:  State of the scan scheduler
+    @return A promise that contains {status, err, result}, result is {state : 'stopped' | 'decoding' | 'paused' | 'sampling' | 'released',
+            throttleLevel, thermalStatus, batteryPercent, charging, idleMs, dutyCycles, pausedMs, releases, throttleChanges}
+*/
+Scanner.prototype.getScanScheduler = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBgetScanScheduler(success, error);
+    }, callback);
+};
+
+/**
+*   @name: setBatteryLevelCallback
+*   @desc:  Subscribe to the reader's battery level instead of polling getDeviceBatteryLevel. The level is polled natively
+*           every intervalMs, except while scanning, and the callback only fires when it changed.
+*           While subscribed, getDeviceBatteryLevel answers from the cached level when it is younger than maxAgeMs.
+*   @params: (object) options - {intervalMs : 60000, maxAgeMs : intervalMs}, intervalMs 0 ends the subscription
+             (function) callback - receives {charge, timestamp}, the cached level right away when there is one
+*/
+Scanner.prototype.setBatteryLevelCallback = function(options, callback){
+
+    callback = (typeof callback === 'function') ? callback : function(result){return result;};
+    options = options || {};
+
+    BarcodeScanner.CMBsetBatteryLevelCallback({intervalMs : parseInt(options.intervalMs) || 0, maxAgeMs : parseInt(options.maxAgeMs) || undefined}, function(level){
+        if (level && typeof level.charge === 'number')
+            callback(level);
+    });
+};
+
+/**
+*   @name: startCollection
+*   @desc:  Collect all the codes of a multi-code scan (the labels of a carton) natively. Scanning starts if it isn't running,
+*           distinct codes are gathered across frames and sub results, and the page gets one aggregated result when
+*           expectedCount codes were seen, timeoutMs passed or stopCollection was called. Results don't go to the
+*           read result callback meanwhile. Codes are distinct by symbology and content; with positionTolerance and
+*           image graphics enabled, identical content further apart than the tolerance (fraction of the image) is another label.
+*   @params: (object) options - {expectedCount : 0, timeoutMs : 0, symbologies : [Symbology...], positionTolerance : 0}
+*                               expectedCount 0 and timeoutMs 0 collect until stopCollection
+    @return A promise that contains {status, err, result}, result is {reason : 'complete' | 'timeout' | 'stopped', complete,
+            expectedCount, count, elapsedMs, frames, duplicates,
+            codes : [{readString, symbology, symbologyString, firstSeen, firstSeenMs, sightings, center}]},
+            firstSeen is epoch milliseconds, firstSeenMs is relative to the start, center is [x, y] normalized when known
+*/
+Scanner.prototype.startCollection = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstartCollection(options || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: stopCollection
+*   @desc:  Ends the running collection, startCollection resolves with what was collected
+*/
+Scanner.prototype.stopCollection = function(callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBstopCollection(success, error);
+    }, callback);
+};
+
+/**
+*   @name: setGeometryOutput
+*   @desc:  How the code outlines of enableImageGraphics reach the page. 'svg' passes the reader's SVG as imageGraphics (default),
+*           'image' and 'normalized' parse it natively and send geometry : {width, height, outlines : [[x0, y0, x1, y1, ...]]}
+*           instead, one array of corner points per code, in image pixels or as fractions of the image (the preview shows the whole image).
+*   @params: (string) mode - 'svg' | 'image' | 'normalized'
+*/
+Scanner.prototype.setGeometryOutput = function(mode, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsetGeometryOutput(mode || 'svg', success, error);
+    }, callback);
+};
+
+/**
+*   @name: scanImage
+*   @desc:  Scan an image and get its own decode result back, instead of an OK for the upload and the result on the
+*           read result callback. Images go to the reader one at a time in call order, up to 8 can wait.
+*           Fails while scanning (stop scanning first): live results couldn't be told from the image's decode.
+*   @params: (string) source - image uri, or Base64 with sourceType 'base64'
+*            (object) options - {requestId : generated, sourceType : 'uri' | 'base64', timeoutMs : 5000}
+*                               pass a requestId to be able to cancelImageScan it
+    @return A promise that contains {status, err, result}, result has the read result layout (readResults, subReadResults, xml)
+            plus {requestId, queuedMs, loadMs, totalMs, timedOut, preprocessed, imageBytes, originalBytes}; when timeoutMs passed first timedOut is true and
+            readResults is empty. err is 'Image scan cancelled' after cancelImageScan
+*/
+Scanner.prototype.scanImage = function(source, options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBscanImageRequest(source, options || {}, success, error);
+    }, callback);
+};
+
+/**
+*   @name: cancelImageScan
+*   @desc:  Cancel a pending scanImage, its promise resolves with the err 'Image scan cancelled'
+*   @params: (string) requestId - the requestId given to scanImage
+    @return A promise that contains {status, err}, err when no image scan with that id is pending
+*/
+Scanner.prototype.cancelImageScan = function(requestId, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBcancelImageScan(requestId, success, error);
+    }, callback);
+};
+
+/**
+*   @name: setImagePreprocessing
+*   @desc:  Shrink images on the device before they are sent to the reader by scanImage, scanImageFromUri and
+*           scanImageFromBase64: decoded subsampled, optionally cropped, scaled down and converted to grayscale,
+*           then re-encoded. Off by default, images are sent as they are. An image that can't be decoded, or that
+*           would come out larger, is still sent as it is
+*   @params: (object) options - {enabled : true, maxDimension : 1600 (long edge in pixels, 0 keeps the size),
+*                               grayscale : true, crop : [x, y, width, height] normalized 0..1,
+*                               format : 'jpeg' | 'png', quality : 90, minBytes : 262144 (smaller images are sent as they are)}
+*                               {enabled : false} turns it off
+    @return A promise that contains {status, err, result}, result is the applied options with the stats of getMetrics().imagePreprocessing
+*/
+Scanner.prototype.setImagePreprocessing = function(options, callback){
+    return readerPoolAction(function(success, error){
+        BarcodeScanner.CMBsetImagePreprocessing(options || {}, success, error);
+    }, callback);
+};
+
+module.exports = new Scanner();